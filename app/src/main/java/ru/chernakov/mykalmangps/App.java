@@ -6,13 +6,11 @@ import android.app.NotificationManager;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
-import android.widget.Toast;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import ru.chernakov.mykalmangps.kalman.KalmanTrackingService;
-import ru.chernakov.mykalmangps.tracking.TrackPoint;
+import ru.chernakov.mykalmangps.core.track.ColumnarTrack;
+import ru.chernakov.mykalmangps.tracking.TrackStore;
 import ru.chernakov.mykalmangps.tracking.TrackingService;
 
 import static ru.chernakov.mykalmangps.utils.NotificationHelper.NOTIFICATION_CHANNEL_DEFAULT;
@@ -26,11 +24,13 @@ public class App extends Application {
 
 	private static App instance;
 
-	private static List<TrackPoint> sTrack;
+	/**
+	 * Трек текущего сеанса. Точки добавляются сервисами определения местоположения
+	 */
+	private static ColumnarTrack sTrack;
 
-	private static TrackingService sTrackingService;
+	private static TrackStore sTrackStore;
 
-	private static KalmanTrackingService sKalmanTrackingService;
 	/**
 	 * Массив разрешений, которые необходимо проверять перед запуском приложения
 	 */
@@ -39,11 +39,11 @@ public class App extends Application {
 	@Override
 	public void onCreate() {
 		instance = this;
-		sTrack = new ArrayList<>();
+		sTrack = new ColumnarTrack();
+		sTrackStore = new TrackStore(this);
 
 		createNotificationChannel();
-		startKalmanTrackingService(this);
-//		startTrackingService(this);
+		startTrackingService(this);
 
 		super.onCreate();
 	}
@@ -52,41 +52,15 @@ public class App extends Application {
 		return instance;
 	}
 
+	/**
+	 * Запускает сервис записи трека. Обработчики определений выбираются через {@link TrackingService.LocalBinder}.
+	 */
 	public static void startTrackingService(Context c) {
-		if (!TrackingService.sIsActive) {
-			// Запуск определения GPS координат
-			Intent start = new Intent(c, TrackingService.class);
-			c.startService(start);
-			Toast.makeText(instance, "Трекер включен", Toast.LENGTH_SHORT).show();
-		}
+		c.startService(new Intent(c, TrackingService.class));
 	}
 
 	public void stopTrackingService() {
-		if (TrackingService.sIsActive) {
-			stopService(new Intent(this, TrackingService.class));
-			sTrackingService.stopSelf();
-			TrackingService.sIsActive = false;
-
-			Toast.makeText(instance, "Трекер выключен", Toast.LENGTH_SHORT).show();
-		}
-	}
-
-	public static void startKalmanTrackingService(Context c) {
-		if (!KalmanTrackingService.sIsActive) {
-			// Запуск определения GPS координат
-			Intent start = new Intent(c, KalmanTrackingService.class);
-			c.startService(start);
-			Toast.makeText(instance, "Трекер Калмана включен", Toast.LENGTH_SHORT).show();
-		}
-	}
-
-	public void stopKalmanTrackingService() {
-		if (KalmanTrackingService.sIsActive) {
-			stopService(new Intent(this, KalmanTrackingService.class));
-			sKalmanTrackingService.stopSelf();
-			KalmanTrackingService.sIsActive = false;
-			Toast.makeText(instance, "Трекер Калмана выключен", Toast.LENGTH_SHORT).show();
-		}
+		stopService(new Intent(this, TrackingService.class));
 	}
 
 	/**
@@ -102,23 +76,11 @@ public class App extends Application {
 		}
 	}
 
-	public static List<TrackPoint> getTrack() {
+	public static ColumnarTrack getTrack() {
 		return sTrack;
 	}
 
-	public static KalmanTrackingService getTrackingService() {
-		return sKalmanTrackingService;
-	}
-
-	public static void setKalmanTrackingService(KalmanTrackingService sTrackingService) {
-		App.sKalmanTrackingService = sTrackingService;
-	}
-
-	public static TrackingService getsTrackingService() {
-		return sTrackingService;
-	}
-
-	public static void setTrackingService(TrackingService sTrackingService) {
-		App.sTrackingService = sTrackingService;
+	public static TrackStore getTrackStore() {
+		return sTrackStore;
 	}
 }
@@ -0,0 +1,124 @@
+package ru.chernakov.mykalmangps.kalman;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ru.chernakov.mykalmangps.core.sensor.SensorSampleListener;
+import ru.chernakov.mykalmangps.core.sensor.SensorSource;
+
+/**
+ * Источник показаний датчиков устройства.
+ * <p>
+ * Датчики регистрируются с пакетной доставкой ({@code maxReportLatencyUs}), показания принимаются в отдельном
+ * потоке, поэтому процессор пробуждается один раз на пакет, а не на каждое показание.
+ */
+final class AndroidSensorSource implements SensorSource, SensorEventListener2 {
+	private final SensorManager mSensorManager;
+
+	private final int[] mSensorTypes;
+
+	/**
+	 * Датчики, на которые удалось подписаться
+	 */
+	private final List<Sensor> mRegisteredSensors = new ArrayList<>();
+
+	/**
+	 * Количество датчиков, ещё не завершивших запрошенную доставку накопленных показаний
+	 */
+	private final AtomicInteger mPendingFlushes = new AtomicInteger();
+
+	private HandlerThread mThread;
+
+	private volatile SensorSampleListener mListener;
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param sensorManager системный сервис датчиков
+	 * @param sensorTypes   типы датчиков, на которые необходимо подписаться
+	 */
+	AndroidSensorSource(SensorManager sensorManager, int[] sensorTypes) {
+		mSensorManager = sensorManager;
+		mSensorTypes = sensorTypes;
+	}
+
+	@Override
+	public boolean start(int samplingPeriodUs, int maxReportLatencyUs, SensorSampleListener listener) {
+		mListener = listener;
+		mThread = new HandlerThread("SensorAcquisition", Process.THREAD_PRIORITY_DEFAULT);
+		mThread.start();
+		Handler handler = new Handler(mThread.getLooper());
+
+		for (int type : mSensorTypes) {
+			Sensor sensor = mSensorManager.getDefaultSensor(type);
+			if (sensor != null
+					&& mSensorManager.registerListener(this, sensor, samplingPeriodUs, maxReportLatencyUs, handler)) {
+				mRegisteredSensors.add(sensor);
+			}
+		}
+
+		if (mRegisteredSensors.isEmpty()) {
+			stop();
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean flush() {
+		int count = mRegisteredSensors.size();
+		if (count == 0) {
+			return false;
+		}
+
+		mPendingFlushes.addAndGet(count);
+		if (!mSensorManager.flush(this)) {
+			mPendingFlushes.addAndGet(-count);
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public void stop() {
+		mSensorManager.unregisterListener(this);
+		mRegisteredSensors.clear();
+		mPendingFlushes.set(0);
+
+		if (mThread != null) {
+			mThread.quitSafely();
+			mThread = null;
+		}
+	}
+
+	@Override
+	public void onSensorChanged(SensorEvent event) {
+		SensorSampleListener listener = mListener;
+		if (listener != null) {
+			listener.onSensorSample(event.sensor.getType(), event.timestamp, event.values);
+		}
+	}
+
+	@Override
+	public void onFlushCompleted(Sensor sensor) {
+		SensorSampleListener listener = mListener;
+		if (mPendingFlushes.decrementAndGet() == 0 && listener != null) {
+			listener.onFlushCompleted();
+		}
+	}
+
+	@Override
+	public void onAccuracyChanged(Sensor sensor, int accuracy) {
+	}
+}
@@ -0,0 +1,15 @@
+package ru.chernakov.mykalmangps.kalman;
+
+import android.hardware.GeomagneticField;
+
+import ru.chernakov.mykalmangps.core.geo.DeclinationModel;
+
+/**
+ * Магнитное склонение по модели WMM ({@link GeomagneticField}).
+ */
+final class GeomagneticDeclinationModel implements DeclinationModel {
+	@Override
+	public double getDeclination(double latitude, double longitude, double altitude, long timeMs) {
+		return new GeomagneticField((float) latitude, (float) longitude, (float) altitude, timeMs).getDeclination();
+	}
+}
@@ -0,0 +1,651 @@
+package ru.chernakov.mykalmangps.kalman;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import mad.location.manager.lib.Commons.Utils;
+import ru.chernakov.mykalmangps.App;
+import ru.chernakov.mykalmangps.core.filter.GpsAccFilter;
+import ru.chernakov.mykalmangps.core.filter.GpsAccFilterFactory;
+import ru.chernakov.mykalmangps.core.filter.PrimitiveGpsAccFilter;
+import ru.chernakov.mykalmangps.core.filter.UdGpsAccFilter;
+import ru.chernakov.mykalmangps.core.fusion.FusionEngine;
+import ru.chernakov.mykalmangps.core.fusion.FusionListener;
+import ru.chernakov.mykalmangps.core.fusion.GnssIntervalScheduler;
+import ru.chernakov.mykalmangps.core.geo.DeclinationCache;
+import ru.chernakov.mykalmangps.core.metrics.TrackingMetrics;
+import ru.chernakov.mykalmangps.core.sensor.MotionDetector;
+import ru.chernakov.mykalmangps.core.sensor.SensorAcquisition;
+import ru.chernakov.mykalmangps.core.sensor.SensorSampleListener;
+import ru.chernakov.mykalmangps.core.track.GeoHashClusterer;
+import ru.chernakov.mykalmangps.tracking.LocationAcquisition;
+import ru.chernakov.mykalmangps.tracking.LocationProcessor;
+import ru.chernakov.mykalmangps.tracking.TrackPoint;
+import ru.chernakov.mykalmangps.utils.EventBus;
+
+/**
+ * Обработка определений GNSS фильтром Калмана с показаниями акселерометра ({@link FusionEngine}).
+ * <p>
+ * Пока устройство неподвижно, определения GNSS не запрашиваются, а датчики опрашиваются реже; в движении интервал
+ * запроса определений выбирается {@link GnssIntervalScheduler} по ковариации положения фильтра.
+ */
+public final class KalmanLocationProcessor implements LocationProcessor, SensorSampleListener {
+	public static final String TAG = KalmanLocationProcessor.class.getSimpleName();
+
+	/**
+	 * Сообщение "обработать накопленные показания"
+	 */
+	private static final int MSG_FUSE = 1;
+
+	/**
+	 * Сообщение "разослать определённое местоположение"
+	 */
+	private static final int MSG_PUBLISH = 2;
+
+	/**
+	 * Сообщение "обработать накопленные показания, не дождавшись доставки пакета от датчиков"
+	 */
+	private static final int MSG_FLUSH_TIMEOUT = 3;
+
+	/**
+	 * Сообщение "завершить объединение точек стоянки и записать трек"
+	 */
+	private static final int MSG_FLUSH_PUBLISH = 4;
+
+	/**
+	 * Точность geohash для объединения точек стоянки, символов (ячейка около 38 x 19 м).
+	 * Точность {@code Utils.GEOHASH_DEFAULT_PREC} (ячейка около 1.2 x 0.6 км) объединяла бы точки в движении
+	 */
+	public static final int GEOHASH_STATIONARY_PREC = 8;
+
+	/**
+	 * Дополнительные данные точки: количество объединённых точек стоянки
+	 */
+	public static final String EXTRA_CLUSTER_SIZE = "cluster_size";
+
+	/**
+	 * Максимальное время ожидания доставки накопленных показаний датчиков после определения местоположения, мс
+	 */
+	private static final int SENSOR_FLUSH_TIMEOUT_MS = 500;
+
+	/**
+	 * Значение {@link #mFlushFixTimestamp}: доставки показаний никто не ждёт
+	 */
+	private static final long NO_FLUSH = Long.MIN_VALUE;
+
+	/**
+	 * Частота опроса датчиков, пока устройство неподвижно, Гц
+	 */
+	private static final int STATIONARY_SENSOR_FREQ_HZ = 5;
+
+	/**
+	 * Максимальная задержка доставки показаний датчиков, пока устройство неподвижно, мс: ограничивает время
+	 * определения начала движения
+	 */
+	private static final int STATIONARY_SENSOR_LATENCY_MS = 1000;
+
+	/**
+	 * Период вывода метрик в журнал, мс
+	 */
+	private static final long METRICS_LOG_INTERVAL_MS = 60000;
+
+	/**
+	 * Источник определений
+	 */
+	private LocationAcquisition mAcquisition;
+
+	/**
+	 * Обработчик определения коодинат
+	 */
+	private TrackingHandler mServiceHandler;
+
+	/**
+	 * Обработчик рассылки определённых местоположений подписчикам
+	 */
+	private PublishHandler mPublishHandler;
+
+	/**
+	 * Признак того, что сообщение {@link #MSG_FUSE} уже поставлено в очередь и ещё не начало обрабатываться
+	 */
+	private final AtomicBoolean mFusePending = new AtomicBoolean();
+
+	/**
+	 * Последнее необработанное местоположение, полученное от провайдера
+	 */
+	private final AtomicReference<TrackPoint> mLastRawPoint = new AtomicReference<>();
+
+	/**
+	 * Время определения, ожидающего доставки показаний из аппаратного буфера датчиков, мс, или {@link #NO_FLUSH}.
+	 * Пока оно задано, обрабатываются только показания до него, а само определение обрабатывается по
+	 * {@link #onFlushCompleted()} или {@link #MSG_FLUSH_TIMEOUT}
+	 */
+	private volatile long mFlushFixTimestamp = NO_FLUSH;
+
+	/**
+	 * Объединение показаний акселерометра и GNSS фильтром Калмана
+	 */
+	private FusionEngine mFusionEngine;
+
+	/**
+	 * Метрики обработки местоположений
+	 */
+	private final TrackingMetrics mMetrics = new TrackingMetrics();
+
+	/**
+	 * Время получения последнего определения GNSS ({@link SystemClock#elapsedRealtimeNanos()}), нс
+	 */
+	private volatile long mLastFixReceivedNanos;
+
+	/**
+	 * Периодический вывод метрик в журнал и их рассылка
+	 */
+	private final Runnable mMetricsLogger = new Runnable() {
+		@Override
+		public void run() {
+			TrackingMetrics.Snapshot snapshot = mMetrics.snapshot();
+			Log.i(TAG, "metrics: " + snapshot);
+			mBus.getMetrics().post(snapshot);
+			mMainHandler.postDelayed(this, METRICS_LOG_INTERVAL_MS);
+		}
+	};
+
+	/**
+	 * Шина обмена сообщениями
+	 */
+	private final EventBus mBus = EventBus.getInstance();
+
+	/**
+	 * Признак того, что обработчик подключён к источнику. Изменяется и проверяется в главном потоке
+	 */
+	private boolean mStarted;
+
+	/**
+	 * Магнитное склонение по ячейкам: вычисляется моделью WMM только при смене ячейки
+	 */
+	private final DeclinationCache mDeclinationCache = new DeclinationCache(new GeomagneticDeclinationModel());
+
+	/**
+	 * Магнитное склонение в точке последнего определения, градусы
+	 */
+	private double mMagneticDeclination = 0.0;
+
+	// Косинус и синус склонения для поворота ускорений от магнитного севера к географическому
+	private volatile float mDeclinationCos = 1.0f;
+	private volatile float mDeclinationSin = 0.0f;
+
+	/**
+	 * Настройки сервиса
+	 */
+	private final KalmanServiceSettings mKalmanServiceSettings = new KalmanServiceSettings(
+			Utils.ACCELEROMETER_DEFAULT_DEVIATION, Utils.GPS_MIN_DISTANCE, Utils.GPS_MIN_TIME,
+			GEOHASH_STATIONARY_PREC, Utils.GEOHASH_DEFAULT_MIN_POINT_COUNT,
+			Utils.SENSOR_DEFAULT_FREQ_HZ,
+			true, Utils.DEFAULT_VEL_FACTOR, Utils.DEFAULT_POS_FACTOR);
+
+	/**
+	 * Получение показаний датчиков
+	 */
+	private SensorAcquisition mSensorAcquisition;
+
+	/**
+	 * Выбор интервала запроса определений GNSS по состоянию фильтра
+	 */
+	private GnssIntervalScheduler mGnssScheduler;
+
+	/**
+	 * Определение неподвижности устройства по линейному ускорению
+	 */
+	private final MotionDetector mMotionDetector = new MotionDetector();
+
+	/**
+	 * Применение смены неподвижного режима к подпискам на GNSS и датчики
+	 */
+	private final Runnable mMotionStateApplier = new Runnable() {
+		@Override
+		public void run() {
+			if (mStarted) {
+				applyMotionState();
+			}
+		}
+	};
+
+	/**
+	 * Обработчик главного потока: запрос определений перерегистрируется в потоке, в котором был создан
+	 */
+	private Handler mMainHandler;
+
+	/**
+	 * Перерегистрация запроса определений GNSS с интервалом, выбранным {@link #mGnssScheduler}
+	 */
+	private final Runnable mGnssRescheduler = new Runnable() {
+		@Override
+		public void run() {
+			if (mStarted && !mMotionDetector.isStationary()) {
+				requestGnssUpdates();
+			}
+		}
+	};
+
+	// Матрицы обработки точек в пространстве
+	private float[] mRotationMatrix = new float[16];
+	private float[] mRotationMatrixInv = new float[16];
+	private float[] mAbsAcceleration = new float[4];
+	private float[] mLinearAcceleration = new float[4];
+
+	/**
+	 * @return текущие метрики обработки местоположений
+	 */
+	public TrackingMetrics.Snapshot getMetrics() {
+		return mMetrics.snapshot();
+	}
+
+	@Override
+	public void start(LocationAcquisition acquisition) {
+		HandlerThread thread = new HandlerThread("KalmanFusion", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+
+		mAcquisition = acquisition;
+		mMainHandler = new Handler(Looper.getMainLooper());
+		mGnssScheduler = new GnssIntervalScheduler(mKalmanServiceSettings.getGpsMinTime(),
+				GnssIntervalScheduler.DEFAULT_MAX_INTERVAL_MS, GnssIntervalScheduler.DEFAULT_DISTANCE_BUDGET,
+				GnssIntervalScheduler.DEFAULT_COVARIANCE_THRESHOLD);
+
+		mServiceHandler = new TrackingHandler(thread.getLooper());
+		mFusionEngine = new FusionEngine(new GpsAccFilterFactory() {
+			@Override
+			public GpsAccFilter create(double x, double y, double xVel, double yVel, double posDev, long timeStampMs) {
+				return createFilter(x, y, xVel, yVel, posDev, timeStampMs);
+			}
+		}, FusionEngine.DEFAULT_IMU_CAPACITY, FusionEngine.DEFAULT_GNSS_CAPACITY, mServiceHandler);
+		mFusionEngine.setMetrics(mMetrics);
+		mFusionEngine.setReorderWindowMs(mKalmanServiceSettings.getReorderWindowMs());
+		mFusionEngine.setPredictIntervalMs(mKalmanServiceSettings.getPredictIntervalMs());
+		mMainHandler.postDelayed(mMetricsLogger, METRICS_LOG_INTERVAL_MS);
+
+		HandlerThread publishThread = new HandlerThread("TrackPublisher", Process.THREAD_PRIORITY_BACKGROUND);
+		publishThread.start();
+		mPublishHandler = new PublishHandler(publishThread.getLooper(), new GeoHashClusterer(
+				mKalmanServiceSettings.getGeoHashPrecision(), mKalmanServiceSettings.getGeoHashMinPointCount()));
+
+		SensorManager sensorManager = (SensorManager) App.getContext().getSystemService(Context.SENSOR_SERVICE);
+		mSensorAcquisition = new SensorAcquisition(
+				new AndroidSensorSource(sensorManager, KalmanServiceSettings.getSensorTypes()), this);
+
+		mStarted = true;
+		mFlushFixTimestamp = NO_FLUSH;
+		mMotionDetector.reset();
+		mFusionEngine.setStationary(false, Utils.nano2milli(SystemClock.elapsedRealtimeNanos()));
+		mGnssScheduler.reset();
+		requestGnssUpdates();
+		// Показания датчиков доставляются пакетами не реже, чем поступают определения местоположения
+		// при наименьшем интервале
+		mSensorAcquisition.start(mKalmanServiceSettings.getSensorFrequencyHz(),
+				(int) mGnssScheduler.getMinIntervalMs());
+	}
+
+	@Override
+	public void stop() {
+		mStarted = false;
+		mMainHandler.removeCallbacks(mMetricsLogger);
+		mMainHandler.removeCallbacks(mGnssRescheduler);
+		mMainHandler.removeCallbacks(mMotionStateApplier);
+		mSensorAcquisition.stop();
+		mServiceHandler.getLooper().quit();
+		mPublishHandler.sendMessage(Message.obtain(mPublishHandler, MSG_FLUSH_PUBLISH));
+		mPublishHandler.getLooper().quitSafely();
+	}
+
+	/**
+	 * Регистрирует (или перерегистрирует с новым интервалом) запрос определений GNSS.
+	 * Вызывается в главном потоке.
+	 */
+	private void requestGnssUpdates() {
+		mAcquisition.requestUpdates(this, LocationManager.GPS_PROVIDER, mGnssScheduler.getIntervalMs(),
+				mKalmanServiceSettings.getGpsMinDistance());
+	}
+
+	/**
+	 * Приводит подписки в соответствие с состоянием {@link #mMotionDetector}: пока устройство неподвижно,
+	 * определения GNSS не запрашиваются, а датчики опрашиваются реже. Вызывается в главном потоке.
+	 */
+	private void applyMotionState() {
+		if (mMotionDetector.isStationary()) {
+			mMainHandler.removeCallbacks(mGnssRescheduler);
+			mAcquisition.removeUpdates(this, LocationManager.GPS_PROVIDER);
+			mSensorAcquisition.restart(STATIONARY_SENSOR_FREQ_HZ, STATIONARY_SENSOR_LATENCY_MS);
+		} else {
+			mGnssScheduler.reset();
+			requestGnssUpdates();
+			mSensorAcquisition.restart(mKalmanServiceSettings.getSensorFrequencyHz(),
+					(int) mGnssScheduler.getMinIntervalMs());
+		}
+	}
+
+	/**
+	 * @return состояние движения ({@link MotionDetector#STATE_MOVING}, {@link MotionDetector#STATE_STATIONARY})
+	 */
+	public int getMotionState() {
+		return mMotionDetector.getState();
+	}
+
+	/**
+	 * @param state состояние движения
+	 * @return суммарное время в состоянии, мс
+	 */
+	public long getTimeInMotionState(int state) {
+		return mMotionDetector.getTimeInState(state);
+	}
+
+	@Override
+	public void onLocationChanged(Location location) {
+		if (location.getProvider().equals(LocationManager.GPS_PROVIDER)) {
+			mMetrics.onFix(TrackingMetrics.PROVIDER_GPS);
+			mLastFixReceivedNanos = SystemClock.elapsedRealtimeNanos();
+			long timeStamp = Utils.nano2milli(location.getElapsedRealtimeNanos());
+			double velErr = location.getAccuracy() * 0.1;
+
+			updateDeclination(location);
+
+			// Фильтр создаётся по первому определению при его обработке
+			mFusionEngine.offerGnss(timeStamp, location.getLatitude(), location.getLongitude(), location.getAltitude(),
+					location.getSpeed(), location.getBearing(), location.getAccuracy(), velErr);
+
+			TrackPoint point = new TrackPoint(location);
+			// Перед обработкой забираем показания, накопленные в аппаратном буфере датчиков:
+			// обработка начнётся по завершении доставки или по истечении времени ожидания
+			// Если доставка уже ожидается, ждём вместе с более ранним определением
+			boolean waiting = mFlushFixTimestamp != NO_FLUSH;
+			if (!waiting) {
+				// Задаётся до запроса: доставка может завершиться раньше, чем flush() вернёт управление
+				mFlushFixTimestamp = timeStamp;
+			}
+			if (mSensorAcquisition.flush()) {
+				mLastRawPoint.set(point);
+				mServiceHandler.removeMessages(MSG_FLUSH_TIMEOUT);
+				mServiceHandler.sendMessageDelayed(Message.obtain(mServiceHandler, MSG_FLUSH_TIMEOUT),
+						SENSOR_FLUSH_TIMEOUT_MS);
+			} else {
+				if (!waiting) {
+					mFlushFixTimestamp = NO_FLUSH;
+				}
+				handleLocation(point);
+			}
+		} else if (location.getProvider().equals(LocationManager.NETWORK_PROVIDER)) {
+			mMetrics.onFix(TrackingMetrics.PROVIDER_NETWORK);
+		} else {
+			mMetrics.onFix(TrackingMetrics.PROVIDER_OTHER);
+		}
+	}
+
+	/**
+	 * Выводит метрики обработки местоположений ({@code adb shell dumpsys activity service TrackingService}).
+	 */
+	@Override
+	public void dump(PrintWriter writer, String prefix) {
+		writer.println(prefix + "metrics:");
+		mMetrics.snapshot().dump(writer, prefix + "  ");
+	}
+
+	/**
+	 * Обновляет магнитное склонение по определению местоположения. Вызывается в главном потоке.
+	 */
+	private void updateDeclination(Location location) {
+		double declination = mDeclinationCache.getDeclination(location.getLatitude(), location.getLongitude(),
+				location.getAltitude(), location.getTime());
+		if (declination != mMagneticDeclination) {
+			mMagneticDeclination = declination;
+			mDeclinationCos = (float) Math.cos(Math.toRadians(declination));
+			mDeclinationSin = (float) Math.sin(Math.toRadians(declination));
+		}
+	}
+
+	/**
+	 * Создаёт фильтр, выбранный в настройках сервиса.
+	 *
+	 * @param x         начальная координата x, м
+	 * @param y         начальная координата y, м
+	 * @param xVel      начальная скорость по оси x, м/с
+	 * @param yVel      начальная скорость по оси y, м/с
+	 * @param posDev    погрешность определения координат
+	 * @param timeStamp время определения местоположения, мс
+	 * @return фильтр точек
+	 */
+	private GpsAccFilter createFilter(double x, double y, double xVel, double yVel, double posDev, long timeStamp) {
+		if (mKalmanServiceSettings.getFilterType() == KalmanServiceSettings.FILTER_LIBRARY) {
+			return new LibraryGpsAccFilter(false, x, y, xVel, yVel,
+					mKalmanServiceSettings.getAccelerationDeviation(), posDev, timeStamp,
+					mKalmanServiceSettings.getmVelFactor(), mKalmanServiceSettings.getmPosFactor());
+		} else if (mKalmanServiceSettings.getFilterType() == KalmanServiceSettings.FILTER_UD_FLOAT) {
+			return new UdGpsAccFilter(false, x, y, xVel, yVel,
+					mKalmanServiceSettings.getAccelerationDeviation(), posDev, timeStamp,
+					mKalmanServiceSettings.getmVelFactor(), mKalmanServiceSettings.getmPosFactor());
+		}
+
+		return new PrimitiveGpsAccFilter(false, x, y, xVel, yVel,
+				mKalmanServiceSettings.getAccelerationDeviation(), posDev, timeStamp,
+				mKalmanServiceSettings.getmVelFactor(), mKalmanServiceSettings.getmPosFactor());
+	}
+
+	@Override
+	public void onSensorSample(int sensorType, long timestampNanos, float[] values) {
+		final int east = 0;
+		final int north = 1;
+		final int up = 2;
+
+		// При пакетной доставке время получения не совпадает со временем показания,
+		// поэтому используется метка времени самого показания
+		long nowMs = Utils.nano2milli(timestampNanos);
+		switch (sensorType) {
+			case Sensor.TYPE_LINEAR_ACCELERATION:
+				// Модуль ускорения не зависит от ориентации, поэтому неподвижность определяется до поворота
+				if (mMotionDetector.offer(nowMs, values[0], values[1], values[2])) {
+					mFusionEngine.setStationary(mMotionDetector.isStationary(), nowMs);
+					mMainHandler.post(mMotionStateApplier);
+				}
+
+				System.arraycopy(values, 0, mLinearAcceleration, 0, Math.min(values.length, 3));
+				android.opengl.Matrix.multiplyMV(mAbsAcceleration, 0, mRotationMatrixInv,
+						0, mLinearAcceleration, 0);
+				// Вектор поворота ориентирован на магнитный север, GNSS — на географический
+				float cos = mDeclinationCos;
+				float sin = mDeclinationSin;
+				float trueEast = mAbsAcceleration[east] * cos + mAbsAcceleration[north] * sin;
+				float trueNorth = mAbsAcceleration[north] * cos - mAbsAcceleration[east] * sin;
+				// Не даём буферу переполниться, если определения GNSS долго не поступают
+				if (mFusionEngine.offerImu(nowMs, trueEast, trueNorth, mAbsAcceleration[up])) {
+					requestFuse();
+				}
+
+				break;
+			case Sensor.TYPE_ROTATION_VECTOR:
+				SensorManager.getRotationMatrixFromVector(mRotationMatrix, values);
+				android.opengl.Matrix.invertM(mRotationMatrixInv, 0, mRotationMatrix, 0);
+
+				break;
+		}
+
+	}
+
+	@Override
+	public void onFlushCompleted() {
+		mServiceHandler.removeMessages(MSG_FLUSH_TIMEOUT);
+		// Показания из буфера доставлены раньше этого вызова: определение можно обработать
+		mFlushFixTimestamp = NO_FLUSH;
+		requestFuse();
+	}
+
+	/**
+	 * Передаёт определённое местоположение сервису на дальнейшую обработку
+	 * (далее сервис передаёт другим обработчикам).
+	 *
+	 * @param p определённое местоположение
+	 */
+	private void handleLocation(TrackPoint p) {
+		mLastRawPoint.set(p);
+		requestFuse();
+	}
+
+	/**
+	 * Ставит в очередь обработку накопленных показаний. Если обработка уже запланирована, новое сообщение
+	 * не создаётся: показания, поступившие до её начала, будут обработаны одним пакетом.
+	 */
+	private void requestFuse() {
+		if (mFusePending.compareAndSet(false, true)) {
+			mServiceHandler.sendMessage(Message.obtain(mServiceHandler, MSG_FUSE));
+		}
+	}
+
+	/**
+	 * Передаёт местоположение на рассылку подписчикам.
+	 *
+	 * @param p местоположение
+	 */
+	private void publish(TrackPoint p) {
+		mPublishHandler.sendMessage(Message.obtain(mPublishHandler, MSG_PUBLISH, p));
+	}
+
+	/**
+	 * Обработчик определённых местоположений.
+	 */
+	private final class TrackingHandler extends Handler implements FusionListener {
+		/**
+		 * Конструктор.
+		 *
+		 * @param looper экзепляр класса, реализующий слой для работы с потоками и событиями
+		 */
+		public TrackingHandler(Looper looper) {
+			super(looper);
+		}
+
+		@Override
+		public void onFusedLocation(long timestamp, double latitude, double longitude, double altitude, float speed,
+		                            float bearing, float accuracy) {
+			Location loc = new Location(TAG);
+			loc.setLatitude(latitude);
+			loc.setLongitude(longitude);
+			loc.setAltitude(altitude);
+			loc.setBearing(bearing);
+			loc.setSpeed(speed);
+			loc.setTime(System.currentTimeMillis());
+			loc.setElapsedRealtimeNanos(System.nanoTime());
+			loc.setAccuracy(accuracy);
+
+			publish(new TrackPoint(loc));
+
+			if (mGnssScheduler.onFusedLocation(speed, mFusionEngine.getFilter().getPositionCovariance())) {
+				mMainHandler.post(mGnssRescheduler);
+			}
+		}
+
+		@Override
+		public void handleMessage(Message msg) {
+			if (msg != null && (msg.what == MSG_FUSE || msg.what == MSG_FLUSH_TIMEOUT)) {
+				// Показания, поступившие с этого момента, будут обработаны следующим сообщением
+				mFusePending.set(false);
+				if (msg.what == MSG_FLUSH_TIMEOUT) {
+					// Доставка не завершилась вовремя: обрабатываем определение без недоставленных показаний
+					mFlushFixTimestamp = NO_FLUSH;
+				}
+
+				// Получение определённого местоположения от провайдера
+				TrackPoint point = mLastRawPoint.getAndSet(null);
+				long flushFixTimestamp = mFlushFixTimestamp;
+				if (flushFixTimestamp != NO_FLUSH) {
+					// Буфер показаний заполнился наполовину, пока определение ждёт доставки: обрабатываем только
+					// показания до него, иначе доставленные следом показания будут отброшены как опоздавшие
+					mFusionEngine.fuseBefore(SystemClock.elapsedRealtime(), flushFixTimestamp);
+					if (point != null) {
+						mLastRawPoint.compareAndSet(null, point);
+					}
+					return;
+				}
+
+				int published = mFusionEngine.fuse(SystemClock.elapsedRealtime());
+				if (mFusionEngine.hasPendingGnss()) {
+					// Определение ещё в окне упорядочивания: обработать, когда окно пройдёт
+					if (published == 0 && point != null) {
+						mLastRawPoint.compareAndSet(null, point);
+					}
+					sendMessageDelayed(Message.obtain(this, MSG_FUSE),
+							mKalmanServiceSettings.getReorderWindowMs());
+				} else if (published == 0 && point != null) {
+					publish(point);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Обработчик рассылки местоположений подписчикам. Работает в отдельном потоке, чтобы медленные
+	 * подписчики не задерживали обработку показаний.
+	 * <p>
+	 * Точки, не покидающие одну ячейку geohash, объединяются {@link GeoHashClusterer} в одну точку стоянки.
+	 */
+	private final class PublishHandler extends Handler {
+		private final GeoHashClusterer mClusterer;
+
+		public PublishHandler(Looper looper, GeoHashClusterer clusterer) {
+			super(looper);
+			mClusterer = clusterer;
+		}
+
+		@Override
+		public void handleMessage(Message msg) {
+			if (msg == null) {
+				return;
+			}
+
+			if (msg.what == MSG_PUBLISH && msg.obj != null) {
+				TrackPoint point = (TrackPoint) msg.obj;
+				int result = mClusterer.offer(point.getTime(), point.getLatitude(), point.getLongitude(),
+						point.getAccuracy());
+				if ((result & GeoHashClusterer.RESULT_CLUSTER) != 0) {
+					deliver(clusterPoint());
+				}
+				if ((result & GeoHashClusterer.RESULT_PASS) != 0) {
+					mMetrics.recordPublishLatency(SystemClock.elapsedRealtimeNanos() - mLastFixReceivedNanos);
+					deliver(point);
+				}
+			} else if (msg.what == MSG_FLUSH_PUBLISH) {
+				if (mClusterer.flush()) {
+					deliver(clusterPoint());
+				}
+				App.getTrackStore().flush();
+			}
+		}
+
+		private TrackPoint clusterPoint() {
+			Location loc = new Location(TAG);
+			loc.setLatitude(mClusterer.getClusterLatitude());
+			loc.setLongitude(mClusterer.getClusterLongitude());
+			loc.setAccuracy(mClusterer.getClusterAccuracy());
+			loc.setTime(mClusterer.getClusterTime());
+			loc.setSpeed(0.0f);
+			Bundle extras = new Bundle();
+			extras.putInt(EXTRA_CLUSTER_SIZE, mClusterer.getClusterSize());
+			loc.setExtras(extras);
+
+			return new TrackPoint(loc);
+		}
+
+		private void deliver(TrackPoint point) {
+			mAcquisition.publish(KalmanLocationProcessor.this, point, TAG.equals(point.getProvider()));
+			mMetrics.onPointPublished();
+		}
+	}
+}
@@ -2,7 +2,24 @@ package ru.chernakov.mykalmangps.kalman;
 
 import android.hardware.Sensor;
 
+import ru.chernakov.mykalmangps.core.fusion.FusionEngine;
+
 public class KalmanServiceSettings {
+	/**
+	 * Фильтр из библиотеки mad-location-manager
+	 */
+	public static final int FILTER_LIBRARY = 0;
+
+	/**
+	 * Встроенный фильтр, не выделяющий память на шагах предсказания и коррекции
+	 */
+	public static final int FILTER_PRIMITIVE = 1;
+
+	/**
+	 * Встроенный фильтр с хранением в {@code float} и ковариацией в UD-разложении: для устройств, где вычисления
+	 * с {@code double} на частоте датчика заметны в профиле
+	 */
+	public static final int FILTER_UD_FLOAT = 2;
 
 	private double accelerationDeviation;
 	private int gpsMinDistance;
@@ -15,6 +32,18 @@ public class KalmanServiceSettings {
 	private double mVelFactor;
 	private double mPosFactor;
 
+	private int filterType = FILTER_PRIMITIVE;
+
+	/**
+	 * Окно упорядочивания показаний датчиков и GNSS, мс
+	 */
+	private long reorderWindowMs = FusionEngine.REALTIME_REORDER_WINDOW_MS;
+
+	/**
+	 * Интервал шагов предсказания фильтра, мс; задаётся независимо от {@link #sensorFrequencyHz}
+	 */
+	private long predictIntervalMs = FusionEngine.REALTIME_PREDICT_INTERVAL_MS;
+
 	public KalmanServiceSettings(double accelerationDeviation, int gpsMinDistance, int gpsMinTime, int geoHashPrecision,
 	                             int geoHashMinPointCount, int sensorFrequencyHz, boolean filterMockGpsCoordinates,
 	                             double velFactor, double posFactor) {
@@ -110,6 +139,30 @@ public class KalmanServiceSettings {
 		this.mPosFactor = mPosFactor;
 	}
 
+	public int getFilterType() {
+		return filterType;
+	}
+
+	public void setFilterType(int filterType) {
+		this.filterType = filterType;
+	}
+
+	public long getReorderWindowMs() {
+		return reorderWindowMs;
+	}
+
+	public void setReorderWindowMs(long reorderWindowMs) {
+		this.reorderWindowMs = reorderWindowMs;
+	}
+
+	public long getPredictIntervalMs() {
+		return predictIntervalMs;
+	}
+
+	public void setPredictIntervalMs(long predictIntervalMs) {
+		this.predictIntervalMs = predictIntervalMs;
+	}
+
 	public static void setSensorTypes(int[] sensorTypes) {
 		KalmanServiceSettings.sensorTypes = sensorTypes;
 	}
@@ -0,0 +1,92 @@
+package ru.chernakov.mykalmangps.kalman;
+
+import mad.location.manager.lib.Filters.GPSAccKalmanFilter;
+import ru.chernakov.mykalmangps.core.filter.GpsAccFilter;
+
+/**
+ * Адаптер фильтра {@link GPSAccKalmanFilter} из библиотеки mad-location-manager.
+ */
+public final class LibraryGpsAccFilter implements GpsAccFilter {
+	private final boolean mUseGpsSpeed;
+	private final double mAccDev;
+	private final double mVelFactor;
+	private final double mPosFactor;
+
+	private GPSAccKalmanFilter mFilter;
+
+	/**
+	 * Погрешность последнего определения: библиотечный фильтр не открывает состояние, поэтому
+	 * {@link #holdPosition} создаёт его заново
+	 */
+	private double mPosDev;
+
+	/**
+	 * Сдвиг начала координат ({@link #translate}): библиотечный фильтр работает в координатах на момент
+	 * создания, адаптер пересчитывает координаты на входе и выходе
+	 */
+	private double mOffsetX;
+	private double mOffsetY;
+
+	public LibraryGpsAccFilter(boolean useGpsSpeed, double x, double y, double xVel, double yVel,
+	                           double accDev, double posDev, double timeStampMs,
+	                           double velFactor, double posFactor) {
+		mUseGpsSpeed = useGpsSpeed;
+		mAccDev = accDev;
+		mVelFactor = velFactor;
+		mPosFactor = posFactor;
+		mPosDev = posDev;
+		mFilter = new GPSAccKalmanFilter(useGpsSpeed, x, y, xVel, yVel, accDev, posDev, timeStampMs,
+				velFactor, posFactor);
+	}
+
+	@Override
+	public void predict(double timeNowMs, double xAcc, double yAcc) {
+		mFilter.predict(timeNowMs, xAcc, yAcc);
+	}
+
+	@Override
+	public void update(double timeStamp, double x, double y, double xVel, double yVel, double posDev, double velErr) {
+		mPosDev = posDev;
+		mFilter.update(timeStamp, x - mOffsetX, y - mOffsetY, xVel, yVel, posDev, velErr);
+	}
+
+	@Override
+	public void holdPosition(double timeStampMs) {
+		mFilter = new GPSAccKalmanFilter(mUseGpsSpeed, mFilter.getCurrentX(), mFilter.getCurrentY(), 0.0, 0.0,
+				mAccDev, mPosDev, timeStampMs, mVelFactor, mPosFactor);
+	}
+
+	@Override
+	public void translate(double dx, double dy) {
+		mOffsetX += dx;
+		mOffsetY += dy;
+	}
+
+	@Override
+	public double getCurrentX() {
+		return mFilter.getCurrentX() + mOffsetX;
+	}
+
+	@Override
+	public double getCurrentY() {
+		return mFilter.getCurrentY() + mOffsetY;
+	}
+
+	@Override
+	public double getCurrentXVel() {
+		return mFilter.getCurrentXVel();
+	}
+
+	@Override
+	public double getCurrentYVel() {
+		return mFilter.getCurrentYVel();
+	}
+
+	/**
+	 * Библиотечный фильтр не открывает ковариационную матрицу.
+	 */
+	@Override
+	public double getPositionCovariance() {
+		return Double.NaN;
+	}
+}
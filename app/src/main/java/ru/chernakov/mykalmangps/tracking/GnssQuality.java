@@ -0,0 +1,54 @@
+package ru.chernakov.mykalmangps.tracking;
+
+/**
+ * Событие изменения условий приёма GNSS.
+ */
+public final class GnssQuality {
+	/**
+	 * Нормальные условия приёма
+	 */
+	public static final int CONDITION_FINE = 1;
+
+	/**
+	 * Условия приёма низкого качества
+	 */
+	public static final int CONDITION_LOW = 2;
+
+	/**
+	 * Плохие условия приёма
+	 */
+	public static final int CONDITION_INVALID = 3;
+
+	private final int mCondition;
+
+	private final int mSatellitesCount;
+
+	private final int mActiveSatellitesCount;
+
+	public GnssQuality(int condition, int satellitesCount, int activeSatellitesCount) {
+		mCondition = condition;
+		mSatellitesCount = satellitesCount;
+		mActiveSatellitesCount = activeSatellitesCount;
+	}
+
+	/**
+	 * @return условия приёма ({@link #CONDITION_FINE}, {@link #CONDITION_LOW}, {@link #CONDITION_INVALID})
+	 */
+	public int getCondition() {
+		return mCondition;
+	}
+
+	/**
+	 * @return количество видимых спутников
+	 */
+	public int getSatellitesCount() {
+		return mSatellitesCount;
+	}
+
+	/**
+	 * @return количество спутников, использованных при определении местоположения
+	 */
+	public int getActiveSatellitesCount() {
+		return mActiveSatellitesCount;
+	}
+}
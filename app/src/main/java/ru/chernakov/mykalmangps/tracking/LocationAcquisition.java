@@ -0,0 +1,484 @@
+package ru.chernakov.mykalmangps.tracking;
+
+import android.annotation.TargetApi;
+import android.content.Intent;
+import android.location.GnssStatus;
+import android.location.GpsSatellite;
+import android.location.GpsStatus;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.text.TextUtils;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import ru.chernakov.mykalmangps.App;
+import ru.chernakov.mykalmangps.R;
+import ru.chernakov.mykalmangps.utils.EventBus;
+import ru.chernakov.mykalmangps.utils.NotificationHelper;
+
+/**
+ * Источник определений местоположения для всех обработчиков ({@link LocationProcessor}).
+ * <p>
+ * На каждый провайдер регистрируется один запрос к {@link LocationManager} с наименьшими интервалом и расстоянием
+ * из запросов обработчиков; запрос снимается, когда не остаётся ни одного обработчика, которому нужен провайдер.
+ * Определения рассылаются всем подключённым обработчикам. Здесь же отслеживаются условия приёма GNSS.
+ * <p>
+ * Точки всех обработчиков записываются в {@link TrackStore}, а в трек сеанса и на шину попадают только точки
+ * основного обработчика: второй обработчик можно подключить для сравнения на тех же определениях.
+ * <p>
+ * Все методы, кроме {@link #publish} и получения количества спутников, вызываются в главном потоке.
+ */
+@SuppressWarnings("ResourceType")
+public final class LocationAcquisition {
+	/**
+	 * Количество спутников, при котором определённое местоположение считается определённым при хороших условиях
+	 */
+	public static final int PREFERRED_SATELLITES_COUNT = 7;
+
+	/**
+	 * Минимальное количество спутников, требуемое для того, чтобы определённое местоположение считалось определённым
+	 * в пределах допустимых условий
+	 */
+	public static final int MIN_SATELLITES_COUNT = 5;
+
+	private final LocationManager mLocationManager;
+
+	/**
+	 * Шина обмена сообщениями
+	 */
+	private final EventBus mBus;
+
+	/**
+	 * Подключённые обработчики
+	 */
+	private final List<LocationProcessor> mProcessors = new ArrayList<>();
+
+	/**
+	 * Запросы обработчиков по провайдерам
+	 */
+	private final Map<String, ProviderSubscription> mSubscriptions = new HashMap<>();
+
+	/**
+	 * Обработчик, точки которого добавляются в трек сеанса и рассылаются на шину
+	 */
+	private volatile LocationProcessor mPrimary;
+
+	/**
+	 * Количество видимых спутников
+	 */
+	private volatile int mSatellitesCount;
+
+	/**
+	 * Количество активных спутников
+	 */
+	private volatile int mActiveSatellitesCount;
+
+	/**
+	 * Состояние условий приёма сигнала от спутников
+	 */
+	private int mGnssConditionsState;
+
+	/**
+	 * Подписка на состояние спутников: {@link GnssStatus.Callback} или {@link GpsStatus.Listener}
+	 */
+	private Object mGnssStatusListener;
+
+	public LocationAcquisition(LocationManager locationManager, EventBus bus) {
+		mLocationManager = locationManager;
+		mBus = bus;
+	}
+
+	/**
+	 * Подключает обработчик и запускает его.
+	 *
+	 * @param processor обработчик
+	 * @param primary   true, если точки обработчика добавляются в трек сеанса и рассылаются на шину
+	 */
+	public void addProcessor(LocationProcessor processor, boolean primary) {
+		if (mProcessors.isEmpty()) {
+			registerGnssStatusListener();
+		}
+		mProcessors.add(processor);
+		if (primary) {
+			mPrimary = processor;
+		}
+		processor.start(this);
+	}
+
+	/**
+	 * Снимает запросы обработчика и останавливает его.
+	 */
+	public void removeProcessor(LocationProcessor processor) {
+		if (!mProcessors.remove(processor)) {
+			return;
+		}
+
+		Iterator<ProviderSubscription> iterator = mSubscriptions.values().iterator();
+		while (iterator.hasNext()) {
+			ProviderSubscription subscription = iterator.next();
+			subscription.remove(processor);
+			if (subscription.isEmpty()) {
+				iterator.remove();
+			}
+		}
+		if (mPrimary == processor) {
+			mPrimary = null;
+		}
+		processor.stop();
+
+		if (mProcessors.isEmpty()) {
+			unregisterGnssStatusListener();
+		}
+	}
+
+	/**
+	 * Останавливает все обработчики.
+	 */
+	public void removeAllProcessors() {
+		for (LocationProcessor processor : new ArrayList<>(mProcessors)) {
+			removeProcessor(processor);
+		}
+	}
+
+	/**
+	 * @return true, если точки обработчика добавляются в трек сеанса и рассылаются на шину
+	 */
+	public boolean isPrimary(LocationProcessor processor) {
+		return mPrimary == processor;
+	}
+
+	/**
+	 * Запрашивает (или изменяет запрос) определения провайдера для обработчика.
+	 *
+	 * @param processor   обработчик
+	 * @param provider    провайдер
+	 * @param minTimeMs   наименьший интервал между определениями, мс
+	 * @param minDistance наименьшее расстояние между определениями, м
+	 */
+	public void requestUpdates(LocationProcessor processor, String provider, long minTimeMs, float minDistance) {
+		ProviderSubscription subscription = mSubscriptions.get(provider);
+		if (subscription == null) {
+			subscription = new ProviderSubscription(provider);
+			mSubscriptions.put(provider, subscription);
+		}
+		subscription.put(processor, minTimeMs, minDistance);
+	}
+
+	/**
+	 * Снимает запрос определений провайдера, сделанный обработчиком.
+	 */
+	public void removeUpdates(LocationProcessor processor, String provider) {
+		ProviderSubscription subscription = mSubscriptions.get(provider);
+		if (subscription != null) {
+			subscription.remove(processor);
+			if (subscription.isEmpty()) {
+				mSubscriptions.remove(provider);
+			}
+		}
+	}
+
+	/**
+	 * Записывает точку обработчика; точки основного обработчика добавляются в трек сеанса и рассылаются на шину.
+	 * Вызывается из потока рассылки обработчика.
+	 *
+	 * @param processor обработчик
+	 * @param point     точка трека
+	 * @param filtered  true, если точка получена фильтрацией
+	 */
+	public void publish(LocationProcessor processor, TrackPoint point, boolean filtered) {
+		App.getTrackStore().append(point, mSatellitesCount, mActiveSatellitesCount, filtered);
+		if (mPrimary == processor) {
+			App.getTrack().append(point.getTime(), point.getLatitude(), point.getLongitude(), point.getAccuracy(),
+					point.getSpeed(), point.getBearing());
+			mBus.getTrackPoints().post(point);
+		}
+	}
+
+	public int getSatellitesCount() {
+		return mSatellitesCount;
+	}
+
+	public int getActiveSatellitesCount() {
+		return mActiveSatellitesCount;
+	}
+
+	/**
+	 * Выводит запросы провайдеров и состояние обработчиков построчно (для {@code dumpsys}).
+	 */
+	public void dump(PrintWriter writer, String prefix) {
+		writer.println(prefix + "satellites: " + mActiveSatellitesCount + "/" + mSatellitesCount);
+		for (ProviderSubscription subscription : mSubscriptions.values()) {
+			writer.println(prefix + subscription);
+		}
+		for (LocationProcessor processor : mProcessors) {
+			writer.println(prefix + processor.getClass().getSimpleName()
+					+ (processor == mPrimary ? " (primary):" : ":"));
+			processor.dump(writer, prefix + "  ");
+		}
+	}
+
+	/**
+	 * Рассылает определение всем подключённым обработчикам.
+	 */
+	private void dispatch(Location location) {
+		if (TextUtils.isEmpty(location.getProvider())) {
+			return;
+		}
+		for (int i = 0; i < mProcessors.size(); i++) {
+			mProcessors.get(i).onLocationChanged(location);
+		}
+	}
+
+	/**
+	 * Регистрирует запросы провайдеров, которые были выключены при регистрации.
+	 */
+	private void registerPending() {
+		for (ProviderSubscription subscription : mSubscriptions.values()) {
+			if (!subscription.isRegistered()) {
+				subscription.register();
+			}
+		}
+	}
+
+	private void registerGnssStatusListener() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+			GnssStatus.Callback callback = new GnssStatus.Callback() {
+				@TargetApi(Build.VERSION_CODES.N)
+				@Override
+				public void onSatelliteStatusChanged(GnssStatus status) {
+					super.onSatelliteStatusChanged(status);
+					int satellitesCount = status.getSatelliteCount();
+
+					mSatellitesCount = satellitesCount;
+					if (satellitesCount > 0) {
+						int activeSatellitesCount = 0;
+						for (int i = 0; i < satellitesCount; i++) {
+							if (status.usedInFix(i)) {
+								activeSatellitesCount++;
+							}
+						}
+						mActiveSatellitesCount = activeSatellitesCount;
+
+						// Проверка и сохранение условий определения
+						// местоположения с помощью GNSS
+						checkGnssConditions();
+					}
+				}
+			};
+			mLocationManager.registerGnssStatusCallback(callback);
+			mGnssStatusListener = callback;
+		} else {
+			//noinspection deprecation
+			GpsStatus.Listener listener = new GpsStatus.Listener() {
+				@SuppressWarnings("deprecation")
+				@Override
+				public void onGpsStatusChanged(int event) {
+					if (event == GpsStatus.GPS_EVENT_SATELLITE_STATUS) {
+						GpsStatus status = mLocationManager.getGpsStatus(null);
+						Iterable<GpsSatellite> satellites = status.getSatellites();
+						int satellitesCount = 0;
+						int activeSatellitesCount = 0;
+
+						if (satellites != null) {
+							for (GpsSatellite satellite : satellites) {
+								satellitesCount++;
+								if (satellite.usedInFix()) {
+									activeSatellitesCount++;
+								}
+							}
+						}
+						mSatellitesCount = satellitesCount;
+						mActiveSatellitesCount = activeSatellitesCount;
+
+						// Проверка и сохранение условий определения
+						// местоположения с помощью GNSS
+						checkGnssConditions();
+					}
+				}
+			};
+			//noinspection deprecation
+			mLocationManager.addGpsStatusListener(listener);
+			mGnssStatusListener = listener;
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private void unregisterGnssStatusListener() {
+		if (mGnssStatusListener == null) {
+			return;
+		}
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+			mLocationManager.unregisterGnssStatusCallback((GnssStatus.Callback) mGnssStatusListener);
+		} else {
+			mLocationManager.removeGpsStatusListener((GpsStatus.Listener) mGnssStatusListener);
+		}
+		mGnssStatusListener = null;
+	}
+
+	/**
+	 * Проверяет условия приёма GNSS. На основании результатов проверки
+	 * выводит оповещение пользователю.
+	 */
+	private void checkGnssConditions() {
+		// Проверка и сохранение условий определения местоположения с помощью GNSS
+		String msg;
+		boolean conditionsChanged = false;
+		int drawableRes;
+		if (mActiveSatellitesCount >= PREFERRED_SATELLITES_COUNT) {
+			drawableRes = R.drawable.ic_stat_gps_conditions_nice;
+			msg = App.getContext().getString(R.string.gps_quality_fine);
+			if (mGnssConditionsState != GnssQuality.CONDITION_FINE) {
+				conditionsChanged = true;
+			}
+
+			mGnssConditionsState = GnssQuality.CONDITION_FINE;
+		} else if (mActiveSatellitesCount >= MIN_SATELLITES_COUNT) {
+			drawableRes = R.drawable.ic_stat_gps_conditions_bad;
+			msg = App.getContext().getString(R.string.gps_quality_low);
+			if (mGnssConditionsState != GnssQuality.CONDITION_LOW) {
+				conditionsChanged = true;
+			}
+
+			mGnssConditionsState = GnssQuality.CONDITION_LOW;
+		} else {
+			drawableRes = R.drawable.ic_stat_gps_conditions_invalid;
+			msg = App.getContext().getString(R.string.gps_quality_invalid);
+			if (mGnssConditionsState != GnssQuality.CONDITION_INVALID) {
+				conditionsChanged = true;
+			}
+
+			mGnssConditionsState = GnssQuality.CONDITION_INVALID;
+		}
+
+		// Выводим оповещение об изменении условий приёма и сохраняем данные в лог для отправки на сервер
+		if (conditionsChanged) {
+			mBus.getGnssQuality().post(
+					new GnssQuality(mGnssConditionsState, mSatellitesCount, mActiveSatellitesCount));
+			NotificationHelper
+					.getInstance(App.getContext())
+					.showNotification(
+							App.TRACKING_NOTIFY_ID,
+							new Intent(),
+							App.getContext().getString(R.string.app_name),
+							msg, drawableRes, false, false
+					);
+		}
+	}
+
+	/**
+	 * Запрос определений одного провайдера: объединяет запросы обработчиков в одну регистрацию. У каждого
+	 * провайдера свой {@link LocationListener}, чтобы снимать запросы провайдеров по отдельности.
+	 */
+	private final class ProviderSubscription implements LocationListener {
+		private final String mProvider;
+
+		private final Map<LocationProcessor, Request> mRequests = new HashMap<>();
+
+		private boolean mRegistered;
+
+		private long mRegisteredMinTime;
+
+		private float mRegisteredMinDistance;
+
+		ProviderSubscription(String provider) {
+			mProvider = provider;
+		}
+
+		void put(LocationProcessor processor, long minTimeMs, float minDistance) {
+			mRequests.put(processor, new Request(minTimeMs, minDistance));
+			register();
+		}
+
+		void remove(LocationProcessor processor) {
+			if (mRequests.remove(processor) == null) {
+				return;
+			}
+			if (mRequests.isEmpty()) {
+				if (mRegistered) {
+					mLocationManager.removeUpdates(this);
+					mRegistered = false;
+				}
+			} else {
+				register();
+			}
+		}
+
+		boolean isEmpty() {
+			return mRequests.isEmpty();
+		}
+
+		boolean isRegistered() {
+			return mRegistered;
+		}
+
+		/**
+		 * Регистрирует запрос с наименьшими интервалом и расстоянием, если они изменились. Сетевой и прочие
+		 * провайдеры регистрируются, только если включены.
+		 */
+		void register() {
+			long minTime = Long.MAX_VALUE;
+			float minDistance = Float.MAX_VALUE;
+			for (Request request : mRequests.values()) {
+				minTime = Math.min(minTime, request.mMinTimeMs);
+				minDistance = Math.min(minDistance, request.mMinDistance);
+			}
+
+			if (mRegistered && minTime == mRegisteredMinTime && minDistance == mRegisteredMinDistance) {
+				return;
+			}
+			if (!LocationManager.GPS_PROVIDER.equals(mProvider) && !mLocationManager.isProviderEnabled(mProvider)) {
+				return;
+			}
+			mLocationManager.requestLocationUpdates(mProvider, minTime, minDistance, this);
+			mRegistered = true;
+			mRegisteredMinTime = minTime;
+			mRegisteredMinDistance = minDistance;
+		}
+
+		@Override
+		public void onLocationChanged(Location location) {
+			dispatch(location);
+		}
+
+		@Override
+		public void onStatusChanged(String s, int i, Bundle bundle) {
+		}
+
+		@Override
+		public void onProviderEnabled(String s) {
+			registerPending();
+		}
+
+		@Override
+		public void onProviderDisabled(String s) {
+		}
+
+		@Override
+		public String toString() {
+			return mProvider + ": " + (mRegistered ? mRegisteredMinTime + " ms, " + mRegisteredMinDistance + " m"
+					: "not registered") + ", requests " + mRequests.size();
+		}
+	}
+
+	/**
+	 * Запрос определений провайдера одним обработчиком
+	 */
+	private static final class Request {
+		final long mMinTimeMs;
+
+		final float mMinDistance;
+
+		Request(long minTimeMs, float minDistance) {
+			mMinTimeMs = minTimeMs;
+			mMinDistance = minDistance;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package ru.chernakov.mykalmangps.tracking;
+
+import android.location.Location;
+
+import java.io.PrintWriter;
+
+/**
+ * Обработчик определений местоположения, подключаемый к {@link LocationAcquisition}.
+ * <p>
+ * Обработчик сам запрашивает у источника нужные ему провайдеры и интервалы
+ * ({@link LocationAcquisition#requestUpdates}), а получает определения всех провайдеров, запрошенных любым из
+ * подключённых обработчиков. Результат передаётся в {@link LocationAcquisition#publish}. Методы интерфейса
+ * вызываются в главном потоке.
+ */
+public interface LocationProcessor {
+	/**
+	 * Подключает обработчик к источнику: запускает потоки обработки и запрашивает провайдеры.
+	 *
+	 * @param acquisition источник определений
+	 */
+	void start(LocationAcquisition acquisition);
+
+	/**
+	 * @param location определение местоположения любого из запрошенных провайдеров
+	 */
+	void onLocationChanged(Location location);
+
+	/**
+	 * Отключает обработчик. Запросы провайдеров, сделанные обработчиком, к этому моменту уже сняты.
+	 */
+	void stop();
+
+	/**
+	 * Выводит состояние обработчика построчно (для {@code dumpsys}).
+	 */
+	void dump(PrintWriter writer, String prefix);
+}
@@ -0,0 +1,172 @@
+package ru.chernakov.mykalmangps.tracking;
+
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+
+import java.io.PrintWriter;
+
+import ru.chernakov.mykalmangps.App;
+import ru.chernakov.mykalmangps.core.fusion.GnssIntervalScheduler;
+
+/**
+ * Запись определений местоположения без фильтрации: определения GNSS и определения по сети с допустимой
+ * погрешностью.
+ * <p>
+ * Основной обработчик запрашивает GNSS с интервалом {@link GnssIntervalScheduler} и сетевой провайдер. Обработчик
+ * для сравнения ничего не запрашивает и записывает определения, запрошенные основным.
+ */
+public final class RawLocationProcessor implements LocationProcessor {
+	/**
+	 * [GNSS] Наименьший интервал между попытками определения координат, мс
+	 */
+	public static final int GNSS_MIN_TIME = 2000;
+
+	/**
+	 * [GNSS] Максимальная погрешность определения координат местоположения с помощью GNSS, м
+	 */
+	public static final int GNSS_MAX_ACCURACY = 150;
+
+	/**
+	 * [GNSS] Погрешность определения, не превышающая которую позволяет увеличить интервал запроса, м. Интервал
+	 * сокращается при погрешности больше удвоенного значения
+	 */
+	public static final double GNSS_RELAX_ACCURACY = 10.0;
+
+	/**
+	 * [NWK] Интервал между попытками определения координат, мс
+	 */
+	public static final int NWK_MIN_TIME = 5000;
+
+	/**
+	 * [NWK] Максимальная погрешность определения координат местоположения с помощью вышки мобильной связи, м
+	 * Данный параметр используется для того, чтобы в случае, когда недоступен GNSS приёмник и данные определяются
+	 * с помощью вышки мобильной связи, максимально отфильтровать координаты местоположения, определённые с большой
+	 * погрешностью
+	 */
+	public static final int NWK_MAX_ACCURACY = 2 * GNSS_MAX_ACCURACY;
+
+	/**
+	 * Сообщение "разослать определённое местоположение"
+	 */
+	private static final int MSG_PUBLISH = 1;
+
+	/**
+	 * Сообщение "записать трек"
+	 */
+	private static final int MSG_FLUSH = 2;
+
+	/**
+	 * Источник определений
+	 */
+	private LocationAcquisition mAcquisition;
+
+	/**
+	 * Обработчик определения коодинат
+	 */
+	private TrackingHandler mServiceHandler;
+
+	/**
+	 * Признак того, что обработчик запрашивает провайдеры сам
+	 */
+	private boolean mRequesting;
+
+	/**
+	 * Выбор интервала запроса определений GNSS. Фильтра нет, поэтому вместо ковариации положения используется
+	 * погрешность определения, и порог задан в метрах ({@link #GNSS_RELAX_ACCURACY}), а не в единицах ковариации
+	 */
+	private final GnssIntervalScheduler mGnssScheduler = new GnssIntervalScheduler(GNSS_MIN_TIME,
+			GnssIntervalScheduler.DEFAULT_MAX_INTERVAL_MS, GnssIntervalScheduler.DEFAULT_DISTANCE_BUDGET,
+			GNSS_RELAX_ACCURACY);
+
+	@Override
+	public void start(LocationAcquisition acquisition) {
+		HandlerThread thread = new HandlerThread("RawTrackPublisher", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+
+		mAcquisition = acquisition;
+		mServiceHandler = new TrackingHandler(thread.getLooper());
+
+		mRequesting = acquisition.isPrimary(this);
+		if (mRequesting) {
+			mGnssScheduler.reset();
+			acquisition.requestUpdates(this, LocationManager.GPS_PROVIDER, mGnssScheduler.getIntervalMs(), 0);
+			acquisition.requestUpdates(this, LocationManager.NETWORK_PROVIDER, NWK_MIN_TIME, 0);
+		}
+	}
+
+	@Override
+	public void stop() {
+		mRequesting = false;
+		mServiceHandler.sendMessage(Message.obtain(mServiceHandler, MSG_FLUSH));
+		mServiceHandler.getLooper().quitSafely();
+	}
+
+	//
+	// Callback'и, используемые для определения местоположения
+	//
+	@Override
+	public void onLocationChanged(Location location) {
+		if (location.getProvider().equals(LocationManager.GPS_PROVIDER)) {
+			// Сохраняем местоположение, если оно определено с помощью GNSS и при определении
+			// зайдествовано минимально необходимое количество спутников
+			handleLocation(new TrackPoint(location));
+
+			// Вызывается в главном потоке, в котором зарегистрирован запрос
+			// Без скорости смещение за интервал не оценить: интервал не увеличивается, а возвращается к
+			// минимальному. Без погрешности (NaN) интервал не увеличивается
+			double speed = location.hasSpeed() ? location.getSpeed() : Double.POSITIVE_INFINITY;
+			double accuracy = location.hasAccuracy() ? location.getAccuracy() : Double.NaN;
+			if (mRequesting && mGnssScheduler.onFusedLocation(speed, accuracy)) {
+				mAcquisition.requestUpdates(this, LocationManager.GPS_PROVIDER, mGnssScheduler.getIntervalMs(), 0);
+			}
+		} else if (location.getProvider().equals(LocationManager.NETWORK_PROVIDER)
+				&& (location.getAccuracy() / 0.68) - NWK_MAX_ACCURACY <= 0.0001) {
+			// Местоположение, определённое с помощью вышек беспроводной связи проверяется только
+			// на допустимую погрешность
+			handleLocation(new TrackPoint(location));
+		}
+	}
+
+	@Override
+	public void dump(PrintWriter writer, String prefix) {
+		writer.println(prefix + "gnss interval, ms: " + (mRequesting ? mGnssScheduler.getIntervalMs() : "passive"));
+	}
+
+	/**
+	 * Передаёт определённое местоположение на дальнейшую обработку (далее передаётся другим обработчикам).
+	 *
+	 * @param p определённое местоположение
+	 */
+	private void handleLocation(TrackPoint p) {
+		mServiceHandler.sendMessage(Message.obtain(mServiceHandler, MSG_PUBLISH, p));
+	}
+
+	/**
+	 * Обработчик определённых местоположений.
+	 */
+	private final class TrackingHandler extends Handler {
+		/**
+		 * Конструктор.
+		 *
+		 * @param looper экзепляр класса, реализующий слой для работы с потоками и событиями
+		 */
+		public TrackingHandler(Looper looper) {
+			super(looper);
+		}
+
+		@Override
+		public void handleMessage(Message msg) {
+			if (msg != null && msg.what == MSG_PUBLISH && msg.obj != null) {
+				// Получение определённого местоположения от обработчика
+				mAcquisition.publish(RawLocationProcessor.this, (TrackPoint) msg.obj, false);
+			} else if (msg != null && msg.what == MSG_FLUSH) {
+				App.getTrackStore().flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package ru.chernakov.mykalmangps.tracking;
+
+import android.content.ContentProvider;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Провайдер данных записанного трека ({@link TrackPoint#CONTENT_URI}).
+ */
+public final class TrackContentProvider extends ContentProvider {
+	private static final int MATCH_TRACK = 1;
+
+	private static final int MATCH_TRACK_POINT = 2;
+
+	private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+
+	static {
+		sUriMatcher.addURI(TrackPoint.AUTHORITY, TrackPoint.CONTENT_URI, MATCH_TRACK);
+		sUriMatcher.addURI(TrackPoint.AUTHORITY, TrackPoint.CONTENT_URI + "/#", MATCH_TRACK_POINT);
+	}
+
+	private TrackDbHelper mDbHelper;
+
+	@Override
+	public boolean onCreate() {
+		mDbHelper = TrackDbHelper.getInstance(getContext());
+		return true;
+	}
+
+	@Nullable
+	@Override
+	public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+	                    @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+		switch (sUriMatcher.match(uri)) {
+			case MATCH_TRACK:
+				break;
+			case MATCH_TRACK_POINT:
+				selection = TrackPoint.ID + " = " + ContentUris.parseId(uri);
+				selectionArgs = null;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown uri: " + uri);
+		}
+
+		Cursor cursor = mDbHelper.getReadableDatabase().query(TrackPoint.CONTENT_URI, projection, selection,
+				selectionArgs, null, null, sortOrder != null ? sortOrder : TrackPoint.TIME);
+		cursor.setNotificationUri(getContext().getContentResolver(), TrackStore.getContentUri());
+
+		return cursor;
+	}
+
+	@Nullable
+	@Override
+	public String getType(@NonNull Uri uri) {
+		switch (sUriMatcher.match(uri)) {
+			case MATCH_TRACK:
+				return "vnd.android.cursor.dir/vnd." + TrackPoint.AUTHORITY + "." + TrackPoint.CONTENT_URI;
+			case MATCH_TRACK_POINT:
+				return "vnd.android.cursor.item/vnd." + TrackPoint.AUTHORITY + "." + TrackPoint.CONTENT_URI;
+			default:
+				return null;
+		}
+	}
+
+	@Nullable
+	@Override
+	public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+		checkTrackUri(uri);
+		long id = mDbHelper.getWritableDatabase().insert(TrackPoint.CONTENT_URI, null, values);
+		getContext().getContentResolver().notifyChange(uri, null);
+
+		return ContentUris.withAppendedId(uri, id);
+	}
+
+	@Override
+	public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+		checkTrackUri(uri);
+		SQLiteDatabase db = mDbHelper.getWritableDatabase();
+		db.beginTransaction();
+		try {
+			for (ContentValues value : values) {
+				db.insert(TrackPoint.CONTENT_URI, null, value);
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		getContext().getContentResolver().notifyChange(uri, null);
+
+		return values.length;
+	}
+
+	@Override
+	public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+		checkTrackUri(uri);
+		int count = mDbHelper.getWritableDatabase().delete(TrackPoint.CONTENT_URI, selection, selectionArgs);
+		getContext().getContentResolver().notifyChange(uri, null);
+
+		return count;
+	}
+
+	@Override
+	public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
+	                  @Nullable String[] selectionArgs) {
+		checkTrackUri(uri);
+		int count = mDbHelper.getWritableDatabase().update(TrackPoint.CONTENT_URI, values, selection, selectionArgs);
+		getContext().getContentResolver().notifyChange(uri, null);
+
+		return count;
+	}
+
+	private static void checkTrackUri(Uri uri) {
+		if (sUriMatcher.match(uri) != MATCH_TRACK) {
+			throw new IllegalArgumentException("Unsupported uri: " + uri);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package ru.chernakov.mykalmangps.tracking;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * База данных записанных точек трека.
+ */
+public final class TrackDbHelper extends SQLiteOpenHelper {
+	private static final String DATABASE_NAME = "track.db";
+
+	private static final int DATABASE_VERSION = 1;
+
+	/**
+	 * Единственный экземпляр класса
+	 */
+	private static TrackDbHelper instance;
+
+	private TrackDbHelper(Context context) {
+		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+	}
+
+	/**
+	 * Получение ссылки на синглтон
+	 */
+	public static synchronized TrackDbHelper getInstance(Context context) {
+		if (instance == null) {
+			instance = new TrackDbHelper(context.getApplicationContext());
+		}
+
+		return instance;
+	}
+
+	@Override
+	public void onCreate(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE " + TrackPoint.CONTENT_URI + " ("
+				+ TrackPoint.ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+				+ TrackPoint.LATITUDE + " REAL NOT NULL, "
+				+ TrackPoint.LONGITUDE + " REAL NOT NULL, "
+				+ TrackPoint.ACCURACY + " REAL, "
+				+ TrackPoint.ZONE_ID + " INTEGER, "
+				+ TrackPoint.SAT_OVERALL + " INTEGER, "
+				+ TrackPoint.SAT_ACTIVE + " INTEGER, "
+				+ TrackPoint.TIME + " INTEGER NOT NULL, "
+				+ TrackPoint.PROVIDER + " TEXT)");
+		db.execSQL("CREATE INDEX " + TrackPoint.CONTENT_URI + "_" + TrackPoint.TIME + "_idx ON "
+				+ TrackPoint.CONTENT_URI + " (" + TrackPoint.TIME + ")");
+	}
+
+	@Override
+	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+	}
+}
@@ -6,7 +6,9 @@ public class TrackPoint extends Location {
 	//
 	// Projection
 	//
+	public static final String AUTHORITY = "ru.chernakov.mykalmangps.track";
 	public static final String CONTENT_URI = "gps_track";
+	public static final String ID = "_id";
 	public static final String LATITUDE = "latitude";
 	public static final String LONGITUDE = "longitude";
 	public static final String ACCURACY = "accuracy";
@@ -0,0 +1,324 @@
+package ru.chernakov.mykalmangps.tracking;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.location.LocationManager;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+import ru.chernakov.mykalmangps.core.track.TrackLog;
+import ru.chernakov.mykalmangps.core.track.TrackLogFormat;
+import ru.chernakov.mykalmangps.core.track.TrackLogReader;
+
+/**
+ * Хранилище точек трека с групповой записью.
+ * <p>
+ * Точки накапливаются в памяти и записываются одной транзакцией с заранее скомпилированным запросом, когда
+ * накоплено {@link #BATCH_SIZE} точек или с момента поступления первой из них прошло {@link #BATCH_MAX_DELAY_MS}.
+ * Вся работа с базой выполняется в отдельном потоке.
+ * <p>
+ * Чтобы точки, ещё не записанные в базу, не терялись при аварийном завершении процесса, каждая точка сразу
+ * добавляется в журнал {@link TrackLog}, отображённый в память. При открытии хранилища записи журнала, более
+ * новые, чем последняя точка в базе, записываются в базу повторно; сегменты журнала, все записи которых уже
+ * в базе, удаляются после каждой записи пакета.
+ */
+public final class TrackStore {
+	private static final String TAG = TrackStore.class.getSimpleName();
+
+	/**
+	 * Каталог журнала трека во внутренней памяти приложения
+	 */
+	public static final String TRACK_LOG_DIR = "track-log";
+
+	/**
+	 * Количество точек, при накоплении которого выполняется запись
+	 */
+	public static final int BATCH_SIZE = 32;
+
+	/**
+	 * Максимальное время хранения точки в памяти до записи, мс
+	 */
+	public static final int BATCH_MAX_DELAY_MS = 10000;
+
+	/**
+	 * Сообщение "добавить точку"
+	 */
+	private static final int MSG_APPEND = 1;
+
+	/**
+	 * Сообщение "записать накопленные точки"
+	 */
+	private static final int MSG_FLUSH = 2;
+
+	/**
+	 * Сообщение "записать точки журнала, не попавшие в базу"
+	 */
+	private static final int MSG_REPLAY = 3;
+
+	private static final String MAX_TIME_SQL = "SELECT MAX(" + TrackPoint.TIME + ") FROM " + TrackPoint.CONTENT_URI;
+
+	private static final String INSERT_SQL = "INSERT INTO " + TrackPoint.CONTENT_URI + " ("
+			+ TrackPoint.LATITUDE + ", "
+			+ TrackPoint.LONGITUDE + ", "
+			+ TrackPoint.ACCURACY + ", "
+			+ TrackPoint.ZONE_ID + ", "
+			+ TrackPoint.SAT_OVERALL + ", "
+			+ TrackPoint.SAT_ACTIVE + ", "
+			+ TrackPoint.TIME + ", "
+			+ TrackPoint.PROVIDER + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private final Context mContext;
+
+	private final TrackDbHelper mDbHelper;
+
+	private final WriterHandler mHandler;
+
+	/**
+	 * Журнал трека или null, если его не удалось открыть
+	 */
+	private final TrackLog mTrackLog;
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param context контекст приложения
+	 */
+	public TrackStore(Context context) {
+		mContext = context.getApplicationContext();
+		mDbHelper = TrackDbHelper.getInstance(mContext);
+
+		HandlerThread thread = new HandlerThread("TrackStore", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		mHandler = new WriterHandler(thread.getLooper());
+
+		TrackLog trackLog = null;
+		try {
+			trackLog = TrackLog.open(getTrackLogDir(mContext), TrackLog.DEFAULT_SEGMENT_RECORDS);
+		} catch (IOException e) {
+			Log.e(TAG, "Cannot open track log", e);
+		}
+		mTrackLog = trackLog;
+		if (mTrackLog != null) {
+			// Сообщение попадает в очередь раньше первой новой точки
+			mHandler.sendMessage(Message.obtain(mHandler, MSG_REPLAY));
+		}
+	}
+
+	/**
+	 * Добавляет точку в очередь на запись.
+	 *
+	 * @param point                 точка трека
+	 * @param satellitesCountOverall количество видимых спутников
+	 * @param satellitesCountActive  количество спутников, использованных при определении
+	 * @param filtered               точка получена фильтром Калмана
+	 */
+	public void append(TrackPoint point, int satellitesCountOverall, int satellitesCountActive, boolean filtered) {
+		if (mTrackLog != null) {
+			try {
+				mTrackLog.append(point.getTime(), point.getLatitude(), point.getLongitude(), point.getAccuracy(),
+						point.getSpeed(), point.getBearing(), getSource(point, filtered),
+						filtered ? TrackLogFormat.FLAG_FILTERED : 0);
+			} catch (IOException e) {
+				Log.e(TAG, "Cannot append to track log", e);
+			}
+		}
+		mHandler.sendMessage(Message.obtain(mHandler, MSG_APPEND, satellitesCountOverall, satellitesCountActive, point));
+	}
+
+	/**
+	 * Записывает накопленные точки, не дожидаясь заполнения пакета, и сбрасывает журнал трека на носитель.
+	 */
+	public void flush() {
+		mHandler.sendMessage(Message.obtain(mHandler, MSG_FLUSH));
+	}
+
+	/**
+	 * @return каталог журнала трека
+	 */
+	public static File getTrackLogDir(Context context) {
+		return new File(context.getFilesDir(), TRACK_LOG_DIR);
+	}
+
+	private static byte getSource(TrackPoint point, boolean filtered) {
+		if (filtered || LocationManager.GPS_PROVIDER.equals(point.getProvider())) {
+			return TrackLogFormat.SOURCE_GPS;
+		} else if (LocationManager.NETWORK_PROVIDER.equals(point.getProvider())) {
+			return TrackLogFormat.SOURCE_NETWORK;
+		}
+
+		return TrackLogFormat.SOURCE_UNKNOWN;
+	}
+
+	private static String getProvider(byte source) {
+		switch (source) {
+			case TrackLogFormat.SOURCE_GPS:
+				return LocationManager.GPS_PROVIDER;
+			case TrackLogFormat.SOURCE_NETWORK:
+				return LocationManager.NETWORK_PROVIDER;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * @return адрес таблицы точек трека для {@link TrackContentProvider}
+	 */
+	public static Uri getContentUri() {
+		return Uri.parse("content://" + TrackPoint.AUTHORITY + "/" + TrackPoint.CONTENT_URI);
+	}
+
+	/**
+	 * Обработчик записи точек. Буферы пакета используются только в потоке записи.
+	 */
+	private final class WriterHandler extends Handler {
+		private final double[] mLatitude = new double[BATCH_SIZE];
+		private final double[] mLongitude = new double[BATCH_SIZE];
+		private final float[] mAccuracy = new float[BATCH_SIZE];
+		private final int[] mSatellitesOverall = new int[BATCH_SIZE];
+		private final int[] mSatellitesActive = new int[BATCH_SIZE];
+		private final long[] mTime = new long[BATCH_SIZE];
+		private final String[] mProvider = new String[BATCH_SIZE];
+		private int mCount;
+
+		/**
+		 * Время последней точки, записанной в базу, мс
+		 */
+		private long mCommittedTime = Long.MIN_VALUE;
+
+		private SQLiteStatement mInsertStatement;
+
+		WriterHandler(Looper looper) {
+			super(looper);
+		}
+
+		@Override
+		public void handleMessage(Message msg) {
+			switch (msg.what) {
+				case MSG_APPEND:
+					TrackPoint point = (TrackPoint) msg.obj;
+					add(point.getLatitude(), point.getLongitude(), point.getAccuracy(), msg.arg1, msg.arg2,
+							point.getTime(), point.getProvider());
+					break;
+				case MSG_FLUSH:
+					writeBatch();
+					if (mTrackLog != null) {
+						mTrackLog.sync();
+					}
+					break;
+				case MSG_REPLAY:
+					replay();
+					break;
+			}
+		}
+
+		private void add(double latitude, double longitude, float accuracy, int satellitesOverall,
+		                 int satellitesActive, long time, String provider) {
+			mLatitude[mCount] = latitude;
+			mLongitude[mCount] = longitude;
+			mAccuracy[mCount] = accuracy;
+			mSatellitesOverall[mCount] = satellitesOverall;
+			mSatellitesActive[mCount] = satellitesActive;
+			mTime[mCount] = time;
+			mProvider[mCount] = provider;
+			mCount++;
+
+			if (mCount == BATCH_SIZE) {
+				writeBatch();
+			} else if (mCount == 1) {
+				sendMessageDelayed(obtainMessage(MSG_FLUSH), BATCH_MAX_DELAY_MS);
+			}
+		}
+
+		/**
+		 * Записывает в базу точки журнала, найденные при его открытии и более новые, чем последняя точка в базе.
+		 * Количество спутников в журнале не хранится, такие точки записываются с нулевым количеством.
+		 */
+		private void replay() {
+			SQLiteDatabase db = mDbHelper.getWritableDatabase();
+			long committedTime = DatabaseUtils.longForQuery(db, MAX_TIME_SQL, null);
+			mCommittedTime = Math.max(mCommittedTime, committedTime);
+
+			// Читаем только записи, найденные при открытии: следующие уже стоят в очереди на запись
+			long remaining = mTrackLog.getRecoveredCount();
+			int replayed = 0;
+			TrackLogReader reader = TrackLogReader.open(mTrackLog.getDirectory());
+			try {
+				while (remaining > 0 && reader.next()) {
+					remaining--;
+					if (reader.getTimestamp() > committedTime) {
+						add(reader.getLatitude(), reader.getLongitude(), reader.getAccuracy(), 0, 0,
+								reader.getTimestamp(), getProvider(reader.getSource()));
+						replayed++;
+					}
+				}
+			} catch (IOException e) {
+				Log.e(TAG, "Cannot read track log", e);
+			} finally {
+				reader.close();
+			}
+
+			if (replayed > 0) {
+				Log.i(TAG, "Replayed " + replayed + " track log records");
+				writeBatch();
+			} else {
+				mTrackLog.deleteCommitted(mCommittedTime);
+			}
+		}
+
+		private void writeBatch() {
+			removeMessages(MSG_FLUSH);
+			if (mCount == 0) {
+				return;
+			}
+
+			SQLiteDatabase db = mDbHelper.getWritableDatabase();
+			if (mInsertStatement == null) {
+				mInsertStatement = db.compileStatement(INSERT_SQL);
+			}
+
+			long batchTime = Long.MIN_VALUE;
+			db.beginTransaction();
+			try {
+				for (int i = 0; i < mCount; i++) {
+					mInsertStatement.clearBindings();
+					mInsertStatement.bindDouble(1, mLatitude[i]);
+					mInsertStatement.bindDouble(2, mLongitude[i]);
+					mInsertStatement.bindDouble(3, mAccuracy[i]);
+					mInsertStatement.bindNull(4);
+					mInsertStatement.bindLong(5, mSatellitesOverall[i]);
+					mInsertStatement.bindLong(6, mSatellitesActive[i]);
+					mInsertStatement.bindLong(7, mTime[i]);
+					if (mProvider[i] != null) {
+						mInsertStatement.bindString(8, mProvider[i]);
+					} else {
+						mInsertStatement.bindNull(8);
+					}
+					mInsertStatement.executeInsert();
+					mProvider[i] = null;
+					batchTime = Math.max(batchTime, mTime[i]);
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+				mCount = 0;
+			}
+
+			mCommittedTime = Math.max(mCommittedTime, batchTime);
+			if (mTrackLog != null) {
+				mTrackLog.deleteCommitted(mCommittedTime);
+			}
+
+			mContext.getContentResolver().notifyChange(getContentUri(), null);
+		}
+	}
+}
@@ -1,20 +1,24 @@
 package ru.chernakov.mykalmangps.ui;
 
 import android.Manifest;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.graphics.Color;
+import android.graphics.Point;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.support.v4.app.ActivityCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.view.MenuItem;
+import android.view.MotionEvent;
+import android.view.View;
 import android.widget.ImageButton;
 import android.widget.TextView;
 
-import com.squareup.otto.Bus;
-import com.squareup.otto.Subscribe;
-
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
-import org.osmdroid.views.overlay.Polyline;
 import org.osmdroid.views.overlay.mylocation.DirectedLocationOverlay;
 
 import java.util.ArrayList;
@@ -26,7 +30,6 @@ import butterknife.OnClick;
 import butterknife.Unbinder;
 import ru.chernakov.mykalmangps.App;
 import ru.chernakov.mykalmangps.R;
-import ru.chernakov.mykalmangps.kalman.KalmanTrackingService;
 import ru.chernakov.mykalmangps.tracking.TrackPoint;
 import ru.chernakov.mykalmangps.tracking.TrackingService;
 import ru.chernakov.mykalmangps.utils.EventBus;
@@ -37,6 +40,27 @@ public class MainActivity extends AppCompatActivity {
 	 */
 	protected static final int BASE_MAP_ZOOM = 14;
 
+	/**
+	 * Наименьший масштаб карты
+	 */
+	protected static final int MIN_MAP_ZOOM = BASE_MAP_ZOOM - 11;
+
+	/**
+	 * Наибольший масштаб карты
+	 */
+	protected static final int MAX_MAP_ZOOM = BASE_MAP_ZOOM + 4;
+
+	/**
+	 * Толщина линии трека, пикселей
+	 */
+	private static final float TRACK_WIDTH_PX = 6.0f;
+
+	/**
+	 * Доля ширины и высоты карты у каждого края: пока карта следует за местоположением, маркер, попавший
+	 * в эту полосу, возвращает его в центр карты
+	 */
+	private static final float FOLLOW_MARGIN = 0.2f;
+
 	/**
 	 * Компонент разметки для отображения карты
 	 */
@@ -58,6 +82,12 @@ public class MainActivity extends AppCompatActivity {
 	@BindView(R.id.tv_service)
 	TextView mActiveService;
 
+	/**
+	 * Кнопка переключения следования карты за местоположением
+	 */
+	@BindView(R.id.ib_follow)
+	ImageButton mFollowButton;
+
 	/**
 	 * Инфраструктурный объект Butterknife
 	 */
@@ -68,6 +98,11 @@ public class MainActivity extends AppCompatActivity {
 	 */
 	protected DirectedLocationOverlay mLocationOverlay;
 
+	/**
+	 * Линия трека текущего сеанса
+	 */
+	protected TrackOverlay mTrackOverlay;
+
 	/**
 	 * Массив разрешений, которые необходимо проверять перед запуском приложения
 	 */
@@ -78,9 +113,39 @@ public class MainActivity extends AppCompatActivity {
 	 */
 	protected TrackPoint mCurrentUserPosition;
 	/**
-	 * Объект для связи активити и фрагмента
+	 * Объединение обновлений карты до кадра отрисовки
 	 */
-	protected static Bus sBus;
+	private MapUpdateScheduler mMapUpdateScheduler;
+
+	/**
+	 * Буферы проекции местоположения на экран, используемые повторно между кадрами
+	 */
+	private final GeoPoint mFollowGeoPoint = new GeoPoint(0.0, 0.0);
+
+	private final Point mFollowPixel = new Point();
+
+	/**
+	 * Карта следует за местоположением пользователя. Сбрасывается, когда пользователь сдвигает карту
+	 */
+	private boolean mFollowing = true;
+
+	/**
+	 * Сервис записи трека, null до подключения
+	 */
+	private TrackingService mTrackingService;
+
+	private final ServiceConnection mTrackingConnection = new ServiceConnection() {
+		@Override
+		public void onServiceConnected(ComponentName name, IBinder service) {
+			mTrackingService = ((TrackingService.LocalBinder) service).getService();
+			updateServiceViews(mTrackingService.getPrimaryProcessor());
+		}
+
+		@Override
+		public void onServiceDisconnected(ComponentName name) {
+			mTrackingService = null;
+		}
+	};
 
 	MenuItem mKalmanMenu;
 
@@ -95,16 +160,13 @@ public class MainActivity extends AppCompatActivity {
 
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.activity_main);
-		sBus = EventBus.getInstance();
-		sBus.register(this);
-
 
 		mUnBinder = ButterKnife.bind(this);
 
 		// Устанавливаем масштаб по умолчанию
 		mMapView.getController().setZoom(BASE_MAP_ZOOM);
-		mMapView.setMinZoomLevel(BASE_MAP_ZOOM - 11);
-		mMapView.setMaxZoomLevel(BASE_MAP_ZOOM + 4);
+		mMapView.setMinZoomLevel(MIN_MAP_ZOOM);
+		mMapView.setMaxZoomLevel(MAX_MAP_ZOOM);
 		// Разрешаем встроенные кнопки изменения масштаба
 		mMapView.setBuiltInZoomControls(true);
 		// Включаем использование сети Интернет, если она доступна
@@ -112,54 +174,149 @@ public class MainActivity extends AppCompatActivity {
 		// Включаем поддержку режима мульти-тач для управления картовй
 		mMapView.setMultiTouchControls(true);
 		mLocationOverlay = new DirectedLocationOverlay(App.getContext());
+		mTrackOverlay = new TrackOverlay(App.getTrack(), MIN_MAP_ZOOM, MAX_MAP_ZOOM, Color.RED, TRACK_WIDTH_PX);
+		mMapView.getOverlayManager().add(mTrackOverlay);
+		mMapView.getOverlayManager().add(mLocationOverlay);
+		mPointCounter.setText(String.valueOf(App.getTrack().size()));
+		mMapView.setOnTouchListener(new View.OnTouchListener() {
+			@Override
+			public boolean onTouch(View v, MotionEvent event) {
+				if (event.getActionMasked() == MotionEvent.ACTION_MOVE && mFollowing) {
+					setFollowing(false);
+				}
+				// Жесты обрабатывает карта
+				return false;
+			}
+		});
+		updateFollowViews();
+
+		// События приходят в потоке рассылки сервиса, обновление карты выполняется в кадре отрисовки
+		mMapUpdateScheduler = new MapUpdateScheduler(App.getTrack(), new MapUpdateScheduler.Renderer() {
+			@Override
+			public void onFrame(TrackPoint position, int appendStart, int appendEnd) {
+				updateMap(position, appendStart, appendEnd);
+			}
+		});
+		EventBus.getInstance().getTrackPoints().subscribe(mMapUpdateScheduler, EventBus.DIRECT);
 
-		if (TrackingService.sIsActive && !KalmanTrackingService.sIsActive) {
-			mActiveService.setText("Обычный сервис gps");
-		} else if (!TrackingService.sIsActive && KalmanTrackingService.sIsActive) {
-			mActiveService.setText("Сервис gps Калмана");
-		}
+		bindService(new Intent(this, TrackingService.class), mTrackingConnection, Context.BIND_AUTO_CREATE);
 	}
 
-	@Subscribe
-	public void onPointCaptured(final TrackPoint point) {
-		if (point != null) {
-			App.getTrack().add(point);
-			mPointCounter.setText(String.valueOf(App.getTrack().size()));
-			mCurrentUserPosition = point;
-			if (App.getTrack().size() > 1) {
-				mMapView.getOverlayManager().add(getTrack(App.getTrack()));
+	@Override
+	protected void onDestroy() {
+		unbindService(mTrackingConnection);
+		EventBus.getInstance().getTrackPoints().unsubscribe(mMapUpdateScheduler);
+		mMapUpdateScheduler.cancel();
+		super.onDestroy();
+	}
+
+	/**
+	 * Применяет обновления, накопленные за кадр: последнее местоположение и точки, добавленные в трек.
+	 * Карта перерисовывается один раз за кадр, сколько бы определений ни пришло. Окно с аппаратным ускорением
+	 * (API 21+) не учитывает область в {@code invalidate(Rect)}, поэтому перерисовывается вся карта.
+	 *
+	 * @param position    последнее местоположение или null
+	 * @param appendStart индекс первой добавленной точки трека
+	 * @param appendEnd   индекс, следующий за последней добавленной точкой
+	 */
+	private void updateMap(TrackPoint position, int appendStart, int appendEnd) {
+		MapView mapView = getMapView();
+		if (mapView == null) {
+			return;
+		}
+
+		boolean changed = false;
+		if (appendEnd > appendStart) {
+			mPointCounter.setText(String.valueOf(appendEnd));
+			changed = true;
+		}
+
+		if (position != null) {
+			mCurrentUserPosition = position;
+
+			mLocationOverlay.setLocation(new GeoPoint(position.getLatitude(), position.getLongitude()));
+			mLocationOverlay.setBearing(position.getBearing());
+			mLocationOverlay.setAccuracy((int) position.getAccuracy());
+			mLocationOverlay.setShowAccuracy(true);
+			changed = true;
+
+			if (mFollowing) {
+				followLocation(mapView, position);
 			}
-			runOnUiThread(new Runnable() {
-				@Override
-				public void run() {
-
-					setCenterAndScale(point.getLatitude(), point.getLongitude());
-					mLocationOverlay.setLocation(new GeoPoint(point.getLatitude(), point.getLongitude()));
-					mLocationOverlay.setBearing(point.getBearing());
-					mLocationOverlay.setAccuracy((int) point.getAccuracy());
-					mLocationOverlay.setShowAccuracy(true);
-					getMapView().getOverlays().remove(mLocationOverlay);
-					getMapView().getOverlays().add(mLocationOverlay);
-					getMapView().invalidate();
-				}
-			});
+		}
+
+		if (changed) {
+			mapView.invalidate();
+		}
+	}
+
+	/**
+	 * Возвращает местоположение в центр карты, если маркер подошёл к краю ближе {@link #FOLLOW_MARGIN}.
+	 * Масштаб не меняется. При смещении центра карта перерисовывается целиком сама.
+	 */
+	private void followLocation(MapView mapView, TrackPoint position) {
+		mFollowGeoPoint.setLatitude(position.getLatitude());
+		mFollowGeoPoint.setLongitude(position.getLongitude());
+		mapView.getProjection().toPixels(mFollowGeoPoint, mFollowPixel);
+
+		int marginX = (int) (mapView.getWidth() * FOLLOW_MARGIN);
+		int marginY = (int) (mapView.getHeight() * FOLLOW_MARGIN);
+		if (mFollowPixel.x < marginX || mFollowPixel.x > mapView.getWidth() - marginX
+				|| mFollowPixel.y < marginY || mFollowPixel.y > mapView.getHeight() - marginY) {
+			mapView.getController().animateTo(new GeoPoint(position.getLatitude(), position.getLongitude()));
+		}
+	}
+
+	@OnClick(R.id.ib_follow)
+	public void toggleFollowing() {
+		setFollowing(!mFollowing);
+		MapView mapView = getMapView();
+		if (mFollowing && mapView != null && mCurrentUserPosition != null) {
+			mapView.getController().animateTo(
+					new GeoPoint(mCurrentUserPosition.getLatitude(), mCurrentUserPosition.getLongitude()));
+		}
+	}
+
+	private void setFollowing(boolean following) {
+		mFollowing = following;
+		updateFollowViews();
+	}
+
+	private void updateFollowViews() {
+		if (mFollowing) {
+			mFollowButton.setBackground(getDrawable(R.drawable.shape_round_accent));
+			mFollowButton.setImageResource(R.drawable.ic_location_on_white_24dp);
+		} else {
+			mFollowButton.setBackground(getDrawable(R.drawable.shape_round));
+			mFollowButton.setImageResource(R.drawable.ic_location_off_white_24dp);
 		}
 	}
 
 	@OnClick(R.id.ib_gps)
 	public void toggleTrackService() {
+		if (mTrackingService == null) {
+			return;
+		}
+
+		int primary = mTrackingService.getPrimaryProcessor() == TrackingService.PROCESSOR_KALMAN
+				? TrackingService.PROCESSOR_RAW : TrackingService.PROCESSOR_KALMAN;
+		mTrackingService.setProcessors(primary, mTrackingService.isComparisonEnabled());
+		updateServiceViews(primary);
+	}
 
-		if (TrackingService.sIsActive && !KalmanTrackingService.sIsActive) {
-			App.getContext().stopTrackingService();
+	/**
+	 * Отображает основной обработчик определений сервиса записи трека.
+	 *
+	 * @param primary основной обработчик ({@link TrackingService#PROCESSOR_RAW}, {@link TrackingService#PROCESSOR_KALMAN})
+	 */
+	private void updateServiceViews(int primary) {
+		if (primary == TrackingService.PROCESSOR_KALMAN) {
 			mGpsButton.setBackground(getDrawable(R.drawable.shape_round_accent));
 			mGpsButton.setImageResource(R.drawable.ic_add_location_white_24dp);
-			App.startKalmanTrackingService(App.getContext());
 			mActiveService.setText("Сервис gps Калмана");
-		} else if (!TrackingService.sIsActive && KalmanTrackingService.sIsActive) {
-			App.getContext().stopKalmanTrackingService();
+		} else if (primary == TrackingService.PROCESSOR_RAW) {
 			mGpsButton.setBackground(getDrawable(R.drawable.shape_round));
 			mGpsButton.setImageResource(R.drawable.ic_location_on_white_24dp);
-			App.startTrackingService(App.getContext());
 			mActiveService.setText("Обычный сервис gps");
 		}
 	}
@@ -177,73 +334,6 @@ public class MainActivity extends AppCompatActivity {
 		return null;
 	}
 
-	/**
-	 * Устанаваливает центр и масштаб карты между координатами загруженной торговой точки и местоположением пользователя
-	 *
-	 * @param latitudeTradePoint  координата широты торговой точки
-	 * @param longitudeTradePoint координата долготы торговой точки
-	 */
-	protected void setCenterAndScale(double latitudeTradePoint, double longitudeTradePoint) {
-		if (getMapView() != null) {
-			// Проверка на получение координат пользователя через GPS
-			if (mCurrentUserPosition != null) {
-				// Вычисляем точку для фокусировки камеры на карте
-				double X = Math.abs((latitudeTradePoint - mCurrentUserPosition.getLatitude()) / 2);
-				if (latitudeTradePoint > mCurrentUserPosition.getLatitude()) {
-					X = Math.abs(X + mCurrentUserPosition.getLatitude());
-				} else {
-					X = Math.abs(X + latitudeTradePoint);
-				}
-
-				double Y = Math.abs((longitudeTradePoint - mCurrentUserPosition.getLongitude()) / 2);
-				if (longitudeTradePoint > mCurrentUserPosition.getLongitude()) {
-					Y = Math.abs(Y + mCurrentUserPosition.getLongitude());
-				} else {
-					Y = Math.abs(Y + longitudeTradePoint);
-				}
-
-				getMapView().getController().animateTo(new GeoPoint(X, Y));
-
-				// Вычисляем масштаб для карты
-				GeoPoint currentUserPosition = new GeoPoint(mCurrentUserPosition.getLatitude(), mCurrentUserPosition.getLongitude());
-				GeoPoint currentTradePoint = new GeoPoint(latitudeTradePoint, longitudeTradePoint);
-				int distanceBetweenTwoPoints = Math.round(currentUserPosition.distanceTo(currentTradePoint) / 1000);
-
-				// Массив интервалов (в км.), номера элементов которого соответствуют масштабу карты
-				int[] mapIntervals = App.getContext().getResources().getIntArray(R.array.map_scale_intervals);
-
-				if (distanceBetweenTwoPoints <= mapIntervals[0]) {
-					getMapView().getController().setZoom(getMapView().getMaxZoomLevel());
-				} else if (distanceBetweenTwoPoints >= mapIntervals[mapIntervals.length - 1]) {
-					getMapView().getController().setZoom(0);
-				} else {
-					for (int i = 0; i != mapIntervals.length - 1; i++) {
-						if (distanceBetweenTwoPoints >= mapIntervals[i] && distanceBetweenTwoPoints < mapIntervals[i + 1]) {
-							// Массив масштаба и зум подобраны эксперементальным путём
-							getMapView().getController().setZoom(getMapView().getMaxZoomLevel() - i - 3);
-							break;
-						}
-					}
-				}
-			} else {
-				// Если нет координат местоположения пользователя, то центрируем карту на ТТ
-				getMapView().getController().setZoom(16);
-				getMapView().getController().animateTo(new GeoPoint(latitudeTradePoint, longitudeTradePoint));
-			}
-		}
-	}
-
-	private Polyline getTrack(List<TrackPoint> trackPoints) {
-		List<GeoPoint> geoPoints = new ArrayList<>();
-		for (TrackPoint point : trackPoints) {
-			geoPoints.add(new GeoPoint(point));
-		}
-		Polyline line = new Polyline();
-		line.setPoints(geoPoints);
-		line.setColor(Color.RED);
-		return line;
-	}
-
 	/**
 	 * Инициализирует список разрешений, которые необходимо проверять при запуске приложения.
 	 */
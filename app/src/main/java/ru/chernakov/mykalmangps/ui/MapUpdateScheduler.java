@@ -0,0 +1,101 @@
+package ru.chernakov.mykalmangps.ui;
+
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ru.chernakov.mykalmangps.core.event.EventListener;
+import ru.chernakov.mykalmangps.core.track.ColumnarTrack;
+import ru.chernakov.mykalmangps.tracking.TrackPoint;
+
+/**
+ * Объединяет обновления карты до кадра отрисовки.
+ * <p>
+ * Определения местоположения принимаются из любого потока ({@link #onEvent}): сохраняется только последнее, и
+ * на следующий кадр {@link Choreographer} ставится одна задача. В кадре {@link Renderer} получает последнее
+ * местоположение и диапазон точек, добавленных в трек с предыдущего кадра. Серия определений между кадрами
+ * (например, после доставки пакета показаний датчиков) обходится одной перерисовкой.
+ */
+final class MapUpdateScheduler implements EventListener<TrackPoint>, Choreographer.FrameCallback {
+	/**
+	 * Применяет накопленные обновления к карте. Вызывается в главном потоке не чаще раза за кадр.
+	 */
+	interface Renderer {
+		/**
+		 * @param position    последнее местоположение или null, если новых определений не было
+		 * @param appendStart индекс первой точки трека, добавленной с предыдущего кадра
+		 * @param appendEnd   индекс, следующий за последней добавленной точкой; равен {@code appendStart}, если
+		 *                    точек не добавлялось
+		 */
+		void onFrame(TrackPoint position, int appendStart, int appendEnd);
+	}
+
+	private final Choreographer mChoreographer;
+
+	private final ColumnarTrack mTrack;
+
+	private final Renderer mRenderer;
+
+	private final AtomicReference<TrackPoint> mLatest = new AtomicReference<>();
+
+	private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+	/**
+	 * Размер трека, уже переданный {@link #mRenderer}. Используется только в главном потоке.
+	 */
+	private int mRenderedSize;
+
+	/**
+	 * Конструктор. Вызывается в главном потоке.
+	 *
+	 * @param track    трек, точки которого отображаются на карте
+	 * @param renderer получатель обновлений
+	 */
+	MapUpdateScheduler(ColumnarTrack track, Renderer renderer) {
+		mChoreographer = Choreographer.getInstance();
+		mTrack = track;
+		mRenderer = renderer;
+		mRenderedSize = track.size();
+	}
+
+	@Override
+	public void onEvent(TrackPoint point) {
+		mLatest.set(point);
+		schedule();
+	}
+
+	/**
+	 * Запрашивает обновление на следующем кадре, если оно ещё не запрошено. Может вызываться из любого потока.
+	 */
+	void schedule() {
+		if (mScheduled.compareAndSet(false, true)) {
+			mChoreographer.postFrameCallback(this);
+		}
+	}
+
+	/**
+	 * Отменяет запрошенное обновление. Вызывается в главном потоке.
+	 */
+	void cancel() {
+		mChoreographer.removeFrameCallback(this);
+		mScheduled.set(false);
+	}
+
+	@Override
+	public void doFrame(long frameTimeNanos) {
+		mScheduled.set(false);
+		TrackPoint position = mLatest.getAndSet(null);
+		int size = mTrack.size();
+		if (size < mRenderedSize) {
+			// Трек очищен
+			mRenderedSize = 0;
+		}
+
+		if (position != null || size != mRenderedSize) {
+			int start = mRenderedSize;
+			mRenderedSize = size;
+			mRenderer.onFrame(position, start, size);
+		}
+	}
+}
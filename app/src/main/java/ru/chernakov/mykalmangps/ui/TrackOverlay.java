@@ -0,0 +1,152 @@
+package ru.chernakov.mykalmangps.ui;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Point;
+
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Overlay;
+
+import ru.chernakov.mykalmangps.core.track.ColumnarTrack;
+import ru.chernakov.mykalmangps.core.track.TrackBlockIndex;
+import ru.chernakov.mykalmangps.core.track.TrackLodPyramid;
+
+/**
+ * Слой карты с линией трека.
+ * <p>
+ * Точки читаются напрямую из {@link ColumnarTrack}, новые точки учитываются в {@link TrackBlockIndex} и
+ * {@link TrackLodPyramid} при отрисовке. На наибольшем масштабе рисуются все точки блоков, пересекающих видимую
+ * область карты, на остальных — упрощённая линия уровня пирамиды, соответствующего масштабу. Контур и
+ * промежуточные объекты используются повторно между кадрами.
+ */
+final class TrackOverlay extends Overlay {
+	private static final double E7 = 1e7;
+
+	private final ColumnarTrack mTrack;
+
+	private final TrackBlockIndex mBlockIndex = new TrackBlockIndex();
+
+	private final TrackLodPyramid mPyramid;
+
+	private final TrackLodPyramid.Indices mLodIndices = new TrackLodPyramid.Indices();
+
+	private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+	private final Path mPath = new Path();
+
+	private final GeoPoint mGeoPoint = new GeoPoint(0.0, 0.0);
+
+	private final Point mPixel = new Point();
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param track   трек для отображения
+	 * @param minZoom наименьший масштаб карты
+	 * @param maxZoom наибольший масштаб карты
+	 * @param color   цвет линии
+	 * @param width   толщина линии, пикселей
+	 */
+	TrackOverlay(ColumnarTrack track, int minZoom, int maxZoom, int color, float width) {
+		mTrack = track;
+		mPyramid = new TrackLodPyramid(minZoom, maxZoom, TrackLodPyramid.DEFAULT_TOLERANCE_PX);
+		mPaint.setColor(color);
+		mPaint.setStrokeWidth(width);
+		mPaint.setStyle(Paint.Style.STROKE);
+		mPaint.setStrokeJoin(Paint.Join.ROUND);
+		mPaint.setStrokeCap(Paint.Cap.ROUND);
+	}
+
+	@Override
+	public void draw(Canvas canvas, MapView mapView, boolean shadow) {
+		if (shadow) {
+			return;
+		}
+
+		mBlockIndex.update(mTrack);
+		mPyramid.update(mTrack);
+		if (mBlockIndex.getIndexedCount() < 2) {
+			return;
+		}
+
+		Projection projection = mapView.getProjection();
+		BoundingBox box = projection.getBoundingBox();
+		int minLatitude = (int) Math.floor(box.getLatSouth() * E7);
+		int maxLatitude = (int) Math.ceil(box.getLatNorth() * E7);
+		int minLongitude = (int) Math.floor(box.getLonWest() * E7);
+		int maxLongitude = (int) Math.ceil(box.getLonEast() * E7);
+
+		mPath.rewind();
+		if (mapView.getZoomLevel() < mPyramid.getMaxZoom()) {
+			buildSimplifiedPath(projection, mapView.getZoomLevel(),
+					minLatitude, maxLatitude, minLongitude, maxLongitude);
+		} else {
+			buildPath(projection, minLatitude, maxLatitude, minLongitude, maxLongitude);
+		}
+
+		canvas.drawPath(mPath, mPaint);
+	}
+
+	/**
+	 * Добавляет в контур все точки блоков, пересекающих видимую область.
+	 */
+	private void buildPath(Projection projection, int minLatitude, int maxLatitude, int minLongitude,
+	                       int maxLongitude) {
+		int pathEnd = -1;
+		for (int block = 0, count = mBlockIndex.getBlockCount(); block < count; block++) {
+			if (!mBlockIndex.intersects(block, minLatitude, maxLatitude, minLongitude, maxLongitude)) {
+				continue;
+			}
+
+			int start = mBlockIndex.getBlockStart(block);
+			int end = mBlockIndex.getBlockEnd(block);
+			for (int i = start == pathEnd ? start + 1 : start; i <= end; i++) {
+				addPoint(projection, i, i == start);
+			}
+			pathEnd = end;
+		}
+	}
+
+	/**
+	 * Добавляет в контур видимые отрезки упрощённой линии для масштаба {@code zoom}.
+	 */
+	private void buildSimplifiedPath(Projection projection, int zoom, int minLatitude, int maxLatitude,
+	                                 int minLongitude, int maxLongitude) {
+		mPyramid.collect(zoom, mLodIndices);
+		int pathEnd = -1;
+		for (int k = 1, count = mLodIndices.size(); k < count; k++) {
+			int a = mLodIndices.get(k - 1);
+			int b = mLodIndices.get(k);
+			int latitudeA = mTrack.getLatitudeE7(a);
+			int latitudeB = mTrack.getLatitudeE7(b);
+			int longitudeA = mTrack.getLongitudeE7(a);
+			int longitudeB = mTrack.getLongitudeE7(b);
+			if (Math.max(latitudeA, latitudeB) < minLatitude || Math.min(latitudeA, latitudeB) > maxLatitude
+					|| Math.max(longitudeA, longitudeB) < minLongitude
+					|| Math.min(longitudeA, longitudeB) > maxLongitude) {
+				continue;
+			}
+
+			if (a != pathEnd) {
+				addPoint(projection, a, true);
+			}
+			addPoint(projection, b, false);
+			pathEnd = b;
+		}
+	}
+
+	private void addPoint(Projection projection, int index, boolean move) {
+		mGeoPoint.setLatitude(mTrack.getLatitude(index));
+		mGeoPoint.setLongitude(mTrack.getLongitude(index));
+		projection.toPixels(mGeoPoint, mPixel);
+		if (move) {
+			mPath.moveTo(mPixel.x, mPixel.y);
+		} else {
+			mPath.lineTo(mPixel.x, mPixel.y);
+		}
+	}
+}
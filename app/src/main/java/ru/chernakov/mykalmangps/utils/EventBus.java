@@ -1,33 +1,160 @@
 package ru.chernakov.mykalmangps.utils;
 
+import android.os.Handler;
+import android.os.Looper;
+
 import com.squareup.otto.Bus;
+import com.squareup.otto.Subscribe;
 import com.squareup.otto.ThreadEnforcer;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ru.chernakov.mykalmangps.core.event.EventChannel;
+import ru.chernakov.mykalmangps.core.metrics.TrackingMetrics;
+import ru.chernakov.mykalmangps.tracking.GnssQuality;
+import ru.chernakov.mykalmangps.tracking.TrackPoint;
+
+/**
+ * Шина событий приложения.
+ * <p>
+ * События известных типов рассылаются через типизированные каналы {@link EventChannel}: подписчики определяются
+ * при подписке, рассылка не использует рефлексию и не выделяет память. Подписчик канала выбирает исполнитель
+ * доставки: {@link #DIRECT}, {@link #MAIN_THREAD} или {@link #BACKGROUND}.
+ * <p>
+ * Для совместимости шина остаётся {@link Bus}: {@link #register}/{@link #post} с {@code @Subscribe} работают
+ * как прежде. Событие известного типа, отправленное через {@link #post}, уходит в канал и передаётся Otto,
+ * только если зарегистрирован объект с методами {@code @Subscribe}.
+ */
 public final class EventBus extends Bus {
+	/**
+	 * Доставка в потоке отправителя
+	 */
+	public static final Executor DIRECT = EventChannel.DIRECT;
+
+	/**
+	 * Доставка в главном потоке
+	 */
+	public static final Executor MAIN_THREAD = new Executor() {
+		private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+		@Override
+		public void execute(Runnable command) {
+			mHandler.post(command);
+		}
+	};
+
+	/**
+	 * Доставка в общем фоновом потоке
+	 */
+	public static final ExecutorService BACKGROUND = Executors.newSingleThreadExecutor();
+
 	/**
 	 * Внутренний класс, "Initialization on Demand Holder"
 	 */
 	private static class EventBusHolder {
-		private final static Bus instance = new Bus(ThreadEnforcer.ANY);
+		private final static EventBus instance = new EventBus();
+	}
+
+	private final EventChannel<TrackPoint> mTrackPoints = new EventChannel<>("track-points");
+
+	private final EventChannel<GnssQuality> mGnssQuality = new EventChannel<>("gnss-quality");
+
+	private final EventChannel<TrackingMetrics.Snapshot> mMetrics = new EventChannel<>("tracking-metrics");
+
+	/**
+	 * Количество зарегистрированных объектов с методами {@code @Subscribe}
+	 */
+	private final AtomicInteger mLegacySubscribers = new AtomicInteger();
+
+	private EventBus() {
+		super(ThreadEnforcer.ANY);
 	}
 
 	/**
 	 * @return экземпляр синглтона
 	 */
-	public static Bus getInstance() {
+	public static EventBus getInstance() {
 		return EventBusHolder.instance;
 	}
 
+	/**
+	 * @return канал определённых местоположений
+	 */
+	public EventChannel<TrackPoint> getTrackPoints() {
+		return mTrackPoints;
+	}
+
+	/**
+	 * @return канал изменений условий приёма GNSS
+	 */
+	public EventChannel<GnssQuality> getGnssQuality() {
+		return mGnssQuality;
+	}
+
+	/**
+	 * @return канал периодических снимков метрик сервиса трекинга
+	 */
+	public EventChannel<TrackingMetrics.Snapshot> getMetrics() {
+		return mMetrics;
+	}
+
+	@Override
+	public void register(Object object) {
+		super.register(object);
+		if (hasSubscribers(object)) {
+			mLegacySubscribers.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void unregister(Object object) {
+		super.unregister(object);
+		if (hasSubscribers(object)) {
+			mLegacySubscribers.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void post(Object event) {
+		boolean typed = true;
+		if (event instanceof TrackPoint) {
+			mTrackPoints.post((TrackPoint) event);
+		} else if (event instanceof GnssQuality) {
+			mGnssQuality.post((GnssQuality) event);
+		} else if (event instanceof TrackingMetrics.Snapshot) {
+			mMetrics.post((TrackingMetrics.Snapshot) event);
+		} else {
+			typed = false;
+		}
+
+		if (!typed || mLegacySubscribers.get() > 0) {
+			super.post(event);
+		}
+	}
+
 	/**
 	 * Рассылает событие из незарегистрированного источника
 	 *
-	 * @param context контекст события
+	 * @param context контекст события (не используется: регистрация отправителя не требуется)
 	 * @param event   событие
 	 */
 	public static void postUnregistered(Object context, Object event) {
-		Bus bus = getInstance();
-		bus.register(context);
-		bus.post(event);
-		bus.unregister(context);
+		getInstance().post(event);
+	}
+
+	private static boolean hasSubscribers(Object object) {
+		for (Class<?> type = object.getClass(); type != null && type != Object.class; type = type.getSuperclass()) {
+			for (Method method : type.getDeclaredMethods()) {
+				if (method.isAnnotationPresent(Subscribe.class)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
 	}
 }
@@ -0,0 +1,35 @@
+package ru.chernakov.mykalmangps.kalman;
+
+import org.junit.Test;
+
+import mad.location.manager.lib.Commons.Coordinates;
+import mad.location.manager.lib.Commons.GeoPoint;
+import ru.chernakov.mykalmangps.core.geo.MetricCoordinates;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Сравнение {@link MetricCoordinates} с {@link Coordinates} из библиотеки mad-location-manager.
+ */
+public class MetricCoordinatesTest {
+	private static final double METERS_EPS = 1e-6;
+	private static final double DEGREES_EPS = 1e-10;
+
+	@Test
+	public void matchesLibraryConversions() {
+		double[] geo = new double[2];
+		for (double latitude = -60.0; latitude <= 70.0; latitude += 13.7) {
+			for (double longitude = -170.0; longitude <= 170.0; longitude += 31.3) {
+				double x = Coordinates.longitudeToMeters(longitude);
+				double y = Coordinates.latitudeToMeters(latitude);
+				assertEquals(x, MetricCoordinates.longitudeToMeters(longitude), METERS_EPS);
+				assertEquals(y, MetricCoordinates.latitudeToMeters(latitude), METERS_EPS);
+
+				GeoPoint expected = Coordinates.metersToGeoPoint(x, y);
+				MetricCoordinates.metersToGeo(x, y, geo);
+				assertEquals(expected.Latitude, geo[MetricCoordinates.LATITUDE], DEGREES_EPS);
+				assertEquals(expected.Longitude, geo[MetricCoordinates.LONGITUDE], DEGREES_EPS);
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package ru.chernakov.mykalmangps.kalman;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import mad.location.manager.lib.Filters.GPSAccKalmanFilter;
+import ru.chernakov.mykalmangps.core.filter.PrimitiveGpsAccFilter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Сравнение {@link PrimitiveGpsAccFilter} с {@link GPSAccKalmanFilter} на одной и той же последовательности шагов.
+ */
+public class PrimitiveGpsAccFilterTest {
+	private static final double EPS = 1e-6;
+
+	@Test
+	public void matchesLibraryFilterWithoutGpsSpeed() {
+		compareWithLibrary(false);
+	}
+
+	@Test
+	public void matchesLibraryFilterWithGpsSpeed() {
+		compareWithLibrary(true);
+	}
+
+	private void compareWithLibrary(boolean useGpsSpeed) {
+		Random random = new Random(42);
+		double x = 4_180_000.0;
+		double y = 7_510_000.0;
+		double t = 1_000_000.0;
+
+		GPSAccKalmanFilter expected = new GPSAccKalmanFilter(useGpsSpeed, x, y, 1.0, -0.5,
+				0.1, 12.0, t, 1.0, 1.0);
+		PrimitiveGpsAccFilter actual = new PrimitiveGpsAccFilter(useGpsSpeed, x, y, 1.0, -0.5,
+				0.1, 12.0, t, 1.0, 1.0);
+
+		for (int fix = 0; fix < 200; fix++) {
+			for (int i = 0; i < 20; i++) {
+				t += 10.0;
+				double xAcc = random.nextGaussian() * 0.3;
+				double yAcc = random.nextGaussian() * 0.3;
+				expected.predict(t, xAcc, yAcc);
+				actual.predict(t, xAcc, yAcc);
+			}
+
+			x += 1.5 + random.nextGaussian() * 3.0;
+			y += -0.7 + random.nextGaussian() * 3.0;
+			double posDev = 3.0 + random.nextDouble() * 10.0;
+			expected.update(t, x, y, 1.5, -0.7, posDev, posDev * 0.1);
+			actual.update(t, x, y, 1.5, -0.7, posDev, posDev * 0.1);
+
+			assertEquals(expected.getCurrentX(), actual.getCurrentX(), EPS);
+			assertEquals(expected.getCurrentY(), actual.getCurrentY(), EPS);
+			assertEquals(expected.getCurrentXVel(), actual.getCurrentXVel(), EPS);
+			assertEquals(expected.getCurrentYVel(), actual.getCurrentYVel(), EPS);
+		}
+	}
+}
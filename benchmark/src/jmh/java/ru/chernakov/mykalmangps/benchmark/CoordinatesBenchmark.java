@@ -0,0 +1,65 @@
+package ru.chernakov.mykalmangps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import mad.location.manager.lib.Commons.Coordinates;
+import mad.location.manager.lib.Commons.GeoPoint;
+import ru.chernakov.mykalmangps.core.geo.LocalProjection;
+
+/**
+ * Преобразования координат, выполняемые на каждом определении местоположения: метрические координаты
+ * библиотеки ({@link Coordinates}) и локальная проекция {@link LocalProjection}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CoordinatesBenchmark {
+	private double mLatitude = 55.75;
+	private double mLongitude = 37.62;
+	private double mX = 4_187_000.0;
+	private double mY = 6_199_000.0;
+	private double mEast = 1_200.0;
+	private double mNorth = -800.0;
+	private final double[] mOut = new double[2];
+	private final LocalProjection mProjection = new LocalProjection(LocalProjection.DEFAULT_REANCHOR_DISTANCE);
+
+	@Setup
+	public void setUp() {
+		mProjection.anchor(55.74, 37.61);
+	}
+
+	@Benchmark
+	public double longitudeToMeters() {
+		return Coordinates.longitudeToMeters(mLongitude);
+	}
+
+	@Benchmark
+	public double latitudeToMeters() {
+		return Coordinates.latitudeToMeters(mLatitude);
+	}
+
+	@Benchmark
+	public GeoPoint metersToGeoPoint() {
+		return Coordinates.metersToGeoPoint(mX, mY);
+	}
+
+	@Benchmark
+	public double[] projectionToLocal() {
+		mProjection.toLocal(mLatitude, mLongitude, mOut);
+		return mOut;
+	}
+
+	@Benchmark
+	public double[] projectionToGeo() {
+		mProjection.toGeo(mEast, mNorth, mOut);
+		return mOut;
+	}
+}
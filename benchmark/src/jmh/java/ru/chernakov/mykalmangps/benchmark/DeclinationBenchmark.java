@@ -0,0 +1,65 @@
+package ru.chernakov.mykalmangps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import ru.chernakov.mykalmangps.core.geo.DeclinationCache;
+import ru.chernakov.mykalmangps.core.geo.DeclinationModel;
+import ru.chernakov.mykalmangps.core.geo.DipoleDeclinationModel;
+
+/**
+ * Магнитное склонение для каждого определения местоположения: вычисление модели и {@link DeclinationCache}.
+ * <p>
+ * {@code GeomagneticField} на JVM недоступен, поэтому вычисление представлено {@link DipoleDeclinationModel}.
+ * Она значительно дешевле сферических гармоник WMM, так что выигрыш кэша на устройстве больше измеренного.
+ * Одна операция — одно определение на треке длиной {@link #FIXES} определений (поездка 15 м/с, раз в секунду).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DeclinationBenchmark {
+	private static final int FIXES = 4096;
+
+	private final double[] mLatitudes = new double[FIXES];
+	private final double[] mLongitudes = new double[FIXES];
+	private final long[] mTimes = new long[FIXES];
+	private DeclinationModel mModel;
+	private DeclinationCache mCache;
+	private int mIndex;
+
+	@Setup
+	public void setUp() {
+		mModel = new DipoleDeclinationModel();
+		mCache = new DeclinationCache(mModel);
+		double metersPerDegree = 111320.0;
+		for (int i = 0; i < FIXES; i++) {
+			mLatitudes[i] = 55.75 + i * 15.0 * 0.6 / metersPerDegree;
+			mLongitudes[i] = 37.62 + i * 15.0 * 0.8 / (metersPerDegree * Math.cos(Math.toRadians(55.75)));
+			mTimes[i] = 1500000000000L + i * 1000L;
+		}
+	}
+
+	@Benchmark
+	public double model() {
+		int i = next();
+		return mModel.getDeclination(mLatitudes[i], mLongitudes[i], 150.0, mTimes[i]);
+	}
+
+	@Benchmark
+	public double cache() {
+		int i = next();
+		return mCache.getDeclination(mLatitudes[i], mLongitudes[i], 150.0, mTimes[i]);
+	}
+
+	private int next() {
+		mIndex = (mIndex + 1) & (FIXES - 1);
+		return mIndex;
+	}
+}
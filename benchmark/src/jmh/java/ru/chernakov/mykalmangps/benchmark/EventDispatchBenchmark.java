@@ -0,0 +1,96 @@
+package ru.chernakov.mykalmangps.benchmark;
+
+import com.squareup.otto.Bus;
+import com.squareup.otto.Subscribe;
+import com.squareup.otto.ThreadEnforcer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import ru.chernakov.mykalmangps.core.event.EventChannel;
+import ru.chernakov.mykalmangps.core.event.EventListener;
+
+/**
+ * Рассылка одного события подписчикам: {@link Bus} Otto ({@code EventBus} до типизированных каналов) и
+ * {@link EventChannel} с доставкой {@link EventChannel#DIRECT}.
+ * <p>
+ * {@link #ottoPostUnregistered()} повторяет прежний {@code EventBus.postUnregistered}: регистрация, рассылка и
+ * отмена регистрации источника при каждом событии.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EventDispatchBenchmark {
+	/**
+	 * Количество подписчиков
+	 */
+	@Param({"1", "4"})
+	public int subscribers;
+
+	private Bus mBus;
+	private EventChannel<Point> mChannel;
+	private Point mEvent;
+	private Object mSource;
+	private Blackhole mBlackhole;
+
+	@Setup
+	public void setUp(Blackhole blackhole) {
+		mBlackhole = blackhole;
+		mBus = new Bus(ThreadEnforcer.ANY);
+		mChannel = new EventChannel<>("benchmark");
+		for (int i = 0; i < subscribers; i++) {
+			mBus.register(new OttoSubscriber());
+			mChannel.subscribe(new EventListener<Point>() {
+				@Override
+				public void onEvent(Point event) {
+					mBlackhole.consume(event);
+				}
+			}, EventChannel.DIRECT);
+		}
+		mEvent = new Point(55.75, 37.62);
+		mSource = new Object();
+	}
+
+	@Benchmark
+	public void ottoPost() {
+		mBus.post(mEvent);
+	}
+
+	@Benchmark
+	public void ottoPostUnregistered() {
+		mBus.register(mSource);
+		mBus.post(mEvent);
+		mBus.unregister(mSource);
+	}
+
+	@Benchmark
+	public void channelPost() {
+		mChannel.post(mEvent);
+	}
+
+	public static final class Point {
+		final double mLatitude;
+		final double mLongitude;
+
+		Point(double latitude, double longitude) {
+			mLatitude = latitude;
+			mLongitude = longitude;
+		}
+	}
+
+	public final class OttoSubscriber {
+		@Subscribe
+		public void onPoint(Point event) {
+			mBlackhole.consume(event);
+		}
+	}
+}
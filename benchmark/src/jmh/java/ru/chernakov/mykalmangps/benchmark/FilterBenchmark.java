@@ -0,0 +1,88 @@
+package ru.chernakov.mykalmangps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import mad.location.manager.lib.Filters.GPSAccKalmanFilter;
+import ru.chernakov.mykalmangps.core.filter.PrimitiveGpsAccFilter;
+import ru.chernakov.mykalmangps.core.filter.UdGpsAccFilter;
+
+/**
+ * Пропускная способность шагов предсказания и коррекции ({@code TrackingHandler.handlePredict/handleUpdate})
+ * для фильтра из библиотеки, встроенного фильтра и фильтра {@code float} с UD-разложением. Фильтр {@code float}
+ * работает в локальной проекции, поэтому его координаты — метры от начала сеанса.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FilterBenchmark {
+	private static final double X = 4_180_000.0;
+	private static final double Y = 7_510_000.0;
+	private static final double LOCAL_X = 1_200.0;
+	private static final double LOCAL_Y = -3_400.0;
+
+	private GPSAccKalmanFilter mLibraryFilter;
+	private PrimitiveGpsAccFilter mPrimitiveFilter;
+	private UdGpsAccFilter mUdFilter;
+	private double mTime;
+
+	@Setup
+	public void setUp() {
+		mTime = 1_000_000.0;
+		mLibraryFilter = new GPSAccKalmanFilter(false, X, Y, 0.0, 0.0, 0.1, 10.0, mTime, 1.0, 1.0);
+		mPrimitiveFilter = new PrimitiveGpsAccFilter(false, X, Y, 0.0, 0.0, 0.1, 10.0, mTime, 1.0, 1.0);
+		mUdFilter = new UdGpsAccFilter(false, LOCAL_X, LOCAL_Y, 0.0, 0.0, 0.1, 10.0, mTime, 1.0, 1.0);
+	}
+
+	@Benchmark
+	public double predictLibrary() {
+		mTime += 10.0;
+		mLibraryFilter.predict(mTime, 0.1, -0.1);
+		return mLibraryFilter.getCurrentX();
+	}
+
+	@Benchmark
+	public double predictPrimitive() {
+		mTime += 10.0;
+		mPrimitiveFilter.predict(mTime, 0.1, -0.1);
+		return mPrimitiveFilter.getCurrentX();
+	}
+
+	@Benchmark
+	public double predictUd() {
+		mTime += 10.0;
+		mUdFilter.predict(mTime, 0.1, -0.1);
+		return mUdFilter.getCurrentX();
+	}
+
+	@Benchmark
+	public double updateLibrary() {
+		mTime += 10.0;
+		mLibraryFilter.predict(mTime, 0.1, -0.1);
+		mLibraryFilter.update(mTime, X, Y, 0.0, 0.0, 5.0, 0.5);
+		return mLibraryFilter.getCurrentX();
+	}
+
+	@Benchmark
+	public double updatePrimitive() {
+		mTime += 10.0;
+		mPrimitiveFilter.predict(mTime, 0.1, -0.1);
+		mPrimitiveFilter.update(mTime, X, Y, 0.0, 0.0, 5.0, 0.5);
+		return mPrimitiveFilter.getCurrentX();
+	}
+
+	@Benchmark
+	public double updateUd() {
+		mTime += 10.0;
+		mUdFilter.predict(mTime, 0.1, -0.1);
+		mUdFilter.update(mTime, LOCAL_X, LOCAL_Y, 0.0, 0.0, 5.0, 0.5);
+		return mUdFilter.getCurrentX();
+	}
+}
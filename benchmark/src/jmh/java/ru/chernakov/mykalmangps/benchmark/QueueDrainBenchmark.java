@@ -0,0 +1,144 @@
+package ru.chernakov.mykalmangps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Queue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import mad.location.manager.lib.Commons.Coordinates;
+import mad.location.manager.lib.Commons.SensorGpsDataItem;
+import ru.chernakov.mykalmangps.core.buffer.GnssRingBuffer;
+import ru.chernakov.mykalmangps.core.buffer.ImuRingBuffer;
+import ru.chernakov.mykalmangps.core.buffer.SensorStreamMerger;
+import ru.chernakov.mykalmangps.core.filter.PrimitiveGpsAccFilter;
+
+/**
+ * Полный цикл обработки одного определения местоположения: постановка в очередь показаний акселерометра
+ * ({@code onSensorChanged}) и GNSS ({@code onLocationChanged}) и разбор очереди в
+ * {@code TrackingHandler.handleMessage}.
+ * <p>
+ * {@code TrackingHandler} зависит от Android SDK, поэтому цикл разбора очереди воспроизведён здесь без изменений:
+ * {@link #drainPriorityQueue()} для прежней очереди {@code PriorityBlockingQueue<SensorGpsDataItem>},
+ * {@link #drainRingBuffer()} для кольцевых буферов. Одна операция соответствует одному определению местоположения.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class QueueDrainBenchmark {
+	private static final double LAT = 55.75;
+	private static final double LON = 37.62;
+
+	/**
+	 * Количество показаний акселерометра между двумя определениями местоположения
+	 */
+	@Param({"10", "100"})
+	public int samplesPerFix;
+
+	private Queue<SensorGpsDataItem> mSensorDataQueue;
+	private ImuRingBuffer mImuBuffer;
+	private GnssRingBuffer mGnssBuffer;
+	private SensorStreamMerger mSensorMerger;
+	private PrimitiveGpsAccFilter mKalmanFilter;
+	private long mTime;
+
+	@Setup
+	public void setUp() {
+		mSensorDataQueue = new PriorityBlockingQueue<>();
+		mImuBuffer = new ImuRingBuffer(1024);
+		mGnssBuffer = new GnssRingBuffer(16);
+		mSensorMerger = new SensorStreamMerger(mImuBuffer, mGnssBuffer);
+		mTime = 1_000_000L;
+		mKalmanFilter = new PrimitiveGpsAccFilter(false,
+				Coordinates.longitudeToMeters(LON), Coordinates.latitudeToMeters(LAT),
+				0.0, 0.0, 0.1, 10.0, mTime, 1.0, 1.0);
+	}
+
+	@Benchmark
+	public double drainPriorityQueue() {
+		for (int i = 0; i < samplesPerFix; i++) {
+			mTime += 10;
+			mSensorDataQueue.add(new SensorGpsDataItem(mTime,
+					SensorGpsDataItem.NOT_INITIALIZED,
+					SensorGpsDataItem.NOT_INITIALIZED,
+					SensorGpsDataItem.NOT_INITIALIZED,
+					0.1, -0.1, 0.0,
+					SensorGpsDataItem.NOT_INITIALIZED,
+					SensorGpsDataItem.NOT_INITIALIZED,
+					SensorGpsDataItem.NOT_INITIALIZED,
+					SensorGpsDataItem.NOT_INITIALIZED,
+					0.0));
+		}
+		mSensorDataQueue.add(new SensorGpsDataItem(mTime, LAT, LON, 150.0,
+				SensorGpsDataItem.NOT_INITIALIZED,
+				SensorGpsDataItem.NOT_INITIALIZED,
+				SensorGpsDataItem.NOT_INITIALIZED,
+				1.0, 0.5, 5.0, 0.5, 0.0));
+
+		SensorGpsDataItem sdi;
+		double lastTimeStamp = 0.0;
+		while ((sdi = mSensorDataQueue.poll()) != null) {
+			if (sdi.getTimestamp() < lastTimeStamp) {
+				continue;
+			}
+			lastTimeStamp = sdi.getTimestamp();
+
+			if (sdi.getGpsLat() == SensorGpsDataItem.NOT_INITIALIZED) {
+				mKalmanFilter.predict(sdi.getTimestamp(), sdi.getAbsEastAcc(), sdi.getAbsNorthAcc());
+			} else {
+				double xVel = sdi.getSpeed() * Math.cos(sdi.getCourse());
+				double yVel = sdi.getSpeed() * Math.sin(sdi.getCourse());
+				mKalmanFilter.update(sdi.getTimestamp(),
+						Coordinates.longitudeToMeters(sdi.getGpsLon()),
+						Coordinates.latitudeToMeters(sdi.getGpsLat()),
+						xVel, yVel, sdi.getPosErr(), sdi.getVelErr());
+			}
+		}
+
+		return mKalmanFilter.getCurrentX();
+	}
+
+	@Benchmark
+	public double drainRingBuffer() {
+		for (int i = 0; i < samplesPerFix; i++) {
+			mTime += 10;
+			mImuBuffer.offer(mTime, -0.1, 0.1, 0.0);
+		}
+		mGnssBuffer.offer(mTime, LAT, LON, 150.0, 1.0, 0.5, 5.0, 0.5);
+
+		long lastTimeStamp = 0;
+		int source;
+		while ((source = mSensorMerger.next()) != SensorStreamMerger.SOURCE_NONE) {
+			if (source == SensorStreamMerger.SOURCE_IMU) {
+				int slot = mImuBuffer.peek();
+				if (mImuBuffer.getTimestamp(slot) >= lastTimeStamp) {
+					lastTimeStamp = mImuBuffer.getTimestamp(slot);
+					mKalmanFilter.predict(lastTimeStamp,
+							mImuBuffer.getAbsEastAcc(slot), mImuBuffer.getAbsNorthAcc(slot));
+				}
+				mImuBuffer.release();
+			} else {
+				int slot = mGnssBuffer.peek();
+				if (mGnssBuffer.getTimestamp(slot) >= lastTimeStamp) {
+					lastTimeStamp = mGnssBuffer.getTimestamp(slot);
+					double xVel = mGnssBuffer.getSpeed(slot) * Math.cos(mGnssBuffer.getCourse(slot));
+					double yVel = mGnssBuffer.getSpeed(slot) * Math.sin(mGnssBuffer.getCourse(slot));
+					mKalmanFilter.update(lastTimeStamp,
+							Coordinates.longitudeToMeters(mGnssBuffer.getLongitude(slot)),
+							Coordinates.latitudeToMeters(mGnssBuffer.getLatitude(slot)),
+							xVel, yVel, mGnssBuffer.getPosErr(slot), mGnssBuffer.getVelErr(slot));
+				}
+				mGnssBuffer.release();
+			}
+		}
+
+		return mKalmanFilter.getCurrentX();
+	}
+}
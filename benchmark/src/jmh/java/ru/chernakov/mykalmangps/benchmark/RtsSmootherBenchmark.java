@@ -0,0 +1,67 @@
+package ru.chernakov.mykalmangps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import ru.chernakov.mykalmangps.core.filter.RtsSmoother;
+import ru.chernakov.mykalmangps.core.track.ColumnarTrack;
+
+/**
+ * Сглаживание записанного трека: прямой проход и обратный проход RTS по участкам между разрывами.
+ * Трек из 100 000 точек с шагом 1 с и разрывом 2 мин через каждые 1000 точек.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RtsSmootherBenchmark {
+	private static final int TRACK_SIZE = 100_000;
+	private static final int SEGMENT_SIZE = 1000;
+
+	/**
+	 * Количество потоков пула
+	 */
+	@Param({"1", "4"})
+	public int parallelism;
+
+	private ColumnarTrack mTrack;
+	private ForkJoinPool mPool;
+	private RtsSmoother mSmoother;
+
+	@Setup
+	public void setUp() {
+		mTrack = new ColumnarTrack();
+		Random random = new Random(13);
+		double latitude = 55.75;
+		double longitude = 37.62;
+		long time = 0;
+		for (int i = 0; i < TRACK_SIZE; i++) {
+			time += i % SEGMENT_SIZE == 0 ? 120_000L : 1000L;
+			latitude += 5e-5 + random.nextGaussian() * 2e-5;
+			longitude += 5e-5 + random.nextGaussian() * 2e-5;
+			mTrack.append(time, latitude, longitude, 5.0f, 0.0f, 0.0f);
+		}
+		mPool = new ForkJoinPool(parallelism);
+		mSmoother = new RtsSmoother(RtsSmoother.DEFAULT_ACC_SIGMA, RtsSmoother.DEFAULT_MAX_GAP_MS, mPool);
+	}
+
+	@TearDown
+	public void tearDown() {
+		mPool.shutdown();
+	}
+
+	@Benchmark
+	public ColumnarTrack smooth() {
+		return mSmoother.smooth(mTrack);
+	}
+}
@@ -0,0 +1,82 @@
+package ru.chernakov.mykalmangps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ru.chernakov.mykalmangps.core.track.ColumnarTrack;
+import ru.chernakov.mykalmangps.core.track.TrackLodPyramid;
+
+/**
+ * Пирамида упрощённых представлений трека ({@code TrackOverlay}): добавление точки во все уровни и сборка линии
+ * для масштаба карты. Масштабы соответствуют {@code MainActivity}: от 3 до 18.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TrackLodBenchmark {
+	private static final int MIN_ZOOM = 3;
+	private static final int MAX_ZOOM = 18;
+
+	/**
+	 * Количество точек в треке перед измерением
+	 */
+	@Param({"10000", "100000"})
+	public int trackSize;
+
+	/**
+	 * Масштаб карты для сборки линии
+	 */
+	@Param({"10", "16"})
+	public int zoom;
+
+	private ColumnarTrack mTrack;
+	private TrackLodPyramid mPyramid;
+	private TrackLodPyramid.Indices mIndices;
+	private Random mRandom;
+	private double mLatitude;
+	private double mLongitude;
+	private double mHeading;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		mTrack = new ColumnarTrack();
+		mPyramid = new TrackLodPyramid(MIN_ZOOM, MAX_ZOOM, TrackLodPyramid.DEFAULT_TOLERANCE_PX);
+		mIndices = new TrackLodPyramid.Indices();
+		mRandom = new Random(7);
+		mLatitude = 55.75;
+		mLongitude = 37.62;
+		for (int i = 0; i < trackSize; i++) {
+			nextPoint();
+		}
+		mPyramid.update(mTrack);
+	}
+
+	@Benchmark
+	public int append() {
+		nextPoint();
+		return mPyramid.update(mTrack);
+	}
+
+	@Benchmark
+	public int collect() {
+		mPyramid.collect(zoom, mIndices);
+		return mIndices.size();
+	}
+
+	private void nextPoint() {
+		mHeading += mRandom.nextGaussian() * 0.3;
+		mLatitude += Math.cos(mHeading) * 2e-5;
+		mLongitude += Math.sin(mHeading) * 3e-5;
+		mTrack.append(mTrack.size(), mLatitude, mLongitude, 5.0f, 1.0f, 0.0f);
+	}
+}
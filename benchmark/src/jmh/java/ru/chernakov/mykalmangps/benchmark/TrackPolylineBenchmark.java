@@ -0,0 +1,97 @@
+package ru.chernakov.mykalmangps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import mad.location.manager.lib.Commons.GeoPoint;
+import ru.chernakov.mykalmangps.core.track.ColumnarTrack;
+import ru.chernakov.mykalmangps.core.track.TrackBlockIndex;
+
+/**
+ * Подготовка линии трека к отрисовке.
+ * <p>
+ * {@link #getTrack()} — прежнее построение списка точек всего трека ({@code MainActivity.getTrack}), которое
+ * выполнялось на каждом определении местоположения. Классы osmdroid требуют Android SDK, поэтому вместо
+ * {@code org.osmdroid.util.GeoPoint} используется {@link GeoPoint} библиотеки mad-location-manager с тем же
+ * набором полей.
+ * <p>
+ * {@link #drawVisible()} — один кадр {@code TrackOverlay}: учёт новых точек в {@link TrackBlockIndex} и обход
+ * видимых блоков. Вместо {@code Projection.toPixels} и {@code Path.lineTo} точки проецируются в меркатор
+ * и суммируются. Видимая область содержит около {@link #VISIBLE_POINTS} последних точек трека.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TrackPolylineBenchmark {
+	private static final int VISIBLE_POINTS = 1000;
+	private static final double STEP = 1e-5;
+
+	/**
+	 * Количество точек в треке
+	 */
+	@Param({"10000", "100000"})
+	public int trackSize;
+
+	private List<GeoPoint> mTrack;
+	private ColumnarTrack mColumnarTrack;
+	private TrackBlockIndex mBlockIndex;
+	private int mMinLatitudeE7;
+	private int mMaxLatitudeE7;
+	private int mMinLongitudeE7;
+	private int mMaxLongitudeE7;
+
+	@Setup
+	public void setUp() {
+		mTrack = new ArrayList<>(trackSize);
+		mColumnarTrack = new ColumnarTrack();
+		mBlockIndex = new TrackBlockIndex();
+		for (int i = 0; i < trackSize; i++) {
+			mTrack.add(new GeoPoint(55.75 + i * STEP, 37.62 + i * STEP));
+			mColumnarTrack.append(i, 55.75 + i * STEP, 37.62 + i * STEP, 5.0f, 1.0f, 45.0f);
+		}
+
+		int last = trackSize - 1;
+		mMinLatitudeE7 = mColumnarTrack.getLatitudeE7(last - VISIBLE_POINTS);
+		mMaxLatitudeE7 = mColumnarTrack.getLatitudeE7(last);
+		mMinLongitudeE7 = mColumnarTrack.getLongitudeE7(last - VISIBLE_POINTS);
+		mMaxLongitudeE7 = mColumnarTrack.getLongitudeE7(last);
+	}
+
+	@Benchmark
+	public List<GeoPoint> getTrack() {
+		List<GeoPoint> geoPoints = new ArrayList<>();
+		for (GeoPoint point : mTrack) {
+			geoPoints.add(new GeoPoint(point.Latitude, point.Longitude));
+		}
+
+		return geoPoints;
+	}
+
+	@Benchmark
+	public double drawVisible() {
+		mBlockIndex.update(mColumnarTrack);
+
+		double sum = 0.0;
+		for (int block = 0, count = mBlockIndex.getBlockCount(); block < count; block++) {
+			if (!mBlockIndex.intersects(block, mMinLatitudeE7, mMaxLatitudeE7, mMinLongitudeE7, mMaxLongitudeE7)) {
+				continue;
+			}
+			for (int i = mBlockIndex.getBlockStart(block), end = mBlockIndex.getBlockEnd(block); i <= end; i++) {
+				double latitude = Math.toRadians(mColumnarTrack.getLatitude(i));
+				sum += mColumnarTrack.getLongitude(i) + Math.log(Math.tan(Math.PI / 4 + latitude / 2));
+			}
+		}
+
+		return sum;
+	}
+}
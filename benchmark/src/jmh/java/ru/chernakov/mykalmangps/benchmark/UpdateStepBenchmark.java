@@ -0,0 +1,68 @@
+package ru.chernakov.mykalmangps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import mad.location.manager.lib.Commons.Coordinates;
+import mad.location.manager.lib.Commons.GeoPoint;
+import ru.chernakov.mykalmangps.core.filter.PrimitiveGpsAccFilter;
+
+/**
+ * Построение результата шага коррекции ({@code TrackingHandler.locationAfterUpdateStep}).
+ * <p>
+ * Вне устройства {@code android.location.Location} недоступен, поэтому результат собирается в объект
+ * {@link UpdateStepResult} с тем же набором полей; измеряются обратное преобразование координат и выделение
+ * памяти под результат.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UpdateStepBenchmark {
+	private PrimitiveGpsAccFilter mKalmanFilter;
+
+	@Setup
+	public void setUp() {
+		mKalmanFilter = new PrimitiveGpsAccFilter(false,
+				Coordinates.longitudeToMeters(37.62), Coordinates.latitudeToMeters(55.75),
+				1.0, 0.5, 0.1, 10.0, 1_000_000.0, 1.0, 1.0);
+	}
+
+	@Benchmark
+	public UpdateStepResult locationAfterUpdateStep() {
+		UpdateStepResult loc = new UpdateStepResult();
+		GeoPoint pp = Coordinates.metersToGeoPoint(mKalmanFilter.getCurrentX(), mKalmanFilter.getCurrentY());
+		loc.latitude = pp.Latitude;
+		loc.longitude = pp.Longitude;
+		loc.altitude = 150.0;
+		double xVel = mKalmanFilter.getCurrentXVel();
+		double yVel = mKalmanFilter.getCurrentYVel();
+		loc.speed = (float) Math.sqrt(xVel * xVel + yVel * yVel);
+		loc.bearing = 0.5f;
+		loc.time = System.currentTimeMillis();
+		loc.elapsedRealtimeNanos = System.nanoTime();
+		loc.accuracy = 5.0f;
+
+		return loc;
+	}
+
+	/**
+	 * Поля {@code android.location.Location}, заполняемые в {@code locationAfterUpdateStep}
+	 */
+	public static final class UpdateStepResult {
+		double latitude;
+		double longitude;
+		double altitude;
+		float speed;
+		float bearing;
+		float accuracy;
+		long time;
+		long elapsedRealtimeNanos;
+	}
+}
@@ -0,0 +1,298 @@
+package ru.chernakov.mykalmangps.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ru.chernakov.mykalmangps.core.fusion.FusionEngine;
+import ru.chernakov.mykalmangps.core.replay.BinaryTraceReader;
+import ru.chernakov.mykalmangps.core.replay.CsvTraceReader;
+import ru.chernakov.mykalmangps.core.replay.ReplayEngine;
+import ru.chernakov.mykalmangps.core.replay.ReplayReport;
+import ru.chernakov.mykalmangps.core.replay.TraceReader;
+
+/**
+ * Пакетная обработка каталога записей показаний.
+ * <p>
+ * Каждая запись ({@code *.csv} — {@link CsvTraceReader}, {@code *.trace} — {@link BinaryTraceReader})
+ * воспроизводится через {@link ReplayEngine} в отдельной задаче пула потоков. Уточнённый трек записывается
+ * в {@code <имя>.track.csv} по мере обработки, поэтому память на задачу не зависит от длины записи;
+ * статистика по записям — в {@code summary.csv}. Задачи не разделяют изменяемого состояния.
+ * <p>
+ * Записи запускаются в порядке убывания размера, чтобы длинные записи не оставались на конец обработки.
+ */
+public final class BatchReprocessor {
+	static final String CSV_TRACE_SUFFIX = ".csv";
+
+	static final String BINARY_TRACE_SUFFIX = ".trace";
+
+	static final String TRACK_SUFFIX = ".track.csv";
+
+	static final String SUMMARY_FILE = "summary.csv";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final String USAGE = "Usage: cli <trace dir> <output dir> [--threads N] [--acc-dev X]"
+			+ " [--vel-factor X] [--pos-factor X] [--use-gps-speed] [--predict-interval MS]\n"
+			+ "  --predict-interval defaults to " + FusionEngine.REALTIME_PREDICT_INTERVAL_MS
+			+ " ms as on the device; 0 runs one predict step per IMU sample";
+
+	private final FilterSettings mSettings;
+
+	private final int mThreads;
+
+	/**
+	 * Интервал шагов предсказания, мс; 0 — шаг на каждое показание акселерометра
+	 */
+	private final long mPredictIntervalMs;
+
+	BatchReprocessor(FilterSettings settings, int threads) {
+		this(settings, threads, FusionEngine.REALTIME_PREDICT_INTERVAL_MS);
+	}
+
+	BatchReprocessor(FilterSettings settings, int threads, long predictIntervalMs) {
+		mSettings = settings;
+		mThreads = threads;
+		mPredictIntervalMs = predictIntervalMs;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String input = null;
+		String output = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean useGpsSpeed = false;
+		double accelerationDeviation = FilterSettings.DEFAULT_ACCELERATION_DEVIATION;
+		double velFactor = FilterSettings.DEFAULT_VEL_FACTOR;
+		double posFactor = FilterSettings.DEFAULT_POS_FACTOR;
+		long predictIntervalMs = FusionEngine.REALTIME_PREDICT_INTERVAL_MS;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+					case "--threads":
+						threads = Integer.parseInt(args[++i]);
+						break;
+					case "--acc-dev":
+						accelerationDeviation = Double.parseDouble(args[++i]);
+						break;
+					case "--vel-factor":
+						velFactor = Double.parseDouble(args[++i]);
+						break;
+					case "--pos-factor":
+						posFactor = Double.parseDouble(args[++i]);
+						break;
+					case "--use-gps-speed":
+						useGpsSpeed = true;
+						break;
+					case "--predict-interval":
+						predictIntervalMs = Long.parseLong(args[++i]);
+						break;
+					default:
+						if (args[i].startsWith("--")) {
+							throw new IllegalArgumentException("Unknown option " + args[i]);
+						} else if (input == null) {
+							input = args[i];
+						} else if (output == null) {
+							output = args[i];
+						} else {
+							throw new IllegalArgumentException("Unexpected argument " + args[i]);
+						}
+				}
+			}
+			if (input == null || output == null) {
+				throw new IllegalArgumentException("Trace and output directories are required");
+			}
+			if (threads < 1) {
+				throw new IllegalArgumentException("--threads must be positive: " + threads);
+			}
+			if (predictIntervalMs < 0) {
+				throw new IllegalArgumentException("--predict-interval must not be negative: " + predictIntervalMs);
+			}
+		} catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+			System.err.println(e.getMessage() != null ? e.getMessage() : "Missing option value");
+			System.err.println(USAGE);
+			System.exit(2);
+			return;
+		}
+
+		FilterSettings settings = new FilterSettings(useGpsSpeed, accelerationDeviation, velFactor, posFactor);
+		System.out.println("Filter: " + settings + ", predict interval: " + predictIntervalMs + " ms, threads: "
+				+ threads);
+
+		long start = System.nanoTime();
+		List<TrackResult> results = new BatchReprocessor(settings, threads, predictIntervalMs)
+				.process(new File(input), new File(output));
+		long elapsed = System.nanoTime() - start;
+
+		boolean failed = printTotals(System.out, results, elapsed);
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Обрабатывает все записи каталога.
+	 *
+	 * @param inputDir  каталог записей
+	 * @param outputDir каталог результатов (создаётся при необходимости)
+	 * @return результаты в порядке имён записей; ошибка чтения записи не прерывает обработку остальных
+	 * @throws IOException ошибка доступа к каталогам или записи сводки
+	 */
+	List<TrackResult> process(File inputDir, final File outputDir) throws IOException, InterruptedException {
+		File[] inputs = inputDir.listFiles();
+		if (inputs == null) {
+			throw new IOException("Cannot list " + inputDir);
+		}
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IOException("Cannot create " + outputDir);
+		}
+
+		List<File> traces = new ArrayList<>();
+		for (File file : inputs) {
+			if (file.isFile() && traceName(file) != null) {
+				traces.add(file);
+			}
+		}
+		Collections.sort(traces, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(b.length(), a.length());
+			}
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(mThreads);
+		List<TrackResult> results = new ArrayList<>(traces.size());
+		try {
+			List<Future<TrackResult>> futures = new ArrayList<>(traces.size());
+			for (final File trace : traces) {
+				futures.add(executor.submit(new Callable<TrackResult>() {
+					@Override
+					public TrackResult call() {
+						return processTrace(trace, outputDir);
+					}
+				}));
+			}
+			for (Future<TrackResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Collections.sort(results, new Comparator<TrackResult>() {
+			@Override
+			public int compare(TrackResult a, TrackResult b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		writeSummary(new File(outputDir, SUMMARY_FILE), results);
+
+		return results;
+	}
+
+	/**
+	 * Воспроизводит одну запись, записывая трек в каталог результатов.
+	 */
+	TrackResult processTrace(File trace, File outputDir) {
+		String name = traceName(trace);
+		File track = new File(outputDir, name + TRACK_SUFFIX);
+		try (TraceReader reader = openTrace(trace);
+		     TrackWriter writer = new TrackWriter(new BufferedWriter(new OutputStreamWriter(
+				     new FileOutputStream(track), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+			ReplayEngine engine = new ReplayEngine(mSettings);
+			engine.setPredictIntervalMs(mPredictIntervalMs);
+			ReplayReport report = engine.run(reader, writer);
+			writer.checkError();
+			return TrackResult.completed(name, report, writer);
+		} catch (IOException | RuntimeException e) {
+			return TrackResult.failed(name, e);
+		}
+	}
+
+	private static TraceReader openTrace(File trace) throws IOException {
+		BufferedInputStream input = new BufferedInputStream(new FileInputStream(trace), BUFFER_SIZE);
+		if (trace.getName().endsWith(BINARY_TRACE_SUFFIX)) {
+			return new BinaryTraceReader(input);
+		}
+
+		return new CsvTraceReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return имя записи без расширения или null, если файл не является записью показаний
+	 */
+	static String traceName(File file) {
+		String name = file.getName();
+		if (name.endsWith(TRACK_SUFFIX) || name.equals(SUMMARY_FILE)) {
+			return null;
+		}
+		for (String suffix : Arrays.asList(BINARY_TRACE_SUFFIX, CSV_TRACE_SUFFIX)) {
+			if (name.endsWith(suffix)) {
+				return name.substring(0, name.length() - suffix.length());
+			}
+		}
+
+		return null;
+	}
+
+	private static void writeSummary(File file, List<TrackResult> results) throws IOException {
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+				StandardCharsets.UTF_8))) {
+			writer.write(TrackResult.CSV_HEADER);
+			writer.write('\n');
+			for (TrackResult result : results) {
+				writer.write(result.toCsv());
+				writer.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * Выводит ошибки и общую производительность.
+	 *
+	 * @return true, если хотя бы одна запись не обработана
+	 */
+	static boolean printTotals(PrintStream out, List<TrackResult> results, long elapsedNanos) {
+		long samples = 0;
+		long points = 0;
+		int failed = 0;
+		for (TrackResult result : results) {
+			if (result.isFailed()) {
+				failed++;
+				out.println(result.getName() + ": " + result.getError());
+			}
+			samples += result.getSamples();
+			points += result.getOutputPoints();
+		}
+
+		double seconds = elapsedNanos / 1e9;
+		out.println(String.format(Locale.US, "%d tracks (%d failed), %d samples, %d output points in %.2f s: "
+						+ "%.0f samples/s, %.0f points/s",
+				results.size(), failed, samples, points, seconds,
+				seconds == 0.0 ? 0.0 : samples / seconds, seconds == 0.0 ? 0.0 : points / seconds));
+
+		return failed > 0;
+	}
+}
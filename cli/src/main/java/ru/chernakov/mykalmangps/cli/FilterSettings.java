@@ -0,0 +1,59 @@
+package ru.chernakov.mykalmangps.cli;
+
+import java.util.Locale;
+
+import ru.chernakov.mykalmangps.core.filter.GpsAccFilter;
+import ru.chernakov.mykalmangps.core.filter.GpsAccFilterFactory;
+import ru.chernakov.mykalmangps.core.filter.PrimitiveGpsAccFilter;
+
+/**
+ * Параметры фильтра из {@code KalmanServiceSettings}, влияющие на результат обработки записи.
+ * Значения по умолчанию совпадают с настройками {@code KalmanLocationProcessor}.
+ */
+final class FilterSettings implements GpsAccFilterFactory {
+	/**
+	 * {@code Utils.ACCELEROMETER_DEFAULT_DEVIATION}
+	 */
+	static final double DEFAULT_ACCELERATION_DEVIATION = 0.1;
+
+	/**
+	 * {@code Utils.DEFAULT_VEL_FACTOR}
+	 */
+	static final double DEFAULT_VEL_FACTOR = 1.0;
+
+	/**
+	 * {@code Utils.DEFAULT_POS_FACTOR}
+	 */
+	static final double DEFAULT_POS_FACTOR = 1.0;
+
+	private final boolean mUseGpsSpeed;
+
+	private final double mAccelerationDeviation;
+
+	private final double mVelFactor;
+
+	private final double mPosFactor;
+
+	FilterSettings() {
+		this(false, DEFAULT_ACCELERATION_DEVIATION, DEFAULT_VEL_FACTOR, DEFAULT_POS_FACTOR);
+	}
+
+	FilterSettings(boolean useGpsSpeed, double accelerationDeviation, double velFactor, double posFactor) {
+		mUseGpsSpeed = useGpsSpeed;
+		mAccelerationDeviation = accelerationDeviation;
+		mVelFactor = velFactor;
+		mPosFactor = posFactor;
+	}
+
+	@Override
+	public GpsAccFilter create(double x, double y, double xVel, double yVel, double posDev, long timeStampMs) {
+		return new PrimitiveGpsAccFilter(mUseGpsSpeed, x, y, xVel, yVel, mAccelerationDeviation, posDev,
+				timeStampMs, mVelFactor, mPosFactor);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "useGpsSpeed=%b, accDev=%s, velFactor=%s, posFactor=%s",
+				mUseGpsSpeed, mAccelerationDeviation, mVelFactor, mPosFactor);
+	}
+}
@@ -0,0 +1,82 @@
+package ru.chernakov.mykalmangps.cli;
+
+import java.util.Locale;
+
+import ru.chernakov.mykalmangps.core.replay.ReplayReport;
+
+/**
+ * Результат обработки одной записи.
+ */
+final class TrackResult {
+	static final String CSV_HEADER = "track,imu_samples,gnss_samples,dropped_samples,output_points,predict_steps,"
+			+ "duration_s,distance_m,mean_accuracy_m,elapsed_ms,samples_per_s,error";
+
+	private final String mName;
+	private final long mImuSamples;
+	private final long mGnssSamples;
+	private final long mDroppedSamples;
+	private final long mPredictSteps;
+	private final long mOutputPoints;
+	private final long mDuration;
+	private final double mDistance;
+	private final double mMeanAccuracy;
+	private final long mElapsedNanos;
+	private final String mError;
+
+	private TrackResult(String name, long imuSamples, long gnssSamples, long droppedSamples, long predictSteps,
+	                    long outputPoints, long duration, double distance, double meanAccuracy, long elapsedNanos,
+	                    String error) {
+		mName = name;
+		mImuSamples = imuSamples;
+		mGnssSamples = gnssSamples;
+		mDroppedSamples = droppedSamples;
+		mPredictSteps = predictSteps;
+		mOutputPoints = outputPoints;
+		mDuration = duration;
+		mDistance = distance;
+		mMeanAccuracy = meanAccuracy;
+		mElapsedNanos = elapsedNanos;
+		mError = error;
+	}
+
+	static TrackResult completed(String name, ReplayReport report, TrackWriter writer) {
+		return new TrackResult(name, report.getImuSamples(), report.getGnssSamples(), report.getDroppedSamples(),
+				report.getPredictSteps(), writer.getPoints(), writer.getDuration(), writer.getDistance(), writer.getMeanAccuracy(),
+				report.getElapsedNanos(), null);
+	}
+
+	static TrackResult failed(String name, Exception error) {
+		return new TrackResult(name, 0, 0, 0, 0, 0, 0, 0.0, 0.0, 0, String.valueOf(error.getMessage()));
+	}
+
+	String getName() {
+		return mName;
+	}
+
+	/**
+	 * @return количество прочитанных показаний (акселерометр и GNSS)
+	 */
+	long getSamples() {
+		return mImuSamples + mGnssSamples;
+	}
+
+	long getOutputPoints() {
+		return mOutputPoints;
+	}
+
+	boolean isFailed() {
+		return mError != null;
+	}
+
+	String getError() {
+		return mError;
+	}
+
+	String toCsv() {
+		return String.format(Locale.US, "%s,%d,%d,%d,%d,%d,%.3f,%.1f,%.2f,%.1f,%.0f,%s",
+				mName, mImuSamples, mGnssSamples, mDroppedSamples, mOutputPoints, mPredictSteps, mDuration / 1000.0,
+				mDistance, mMeanAccuracy, mElapsedNanos / 1e6,
+				mElapsedNanos == 0 ? 0.0 : getSamples() * 1e9 / mElapsedNanos,
+				mError == null ? "" : mError.replace(',', ';').replace('\n', ' '));
+	}
+}
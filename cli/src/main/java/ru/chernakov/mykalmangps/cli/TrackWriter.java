@@ -0,0 +1,112 @@
+package ru.chernakov.mykalmangps.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+import ru.chernakov.mykalmangps.core.fusion.FusionListener;
+import ru.chernakov.mykalmangps.core.geo.MetricCoordinates;
+
+/**
+ * Записывает уточнённые местоположения в текстовый файл по мере их появления и считает статистику трека.
+ * Одна строка — одна точка:
+ * <pre>
+ * время_мс,широта,долгота,высота,скорость,направление,погрешность
+ * </pre>
+ * {@link FusionListener} не может бросить {@link IOException}, поэтому первая ошибка записи сохраняется
+ * и бросается из {@link #checkError()}.
+ */
+final class TrackWriter implements FusionListener, Closeable {
+	static final String HEADER = "# time_ms,latitude,longitude,altitude,speed,bearing,accuracy";
+
+	private final Writer mWriter;
+
+	private final StringBuilder mLine = new StringBuilder(128);
+
+	private IOException mError;
+
+	private long mPoints;
+	private long mFirstTime;
+	private long mLastTime;
+	private double mLastLatitude;
+	private double mLastLongitude;
+	private double mDistance;
+	private double mAccuracySum;
+
+	TrackWriter(Writer writer) throws IOException {
+		mWriter = writer;
+		mWriter.write(HEADER);
+		mWriter.write('\n');
+	}
+
+	@Override
+	public void onFusedLocation(long timestamp, double latitude, double longitude, double altitude,
+	                            float speed, float bearing, float accuracy) {
+		if (mPoints == 0) {
+			mFirstTime = timestamp;
+		} else {
+			mDistance += MetricCoordinates.distanceBetween(mLastLongitude, mLastLatitude, longitude, latitude);
+		}
+		mPoints++;
+		mLastTime = timestamp;
+		mLastLatitude = latitude;
+		mLastLongitude = longitude;
+		mAccuracySum += accuracy;
+
+		if (mError != null) {
+			return;
+		}
+		mLine.setLength(0);
+		mLine.append(timestamp).append(',')
+				.append(latitude).append(',')
+				.append(longitude).append(',')
+				.append(altitude).append(',')
+				.append(speed).append(',')
+				.append(bearing).append(',')
+				.append(accuracy).append('\n');
+		try {
+			mWriter.append(mLine);
+		} catch (IOException e) {
+			mError = e;
+		}
+	}
+
+	/**
+	 * @throws IOException первая ошибка записи точки
+	 */
+	void checkError() throws IOException {
+		if (mError != null) {
+			throw mError;
+		}
+	}
+
+	long getPoints() {
+		return mPoints;
+	}
+
+	/**
+	 * @return время между первой и последней точкой, мс
+	 */
+	long getDuration() {
+		return mLastTime - mFirstTime;
+	}
+
+	/**
+	 * @return длина трека, м
+	 */
+	double getDistance() {
+		return mDistance;
+	}
+
+	/**
+	 * @return средняя погрешность точек, м
+	 */
+	double getMeanAccuracy() {
+		return mPoints == 0 ? 0.0 : mAccuracySum / mPoints;
+	}
+
+	@Override
+	public void close() throws IOException {
+		mWriter.close();
+	}
+}
@@ -0,0 +1,106 @@
+package ru.chernakov.mykalmangps.cli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import ru.chernakov.mykalmangps.core.replay.BinaryTraceWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchReprocessorTest {
+	private static final int FIXES = 200;
+	private static final int IMU_PER_FIX = 20;
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	@Test
+	public void processesDirectoryInParallel() throws Exception {
+		File input = mFolder.newFolder("traces");
+		for (int i = 0; i < 6; i++) {
+			writeBinaryTrace(new File(input, "walk-" + i + BatchReprocessor.BINARY_TRACE_SUFFIX), i);
+		}
+		writeCsvTrace(new File(input, "csv" + BatchReprocessor.CSV_TRACE_SUFFIX));
+		Files.write(new File(input, "broken" + BatchReprocessor.BINARY_TRACE_SUFFIX).toPath(), new byte[]{1, 2});
+		Files.write(new File(input, "notes.txt").toPath(), new byte[]{1});
+
+		File parallelOutput = mFolder.newFolder("parallel");
+		List<TrackResult> results = new BatchReprocessor(new FilterSettings(), 4).process(input, parallelOutput);
+
+		assertEquals(8, results.size());
+		assertEquals("broken", results.get(0).getName());
+		assertTrue(results.get(0).isFailed());
+		assertEquals("csv", results.get(1).getName());
+		assertFalse(results.get(1).isFailed());
+		assertEquals(2, results.get(1).getOutputPoints());
+		for (TrackResult result : results.subList(2, results.size())) {
+			assertFalse(result.getError(), result.isFailed());
+			assertEquals(FIXES * (IMU_PER_FIX + 1), result.getSamples());
+			assertEquals(FIXES, result.getOutputPoints());
+		}
+
+		List<String> summary = Files.readAllLines(new File(parallelOutput, BatchReprocessor.SUMMARY_FILE).toPath());
+		assertEquals(TrackResult.CSV_HEADER, summary.get(0));
+		assertEquals(results.size() + 1, summary.size());
+		assertTrue(summary.get(3).startsWith("walk-0," + FIXES * IMU_PER_FIX + "," + FIXES + ",0," + FIXES + ","));
+
+		List<String> track = Files.readAllLines(new File(parallelOutput, "walk-0" + BatchReprocessor.TRACK_SUFFIX).toPath());
+		assertEquals(TrackWriter.HEADER, track.get(0));
+		assertEquals(FIXES + 1, track.size());
+
+		// Результат не зависит от количества потоков
+		File sequentialOutput = mFolder.newFolder("sequential");
+		new BatchReprocessor(new FilterSettings(), 1).process(input, sequentialOutput);
+		for (int i = 0; i < 6; i++) {
+			String name = "walk-" + i + BatchReprocessor.TRACK_SUFFIX;
+			assertEquals(Files.readAllLines(new File(sequentialOutput, name).toPath()),
+					Files.readAllLines(new File(parallelOutput, name).toPath()));
+		}
+	}
+
+	@Test
+	public void recognizesTraceFiles() {
+		assertEquals("a", BatchReprocessor.traceName(new File("a.trace")));
+		assertEquals("a.b", BatchReprocessor.traceName(new File("a.b.csv")));
+		assertNull(BatchReprocessor.traceName(new File("a.track.csv")));
+		assertNull(BatchReprocessor.traceName(new File(BatchReprocessor.SUMMARY_FILE)));
+		assertNull(BatchReprocessor.traceName(new File("a.log")));
+	}
+
+	private static void writeBinaryTrace(File file, int seed) throws IOException {
+		Random random = new Random(seed);
+		try (BinaryTraceWriter writer = new BinaryTraceWriter(new FileOutputStream(file))) {
+			for (int fix = 1; fix <= FIXES; fix++) {
+				for (int i = 0; i < IMU_PER_FIX; i++) {
+					writer.writeImu((fix - 1) * 1000L + (i + 1) * 1000L / (IMU_PER_FIX + 1),
+							random.nextGaussian() * 0.05, random.nextGaussian() * 0.05, 0.0);
+				}
+				writer.writeGnss(fix * 1000L, 55.75 + fix * 1e-5 + random.nextGaussian() * 2e-5,
+						37.62 + fix * 1e-5 + random.nextGaussian() * 3e-5, 150.0, 1.4, 45.0, 5.0, 0.5);
+			}
+		}
+	}
+
+	private static void writeCsvTrace(File file) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			writer.write(String.format(Locale.US, "G,1000,55.75,37.62,150.0,1.4,45.0,5.0,0.5%n"
+					+ "A,1500,0.1,0.0,0.0%n"
+					+ "G,2000,55.75001,37.62001,150.0,1.4,45.0,5.0,0.5%n"));
+		}
+	}
+}
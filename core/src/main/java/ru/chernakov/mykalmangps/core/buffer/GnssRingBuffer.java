@@ -0,0 +1,86 @@
+package ru.chernakov.mykalmangps.core.buffer;
+
+/**
+ * Буфер определений местоположения GNSS.
+ */
+public final class GnssRingBuffer extends SpscRingBuffer {
+	private final double[] mLatitude;
+	private final double[] mLongitude;
+	private final double[] mAltitude;
+	private final double[] mSpeed;
+	private final double[] mCourse;
+	private final double[] mPosErr;
+	private final double[] mVelErr;
+
+	public GnssRingBuffer(int capacity) {
+		super(capacity);
+		mLatitude = new double[getCapacity()];
+		mLongitude = new double[getCapacity()];
+		mAltitude = new double[getCapacity()];
+		mSpeed = new double[getCapacity()];
+		mCourse = new double[getCapacity()];
+		mPosErr = new double[getCapacity()];
+		mVelErr = new double[getCapacity()];
+	}
+
+	/**
+	 * Добавляет определение местоположения. Вызывается только производителем.
+	 *
+	 * @param timestamp время определения, мс
+	 * @param latitude  широта
+	 * @param longitude долгота
+	 * @param altitude  высота, м
+	 * @param speed     скорость, м/с
+	 * @param course    направление движения
+	 * @param posErr    погрешность определения координат, м
+	 * @param velErr    погрешность определения скорости, м/с
+	 * @return true, если определение принято, false, если буфер заполнен
+	 */
+	public boolean offer(long timestamp, double latitude, double longitude, double altitude,
+	                     double speed, double course, double posErr, double velErr) {
+		int slot = claim();
+		if (slot == NO_SLOT) {
+			return false;
+		}
+
+		mTimestamps[slot] = timestamp;
+		mLatitude[slot] = latitude;
+		mLongitude[slot] = longitude;
+		mAltitude[slot] = altitude;
+		mSpeed[slot] = speed;
+		mCourse[slot] = course;
+		mPosErr[slot] = posErr;
+		mVelErr[slot] = velErr;
+		publish();
+
+		return true;
+	}
+
+	public double getLatitude(int slot) {
+		return mLatitude[slot];
+	}
+
+	public double getLongitude(int slot) {
+		return mLongitude[slot];
+	}
+
+	public double getAltitude(int slot) {
+		return mAltitude[slot];
+	}
+
+	public double getSpeed(int slot) {
+		return mSpeed[slot];
+	}
+
+	public double getCourse(int slot) {
+		return mCourse[slot];
+	}
+
+	public double getPosErr(int slot) {
+		return mPosErr[slot];
+	}
+
+	public double getVelErr(int slot) {
+		return mVelErr[slot];
+	}
+}
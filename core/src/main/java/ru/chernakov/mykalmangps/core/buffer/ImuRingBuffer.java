@@ -0,0 +1,53 @@
+package ru.chernakov.mykalmangps.core.buffer;
+
+/**
+ * Буфер показаний акселерометра, приведённых к системе координат "восток-север-вверх".
+ */
+public final class ImuRingBuffer extends SpscRingBuffer {
+	private final double[] mAbsEastAcc;
+	private final double[] mAbsNorthAcc;
+	private final double[] mAbsUpAcc;
+
+	public ImuRingBuffer(int capacity) {
+		super(capacity);
+		mAbsEastAcc = new double[getCapacity()];
+		mAbsNorthAcc = new double[getCapacity()];
+		mAbsUpAcc = new double[getCapacity()];
+	}
+
+	/**
+	 * Добавляет показание. Вызывается только производителем.
+	 *
+	 * @param timestamp   время показания, мс
+	 * @param absEastAcc  ускорение на восток, м/с²
+	 * @param absNorthAcc ускорение на север, м/с²
+	 * @param absUpAcc    ускорение вверх, м/с²
+	 * @return true, если показание принято, false, если буфер заполнен
+	 */
+	public boolean offer(long timestamp, double absEastAcc, double absNorthAcc, double absUpAcc) {
+		int slot = claim();
+		if (slot == NO_SLOT) {
+			return false;
+		}
+
+		mTimestamps[slot] = timestamp;
+		mAbsEastAcc[slot] = absEastAcc;
+		mAbsNorthAcc[slot] = absNorthAcc;
+		mAbsUpAcc[slot] = absUpAcc;
+		publish();
+
+		return true;
+	}
+
+	public double getAbsEastAcc(int slot) {
+		return mAbsEastAcc[slot];
+	}
+
+	public double getAbsNorthAcc(int slot) {
+		return mAbsNorthAcc[slot];
+	}
+
+	public double getAbsUpAcc(int slot) {
+		return mAbsUpAcc[slot];
+	}
+}
@@ -0,0 +1,62 @@
+package ru.chernakov.mykalmangps.core.buffer;
+
+/**
+ * Объединяет потоки показаний акселерометра и GNSS в порядке возрастания меток времени.
+ * <p>
+ * Каждый поток упорядочен по времени сам по себе, поэтому для слияния достаточно сравнить метки времени
+ * самых старых непрочитанных показаний двух буферов. При равенстве меток первым выдаётся показание
+ * акселерометра: шаг предсказания до момента определения выполняется раньше коррекции.
+ * <p>
+ * Используется потоком-потребителем: {@link #next()} сообщает, из какого буфера читать, после чтения слот
+ * освобождается через {@code release()} соответствующего буфера.
+ */
+public final class SensorStreamMerger {
+	/**
+	 * Непрочитанных показаний нет
+	 */
+	public static final int SOURCE_NONE = 0;
+
+	/**
+	 * Следующее показание находится в буфере акселерометра
+	 */
+	public static final int SOURCE_IMU = 1;
+
+	/**
+	 * Следующее показание находится в буфере GNSS
+	 */
+	public static final int SOURCE_GNSS = 2;
+
+	private final ImuRingBuffer mImu;
+	private final GnssRingBuffer mGnss;
+
+	public SensorStreamMerger(ImuRingBuffer imu, GnssRingBuffer gnss) {
+		mImu = imu;
+		mGnss = gnss;
+	}
+
+	/**
+	 * @return источник следующего по времени показания: {@link #SOURCE_IMU}, {@link #SOURCE_GNSS} или
+	 * {@link #SOURCE_NONE}
+	 */
+	public int next() {
+		int imuSlot = mImu.peek();
+		int gnssSlot = mGnss.peek();
+
+		if (imuSlot == SpscRingBuffer.NO_SLOT) {
+			return gnssSlot == SpscRingBuffer.NO_SLOT ? SOURCE_NONE : SOURCE_GNSS;
+		}
+		if (gnssSlot == SpscRingBuffer.NO_SLOT) {
+			return SOURCE_IMU;
+		}
+
+		return mImu.getTimestamp(imuSlot) <= mGnss.getTimestamp(gnssSlot) ? SOURCE_IMU : SOURCE_GNSS;
+	}
+
+	public ImuRingBuffer getImu() {
+		return mImu;
+	}
+
+	public GnssRingBuffer getGnss() {
+		return mGnss;
+	}
+}
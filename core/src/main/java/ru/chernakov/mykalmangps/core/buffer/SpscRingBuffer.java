@@ -0,0 +1,133 @@
+package ru.chernakov.mykalmangps.core.buffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кольцевой буфер фиксированной ёмкости для передачи показаний от одного потока-производителя одному
+ * потоку-потребителю без блокировок.
+ * <p>
+ * Данные хранятся в параллельных массивах примитивов (по массиву на поле), которые выделяются один раз при
+ * создании буфера. Наследники объявляют собственные столбцы и методы записи; этот класс управляет индексами
+ * чтения/записи и меткой времени, общей для всех потоков данных.
+ * <p>
+ * Политика переполнения: если буфер заполнен, новое показание отбрасывается, а счётчик
+ * {@link #getDroppedCount()} увеличивается. Уже принятые показания не перезаписываются, поэтому потребитель
+ * всегда получает непрерывную последовательность.
+ * <p>
+ * Порядок работы производителя: {@link #claim()}, запись столбцов по полученному слоту, {@link #publish()}.
+ * Порядок работы потребителя: {@link #peek()}, чтение столбцов по слоту, {@link #release()}.
+ */
+public abstract class SpscRingBuffer {
+	/**
+	 * Признак отсутствия свободного или заполненного слота
+	 */
+	public static final int NO_SLOT = -1;
+
+	private final int mCapacity;
+
+	private final int mMask;
+
+	/**
+	 * Метки времени показаний, мс
+	 */
+	protected final long[] mTimestamps;
+
+	/**
+	 * Индекс следующего слота для чтения (изменяется только потребителем)
+	 */
+	private final AtomicLong mHead = new AtomicLong();
+
+	/**
+	 * Индекс следующего слота для записи (изменяется только производителем)
+	 */
+	private final AtomicLong mTail = new AtomicLong();
+
+	/**
+	 * Количество отброшенных из-за переполнения показаний
+	 */
+	private final AtomicLong mDroppedCount = new AtomicLong();
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param capacity минимальная ёмкость буфера, округляется вверх до степени двойки
+	 */
+	protected SpscRingBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+
+		mCapacity = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+		mMask = mCapacity - 1;
+		mTimestamps = new long[mCapacity];
+	}
+
+	/**
+	 * Резервирует слот для записи. Вызывается только производителем.
+	 *
+	 * @return индекс слота или {@link #NO_SLOT}, если буфер заполнен (показание считается отброшенным)
+	 */
+	protected final int claim() {
+		long tail = mTail.get();
+		if (tail - mHead.get() >= mCapacity) {
+			mDroppedCount.incrementAndGet();
+			return NO_SLOT;
+		}
+
+		return (int) (tail & mMask);
+	}
+
+	/**
+	 * Делает записанный слот видимым для потребителя. Вызывается только производителем после {@link #claim()}.
+	 */
+	protected final void publish() {
+		mTail.lazySet(mTail.get() + 1);
+	}
+
+	/**
+	 * Возвращает слот самого старого непрочитанного показания. Вызывается только потребителем.
+	 *
+	 * @return индекс слота или {@link #NO_SLOT}, если буфер пуст
+	 */
+	public final int peek() {
+		long head = mHead.get();
+		if (head >= mTail.get()) {
+			return NO_SLOT;
+		}
+
+		return (int) (head & mMask);
+	}
+
+	/**
+	 * Освобождает слот, полученный через {@link #peek()}. Вызывается только потребителем.
+	 */
+	public final void release() {
+		mHead.lazySet(mHead.get() + 1);
+	}
+
+	/**
+	 * Отбрасывает все непрочитанные показания. Вызывается только потребителем.
+	 */
+	public final void clear() {
+		mHead.lazySet(mTail.get());
+	}
+
+	public final long getTimestamp(int slot) {
+		return mTimestamps[slot];
+	}
+
+	/**
+	 * @return количество непрочитанных показаний
+	 */
+	public final int size() {
+		return (int) (mTail.get() - mHead.get());
+	}
+
+	public final int getCapacity() {
+		return mCapacity;
+	}
+
+	public final long getDroppedCount() {
+		return mDroppedCount.get();
+	}
+}
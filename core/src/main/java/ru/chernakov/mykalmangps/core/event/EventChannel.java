@@ -0,0 +1,159 @@
+package ru.chernakov.mykalmangps.core.event;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Канал событий одного типа.
+ * <p>
+ * Подписчики хранятся в массиве, который заменяется копией при подписке и отписке (copy-on-write), поэтому
+ * {@link #post} не берёт блокировок и не выделяет памяти: читает массив и вызывает подписчиков.
+ * <p>
+ * Подписчик выбирает, где получать события:
+ * <ul>
+ * <li>{@link #DIRECT} — синхронно в потоке, вызвавшем {@link #post};</li>
+ * <li>любой другой {@link Executor} (главный поток, фоновый поток) — событие кладётся в ячейку подписчика,
+ * и задача доставки, созданная при подписке, ставится в исполнитель, только если ячейка была пуста. Пока
+ * доставка не выполнена, новые события заменяют ожидающее: подписчик получает последнее событие, а не все
+ * промежуточные.</li>
+ * </ul>
+ *
+ * @param <T> тип события
+ */
+public final class EventChannel<T> {
+	/**
+	 * Синхронная доставка в потоке отправителя
+	 */
+	public static final Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private final String mName;
+
+	private volatile Subscriber<T>[] mSubscribers = newArray(0);
+
+	public EventChannel(String name) {
+		mName = name;
+	}
+
+	/**
+	 * Подписывает получателя. Повторная подписка того же получателя заменяет исполнитель.
+	 *
+	 * @param listener получатель
+	 * @param executor исполнитель доставки: {@link #DIRECT} или исполнитель потока получателя
+	 */
+	public synchronized void subscribe(EventListener<? super T> listener, Executor executor) {
+		Subscriber<T>[] subscribers = mSubscribers;
+		int index = indexOf(subscribers, listener);
+		Subscriber<T>[] copy;
+		if (index >= 0) {
+			subscribers[index].mActive = false;
+			copy = subscribers.clone();
+		} else {
+			copy = newArray(subscribers.length + 1);
+			System.arraycopy(subscribers, 0, copy, 0, subscribers.length);
+			index = subscribers.length;
+		}
+		copy[index] = new Subscriber<T>(listener, executor);
+		mSubscribers = copy;
+	}
+
+	/**
+	 * Отписывает получателя. Событие, уже поставленное в исполнитель, не доставляется.
+	 *
+	 * @param listener получатель
+	 * @return true, если получатель был подписан
+	 */
+	public synchronized boolean unsubscribe(EventListener<? super T> listener) {
+		Subscriber<T>[] subscribers = mSubscribers;
+		int index = indexOf(subscribers, listener);
+		if (index < 0) {
+			return false;
+		}
+
+		subscribers[index].mActive = false;
+		Subscriber<T>[] copy = newArray(subscribers.length - 1);
+		System.arraycopy(subscribers, 0, copy, 0, index);
+		System.arraycopy(subscribers, index + 1, copy, index, subscribers.length - index - 1);
+		mSubscribers = copy;
+
+		return true;
+	}
+
+	/**
+	 * Рассылает событие подписчикам. Может вызываться из любого потока.
+	 *
+	 * @param event событие
+	 */
+	public void post(T event) {
+		Subscriber<T>[] subscribers = mSubscribers;
+		for (int i = 0; i < subscribers.length; i++) {
+			subscribers[i].deliver(event);
+		}
+	}
+
+	public int getSubscriberCount() {
+		return mSubscribers.length;
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	@Override
+	public String toString() {
+		return mName + " (" + getSubscriberCount() + " subscribers)";
+	}
+
+	private static <T> int indexOf(Subscriber<T>[] subscribers, EventListener<?> listener) {
+		for (int i = 0; i < subscribers.length; i++) {
+			if (subscribers[i].mListener == listener) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Subscriber<T>[] newArray(int length) {
+		return (Subscriber<T>[]) new Subscriber<?>[length];
+	}
+
+	private static final class Subscriber<T> implements Runnable {
+		final EventListener<? super T> mListener;
+
+		final Executor mExecutor;
+
+		/**
+		 * Событие, ожидающее доставки через {@link #mExecutor}
+		 */
+		final AtomicReference<T> mPending = new AtomicReference<>();
+
+		volatile boolean mActive = true;
+
+		Subscriber(EventListener<? super T> listener, Executor executor) {
+			mListener = listener;
+			mExecutor = executor;
+		}
+
+		void deliver(T event) {
+			if (mExecutor == DIRECT) {
+				mListener.onEvent(event);
+			} else if (mPending.getAndSet(event) == null) {
+				mExecutor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			T event = mPending.getAndSet(null);
+			if (event != null && mActive) {
+				mListener.onEvent(event);
+			}
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package ru.chernakov.mykalmangps.core.event;
+
+/**
+ * Получатель событий канала {@link EventChannel}.
+ *
+ * @param <T> тип события
+ */
+public interface EventListener<T> {
+	void onEvent(T event);
+}
@@ -0,0 +1,66 @@
+package ru.chernakov.mykalmangps.core.filter;
+
+/**
+ * Фильтр Калмана для модели "положение + скорость" по осям x/y, объединяющий показания акселерометра
+ * (шаг предсказания) и GNSS (шаг коррекции).
+ * <p>
+ * Координаты задаются в метрах, ускорения в м/с², время в миллисекундах.
+ */
+public interface GpsAccFilter {
+	/**
+	 * Выполняет шаг предсказания.
+	 *
+	 * @param timeNowMs время измерения ускорения, мс
+	 * @param xAcc      ускорение по оси x (восток), м/с²
+	 * @param yAcc      ускорение по оси y (север), м/с²
+	 */
+	void predict(double timeNowMs, double xAcc, double yAcc);
+
+	/**
+	 * Выполняет шаг коррекции по данным GNSS.
+	 *
+	 * @param timeStamp время определения местоположения, мс
+	 * @param x         координата x, м
+	 * @param y         координата y, м
+	 * @param xVel      скорость по оси x, м/с
+	 * @param yVel      скорость по оси y, м/с
+	 * @param posDev    погрешность определения координат
+	 * @param velErr    погрешность определения скорости
+	 */
+	void update(double timeStamp, double x, double y, double xVel, double yVel, double posDev, double velErr);
+
+	/**
+	 * Останавливает фильтр в текущем положении: обнуляет скорость, приравнивает априорное состояние
+	 * апостериорному и начинает отсчёт времени шагов предсказания с {@code timeStampMs}. Вызывается при переходе
+	 * устройства в неподвижное состояние и при выходе из него: шаги предсказания на время неподвижности
+	 * пропускаются.
+	 *
+	 * @param timeStampMs время, мс
+	 */
+	void holdPosition(double timeStampMs);
+
+	/**
+	 * Сдвигает начало координат: положение (x, y) становится (x + dx, y + dy). Скорость и ковариация не
+	 * меняются. Вызывается при переносе опорной точки локальной проекции.
+	 *
+	 * @param dx сдвиг по оси x, м
+	 * @param dy сдвиг по оси y, м
+	 */
+	void translate(double dx, double dy);
+
+	double getCurrentX();
+
+	double getCurrentY();
+
+	double getCurrentXVel();
+
+	double getCurrentYVel();
+
+	/**
+	 * Возвращает апостериорную ковариацию координаты (элемент P[x][x], для оси y она та же). Модель передаёт
+	 * погрешность GNSS в матрицу R без возведения в квадрат, поэтому значение сопоставимо с погрешностью в метрах.
+	 *
+	 * @return ковариация положения или {@link Double#NaN}, если фильтр её не предоставляет
+	 */
+	double getPositionCovariance();
+}
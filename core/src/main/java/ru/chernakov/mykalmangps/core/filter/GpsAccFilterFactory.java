@@ -0,0 +1,17 @@
+package ru.chernakov.mykalmangps.core.filter;
+
+/**
+ * Создаёт фильтр по первому определению местоположения.
+ */
+public interface GpsAccFilterFactory {
+	/**
+	 * @param x           начальная координата x, м
+	 * @param y           начальная координата y, м
+	 * @param xVel        начальная скорость по оси x, м/с
+	 * @param yVel        начальная скорость по оси y, м/с
+	 * @param posDev      погрешность определения координат
+	 * @param timeStampMs время определения местоположения, мс
+	 * @return фильтр точек
+	 */
+	GpsAccFilter create(double x, double y, double xVel, double yVel, double posDev, long timeStampMs);
+}
@@ -0,0 +1,226 @@
+package ru.chernakov.mykalmangps.core.filter;
+
+/**
+ * Фильтр Калмана для модели "положение + скорость" по осям x/y с развёрнутыми в явном виде
+ * матричными операциями.
+ * <p>
+ * Повторяет модель {@code GPSAccKalmanFilter} из библиотеки mad-location-manager (те же матрицы F, B, Q, R и
+ * тот же порядок шагов), но хранит состояние в полях типа {@code double} и не выделяет память на шагах
+ * {@link #predict} и {@link #update}.
+ * <p>
+ * Модель по осям x и y не связана, а матрицы Q и R для обеих осей одинаковы, поэтому ковариационная матрица 4x4
+ * распадается на два одинаковых блока 2x2 "положение-скорость". Хранится один такой блок.
+ * <p>
+ * Отличие от библиотеки: априорное состояние при создании фильтра совпадает с начальным, поэтому коррекция до
+ * первого шага предсказания не обнуляет положение.
+ */
+public final class PrimitiveGpsAccFilter implements GpsAccFilter {
+	private final boolean mUseGpsSpeed;
+	private final double mAccSigma;
+	private final double mVelFactor;
+	private final double mPosFactor;
+
+	private double mTimeStampMsPredict;
+	private int mPredictCount;
+
+	// Апостериорное состояние
+	private double mX;
+	private double mY;
+	private double mXVel;
+	private double mYVel;
+
+	// Априорное состояние (после шага предсказания)
+	private double mXPrior;
+	private double mYPrior;
+	private double mXVelPrior;
+	private double mYVelPrior;
+
+	// Апостериорная ковариация блока "положение-скорость"
+	private double mPosPos;
+	private double mPosVel;
+	private double mVelVel;
+
+	// Априорная ковариация блока "положение-скорость"
+	private double mPosPosPrior;
+	private double mPosVelPrior;
+	private double mVelVelPrior;
+
+	public PrimitiveGpsAccFilter(boolean useGpsSpeed, double x, double y, double xVel, double yVel,
+	                             double accDev, double posDev, double timeStampMs,
+	                             double velFactor, double posFactor) {
+		mUseGpsSpeed = useGpsSpeed;
+		mAccSigma = accDev;
+		mVelFactor = velFactor;
+		mPosFactor = posFactor;
+		mTimeStampMsPredict = timeStampMs;
+		mPredictCount = 0;
+
+		mX = mXPrior = x;
+		mY = mYPrior = y;
+		mXVel = mXVelPrior = xVel;
+		mYVel = mYVelPrior = yVel;
+
+		mPosPos = mPosPosPrior = posDev;
+		mPosVel = mPosVelPrior = 0.0;
+		mVelVel = mVelVelPrior = posDev;
+	}
+
+	@Override
+	public void predict(double timeNowMs, double xAcc, double yAcc) {
+		double dt = (timeNowMs - mTimeStampMsPredict) / 1000.0;
+		double dt05 = 0.5 * dt * dt;
+
+		++mPredictCount;
+		mTimeStampMsPredict = timeNowMs;
+
+		// Q
+		double velDev = mAccSigma * mPredictCount;
+		double posDev = velDev * mPredictCount / 2;
+		double covDev = velDev * posDev;
+
+		// x(k|k-1) = F * x(k-1|k-1) + B * u
+		mXPrior = mX + dt * mXVel + dt05 * xAcc;
+		mYPrior = mY + dt * mYVel + dt05 * yAcc;
+		mXVelPrior = mXVel + dt * xAcc;
+		mYVelPrior = mYVel + dt * yAcc;
+
+		// P(k|k-1) = F * P(k-1|k-1) * F' + Q
+		mPosPosPrior = mPosPos + 2.0 * dt * mPosVel + dt * dt * mVelVel + posDev * posDev;
+		mPosVelPrior = mPosVel + dt * mVelVel + covDev;
+		mVelVelPrior = mVelVel + velDev * velDev;
+
+		mX = mXPrior;
+		mY = mYPrior;
+		mXVel = mXVelPrior;
+		mYVel = mYVelPrior;
+	}
+
+	@Override
+	public void update(double timeStamp, double x, double y, double xVel, double yVel, double posDev, double velErr) {
+		mPredictCount = 0;
+
+		double posSigma = posDev * mPosFactor;
+		double velSigma = velErr * mVelFactor;
+
+		if (mUseGpsSpeed) {
+			updatePositionVelocity(x, y, xVel, yVel, posSigma, velSigma);
+		} else {
+			updatePosition(x, y, posSigma);
+		}
+	}
+
+	/**
+	 * Коррекция только по координатам: H = [1 0], S и K вырождаются в скаляр и вектор 2x1.
+	 */
+	private void updatePosition(double x, double y, double posSigma) {
+		double s = mPosPosPrior + posSigma;
+		if (s == 0.0) {
+			return;
+		}
+
+		double kPos = mPosPosPrior / s;
+		double kVel = mPosVelPrior / s;
+
+		double dx = x - mXPrior;
+		double dy = y - mYPrior;
+		mX = mXPrior + kPos * dx;
+		mY = mYPrior + kPos * dy;
+		mXVel = mXVelPrior + kVel * dx;
+		mYVel = mYVelPrior + kVel * dy;
+
+		// P(k|k) = (I - K * H) * P(k|k-1)
+		mPosPos = (1.0 - kPos) * mPosPosPrior;
+		mPosVel = (1.0 - kPos) * mPosVelPrior;
+		mVelVel = mVelVelPrior - kVel * mPosVelPrior;
+	}
+
+	/**
+	 * Коррекция по координатам и скорости: H = I, S и K являются матрицами 2x2.
+	 */
+	private void updatePositionVelocity(double x, double y, double xVel, double yVel,
+	                                    double posSigma, double velSigma) {
+		double s00 = mPosPosPrior + posSigma;
+		double s01 = mPosVelPrior;
+		double s11 = mVelVelPrior + velSigma;
+		double det = s00 * s11 - s01 * s01;
+		if (det == 0.0) {
+			return;
+		}
+
+		double inv00 = s11 / det;
+		double inv01 = -s01 / det;
+		double inv11 = s00 / det;
+
+		// K = P(k|k-1) * S^-1
+		double k00 = mPosPosPrior * inv00 + mPosVelPrior * inv01;
+		double k01 = mPosPosPrior * inv01 + mPosVelPrior * inv11;
+		double k10 = mPosVelPrior * inv00 + mVelVelPrior * inv01;
+		double k11 = mPosVelPrior * inv01 + mVelVelPrior * inv11;
+
+		double dx = x - mXPrior;
+		double dy = y - mYPrior;
+		double dxVel = xVel - mXVelPrior;
+		double dyVel = yVel - mYVelPrior;
+		mX = mXPrior + k00 * dx + k01 * dxVel;
+		mY = mYPrior + k00 * dy + k01 * dyVel;
+		mXVel = mXVelPrior + k10 * dx + k11 * dxVel;
+		mYVel = mYVelPrior + k10 * dy + k11 * dyVel;
+
+		// P(k|k) = (I - K) * P(k|k-1)
+		double posPos = (1.0 - k00) * mPosPosPrior - k01 * mPosVelPrior;
+		double posVel = (1.0 - k00) * mPosVelPrior - k01 * mVelVelPrior;
+		double velVel = -k10 * mPosVelPrior + (1.0 - k11) * mVelVelPrior;
+		mPosPos = posPos;
+		mPosVel = posVel;
+		mVelVel = velVel;
+	}
+
+	@Override
+	public void holdPosition(double timeStampMs) {
+		mTimeStampMsPredict = timeStampMs;
+		mPredictCount = 0;
+
+		mXPrior = mX;
+		mYPrior = mY;
+		mXVel = mXVelPrior = 0.0;
+		mYVel = mYVelPrior = 0.0;
+
+		// Дисперсия скорости сохраняется: после выхода из неподвижности скорость заново оценивается по определениям
+		mPosPosPrior = mPosPos;
+		mPosVel = mPosVelPrior = 0.0;
+		mVelVelPrior = mVelVel;
+	}
+
+	@Override
+	public void translate(double dx, double dy) {
+		mX += dx;
+		mY += dy;
+		mXPrior += dx;
+		mYPrior += dy;
+	}
+
+	@Override
+	public double getCurrentX() {
+		return mX;
+	}
+
+	@Override
+	public double getCurrentY() {
+		return mY;
+	}
+
+	@Override
+	public double getCurrentXVel() {
+		return mXVel;
+	}
+
+	@Override
+	public double getCurrentYVel() {
+		return mYVel;
+	}
+
+	@Override
+	public double getPositionCovariance() {
+		return mPosPos;
+	}
+}
@@ -0,0 +1,333 @@
+package ru.chernakov.mykalmangps.core.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ru.chernakov.mykalmangps.core.geo.LocalProjection;
+import ru.chernakov.mykalmangps.core.track.ColumnarTrack;
+
+/**
+ * Сглаживание записанного трека на фиксированном интервале: прямой проход фильтром Калмана и обратный проход
+ * Рауха–Тунга–Штрибеля (RTS).
+ * <p>
+ * Модель — постоянная скорость по осям восток/север с белым шумом ускорения {@code accSigma}; измерения —
+ * координаты точек трека с дисперсией, равной квадрату их погрешности. Модель по осям не связана, а шумы для
+ * осей одинаковы, поэтому хранится один блок ковариации 2x2 "положение-скорость" на шаг.
+ * <p>
+ * Трек делится на участки по разрывам больше {@code maxGapMs}; участки сглаживаются независимо и параллельно
+ * в {@link ForkJoinPool}. Состояние каждого шага хранится в массивах примитивов, общих для всех участков
+ * (участки не пересекаются по индексам).
+ */
+public final class RtsSmoother {
+	/**
+	 * Интенсивность шума ускорения по умолчанию, м/с²
+	 */
+	public static final double DEFAULT_ACC_SIGMA = 1.0;
+
+	/**
+	 * Разрыв между точками, по которому трек делится на участки по умолчанию, мс
+	 */
+	public static final long DEFAULT_MAX_GAP_MS = 30000;
+
+	/**
+	 * Наименьшая погрешность точки, м: защищает от нулевой дисперсии измерения
+	 */
+	private static final float MIN_ACCURACY = 1.0f;
+
+	/**
+	 * Начальная дисперсия скорости, (м/с)²
+	 */
+	private static final double INITIAL_VELOCITY_VARIANCE = 100.0;
+
+	private final double mAccVariance;
+
+	private final long mMaxGapMs;
+
+	private final ForkJoinPool mPool;
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param accSigma интенсивность шума ускорения, м/с²
+	 * @param maxGapMs разрыв между точками, по которому трек делится на участки, мс
+	 * @param pool     пул потоков для параллельного сглаживания участков
+	 */
+	public RtsSmoother(double accSigma, long maxGapMs, ForkJoinPool pool) {
+		mAccVariance = accSigma * accSigma;
+		mMaxGapMs = maxGapMs;
+		mPool = pool;
+	}
+
+	/**
+	 * Сглаживает трек.
+	 *
+	 * @param track трек (точки в порядке времени)
+	 * @return новый трек с теми же временем точек; погрешность, скорость и направление — по сглаженному состоянию
+	 */
+	public ColumnarTrack smooth(ColumnarTrack track) {
+		int size = track.size();
+		Workspace workspace = new Workspace(size);
+		ColumnarTrack.Cursor cursor = track.cursor();
+		while (cursor.moveToNext()) {
+			int i = cursor.getIndex();
+			workspace.mTime[i] = cursor.getTime();
+			workspace.mLatitude[i] = cursor.getLatitude();
+			workspace.mLongitude[i] = cursor.getLongitude();
+			workspace.mAccuracy[i] = Math.max(cursor.getAccuracy(), MIN_ACCURACY);
+		}
+
+		int[] bounds = findSegments(workspace.mTime, size, mMaxGapMs);
+		List<SegmentTask> tasks = new ArrayList<>(bounds.length - 1);
+		for (int i = 0; i < bounds.length - 1; i++) {
+			tasks.add(new SegmentTask(workspace, bounds[i], bounds[i + 1]));
+		}
+		mPool.invoke(new AllSegmentsTask(tasks));
+
+		ColumnarTrack result = new ColumnarTrack();
+		for (int i = 0; i < size; i++) {
+			result.append(workspace.mTime[i], workspace.mLatitude[i], workspace.mLongitude[i],
+					workspace.mAccuracy[i], workspace.mSpeed[i], workspace.mBearing[i]);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Делит трек на участки по разрывам во времени.
+	 *
+	 * @return границы участков: участок {@code k} содержит точки с {@code bounds[k]} по {@code bounds[k + 1] - 1}
+	 */
+	static int[] findSegments(long[] time, int size, long maxGapMs) {
+		int[] bounds = new int[size + 1];
+		int count = 0;
+		bounds[count++] = 0;
+		for (int i = 1; i < size; i++) {
+			if (time[i] - time[i - 1] > maxGapMs) {
+				bounds[count++] = i;
+			}
+		}
+		if (size > 0) {
+			bounds[count++] = size;
+		}
+
+		int[] result = new int[count];
+		System.arraycopy(bounds, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * Сглаживает участок трека с {@code from} по {@code to - 1}: прямой проход и обратный проход RTS.
+	 */
+	private void smoothSegment(Workspace w, int from, int to) {
+		// Измерения в метрах проекции с началом в середине участка: до коррекции i-го шага mX[i], mY[i]
+		// содержат измерение
+		int middle = (from + to) >>> 1;
+		LocalProjection projection = new LocalProjection(LocalProjection.DEFAULT_REANCHOR_DISTANCE);
+		projection.anchor(w.mLatitude[middle], w.mLongitude[middle]);
+		projection.toLocal(w.mLatitude, w.mLongitude, from, to - from, w.mX, w.mY);
+
+		// Прямой проход
+		for (int i = from; i < to; i++) {
+			double zx = w.mX[i];
+			double zy = w.mY[i];
+			double r = w.mAccuracy[i] * w.mAccuracy[i];
+
+			double x, y, vx, vy, pp, pv, vv;
+			if (i == from) {
+				x = zx;
+				y = zy;
+				vx = 0.0;
+				vy = 0.0;
+				pp = r;
+				pv = 0.0;
+				vv = INITIAL_VELOCITY_VARIANCE;
+			} else {
+				double dt = (w.mTime[i] - w.mTime[i - 1]) / 1000.0;
+				double q = mAccVariance;
+				x = w.mX[i - 1] + dt * w.mVx[i - 1];
+				y = w.mY[i - 1] + dt * w.mVy[i - 1];
+				vx = w.mVx[i - 1];
+				vy = w.mVy[i - 1];
+				// P = F P F^T + Q, F = [[1, dt], [0, 1]], Q = q * [[dt³/3, dt²/2], [dt²/2, dt]]
+				double ppPrev = w.mPosPos[i - 1];
+				double pvPrev = w.mPosVel[i - 1];
+				double vvPrev = w.mVelVel[i - 1];
+				pp = ppPrev + 2.0 * dt * pvPrev + dt * dt * vvPrev + q * dt * dt * dt / 3.0;
+				pv = pvPrev + dt * vvPrev + q * dt * dt / 2.0;
+				vv = vvPrev + q * dt;
+			}
+
+			// Априорное состояние для обратного прохода
+			w.mXPrior[i] = x;
+			w.mYPrior[i] = y;
+			w.mVxPrior[i] = vx;
+			w.mVyPrior[i] = vy;
+			w.mPosPosPrior[i] = pp;
+			w.mPosVelPrior[i] = pv;
+			w.mVelVelPrior[i] = vv;
+
+			if (i != from) {
+				// Коррекция по координатам, H = [1, 0]
+				double s = pp + r;
+				double kp = pp / s;
+				double kv = pv / s;
+				double ex = zx - x;
+				double ey = zy - y;
+				x += kp * ex;
+				y += kp * ey;
+				vx += kv * ex;
+				vy += kv * ey;
+				double ppNew = (1.0 - kp) * pp;
+				double pvNew = (1.0 - kp) * pv;
+				double vvNew = vv - kv * pv;
+				pp = ppNew;
+				pv = pvNew;
+				vv = vvNew;
+			}
+
+			w.mX[i] = x;
+			w.mY[i] = y;
+			w.mVx[i] = vx;
+			w.mVy[i] = vy;
+			w.mPosPos[i] = pp;
+			w.mPosVel[i] = pv;
+			w.mVelVel[i] = vv;
+		}
+
+		// Обратный проход RTS: результат записывается на место апостериорного состояния
+		for (int i = to - 2; i >= from; i--) {
+			double dt = (w.mTime[i + 1] - w.mTime[i]) / 1000.0;
+			double pp = w.mPosPos[i];
+			double pv = w.mPosVel[i];
+			double vv = w.mVelVel[i];
+
+			// C = P F^T Pprior⁻¹
+			double a = pp + dt * pv;
+			double b = pv;
+			double c = pv + dt * vv;
+			double d = vv;
+			double priorPp = w.mPosPosPrior[i + 1];
+			double priorPv = w.mPosVelPrior[i + 1];
+			double priorVv = w.mVelVelPrior[i + 1];
+			double det = priorPp * priorVv - priorPv * priorPv;
+			double c11 = (a * priorVv - b * priorPv) / det;
+			double c12 = (b * priorPp - a * priorPv) / det;
+			double c21 = (c * priorVv - d * priorPv) / det;
+			double c22 = (d * priorPp - c * priorPv) / det;
+
+			double dx = w.mX[i + 1] - w.mXPrior[i + 1];
+			double dvx = w.mVx[i + 1] - w.mVxPrior[i + 1];
+			double dy = w.mY[i + 1] - w.mYPrior[i + 1];
+			double dvy = w.mVy[i + 1] - w.mVyPrior[i + 1];
+			w.mX[i] += c11 * dx + c12 * dvx;
+			w.mVx[i] += c21 * dx + c22 * dvx;
+			w.mY[i] += c11 * dy + c12 * dvy;
+			w.mVy[i] += c21 * dy + c22 * dvy;
+
+			// P = P + C (Psmoothed - Pprior) C^T
+			double ep = w.mPosPos[i + 1] - priorPp;
+			double ev = w.mPosVel[i + 1] - priorPv;
+			double ee = w.mVelVel[i + 1] - priorVv;
+			w.mPosPos[i] = pp + c11 * (c11 * ep + c12 * ev) + c12 * (c11 * ev + c12 * ee);
+			w.mPosVel[i] = pv + c11 * (c21 * ep + c22 * ev) + c12 * (c21 * ev + c22 * ee);
+			w.mVelVel[i] = vv + c21 * (c21 * ep + c22 * ev) + c22 * (c21 * ev + c22 * ee);
+		}
+
+		projection.toGeo(w.mX, w.mY, from, to - from, w.mLatitude, w.mLongitude);
+		for (int i = from; i < to; i++) {
+			w.mAccuracy[i] = (float) Math.sqrt(Math.max(w.mPosPos[i], 0.0));
+			w.mSpeed[i] = (float) Math.sqrt(w.mVx[i] * w.mVx[i] + w.mVy[i] * w.mVy[i]);
+			double bearing = Math.toDegrees(Math.atan2(w.mVx[i], w.mVy[i]));
+			w.mBearing[i] = (float) (bearing < 0.0 ? bearing + 360.0 : bearing);
+		}
+	}
+
+	/**
+	 * Состояние всех шагов сглаживания в массивах примитивов.
+	 */
+	private static final class Workspace {
+		final long[] mTime;
+		final double[] mLatitude;
+		final double[] mLongitude;
+		final float[] mAccuracy;
+		final float[] mSpeed;
+		final float[] mBearing;
+
+		// Апостериорное (после обратного прохода — сглаженное) состояние
+		final double[] mX;
+		final double[] mY;
+		final double[] mVx;
+		final double[] mVy;
+		final double[] mPosPos;
+		final double[] mPosVel;
+		final double[] mVelVel;
+
+		// Априорное состояние
+		final double[] mXPrior;
+		final double[] mYPrior;
+		final double[] mVxPrior;
+		final double[] mVyPrior;
+		final double[] mPosPosPrior;
+		final double[] mPosVelPrior;
+		final double[] mVelVelPrior;
+
+		Workspace(int size) {
+			mTime = new long[size];
+			mLatitude = new double[size];
+			mLongitude = new double[size];
+			mAccuracy = new float[size];
+			mSpeed = new float[size];
+			mBearing = new float[size];
+			mX = new double[size];
+			mY = new double[size];
+			mVx = new double[size];
+			mVy = new double[size];
+			mPosPos = new double[size];
+			mPosVel = new double[size];
+			mVelVel = new double[size];
+			mXPrior = new double[size];
+			mYPrior = new double[size];
+			mVxPrior = new double[size];
+			mVyPrior = new double[size];
+			mPosPosPrior = new double[size];
+			mPosVelPrior = new double[size];
+			mVelVelPrior = new double[size];
+		}
+	}
+
+	private final class SegmentTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Workspace mWorkspace;
+		private final int mFrom;
+		private final int mTo;
+
+		SegmentTask(Workspace workspace, int from, int to) {
+			mWorkspace = workspace;
+			mFrom = from;
+			mTo = to;
+		}
+
+		@Override
+		protected void compute() {
+			smoothSegment(mWorkspace, mFrom, mTo);
+		}
+	}
+
+	private static final class AllSegmentsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<SegmentTask> mTasks;
+
+		AllSegmentsTask(List<SegmentTask> tasks) {
+			mTasks = tasks;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(mTasks);
+		}
+	}
+}
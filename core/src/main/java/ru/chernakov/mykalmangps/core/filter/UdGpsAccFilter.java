@@ -0,0 +1,213 @@
+package ru.chernakov.mykalmangps.core.filter;
+
+/**
+ * Фильтр Калмана модели {@link PrimitiveGpsAccFilter} с хранением в полях типа {@code float} и ковариацией в
+ * UD-разложении.
+ * <p>
+ * Блок ковариации "положение-скорость" хранится как {@code P = U·D·Uᵀ}, где {@code U = [[1, u], [0, 1]]},
+ * {@code D = diag(d0, d1)}; априорное и апостериорное разложения хранятся отдельно, как и ковариации в
+ * {@link PrimitiveGpsAccFilter}. Шаг предсказания выполняется взвешенной ортогонализацией Грама-Шмидта
+ * (Thornton): матрица Q модели имеет ранг 1 ({@code Q = g·gᵀ}, {@code g = (posDev, velDev)}), поэтому
+ * {@code d0} и {@code d1} вычисляются как суммы неотрицательных слагаемых. Коррекция выполняется алгоритмом
+ * Бирмана последовательно по скалярным измерениям (матрица R диагональна): диагональ D умножается на
+ * отношения положительных величин. Ковариация остаётся положительно определённой при любом округлении, тогда
+ * как в прямом переносе {@code P(k|k) = (I − K·H)·P(k|k−1)} на {@code float} разность близких величин
+ * уводит её в отрицательные значения.
+ * <p>
+ * Время шагов предсказания хранится в {@code double}: миллисекунды от загрузки устройства не помещаются в
+ * мантиссу {@code float}. Координаты должны быть локальными (см. {@code LocalProjection}): на расстоянии 10 км
+ * от начала координат шаг {@code float} — около миллиметра.
+ */
+public final class UdGpsAccFilter implements GpsAccFilter {
+	private final boolean mUseGpsSpeed;
+	private final float mAccSigma;
+	private final float mVelFactor;
+	private final float mPosFactor;
+
+	private double mTimeStampMsPredict;
+	private int mPredictCount;
+
+	private float mX;
+	private float mY;
+	private float mXVel;
+	private float mYVel;
+
+	// UD-разложение апостериорной ковариации блока "положение-скорость"
+	private float mU;
+	private float mD0;
+	private float mD1;
+
+	// UD-разложение априорной ковариации блока "положение-скорость"
+	private float mUPrior;
+	private float mD0Prior;
+	private float mD1Prior;
+
+	public UdGpsAccFilter(boolean useGpsSpeed, double x, double y, double xVel, double yVel,
+	                      double accDev, double posDev, double timeStampMs,
+	                      double velFactor, double posFactor) {
+		mUseGpsSpeed = useGpsSpeed;
+		mAccSigma = (float) accDev;
+		mVelFactor = (float) velFactor;
+		mPosFactor = (float) posFactor;
+		mTimeStampMsPredict = timeStampMs;
+		mPredictCount = 0;
+
+		mX = (float) x;
+		mY = (float) y;
+		mXVel = (float) xVel;
+		mYVel = (float) yVel;
+
+		mU = mUPrior = 0.0f;
+		mD0 = mD0Prior = (float) posDev;
+		mD1 = mD1Prior = (float) posDev;
+	}
+
+	@Override
+	public void predict(double timeNowMs, double xAcc, double yAcc) {
+		float dt = (float) ((timeNowMs - mTimeStampMsPredict) / 1000.0);
+		float dt05 = 0.5f * dt * dt;
+		float ax = (float) xAcc;
+		float ay = (float) yAcc;
+
+		++mPredictCount;
+		mTimeStampMsPredict = timeNowMs;
+
+		// Q = g * g'
+		float velDev = mAccSigma * mPredictCount;
+		float posDev = velDev * mPredictCount / 2;
+
+		// x(k|k-1) = F * x(k-1|k-1) + B * u
+		mX += dt * mXVel + dt05 * ax;
+		mY += dt * mYVel + dt05 * ay;
+		mXVel += dt * ax;
+		mYVel += dt * ay;
+
+		// Строки W = [F * U | g] = [[1, u + dt, posDev], [0, 1, velDev]] с весами diag(d0, d1, 1)
+		float w01 = mU + dt;
+		float d1 = mD1 + velDev * velDev;
+		if (d1 <= 0.0f) {
+			return;
+		}
+		float u = (w01 * mD1 + posDev * velDev) / d1;
+		float r1 = w01 - u;
+		float r2 = posDev - u * velDev;
+		mD0Prior = mD0 + mD1 * r1 * r1 + r2 * r2;
+		mD1Prior = d1;
+		mUPrior = u;
+	}
+
+	@Override
+	public void update(double timeStamp, double x, double y, double xVel, double yVel, double posDev, double velErr) {
+		mPredictCount = 0;
+
+		updatePosition((float) x, (float) y, (float) posDev * mPosFactor);
+		if (mUseGpsSpeed) {
+			updateVelocity((float) xVel, (float) yVel, (float) velErr * mVelFactor);
+		}
+	}
+
+	/**
+	 * Коррекция по координатам (H = [1 0]) алгоритмом Бирмана: апостериорное разложение вычисляется по
+	 * априорному.
+	 */
+	private void updatePosition(float x, float y, float posSigma) {
+		// f = U' * h = (1, u), v = D * f
+		float v0 = mD0Prior;
+		float v1 = mD1Prior * mUPrior;
+		float alpha0 = posSigma + v0;
+		float alpha1 = alpha0 + mUPrior * v1;
+		if (alpha0 <= 0.0f || alpha1 <= 0.0f) {
+			return;
+		}
+
+		// K = (v0 + u * v1, v1) / alpha1
+		float kPos = (v0 + mUPrior * v1) / alpha1;
+		float kVel = v1 / alpha1;
+
+		mD0 = mD0Prior * posSigma / alpha0;
+		mD1 = mD1Prior * alpha0 / alpha1;
+		mU = mUPrior * posSigma / alpha0;
+
+		float dx = x - mX;
+		float dy = y - mY;
+		mX += kPos * dx;
+		mY += kPos * dy;
+		mXVel += kVel * dx;
+		mYVel += kVel * dy;
+	}
+
+	/**
+	 * Коррекция по скорости (H = [0 1]) алгоритмом Бирмана, после коррекции по координатам.
+	 */
+	private void updateVelocity(float xVel, float yVel, float velSigma) {
+		// f = U' * h = (0, 1), v = D * f = (0, d1)
+		float alpha = velSigma + mD1;
+		if (velSigma <= 0.0f || alpha <= 0.0f) {
+			return;
+		}
+
+		float kPos = mU * mD1 / alpha;
+		float kVel = mD1 / alpha;
+
+		mD1 = mD1 * velSigma / alpha;
+
+		float dxVel = xVel - mXVel;
+		float dyVel = yVel - mYVel;
+		mX += kPos * dxVel;
+		mY += kPos * dyVel;
+		mXVel += kVel * dxVel;
+		mYVel += kVel * dyVel;
+	}
+
+	@Override
+	public void holdPosition(double timeStampMs) {
+		mTimeStampMsPredict = timeStampMs;
+		mPredictCount = 0;
+
+		mXVel = 0.0f;
+		mYVel = 0.0f;
+
+		// Ковариация положения и скорости обнуляется, дисперсии сохраняются: P = diag(d0 + u² * d1, d1)
+		mD0 = mD0Prior = mD0 + mU * mU * mD1;
+		mD1Prior = mD1;
+		mU = mUPrior = 0.0f;
+	}
+
+	@Override
+	public void translate(double dx, double dy) {
+		mX += (float) dx;
+		mY += (float) dy;
+	}
+
+	@Override
+	public double getCurrentX() {
+		return mX;
+	}
+
+	@Override
+	public double getCurrentY() {
+		return mY;
+	}
+
+	@Override
+	public double getCurrentXVel() {
+		return mXVel;
+	}
+
+	@Override
+	public double getCurrentYVel() {
+		return mYVel;
+	}
+
+	@Override
+	public double getPositionCovariance() {
+		return mD0 + mU * mU * mD1;
+	}
+
+	/**
+	 * @return дисперсия скорости (элемент P[vx][vx])
+	 */
+	double getVelocityCovariance() {
+		return mD1;
+	}
+}
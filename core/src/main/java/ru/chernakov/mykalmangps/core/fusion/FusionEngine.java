@@ -0,0 +1,612 @@
+package ru.chernakov.mykalmangps.core.fusion;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import ru.chernakov.mykalmangps.core.buffer.GnssRingBuffer;
+import ru.chernakov.mykalmangps.core.buffer.ImuRingBuffer;
+import ru.chernakov.mykalmangps.core.buffer.SensorStreamMerger;
+import ru.chernakov.mykalmangps.core.buffer.SpscRingBuffer;
+import ru.chernakov.mykalmangps.core.filter.GpsAccFilter;
+import ru.chernakov.mykalmangps.core.filter.GpsAccFilterFactory;
+import ru.chernakov.mykalmangps.core.geo.LocalProjection;
+import ru.chernakov.mykalmangps.core.geo.MetricCoordinates;
+import ru.chernakov.mykalmangps.core.metrics.TrackingMetrics;
+
+/**
+ * Объединение показаний акселерометра и определений местоположения GNSS фильтром Калмана.
+ * <p>
+ * Производители (поток датчиков и поток определения местоположения) добавляют показания методами
+ * {@link #offerImu} и {@link #offerGnss}, поток обработки разбирает их по времени методом {@link #fuse()}:
+ * показания акселерометра — шаг предсказания, определения GNSS — шаг коррекции и выдача уточнённого
+ * местоположения {@link FusionListener}. Фильтр создаётся по первому определению GNSS.
+ * <p>
+ * Потоки доставляются с разной задержкой: показания датчиков приходят пакетами, определение GNSS — с задержкой
+ * приёмника. Чтобы показание, пришедшее позже показаний другого потока, не отбрасывалось, обработка ведётся с
+ * окном упорядочивания ({@link #setReorderWindowMs}): выбираются только показания не новее отметки — наибольшего
+ * известного времени за вычетом окна, остальные ждут следующего вызова. Показания старше уже обработанных
+ * (опоздавшие больше чем на окно) отбрасываются. Перед коррекцией фильтр продвигается к времени определения
+ * с ускорением, интерполированным между соседними показаниями акселерометра.
+ * <p>
+ * Частота шагов предсказания задаётся отдельно от частоты датчика ({@link #setPredictIntervalMs}): показания
+ * акселерометра накапливаются, и за интервал выполняется один шаг со средним по времени ускорением. Коррекции
+ * выполняются с частотой определений GNSS; накопленное перед коррекцией применяется.
+ * <p>
+ * Фильтр работает в метрах локальной проекции восток-север ({@link LocalProjection}) с началом в первом
+ * определении. Когда определение удаляется от начала дальше {@link LocalProjection#DEFAULT_REANCHOR_DISTANCE},
+ * начало переносится в него, а состояние фильтра сдвигается ({@link GpsAccFilter#translate}).
+ * <p>
+ * Не зависит от Android SDK и от системного времени: используется как {@code KalmanLocationProcessor}, так и
+ * воспроизведением записанных показаний.
+ */
+public final class FusionEngine {
+	/**
+	 * Ёмкость буфера показаний акселерометра по умолчанию
+	 */
+	public static final int DEFAULT_IMU_CAPACITY = 1024;
+
+	/**
+	 * Ёмкость буфера определений местоположения GNSS по умолчанию
+	 */
+	public static final int DEFAULT_GNSS_CAPACITY = 16;
+
+	/**
+	 * Окно упорядочивания для работы в реальном времени (настройка сервиса), мс. Движок по умолчанию
+	 * работает без окна, см. {@link #setReorderWindowMs}
+	 */
+	public static final long REALTIME_REORDER_WINDOW_MS = 200;
+
+	/**
+	 * Интервал шагов предсказания для работы в реальном времени (настройка сервиса), мс. Движок по умолчанию
+	 * выполняет шаг на каждое показание, см. {@link #setPredictIntervalMs}
+	 */
+	public static final long REALTIME_PREDICT_INTERVAL_MS = 20;
+
+	private static final long NO_HOLD = Long.MIN_VALUE;
+
+	private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+	private final ImuRingBuffer mImuBuffer;
+
+	private final GnssRingBuffer mGnssBuffer;
+
+	private final SensorStreamMerger mSensorMerger;
+
+	private final GpsAccFilterFactory mFilterFactory;
+
+	private final FusionListener mListener;
+
+	/**
+	 * Заполненность буфера акселерометра, при которой производителю следует запросить обработку
+	 */
+	private final int mImuHighWatermark;
+
+	/**
+	 * Получено хотя бы одно определение GNSS: до этого показания акселерометра не принимаются
+	 */
+	private volatile boolean mGnssReceived;
+
+	/**
+	 * Устройство неподвижно: показания акселерометра не принимаются
+	 */
+	private volatile boolean mStationary;
+
+	/**
+	 * Время последней смены неподвижности, ещё не применённой к фильтру, или {@link #NO_HOLD}
+	 */
+	private final AtomicLong mPendingHold = new AtomicLong(NO_HOLD);
+
+	/**
+	 * Окно упорядочивания, мс
+	 */
+	private volatile long mReorderWindowMs;
+
+	/**
+	 * Интервал шагов предсказания, мс
+	 */
+	private volatile long mPredictIntervalMs;
+
+	/**
+	 * Наибольшее время показания датчиков, известное потоку датчиков, мс. Записывается только потоком датчиков
+	 */
+	private volatile long mImuLatest = NO_TIMESTAMP;
+
+	/**
+	 * Наибольшее время определения GNSS, мс. Записывается только потоком определения местоположения
+	 */
+	private volatile long mGnssLatest = NO_TIMESTAMP;
+
+	/**
+	 * Показания, пришедшие позже показания другого потока с большим временем
+	 */
+	private final AtomicLong mLateCount = new AtomicLong();
+
+	/**
+	 * Показания, отброшенные как старше уже обработанных
+	 */
+	private volatile long mDiscardedCount;
+
+	private GpsAccFilter mFilter;
+
+	/**
+	 * Метрики обработки или null, если они не собираются
+	 */
+	private TrackingMetrics mMetrics;
+
+	/**
+	 * Время последнего обработанного показания, мс
+	 */
+	private long mLastTimeStamp;
+
+	/**
+	 * Есть последнее показание акселерометра для интерполяции ускорения: сбрасывается при остановке фильтра
+	 */
+	private boolean mHasLastImu;
+
+	private long mLastImuTimeStamp;
+
+	private double mLastImuEastAcc;
+
+	private double mLastImuNorthAcc;
+
+	/**
+	 * Время, до которого фильтр продвинут шагами предсказания, мс
+	 */
+	private long mFilterTimeStamp;
+
+	/**
+	 * Время последнего накопленного показания акселерометра; равно {@link #mFilterTimeStamp}, если накопленных
+	 * показаний нет, мс
+	 */
+	private long mIntegrationEnd;
+
+	/**
+	 * Интегралы ускорения с {@link #mFilterTimeStamp} по {@link #mIntegrationEnd}, м/с² · мс
+	 */
+	private double mIntegratedEastAcc;
+
+	private double mIntegratedNorthAcc;
+
+	/**
+	 * Количество выполненных шагов предсказания
+	 */
+	private long mPredictCount;
+
+	private final LocalProjection mProjection = new LocalProjection(LocalProjection.DEFAULT_REANCHOR_DISTANCE);
+
+	private final double[] mLocal = new double[2];
+
+	private final double[] mGeo = new double[2];
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param filterFactory фабрика фильтра
+	 * @param imuCapacity   ёмкость буфера показаний акселерометра
+	 * @param gnssCapacity  ёмкость буфера определений местоположения GNSS
+	 * @param listener      получатель уточнённых местоположений
+	 */
+	public FusionEngine(GpsAccFilterFactory filterFactory, int imuCapacity, int gnssCapacity,
+	                    FusionListener listener) {
+		mImuBuffer = new ImuRingBuffer(imuCapacity);
+		mGnssBuffer = new GnssRingBuffer(gnssCapacity);
+		mSensorMerger = new SensorStreamMerger(mImuBuffer, mGnssBuffer);
+		mFilterFactory = filterFactory;
+		mListener = listener;
+		mImuHighWatermark = mImuBuffer.getCapacity() / 2;
+	}
+
+	/**
+	 * Добавляет показание акселерометра в абсолютной системе координат. Вызывается потоком датчиков.
+	 *
+	 * @param timestamp время показания, мс
+	 * @param east      ускорение на восток, м/с²
+	 * @param north     ускорение на север, м/с²
+	 * @param up        ускорение вверх, м/с²
+	 * @return true, если буфер заполнен наполовину и обработку следует запустить, не дожидаясь GNSS
+	 */
+	public boolean offerImu(long timestamp, double east, double north, double up) {
+		if (timestamp > mImuLatest) {
+			mImuLatest = timestamp;
+		}
+		if (!mGnssReceived || mStationary) {
+			return false;
+		}
+
+		if (timestamp < mGnssLatest) {
+			onLateSample();
+		}
+		mImuBuffer.offer(timestamp, east, north, up);
+		return mImuBuffer.size() >= mImuHighWatermark;
+	}
+
+	/**
+	 * Добавляет определение местоположения GNSS. Вызывается потоком определения местоположения.
+	 *
+	 * @return false, если буфер заполнен и определение отброшено
+	 */
+	public boolean offerGnss(long timestamp, double latitude, double longitude, double altitude, double speed,
+	                         double course, double posErr, double velErr) {
+		mGnssReceived = true;
+		if (timestamp > mGnssLatest) {
+			mGnssLatest = timestamp;
+		}
+		if (timestamp < mImuLatest) {
+			onLateSample();
+		}
+		return mGnssBuffer.offer(timestamp, latitude, longitude, altitude, speed, course, posErr, velErr);
+	}
+
+	/**
+	 * Переводит обработку в неподвижный режим или выводит из него. Вызывается потоком датчиков.
+	 * <p>
+	 * В неподвижном режиме показания акселерометра не принимаются, поэтому шаги предсказания не выполняются.
+	 * При смене режима фильтр останавливается в текущем положении ({@link GpsAccFilter#holdPosition}) при
+	 * обработке показаний с временем не раньше {@code timestamp}: при переходе в неподвижный режим — после
+	 * показаний, принятых до него, при выходе — перед показаниями, принятыми после.
+	 *
+	 * @param stationary true, если устройство неподвижно
+	 * @param timestamp  время смены режима, мс
+	 */
+	public void setStationary(boolean stationary, long timestamp) {
+		if (timestamp > mImuLatest) {
+			mImuLatest = timestamp;
+		}
+		if (mStationary != stationary) {
+			mStationary = stationary;
+			mPendingHold.set(timestamp);
+		}
+	}
+
+	public boolean isStationary() {
+		return mStationary;
+	}
+
+	/**
+	 * Задаёт окно упорядочивания: показания обрабатываются, только когда известно показание новее них на
+	 * {@code windowMs}. Показание, опоздавшее не больше чем на окно, обрабатывается в порядке времени, опоздавшее
+	 * больше — отбрасывается. 0 (по умолчанию) — показания обрабатываются сразу, как при воспроизведении
+	 * упорядоченной записи.
+	 *
+	 * @param windowMs окно, мс
+	 */
+	public void setReorderWindowMs(long windowMs) {
+		if (windowMs < 0) {
+			throw new IllegalArgumentException("Reorder window must not be negative: " + windowMs);
+		}
+		mReorderWindowMs = windowMs;
+	}
+
+	public long getReorderWindowMs() {
+		return mReorderWindowMs;
+	}
+
+	/**
+	 * Задаёт интервал шагов предсказания. Показания акселерометра внутри интервала объединяются в один шаг
+	 * со средним по времени ускорением: изменение скорости за интервал то же, что при шаге на каждое
+	 * показание, а стоимость обработки не зависит от частоты датчика. 0 (по умолчанию) — шаг на каждое показание.
+	 *
+	 * @param intervalMs интервал, мс
+	 */
+	public void setPredictIntervalMs(long intervalMs) {
+		if (intervalMs < 0) {
+			throw new IllegalArgumentException("Predict interval must not be negative: " + intervalMs);
+		}
+		mPredictIntervalMs = intervalMs;
+	}
+
+	public long getPredictIntervalMs() {
+		return mPredictIntervalMs;
+	}
+
+	/**
+	 * Включает сбор метрик: глубины очереди, длительности шагов фильтра и количества опоздавших и отброшенных
+	 * показаний. Вызывается до начала обработки.
+	 *
+	 * @param metrics метрики или null, чтобы не собирать их
+	 */
+	public void setMetrics(TrackingMetrics metrics) {
+		mMetrics = metrics;
+	}
+
+	/**
+	 * Обрабатывает в порядке времени накопленные показания, вышедшие из окна упорядочивания относительно самого
+	 * нового известного показания. Вызывается потоком обработки.
+	 *
+	 * @return количество выданных уточнённых местоположений
+	 */
+	public int fuse() {
+		return fuseUntil(watermark(NO_TIMESTAMP));
+	}
+
+	/**
+	 * Обрабатывает в порядке времени накопленные показания, вышедшие из окна упорядочивания к моменту
+	 * {@code nowMs}: показание, которого нет в буферах к этому моменту, считается опоздавшим больше чем на окно.
+	 * Вызывается потоком обработки.
+	 *
+	 * @param nowMs текущее время по часам показаний, мс
+	 * @return количество выданных уточнённых местоположений
+	 */
+	public int fuse(long nowMs) {
+		return fuseUntil(watermark(nowMs));
+	}
+
+	/**
+	 * Обрабатывает, как {@link #fuse(long)}, только показания строго раньше {@code timestamp}. Используется,
+	 * пока определение с этим временем ждёт доставки показаний из аппаратного буфера датчиков: показания
+	 * до определения обрабатываются, а само определение и более поздние показания остаются в буферах.
+	 * Вызывается потоком обработки.
+	 *
+	 * @param nowMs     текущее время по часам показаний, мс
+	 * @param timestamp время определения, ожидающего показаний, мс
+	 * @return количество выданных уточнённых местоположений
+	 */
+	public int fuseBefore(long nowMs, long timestamp) {
+		return fuseUntil(Math.min(watermark(nowMs), timestamp - 1));
+	}
+
+	/**
+	 * Обрабатывает все накопленные показания, не дожидаясь окна упорядочивания (в конце записи или при
+	 * остановке). Вызывается потоком обработки.
+	 *
+	 * @return количество выданных уточнённых местоположений
+	 */
+	public int drain() {
+		return fuseUntil(Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return true, если в буфере есть определения GNSS, ожидающие выхода из окна упорядочивания
+	 */
+	public boolean hasPendingGnss() {
+		return mGnssBuffer.size() > 0;
+	}
+
+	private long watermark(long nowMs) {
+		long latest = Math.max(nowMs, Math.max(mImuLatest, mGnssLatest));
+		return latest == NO_TIMESTAMP ? NO_TIMESTAMP : latest - mReorderWindowMs;
+	}
+
+	private int fuseUntil(long watermark) {
+		int published = 0;
+		int source;
+		if (mMetrics != null) {
+			mMetrics.recordQueueDepth(mImuBuffer.size() + mGnssBuffer.size());
+		}
+		while ((source = mSensorMerger.next()) != SensorStreamMerger.SOURCE_NONE) {
+			long timestamp = source == SensorStreamMerger.SOURCE_IMU
+					? mImuBuffer.getTimestamp(mImuBuffer.peek())
+					: mGnssBuffer.getTimestamp(mGnssBuffer.peek());
+			if (timestamp > watermark) {
+				break;
+			}
+			applyHold(timestamp);
+			if (source == SensorStreamMerger.SOURCE_IMU) {
+				int slot = mImuBuffer.peek();
+				if (mFilter != null && timestamp >= mLastTimeStamp) {
+					mLastTimeStamp = timestamp;
+					handleImu(slot);
+				} else if (mFilter != null) {
+					onDiscardedSample();
+				}
+				mImuBuffer.release();
+			} else {
+				int slot = mGnssBuffer.peek();
+				if (timestamp >= mLastTimeStamp) {
+					mLastTimeStamp = timestamp;
+					handleUpdate(slot);
+					publish(slot);
+					published++;
+				} else {
+					onDiscardedSample();
+				}
+				mGnssBuffer.release();
+			}
+		}
+		applyHold(watermark);
+
+		return published;
+	}
+
+	/**
+	 * @return true, если фильтр создан
+	 */
+	public boolean isInitialized() {
+		return mFilter != null;
+	}
+
+	public GpsAccFilter getFilter() {
+		return mFilter;
+	}
+
+	/**
+	 * @return количество показаний, отброшенных из-за переполнения буферов
+	 */
+	public long getDroppedCount() {
+		return mImuBuffer.getDroppedCount() + mGnssBuffer.getDroppedCount();
+	}
+
+	/**
+	 * @return количество выполненных шагов предсказания
+	 */
+	public long getPredictCount() {
+		return mPredictCount;
+	}
+
+	/**
+	 * @return количество показаний, пришедших позже показаний другого потока и обработанных в порядке времени
+	 */
+	public long getReorderedCount() {
+		return Math.max(0, mLateCount.get() - mDiscardedCount);
+	}
+
+	/**
+	 * @return количество показаний, отброшенных как опоздавшие больше чем на окно упорядочивания
+	 */
+	public long getDiscardedCount() {
+		return mDiscardedCount;
+	}
+
+	/**
+	 * Применяет смену неподвижного режима, если она произошла не позже показания с временем {@code timestamp}.
+	 */
+	private void applyHold(long timestamp) {
+		long hold = mPendingHold.get();
+		if (hold == NO_HOLD || hold > timestamp || !mPendingHold.compareAndSet(hold, NO_HOLD)) {
+			return;
+		}
+
+		if (mFilter != null && hold >= mLastTimeStamp) {
+			flushIntegration();
+			mFilter.holdPosition(hold);
+			mLastTimeStamp = hold;
+			mHasLastImu = false;
+			mFilterTimeStamp = hold;
+			mIntegrationEnd = hold;
+		}
+	}
+
+	private void onLateSample() {
+		mLateCount.incrementAndGet();
+		if (mMetrics != null) {
+			mMetrics.onLateSample();
+		}
+	}
+
+	private void onDiscardedSample() {
+		// Пишется только потоком обработки
+		mDiscardedCount++;
+		if (mMetrics != null) {
+			mMetrics.onOutOfOrderSample();
+		}
+	}
+
+	private void handleImu(int slot) {
+		long timestamp = mImuBuffer.getTimestamp(slot);
+		double east = mImuBuffer.getAbsEastAcc(slot);
+		double north = mImuBuffer.getAbsNorthAcc(slot);
+		mLastImuTimeStamp = timestamp;
+		mLastImuEastAcc = east;
+		mLastImuNorthAcc = north;
+		mHasLastImu = true;
+
+		long interval = mPredictIntervalMs;
+		if (interval == 0) {
+			predict(timestamp, east, north);
+			return;
+		}
+
+		// Ускорение показания действует с предыдущего показания, как при отдельном шаге предсказания
+		long dt = timestamp - mIntegrationEnd;
+		mIntegratedEastAcc += east * dt;
+		mIntegratedNorthAcc += north * dt;
+		mIntegrationEnd = timestamp;
+		if (timestamp - mFilterTimeStamp >= interval) {
+			flushIntegration();
+		}
+	}
+
+	/**
+	 * Выполняет шаг предсказания по накопленным показаниям акселерометра, если они есть.
+	 */
+	private void flushIntegration() {
+		long span = mIntegrationEnd - mFilterTimeStamp;
+		if (span <= 0) {
+			return;
+		}
+
+		predict(mIntegrationEnd, mIntegratedEastAcc / span, mIntegratedNorthAcc / span);
+	}
+
+	private void predict(long timestamp, double east, double north) {
+		long start = mMetrics != null ? System.nanoTime() : 0;
+		mFilter.predict(timestamp, east, north);
+		mFilterTimeStamp = timestamp;
+		mIntegrationEnd = timestamp;
+		mIntegratedEastAcc = 0.0;
+		mIntegratedNorthAcc = 0.0;
+		mPredictCount++;
+		if (mMetrics != null) {
+			mMetrics.recordPredict(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Продвигает фильтр к времени определения GNSS: применяет накопленные показания и выполняет шаг
+	 * до времени определения. Ускорение на последнем участке интерполируется линейно между последним
+	 * обработанным показанием акселерометра и следующим, если оно уже в буфере, иначе берётся последнее.
+	 */
+	private void predictToFix(long timestamp) {
+		if (!mHasLastImu) {
+			return;
+		}
+		flushIntegration();
+		if (timestamp <= mLastImuTimeStamp) {
+			return;
+		}
+
+		double east = mLastImuEastAcc;
+		double north = mLastImuNorthAcc;
+		int next = mImuBuffer.peek();
+		if (next != SpscRingBuffer.NO_SLOT) {
+			// Показания с тем же временем обрабатываются раньше определения, поэтому следующее позже него
+			long nextTimeStamp = mImuBuffer.getTimestamp(next);
+			if (nextTimeStamp > timestamp) {
+				double fraction = (double) (timestamp - mLastImuTimeStamp) / (nextTimeStamp - mLastImuTimeStamp);
+				east += (mImuBuffer.getAbsEastAcc(next) - east) * fraction;
+				north += (mImuBuffer.getAbsNorthAcc(next) - north) * fraction;
+			}
+		}
+
+		predict(timestamp, east, north);
+	}
+
+	private void handleUpdate(int slot) {
+		// Направление движения отсчитывается от севера по часовой стрелке
+		double course = Math.toRadians(mGnssBuffer.getCourse(slot));
+		double xVel = mGnssBuffer.getSpeed(slot) * Math.sin(course);
+		double yVel = mGnssBuffer.getSpeed(slot) * Math.cos(course);
+		double latitude = mGnssBuffer.getLatitude(slot);
+		double longitude = mGnssBuffer.getLongitude(slot);
+		if (!mProjection.isAnchored()) {
+			mProjection.anchor(latitude, longitude);
+		}
+		mProjection.toLocal(latitude, longitude, mLocal);
+		if (mProjection.needsReanchor(mLocal[LocalProjection.EAST], mLocal[LocalProjection.NORTH])) {
+			mProjection.anchor(latitude, longitude);
+			if (mFilter != null) {
+				mFilter.translate(-mLocal[LocalProjection.EAST], -mLocal[LocalProjection.NORTH]);
+			}
+			mLocal[LocalProjection.EAST] = 0.0;
+			mLocal[LocalProjection.NORTH] = 0.0;
+		}
+		double x = mLocal[LocalProjection.EAST];
+		double y = mLocal[LocalProjection.NORTH];
+
+		if (mFilter == null) {
+			mFilter = mFilterFactory.create(x, y, xVel, yVel, mGnssBuffer.getPosErr(slot),
+					mGnssBuffer.getTimestamp(slot));
+			mFilterTimeStamp = mGnssBuffer.getTimestamp(slot);
+			mIntegrationEnd = mFilterTimeStamp;
+		}
+
+		predictToFix(mGnssBuffer.getTimestamp(slot));
+		long start = mMetrics != null ? System.nanoTime() : 0;
+		mFilter.update(mGnssBuffer.getTimestamp(slot), x, y, xVel, yVel,
+				mGnssBuffer.getPosErr(slot), mGnssBuffer.getVelErr(slot));
+		if (mMetrics != null) {
+			mMetrics.recordUpdate(System.nanoTime() - start);
+		}
+	}
+
+	private void publish(int slot) {
+		mProjection.toGeo(mFilter.getCurrentX(), mFilter.getCurrentY(), mGeo);
+		double xVel = mFilter.getCurrentXVel();
+		double yVel = mFilter.getCurrentYVel();
+		double speed = Math.sqrt(xVel * xVel + yVel * yVel);
+
+		mListener.onFusedLocation(mGnssBuffer.getTimestamp(slot),
+				mGeo[MetricCoordinates.LATITUDE], mGeo[MetricCoordinates.LONGITUDE],
+				mGnssBuffer.getAltitude(slot), (float) speed, (float) mGnssBuffer.getCourse(slot),
+				(float) mGnssBuffer.getPosErr(slot));
+	}
+}
@@ -0,0 +1,20 @@
+package ru.chernakov.mykalmangps.core.fusion;
+
+/**
+ * Получатель местоположений, уточнённых фильтром.
+ */
+public interface FusionListener {
+	/**
+	 * Вызывается в потоке обработки после каждого шага коррекции.
+	 *
+	 * @param timestamp время определения местоположения GNSS, мс (время записи показаний, а не текущее)
+	 * @param latitude  широта
+	 * @param longitude долгота
+	 * @param altitude  высота по данным GNSS, м
+	 * @param speed     скорость по данным фильтра, м/с
+	 * @param bearing   направление движения по данным GNSS
+	 * @param accuracy  погрешность определения местоположения GNSS, м
+	 */
+	void onFusedLocation(long timestamp, double latitude, double longitude, double altitude, float speed,
+	                     float bearing, float accuracy);
+}
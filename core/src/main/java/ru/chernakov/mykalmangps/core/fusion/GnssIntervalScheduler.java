@@ -0,0 +1,141 @@
+package ru.chernakov.mykalmangps.core.fusion;
+
+/**
+ * Выбор интервала запроса определений GNSS по состоянию фильтра.
+ * <p>
+ * Интервал удваивается от минимального до максимального, пока устройство движется медленно и положение известно
+ * точно: смещение за следующий интервал ({@code скорость * интервал}) не превышает {@code distanceBudget}, а
+ * ковариация положения — {@code covarianceThreshold}. Для увеличения условие должно выполняться
+ * {@link #RELAX_FIXES} определений подряд. Интервал сокращается сразу, как только смещение за текущий интервал
+ * превысит удвоенный {@code distanceBudget} или ковариация — удвоенный {@code covarianceThreshold}: до
+ * наибольшего интервала, при котором смещение укладывается в {@code distanceBudget}. Между порогами
+ * увеличения и сокращения интервал не меняется, что исключает частую перерегистрацию.
+ * <p>
+ * Неизвестная ковариация ({@link Double#NaN}) не позволяет увеличить интервал. Неизвестная скорость
+ * ({@link Double#POSITIVE_INFINITY}) сразу возвращает минимальный интервал.
+ */
+public final class GnssIntervalScheduler {
+	/**
+	 * Количество определений подряд, после которого интервал увеличивается
+	 */
+	public static final int RELAX_FIXES = 3;
+
+	/**
+	 * Максимальный интервал по умолчанию, мс
+	 */
+	public static final long DEFAULT_MAX_INTERVAL_MS = 16000;
+
+	/**
+	 * Допустимое смещение за интервал по умолчанию, м
+	 */
+	public static final double DEFAULT_DISTANCE_BUDGET = 10.0;
+
+	/**
+	 * Порог ковариации положения по умолчанию (в единицах погрешности GNSS, см. {@code GpsAccFilter})
+	 */
+	public static final double DEFAULT_COVARIANCE_THRESHOLD = 10.0;
+
+	private static final int HYSTERESIS_FACTOR = 2;
+
+	private final long mMinIntervalMs;
+
+	private final long mMaxIntervalMs;
+
+	private final double mDistanceBudget;
+
+	private final double mCovarianceThreshold;
+
+	private volatile long mIntervalMs;
+
+	private int mRelaxCount;
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param minIntervalMs       минимальный (начальный) интервал, мс
+	 * @param maxIntervalMs       максимальный интервал, мс
+	 * @param distanceBudget      допустимое смещение за интервал, м
+	 * @param covarianceThreshold ковариация положения, ниже которой интервал может увеличиваться
+	 */
+	public GnssIntervalScheduler(long minIntervalMs, long maxIntervalMs, double distanceBudget,
+	                             double covarianceThreshold) {
+		if (minIntervalMs <= 0 || maxIntervalMs < minIntervalMs) {
+			throw new IllegalArgumentException("Invalid interval range: " + minIntervalMs + ".." + maxIntervalMs);
+		}
+
+		mMinIntervalMs = minIntervalMs;
+		mMaxIntervalMs = maxIntervalMs;
+		mDistanceBudget = distanceBudget;
+		mCovarianceThreshold = covarianceThreshold;
+		mIntervalMs = minIntervalMs;
+	}
+
+	/**
+	 * Учитывает очередное уточнённое местоположение. Вызывается потоком обработки.
+	 *
+	 * @param speed      оценка скорости, м/с
+	 * @param covariance ковариация положения ({@code GpsAccFilter#getPositionCovariance()})
+	 * @return true, если интервал изменился и запрос определений следует перерегистрировать
+	 */
+	public boolean onFusedLocation(double speed, double covariance) {
+		long interval = mIntervalMs;
+
+		if (displacement(speed, interval) > HYSTERESIS_FACTOR * mDistanceBudget
+				|| covariance > HYSTERESIS_FACTOR * mCovarianceThreshold) {
+			mRelaxCount = 0;
+			long tightened = mMinIntervalMs;
+			while (tightened * 2 < interval && displacement(speed, tightened * 2) <= mDistanceBudget) {
+				tightened *= 2;
+			}
+			return setInterval(tightened);
+		}
+
+		long relaxed = Math.min(interval * 2, mMaxIntervalMs);
+		if (relaxed > interval && displacement(speed, relaxed) <= mDistanceBudget
+				&& covariance <= mCovarianceThreshold) {
+			if (++mRelaxCount >= RELAX_FIXES) {
+				mRelaxCount = 0;
+				return setInterval(relaxed);
+			}
+		} else {
+			mRelaxCount = 0;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Возвращает интервал к минимальному, например, при повторном запуске отслеживания.
+	 */
+	public void reset() {
+		mRelaxCount = 0;
+		mIntervalMs = mMinIntervalMs;
+	}
+
+	/**
+	 * @return текущий интервал запроса определений, мс. Может читаться из любого потока
+	 */
+	public long getIntervalMs() {
+		return mIntervalMs;
+	}
+
+	public long getMinIntervalMs() {
+		return mMinIntervalMs;
+	}
+
+	/**
+	 * @return смещение за интервал, м
+	 */
+	private static double displacement(double speed, long intervalMs) {
+		return speed * intervalMs / 1000.0;
+	}
+
+	private boolean setInterval(long interval) {
+		if (interval == mIntervalMs) {
+			return false;
+		}
+
+		mIntervalMs = interval;
+		return true;
+	}
+}
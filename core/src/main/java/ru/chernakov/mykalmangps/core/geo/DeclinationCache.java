@@ -0,0 +1,276 @@
+package ru.chernakov.mykalmangps.core.geo;
+
+/**
+ * Кэш магнитного склонения по ячейкам координатной сетки и интервалам времени.
+ * <p>
+ * Склонение мало меняется на расстоянии в километры и за дни, поэтому модель вычисляется один раз для центра
+ * ячейки {@code cellDegrees × cellDegrees} и середины интервала {@code timeBucketMs}. Ключ ячейки — одно число
+ * {@code long}, поиск — открытая адресация в массиве без создания объектов; повторный запрос той же ячейки,
+ * что и в прошлый раз, не обращается к таблице. При заполнении вытесняется ячейка, которая дольше всех не
+ * запрашивалась (LRU).
+ * <p>
+ * Погрешность относительно вычисления модели в самой точке не превышает
+ * {@code |∂D/∂φ| · cell / 2 + |∂D/∂λ| · cell / 2 + |∂D/∂t| · timeBucket / 2} (с точностью до членов второго
+ * порядка). Для {@link #DEFAULT_CELL_DEGREES} на средних широтах это сотые доли градуса при типичном градиенте
+ * склонения около 1° на 100 км, что много меньше погрешности определения ориентации по магнитометру.
+ * <p>
+ * Не потокобезопасен.
+ */
+public final class DeclinationCache implements DeclinationModel {
+	/**
+	 * Размер ячейки по умолчанию, градусы (около 11 км по широте)
+	 */
+	public static final double DEFAULT_CELL_DEGREES = 0.1;
+
+	/**
+	 * Интервал времени по умолчанию, мс (30 суток: вековая вариация склонения — доли градуса в год)
+	 */
+	public static final long DEFAULT_TIME_BUCKET_MS = 30L * 24 * 60 * 60 * 1000;
+
+	/**
+	 * Количество ячеек по умолчанию
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private static final int INDEX_BITS = 21;
+
+	private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+	private static final long NO_KEY = -1;
+
+	private static final int NONE = -1;
+
+	private final DeclinationModel mModel;
+
+	private final double mCellDegrees;
+
+	private final long mTimeBucketMs;
+
+	// Ячейки: ключ, склонение и двусвязный список в порядке обращений
+	private final long[] mKeys;
+
+	private final double[] mValues;
+
+	private final int[] mPrev;
+
+	private final int[] mNext;
+
+	/**
+	 * Таблица открытой адресации: номер ячейки + 1 или 0, если слот свободен
+	 */
+	private final int[] mTable;
+
+	private final int mTableBits;
+
+	private int mSize;
+
+	/**
+	 * Ячейка, запрошенная последней
+	 */
+	private int mHead = NONE;
+
+	/**
+	 * Ячейка, которая дольше всех не запрашивалась
+	 */
+	private int mTail = NONE;
+
+	private long mLastKey = NO_KEY;
+
+	private double mLastValue;
+
+	private long mHitCount;
+
+	private long mMissCount;
+
+	/**
+	 * Конструктор с параметрами по умолчанию.
+	 *
+	 * @param model модель склонения
+	 */
+	public DeclinationCache(DeclinationModel model) {
+		this(model, DEFAULT_CELL_DEGREES, DEFAULT_TIME_BUCKET_MS, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param model        модель склонения
+	 * @param cellDegrees  размер ячейки, градусы
+	 * @param timeBucketMs длительность интервала времени, мс
+	 * @param capacity     наибольшее количество ячеек
+	 */
+	public DeclinationCache(DeclinationModel model, double cellDegrees, long timeBucketMs, int capacity) {
+		if (cellDegrees <= 0.0 || 360.0 / cellDegrees > INDEX_MASK) {
+			throw new IllegalArgumentException("cellDegrees out of range: " + cellDegrees);
+		}
+		if (timeBucketMs <= 0) {
+			throw new IllegalArgumentException("timeBucketMs must be positive: " + timeBucketMs);
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+
+		mModel = model;
+		mCellDegrees = cellDegrees;
+		mTimeBucketMs = timeBucketMs;
+		mKeys = new long[capacity];
+		mValues = new double[capacity];
+		mPrev = new int[capacity];
+		mNext = new int[capacity];
+		mTableBits = 32 - Integer.numberOfLeadingZeros(capacity * 2 - 1);
+		mTable = new int[1 << mTableBits];
+	}
+
+	/**
+	 * Возвращает склонение для ячейки, содержащей точку; при первом запросе ячейки вычисляет его моделью для
+	 * центра ячейки и середины интервала времени.
+	 */
+	@Override
+	public double getDeclination(double latitude, double longitude, double altitude, long timeMs) {
+		long latitudeIndex = (long) Math.floor((latitude + 90.0) / mCellDegrees);
+		long longitudeIndex = (long) Math.floor((normalizeLongitude(longitude) + 180.0) / mCellDegrees);
+		long bucket = Math.max(timeMs, 0) / mTimeBucketMs;
+		long key = (bucket << (2 * INDEX_BITS)) | (latitudeIndex << INDEX_BITS) | longitudeIndex;
+		if (key == mLastKey) {
+			mHitCount++;
+			return mLastValue;
+		}
+
+		int entry = find(key);
+		if (entry != NONE) {
+			mHitCount++;
+			unlink(entry);
+		} else {
+			mMissCount++;
+			entry = allocate();
+			mKeys[entry] = key;
+			mValues[entry] = mModel.getDeclination(
+					(latitudeIndex + 0.5) * mCellDegrees - 90.0,
+					(longitudeIndex + 0.5) * mCellDegrees - 180.0,
+					altitude, bucket * mTimeBucketMs + mTimeBucketMs / 2);
+			insert(entry);
+		}
+		linkFirst(entry);
+
+		mLastKey = key;
+		mLastValue = mValues[entry];
+		return mLastValue;
+	}
+
+	/**
+	 * @return количество ячеек в кэше
+	 */
+	public int size() {
+		return mSize;
+	}
+
+	public long getHitCount() {
+		return mHitCount;
+	}
+
+	public long getMissCount() {
+		return mMissCount;
+	}
+
+	public double getCellDegrees() {
+		return mCellDegrees;
+	}
+
+	public long getTimeBucketMs() {
+		return mTimeBucketMs;
+	}
+
+	private static double normalizeLongitude(double longitude) {
+		if (longitude >= -180.0 && longitude < 180.0) {
+			return longitude;
+		}
+
+		double normalized = (longitude + 180.0) % 360.0;
+		return (normalized < 0.0 ? normalized + 360.0 : normalized) - 180.0;
+	}
+
+	private int slot(long key) {
+		return (int) ((key * 0x9e3779b97f4a7c15L) >>> (64 - mTableBits));
+	}
+
+	private int find(long key) {
+		int mask = mTable.length - 1;
+		for (int i = slot(key); mTable[i] != 0; i = (i + 1) & mask) {
+			if (mKeys[mTable[i] - 1] == key) {
+				return mTable[i] - 1;
+			}
+		}
+
+		return NONE;
+	}
+
+	private void insert(int entry) {
+		int mask = mTable.length - 1;
+		int i = slot(mKeys[entry]);
+		while (mTable[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		mTable[i] = entry + 1;
+	}
+
+	/**
+	 * Удаляет ячейку из таблицы, сдвигая назад следующие за ней записи той же цепочки.
+	 */
+	private void remove(int entry) {
+		int mask = mTable.length - 1;
+		int i = slot(mKeys[entry]);
+		while (mTable[i] != entry + 1) {
+			i = (i + 1) & mask;
+		}
+
+		for (int j = (i + 1) & mask; mTable[j] != 0; j = (j + 1) & mask) {
+			int home = slot(mKeys[mTable[j] - 1]);
+			boolean reachable = i <= j ? home > i && home <= j : home > i || home <= j;
+			if (!reachable) {
+				mTable[i] = mTable[j];
+				i = j;
+			}
+		}
+		mTable[i] = 0;
+	}
+
+	/**
+	 * @return номер свободной ячейки или ячейки, вытесненной из кэша
+	 */
+	private int allocate() {
+		if (mSize < mKeys.length) {
+			return mSize++;
+		}
+
+		int entry = mTail;
+		unlink(entry);
+		remove(entry);
+		return entry;
+	}
+
+	private void unlink(int entry) {
+		int prev = mPrev[entry];
+		int next = mNext[entry];
+		if (prev != NONE) {
+			mNext[prev] = next;
+		} else {
+			mHead = next;
+		}
+		if (next != NONE) {
+			mPrev[next] = prev;
+		} else {
+			mTail = prev;
+		}
+	}
+
+	private void linkFirst(int entry) {
+		mPrev[entry] = NONE;
+		mNext[entry] = mHead;
+		if (mHead != NONE) {
+			mPrev[mHead] = entry;
+		} else {
+			mTail = entry;
+		}
+		mHead = entry;
+	}
+}
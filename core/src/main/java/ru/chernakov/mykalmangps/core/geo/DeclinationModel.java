@@ -0,0 +1,15 @@
+package ru.chernakov.mykalmangps.core.geo;
+
+/**
+ * Модель магнитного склонения.
+ */
+public interface DeclinationModel {
+	/**
+	 * @param latitude  широта, градусы
+	 * @param longitude долгота, градусы
+	 * @param altitude  высота, м
+	 * @param timeMs    время, мс от 1970-01-01 UTC
+	 * @return магнитное склонение, градусы (положительное — магнитный север восточнее географического)
+	 */
+	double getDeclination(double latitude, double longitude, double altitude, long timeMs);
+}
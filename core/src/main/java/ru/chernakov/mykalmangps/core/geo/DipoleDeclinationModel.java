@@ -0,0 +1,35 @@
+package ru.chernakov.mykalmangps.core.geo;
+
+/**
+ * Магнитное склонение в модели центрального наклонного диполя: горизонтальная составляющая поля направлена по
+ * дуге большого круга к северному геомагнитному полюсу, и склонение равно азимуту на полюс.
+ * <p>
+ * Модель грубая (отличие от WMM достигает десятков градусов вблизи аномалий и полюсов) и не учитывает высоту и
+ * вековые вариации. Используется там, где {@code android.hardware.GeomagneticField} недоступен: в тестах,
+ * бенчмарках и обработке на JVM.
+ */
+public final class DipoleDeclinationModel implements DeclinationModel {
+	/**
+	 * Широта северного геомагнитного полюса (IGRF-13, 2020), градусы
+	 */
+	public static final double POLE_LATITUDE = 80.65;
+
+	/**
+	 * Долгота северного геомагнитного полюса (IGRF-13, 2020), градусы
+	 */
+	public static final double POLE_LONGITUDE = -72.68;
+
+	private final double mPoleSin = Math.sin(Math.toRadians(POLE_LATITUDE));
+
+	private final double mPoleCos = Math.cos(Math.toRadians(POLE_LATITUDE));
+
+	@Override
+	public double getDeclination(double latitude, double longitude, double altitude, long timeMs) {
+		double phi = Math.toRadians(latitude);
+		double deltaLambda = Math.toRadians(POLE_LONGITUDE - longitude);
+		double y = Math.sin(deltaLambda) * mPoleCos;
+		double x = Math.cos(phi) * mPoleSin - Math.sin(phi) * mPoleCos * Math.cos(deltaLambda);
+
+		return Math.toDegrees(Math.atan2(y, x));
+	}
+}
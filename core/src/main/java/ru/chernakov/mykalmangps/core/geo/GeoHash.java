@@ -0,0 +1,76 @@
+package ru.chernakov.mykalmangps.core.geo;
+
+/**
+ * Кодирование координат в geohash, упакованный в целое число.
+ * <p>
+ * Каждый символ строкового geohash соответствует 5 битам; биты долготы и широты чередуются, начиная с долготы.
+ * Точки одной ячейки заданной точности имеют одинаковый код.
+ */
+public final class GeoHash {
+	/**
+	 * Наибольшая точность, символов (60 бит)
+	 */
+	public static final int MAX_PRECISION = 12;
+
+	private static final int BITS_PER_CHAR = 5;
+
+	private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+	private GeoHash() {
+	}
+
+	/**
+	 * @param latitude  широта
+	 * @param longitude долгота
+	 * @param precision точность, символов (от 1 до {@link #MAX_PRECISION})
+	 * @return код ячейки
+	 */
+	public static long encode(double latitude, double longitude, int precision) {
+		if (precision < 1 || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("precision must be in [1, " + MAX_PRECISION + "]: " + precision);
+		}
+
+		double minLatitude = -90.0;
+		double maxLatitude = 90.0;
+		double minLongitude = -180.0;
+		double maxLongitude = 180.0;
+		long hash = 0;
+		for (int bit = 0, bits = precision * BITS_PER_CHAR; bit < bits; bit++) {
+			hash <<= 1;
+			if ((bit & 1) == 0) {
+				double mid = (minLongitude + maxLongitude) / 2.0;
+				if (longitude >= mid) {
+					hash |= 1;
+					minLongitude = mid;
+				} else {
+					maxLongitude = mid;
+				}
+			} else {
+				double mid = (minLatitude + maxLatitude) / 2.0;
+				if (latitude >= mid) {
+					hash |= 1;
+					minLatitude = mid;
+				} else {
+					maxLatitude = mid;
+				}
+			}
+		}
+
+		return hash;
+	}
+
+	/**
+	 * @param hash      код ячейки
+	 * @param precision точность, символов
+	 * @return строковое представление geohash
+	 */
+	public static String toString(long hash, int precision) {
+		char[] chars = new char[precision];
+		for (int i = precision - 1; i >= 0; i--) {
+			chars[i] = BASE32[(int) (hash & 0x1f)];
+			hash >>>= BITS_PER_CHAR;
+		}
+
+		return new String(chars);
+	}
+}
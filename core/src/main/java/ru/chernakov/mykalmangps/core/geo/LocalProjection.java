@@ -0,0 +1,213 @@
+package ru.chernakov.mykalmangps.core.geo;
+
+/**
+ * Проекция на локальную касательную плоскость (восток-север) с началом в опорной точке сеанса.
+ * <p>
+ * Масштабы эллипсоида WGS84 вычисляются один раз при выборе опорной точки, поэтому преобразование точки — несколько
+ * умножений и сложений без тригонометрии:
+ * <pre>
+ * north = Δφ · k<sub>N</sub>
+ * east  = Δλ · (k<sub>E</sub> − k<sub>S</sub> · Δφ)
+ * </pre>
+ * где {@code k_N} — радиус кривизны меридиана, {@code k_E} — радиус параллели опорной точки, {@code k_S} —
+ * поправка первого порядка на сужение параллелей с широтой. В отличие от {@link MetricCoordinates} метры
+ * настоящие на любой широте: на расстоянии {@link #DEFAULT_REANCHOR_DISTANCE} от опорной точки погрешность
+ * расстояний — сантиметры. Дальше от опорной точки погрешность растёт квадратично, поэтому вызывающий код
+ * переносит опорную точку ({@link #needsReanchor}). Вблизи полюсов проекция непригодна.
+ * <p>
+ * Пакетные методы преобразуют участки массивов {@code double[]} для воспроизведения, сглаживания и экспорта.
+ */
+public final class LocalProjection {
+	/**
+	 * Расстояние от опорной точки по умолчанию, после которого её следует перенести, м
+	 */
+	public static final double DEFAULT_REANCHOR_DISTANCE = 10000.0;
+
+	/**
+	 * Индекс координаты на восток в результате {@link #toLocal}
+	 */
+	public static final int EAST = 0;
+
+	/**
+	 * Индекс координаты на север в результате {@link #toLocal}
+	 */
+	public static final int NORTH = 1;
+
+	/**
+	 * Большая полуось WGS84, м
+	 */
+	private static final double SEMI_MAJOR_AXIS = 6378137.0;
+
+	/**
+	 * Квадрат эксцентриситета WGS84
+	 */
+	private static final double ECCENTRICITY_SQUARED = 6.69437999014e-3;
+
+	private static final double RADIANS_IN_DEGREE = Math.PI / 180.0;
+
+	private final double mReanchorDistanceSquared;
+
+	private boolean mAnchored;
+
+	private double mOriginLatitude;
+
+	private double mOriginLongitude;
+
+	/**
+	 * Метров на градус широты
+	 */
+	private double mNorthScale;
+
+	/**
+	 * Метров на градус долготы на широте опорной точки
+	 */
+	private double mEastScale;
+
+	/**
+	 * Уменьшение {@link #mEastScale} на градус широты
+	 */
+	private double mEastSlope;
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param reanchorDistance расстояние от опорной точки, после которого её следует перенести, м
+	 */
+	public LocalProjection(double reanchorDistance) {
+		mReanchorDistanceSquared = reanchorDistance * reanchorDistance;
+	}
+
+	/**
+	 * Переносит начало координат в точку.
+	 *
+	 * @param latitude  широта, градусы
+	 * @param longitude долгота, градусы
+	 */
+	public void anchor(double latitude, double longitude) {
+		double phi = latitude * RADIANS_IN_DEGREE;
+		double sin = Math.sin(phi);
+		double cos = Math.cos(phi);
+		double w = 1.0 - ECCENTRICITY_SQUARED * sin * sin;
+		// Радиусы кривизны: первого вертикала и меридиана
+		double normalRadius = SEMI_MAJOR_AXIS / Math.sqrt(w);
+		double meridianRadius = normalRadius * (1.0 - ECCENTRICITY_SQUARED) / w;
+
+		mOriginLatitude = latitude;
+		mOriginLongitude = longitude;
+		mNorthScale = meridianRadius * RADIANS_IN_DEGREE;
+		mEastScale = normalRadius * cos * RADIANS_IN_DEGREE;
+		mEastSlope = normalRadius * sin * RADIANS_IN_DEGREE * RADIANS_IN_DEGREE;
+		mAnchored = true;
+	}
+
+	/**
+	 * @return true, если опорная точка выбрана
+	 */
+	public boolean isAnchored() {
+		return mAnchored;
+	}
+
+	public double getOriginLatitude() {
+		return mOriginLatitude;
+	}
+
+	public double getOriginLongitude() {
+		return mOriginLongitude;
+	}
+
+	/**
+	 * @param east  координата на восток, м
+	 * @param north координата на север, м
+	 * @return true, если точка дальше от опорной, чем расстояние переноса
+	 */
+	public boolean needsReanchor(double east, double north) {
+		return east * east + north * north > mReanchorDistanceSquared;
+	}
+
+	/**
+	 * Преобразует географические координаты в локальные.
+	 *
+	 * @param latitude  широта, градусы
+	 * @param longitude долгота, градусы
+	 * @param out       массив не короче 2 для результата: {@code out[EAST]}, {@code out[NORTH]}, м
+	 */
+	public void toLocal(double latitude, double longitude, double[] out) {
+		double deltaLatitude = latitude - mOriginLatitude;
+		out[EAST] = deltaLongitude(longitude) * (mEastScale - mEastSlope * deltaLatitude);
+		out[NORTH] = deltaLatitude * mNorthScale;
+	}
+
+	/**
+	 * Преобразует локальные координаты в географические.
+	 *
+	 * @param east  координата на восток, м
+	 * @param north координата на север, м
+	 * @param out   массив не короче 2 для результата: {@code out[MetricCoordinates.LATITUDE]},
+	 *              {@code out[MetricCoordinates.LONGITUDE]}, градусы
+	 */
+	public void toGeo(double east, double north, double[] out) {
+		double deltaLatitude = north / mNorthScale;
+		out[MetricCoordinates.LATITUDE] = mOriginLatitude + deltaLatitude;
+		out[MetricCoordinates.LONGITUDE] = normalizeLongitude(
+				mOriginLongitude + east / (mEastScale - mEastSlope * deltaLatitude));
+	}
+
+	/**
+	 * Преобразует {@code count} точек, начиная с {@code offset}, в локальные координаты.
+	 */
+	public void toLocal(double[] latitude, double[] longitude, int offset, int count, double[] east,
+	                    double[] north) {
+		double originLatitude = mOriginLatitude;
+		double northScale = mNorthScale;
+		double eastScale = mEastScale;
+		double eastSlope = mEastSlope;
+		for (int i = offset, end = offset + count; i < end; i++) {
+			double deltaLatitude = latitude[i] - originLatitude;
+			east[i] = deltaLongitude(longitude[i]) * (eastScale - eastSlope * deltaLatitude);
+			north[i] = deltaLatitude * northScale;
+		}
+	}
+
+	/**
+	 * Преобразует {@code count} точек, начиная с {@code offset}, в географические координаты. Массивы результата
+	 * могут совпадать с исходными.
+	 */
+	public void toGeo(double[] east, double[] north, int offset, int count, double[] latitude,
+	                  double[] longitude) {
+		double originLatitude = mOriginLatitude;
+		double originLongitude = mOriginLongitude;
+		double northScale = mNorthScale;
+		double eastScale = mEastScale;
+		double eastSlope = mEastSlope;
+		for (int i = offset, end = offset + count; i < end; i++) {
+			double deltaLatitude = north[i] / northScale;
+			double deltaLongitude = east[i] / (eastScale - eastSlope * deltaLatitude);
+			latitude[i] = originLatitude + deltaLatitude;
+			longitude[i] = normalizeLongitude(originLongitude + deltaLongitude);
+		}
+	}
+
+	/**
+	 * @return разность долгот с опорной точкой в диапазоне [-180, 180)
+	 */
+	private double deltaLongitude(double longitude) {
+		double delta = longitude - mOriginLongitude;
+		if (delta >= 180.0) {
+			delta -= 360.0;
+		} else if (delta < -180.0) {
+			delta += 360.0;
+		}
+
+		return delta;
+	}
+
+	private static double normalizeLongitude(double longitude) {
+		if (longitude >= 180.0) {
+			return longitude - 360.0;
+		} else if (longitude < -180.0) {
+			return longitude + 360.0;
+		}
+
+		return longitude;
+	}
+}
@@ -0,0 +1,92 @@
+package ru.chernakov.mykalmangps.core.geo;
+
+/**
+ * Преобразования географических координат в метрические координаты фильтра и обратно.
+ * <p>
+ * Повторяет вычисления {@code mad.location.manager.lib.Commons.Coordinates} (сфера радиусом
+ * {@link #EARTH_RADIUS}, формула гаверсинусов), но не создаёт объектов: обратное преобразование записывает
+ * результат в переданный массив.
+ */
+public final class MetricCoordinates {
+	/**
+	 * Радиус Земли, м
+	 */
+	public static final double EARTH_RADIUS = 6371 * 1000.0;
+
+	/**
+	 * Индекс широты в результате {@link #metersToGeo}
+	 */
+	public static final int LATITUDE = 0;
+
+	/**
+	 * Индекс долготы в результате {@link #metersToGeo}
+	 */
+	public static final int LONGITUDE = 1;
+
+	private MetricCoordinates() {
+	}
+
+	/**
+	 * @return расстояние от нулевого меридиана вдоль экватора до долготы {@code longitude}, м (со знаком)
+	 */
+	public static double longitudeToMeters(double longitude) {
+		double distance = distanceBetween(longitude, 0.0, 0.0, 0.0);
+		return distance * (longitude < 0.0 ? -1.0 : 1.0);
+	}
+
+	/**
+	 * @return расстояние от экватора вдоль нулевого меридиана до широты {@code latitude}, м (со знаком)
+	 */
+	public static double latitudeToMeters(double latitude) {
+		double distance = distanceBetween(0.0, latitude, 0.0, 0.0);
+		return distance * (latitude < 0.0 ? -1.0 : 1.0);
+	}
+
+	/**
+	 * Преобразует метрические координаты в географические: смещение от точки (0, 0) на {@code x} метров на
+	 * восток, затем на {@code y} метров на север.
+	 *
+	 * @param x   координата x (восток), м
+	 * @param y   координата y (север), м
+	 * @param out массив не короче 2 для результата: {@code out[LATITUDE]}, {@code out[LONGITUDE]}, градусы
+	 */
+	public static void metersToGeo(double x, double y, double[] out) {
+		pointAhead(0.0, 0.0, x, 90.0, out);
+		pointAhead(out[LATITUDE], out[LONGITUDE], y, 0.0, out);
+	}
+
+	/**
+	 * @return расстояние между точками по дуге большого круга, м
+	 */
+	public static double distanceBetween(double longitude1, double latitude1, double longitude2, double latitude2) {
+		double deltaLon = Math.toRadians(longitude2 - longitude1);
+		double deltaLat = Math.toRadians(latitude2 - latitude1);
+		double a = Math.pow(Math.sin(deltaLat / 2.0), 2.0)
+				+ Math.cos(Math.toRadians(latitude1))
+				* Math.cos(Math.toRadians(latitude2))
+				* Math.pow(Math.sin(deltaLon / 2.0), 2.0);
+		double c = 2.0 * Math.atan2(Math.sqrt(a), Math.sqrt(1.0 - a));
+
+		return EARTH_RADIUS * c;
+	}
+
+	private static void pointAhead(double latitude, double longitude, double distance, double azimuthDegrees,
+	                               double[] out) {
+		double radiusFraction = distance / EARTH_RADIUS;
+		double bearing = Math.toRadians(azimuthDegrees);
+		double lat1 = Math.toRadians(latitude);
+		double lng1 = Math.toRadians(longitude);
+
+		double lat2part1 = Math.sin(lat1) * Math.cos(radiusFraction);
+		double lat2part2 = Math.cos(lat1) * Math.sin(radiusFraction) * Math.cos(bearing);
+		double lat2 = Math.asin(lat2part1 + lat2part2);
+
+		double lng2part1 = Math.sin(bearing) * Math.sin(radiusFraction) * Math.cos(lat1);
+		double lng2part2 = Math.cos(radiusFraction) - Math.sin(lat1) * Math.sin(lat2);
+		double lng2 = lng1 + Math.atan2(lng2part1, lng2part2);
+		lng2 = (lng2 + 3.0 * Math.PI) % (2.0 * Math.PI) - Math.PI;
+
+		out[LATITUDE] = Math.toDegrees(lat2);
+		out[LONGITUDE] = Math.toDegrees(lng2);
+	}
+}
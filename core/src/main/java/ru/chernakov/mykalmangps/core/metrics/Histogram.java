@@ -0,0 +1,181 @@
+package ru.chernakov.mykalmangps.core.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма неотрицательных значений (длительностей, размеров очередей) с логарифмически-линейными
+ * интервалами, как в HdrHistogram.
+ * <p>
+ * Каждый диапазон {@code [2^k, 2^(k+1))} делится на {@link #SUB_BUCKETS} равных интервалов, поэтому
+ * относительная погрешность значения не превышает {@code 1 / SUB_BUCKETS} (около 3%), а значения меньше
+ * {@link #SUB_BUCKETS} хранятся точно. Значения больше {@link #MAX_VALUE} учитываются как {@link #MAX_VALUE}.
+ * <p>
+ * Запись ({@link #record}) не берёт блокировок и не выделяет памяти: атомарно увеличивает счётчик интервала.
+ * {@link #snapshot()} копирует счётчики; снимок, снятый во время записи, может не учитывать часть значений,
+ * записываемых в этот момент.
+ */
+public final class Histogram {
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/**
+	 * Количество интервалов в каждом диапазоне между степенями двойки
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int MAX_MAGNITUDE = 40;
+
+	/**
+	 * Наибольшее различимое значение (для наносекунд — около 18 минут)
+	 */
+	public static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+	private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+	private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+
+	private final AtomicLong mSum = new AtomicLong();
+
+	private final AtomicLong mMax = new AtomicLong();
+
+	/**
+	 * Учитывает значение. Может вызываться из любого потока.
+	 *
+	 * @param value значение; отрицательные значения учитываются как 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		} else if (value > MAX_VALUE) {
+			value = MAX_VALUE;
+		}
+
+		mCounts.incrementAndGet(bucketIndex(value));
+		mSum.addAndGet(value);
+		long max;
+		while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+			// Повтор при одновременной записи большего значения
+		}
+	}
+
+	/**
+	 * @return копия накопленных значений
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKET_COUNT];
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = mCounts.get(i);
+			count += counts[i];
+		}
+
+		return new Snapshot(counts, count, mSum.get(), mMax.get());
+	}
+
+	/**
+	 * Сбрасывает накопленные значения.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			mCounts.set(i, 0);
+		}
+		mSum.set(0);
+		mMax.set(0);
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * @return наибольшее значение, попадающее в интервал {@code index}
+	 */
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+
+		int shift = index / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+	/**
+	 * Неизменяемая копия гистограммы.
+	 */
+	public static final class Snapshot {
+		private final long[] mCounts;
+
+		private final long mCount;
+
+		private final long mSum;
+
+		private final long mMax;
+
+		Snapshot(long[] counts, long count, long sum, long max) {
+			mCounts = counts;
+			mCount = count;
+			mSum = sum;
+			mMax = max;
+		}
+
+		public long getCount() {
+			return mCount;
+		}
+
+		public long getMax() {
+			return mMax;
+		}
+
+		/**
+		 * @return среднее значение или 0, если значений нет
+		 */
+		public double getMean() {
+			return mCount == 0 ? 0.0 : (double) mSum / mCount;
+		}
+
+		/**
+		 * @param percentile процентиль, от 0 до 100
+		 * @return значение, не меньше которого {@code percentile}% значений (с точностью до интервала), или 0,
+		 * если значений нет
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (mCount == 0) {
+				return 0;
+			}
+
+			long rank = Math.max(1, (long) Math.ceil(mCount * Math.min(percentile, 100.0) / 100.0));
+			long seen = 0;
+			for (int i = 0; i < mCounts.length; i++) {
+				seen += mCounts[i];
+				if (seen >= rank) {
+					return Math.min(bucketUpperBound(i), mMax);
+				}
+			}
+
+			return mMax;
+		}
+
+		/**
+		 * Форматирует сводку значений.
+		 *
+		 * @param divisor делитель для перевода в единицы вывода (например, 1000 для наносекунд в микросекундах)
+		 * @return строка вида {@code n=10 p50=1.0 p99=2.0 max=3.0}
+		 */
+		public String format(double divisor) {
+			return String.format(Locale.US, "n=%d p50=%.1f p99=%.1f max=%.1f", mCount,
+					getValueAtPercentile(50) / divisor, getValueAtPercentile(99) / divisor, mMax / divisor);
+		}
+
+		@Override
+		public String toString() {
+			return format(1.0);
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package ru.chernakov.mykalmangps.core.metrics;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Метрики обработки местоположений: глубина очереди показаний, длительность шагов фильтра, задержка от получения
+ * определения до рассылки, опоздавшие и отброшенные показания и количество определений по провайдерам.
+ * <p>
+ * Запись выполняется без блокировок из потоков сервиса, {@link #snapshot()} можно вызывать из любого потока.
+ */
+public final class TrackingMetrics {
+	/**
+	 * Определение местоположения GNSS
+	 */
+	public static final int PROVIDER_GPS = 0;
+
+	/**
+	 * Определение местоположения по сети
+	 */
+	public static final int PROVIDER_NETWORK = 1;
+
+	/**
+	 * Прочие провайдеры
+	 */
+	public static final int PROVIDER_OTHER = 2;
+
+	private static final int PROVIDER_COUNT = 3;
+
+	private static final double NANOS_IN_MICRO = 1000.0;
+
+	private static final double NANOS_IN_MILLI = 1000000.0;
+
+	private final Histogram mQueueDepth = new Histogram();
+
+	private final Histogram mPredictNanos = new Histogram();
+
+	private final Histogram mUpdateNanos = new Histogram();
+
+	private final Histogram mPublishLatencyNanos = new Histogram();
+
+	private final AtomicLong mLateSamples = new AtomicLong();
+
+	private final AtomicLong mOutOfOrderSamples = new AtomicLong();
+
+	private final AtomicLong mPublishedPoints = new AtomicLong();
+
+	private final AtomicLongArray mFixes = new AtomicLongArray(PROVIDER_COUNT);
+
+	/**
+	 * @param depth количество показаний в очереди перед обработкой пакета
+	 */
+	public void recordQueueDepth(int depth) {
+		mQueueDepth.record(depth);
+	}
+
+	/**
+	 * @param nanos длительность шага предсказания, нс
+	 */
+	public void recordPredict(long nanos) {
+		mPredictNanos.record(nanos);
+	}
+
+	/**
+	 * @param nanos длительность шага коррекции, нс
+	 */
+	public void recordUpdate(long nanos) {
+		mUpdateNanos.record(nanos);
+	}
+
+	/**
+	 * @param nanos время от получения определения местоположения до рассылки точки, нс
+	 */
+	public void recordPublishLatency(long nanos) {
+		mPublishLatencyNanos.record(nanos);
+	}
+
+	/**
+	 * Учитывает показание, пришедшее позже показания другого потока с большим временем.
+	 */
+	public void onLateSample() {
+		mLateSamples.incrementAndGet();
+	}
+
+	/**
+	 * Учитывает показание, отброшенное из-за того, что оно старше уже обработанных.
+	 */
+	public void onOutOfOrderSample() {
+		mOutOfOrderSamples.incrementAndGet();
+	}
+
+	/**
+	 * Учитывает разосланную точку трека.
+	 */
+	public void onPointPublished() {
+		mPublishedPoints.incrementAndGet();
+	}
+
+	/**
+	 * Учитывает полученное определение местоположения.
+	 *
+	 * @param provider провайдер ({@link #PROVIDER_GPS}, {@link #PROVIDER_NETWORK}, {@link #PROVIDER_OTHER})
+	 */
+	public void onFix(int provider) {
+		mFixes.incrementAndGet(provider);
+	}
+
+	/**
+	 * @return копия накопленных значений
+	 */
+	public Snapshot snapshot() {
+		long[] fixes = new long[PROVIDER_COUNT];
+		for (int i = 0; i < PROVIDER_COUNT; i++) {
+			fixes[i] = mFixes.get(i);
+		}
+
+		return new Snapshot(mQueueDepth.snapshot(), mPredictNanos.snapshot(), mUpdateNanos.snapshot(),
+				mPublishLatencyNanos.snapshot(), mLateSamples.get(), mOutOfOrderSamples.get(), mPublishedPoints.get(), fixes);
+	}
+
+	/**
+	 * Неизменяемая копия метрик.
+	 */
+	public static final class Snapshot {
+		private final Histogram.Snapshot mQueueDepth;
+
+		private final Histogram.Snapshot mPredictNanos;
+
+		private final Histogram.Snapshot mUpdateNanos;
+
+		private final Histogram.Snapshot mPublishLatencyNanos;
+
+		private final long mLateSamples;
+
+		private final long mOutOfOrderSamples;
+
+		private final long mPublishedPoints;
+
+		private final long[] mFixes;
+
+		Snapshot(Histogram.Snapshot queueDepth, Histogram.Snapshot predictNanos, Histogram.Snapshot updateNanos,
+		         Histogram.Snapshot publishLatencyNanos, long lateSamples, long outOfOrderSamples,
+		         long publishedPoints, long[] fixes) {
+			mQueueDepth = queueDepth;
+			mPredictNanos = predictNanos;
+			mUpdateNanos = updateNanos;
+			mPublishLatencyNanos = publishLatencyNanos;
+			mLateSamples = lateSamples;
+			mOutOfOrderSamples = outOfOrderSamples;
+			mPublishedPoints = publishedPoints;
+			mFixes = fixes;
+		}
+
+		public Histogram.Snapshot getQueueDepth() {
+			return mQueueDepth;
+		}
+
+		public Histogram.Snapshot getPredictNanos() {
+			return mPredictNanos;
+		}
+
+		public Histogram.Snapshot getUpdateNanos() {
+			return mUpdateNanos;
+		}
+
+		public Histogram.Snapshot getPublishLatencyNanos() {
+			return mPublishLatencyNanos;
+		}
+
+		/**
+		 * @return количество опоздавших показаний, обработанных в порядке времени благодаря окну упорядочивания
+		 */
+		public long getReorderedSamples() {
+			return Math.max(0, mLateSamples - mOutOfOrderSamples);
+		}
+
+		/**
+		 * @return количество показаний, отброшенных как опоздавшие больше чем на окно упорядочивания
+		 */
+		public long getOutOfOrderSamples() {
+			return mOutOfOrderSamples;
+		}
+
+		public long getPublishedPoints() {
+			return mPublishedPoints;
+		}
+
+		/**
+		 * @param provider провайдер ({@link #PROVIDER_GPS}, {@link #PROVIDER_NETWORK}, {@link #PROVIDER_OTHER})
+		 * @return количество полученных определений местоположения
+		 */
+		public long getFixes(int provider) {
+			return mFixes[provider];
+		}
+
+		/**
+		 * Выводит метрики построчно (для {@code dumpsys}).
+		 */
+		public void dump(PrintWriter writer, String prefix) {
+			writer.println(prefix + "fixes: gps=" + mFixes[PROVIDER_GPS] + " network=" + mFixes[PROVIDER_NETWORK]
+					+ " other=" + mFixes[PROVIDER_OTHER]);
+			writer.println(prefix + "published points: " + mPublishedPoints);
+			writer.println(prefix + "reordered samples: " + getReorderedSamples());
+			writer.println(prefix + "late samples discarded: " + mOutOfOrderSamples);
+			writer.println(prefix + "queue depth: " + mQueueDepth.format(1.0));
+			writer.println(prefix + "predict, us: " + mPredictNanos.format(NANOS_IN_MICRO));
+			writer.println(prefix + "update, us: " + mUpdateNanos.format(NANOS_IN_MICRO));
+			writer.println(prefix + "fix to publish, ms: " + mPublishLatencyNanos.format(NANOS_IN_MILLI));
+		}
+
+		/**
+		 * @return сводка в одну строку (для журнала)
+		 */
+		@Override
+		public String toString() {
+			return String.format(Locale.US,
+					"fixes gps=%d net=%d other=%d, published=%d, reordered=%d, discarded=%d, queue p99=%d, "
+							+ "predict p99=%.1fus, update p99=%.1fus, publish p50=%.1fms p99=%.1fms",
+					mFixes[PROVIDER_GPS], mFixes[PROVIDER_NETWORK], mFixes[PROVIDER_OTHER], mPublishedPoints,
+					getReorderedSamples(), mOutOfOrderSamples, mQueueDepth.getValueAtPercentile(99),
+					mPredictNanos.getValueAtPercentile(99) / NANOS_IN_MICRO,
+					mUpdateNanos.getValueAtPercentile(99) / NANOS_IN_MICRO,
+					mPublishLatencyNanos.getValueAtPercentile(50) / NANOS_IN_MILLI,
+					mPublishLatencyNanos.getValueAtPercentile(99) / NANOS_IN_MILLI);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package ru.chernakov.mykalmangps.core.replay;
+
+/**
+ * Поля текущей записи, общие для форматов записи показаний.
+ */
+abstract class AbstractTraceReader implements TraceReader {
+	long mTimestamp;
+	double mEastAcc;
+	double mNorthAcc;
+	double mUpAcc;
+	double mLatitude;
+	double mLongitude;
+	double mAltitude;
+	double mSpeed;
+	double mCourse;
+	double mPosErr;
+	double mVelErr;
+
+	@Override
+	public long getTimestamp() {
+		return mTimestamp;
+	}
+
+	@Override
+	public double getEastAcc() {
+		return mEastAcc;
+	}
+
+	@Override
+	public double getNorthAcc() {
+		return mNorthAcc;
+	}
+
+	@Override
+	public double getUpAcc() {
+		return mUpAcc;
+	}
+
+	@Override
+	public double getLatitude() {
+		return mLatitude;
+	}
+
+	@Override
+	public double getLongitude() {
+		return mLongitude;
+	}
+
+	@Override
+	public double getAltitude() {
+		return mAltitude;
+	}
+
+	@Override
+	public double getSpeed() {
+		return mSpeed;
+	}
+
+	@Override
+	public double getCourse() {
+		return mCourse;
+	}
+
+	@Override
+	public double getPosErr() {
+		return mPosErr;
+	}
+
+	@Override
+	public double getVelErr() {
+		return mVelErr;
+	}
+}
@@ -0,0 +1,21 @@
+package ru.chernakov.mykalmangps.core.replay;
+
+/**
+ * Двоичный формат записи показаний.
+ * <p>
+ * Файл начинается с сигнатуры {@link #MAGIC} и версии {@link #VERSION} (int), за которыми следуют записи
+ * в порядке байтов big-endian ({@code DataOutputStream}):
+ * <pre>
+ * byte {@link TraceReader#TYPE_IMU},  long время_мс, double восток, double север, double вверх
+ * byte {@link TraceReader#TYPE_GNSS}, long время_мс, double широта, double долгота, double высота,
+ *      double скорость, double направление, double погрешность_координат, double погрешность_скорости
+ * </pre>
+ */
+final class BinaryTrace {
+	static final int MAGIC = 0x54525243; // "TRRC"
+
+	static final int VERSION = 1;
+
+	private BinaryTrace() {
+	}
+}
@@ -0,0 +1,70 @@
+package ru.chernakov.mykalmangps.core.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Чтение записи показаний в двоичном формате, созданной {@link BinaryTraceWriter}.
+ */
+public final class BinaryTraceReader extends AbstractTraceReader {
+	private final DataInputStream mInput;
+
+	private boolean mHeaderRead;
+
+	public BinaryTraceReader(InputStream input) {
+		mInput = new DataInputStream(input instanceof BufferedInputStream ? input : new BufferedInputStream(input));
+	}
+
+	@Override
+	public int next() throws IOException {
+		if (!mHeaderRead) {
+			if (mInput.readInt() != BinaryTrace.MAGIC) {
+				throw new IOException("Not a sensor trace");
+			}
+			int version = mInput.readInt();
+			if (version != BinaryTrace.VERSION) {
+				throw new IOException("Unsupported sensor trace version " + version);
+			}
+			mHeaderRead = true;
+		}
+
+		int type = mInput.read();
+		if (type < 0) {
+			return TYPE_NONE;
+		}
+
+		try {
+			switch (type) {
+				case TYPE_IMU:
+					mTimestamp = mInput.readLong();
+					mEastAcc = mInput.readDouble();
+					mNorthAcc = mInput.readDouble();
+					mUpAcc = mInput.readDouble();
+					return TYPE_IMU;
+				case TYPE_GNSS:
+					mTimestamp = mInput.readLong();
+					mLatitude = mInput.readDouble();
+					mLongitude = mInput.readDouble();
+					mAltitude = mInput.readDouble();
+					mSpeed = mInput.readDouble();
+					mCourse = mInput.readDouble();
+					mPosErr = mInput.readDouble();
+					mVelErr = mInput.readDouble();
+					return TYPE_GNSS;
+				default:
+					throw new IOException("Unknown record type " + type);
+			}
+		} catch (EOFException e) {
+			// Последняя запись не дописана: запись прервана при завершении процесса
+			return TYPE_NONE;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		mInput.close();
+	}
+}
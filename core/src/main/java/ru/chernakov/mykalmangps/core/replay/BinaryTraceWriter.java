@@ -0,0 +1,52 @@
+package ru.chernakov.mykalmangps.core.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Запись показаний датчиков в двоичном формате для последующего воспроизведения {@link ReplayEngine}.
+ */
+public final class BinaryTraceWriter implements Closeable, Flushable {
+	private final DataOutputStream mOutput;
+
+	public BinaryTraceWriter(OutputStream output) throws IOException {
+		mOutput = new DataOutputStream(new BufferedOutputStream(output));
+		mOutput.writeInt(BinaryTrace.MAGIC);
+		mOutput.writeInt(BinaryTrace.VERSION);
+	}
+
+	public void writeImu(long timestamp, double east, double north, double up) throws IOException {
+		mOutput.writeByte(TraceReader.TYPE_IMU);
+		mOutput.writeLong(timestamp);
+		mOutput.writeDouble(east);
+		mOutput.writeDouble(north);
+		mOutput.writeDouble(up);
+	}
+
+	public void writeGnss(long timestamp, double latitude, double longitude, double altitude, double speed,
+	                      double course, double posErr, double velErr) throws IOException {
+		mOutput.writeByte(TraceReader.TYPE_GNSS);
+		mOutput.writeLong(timestamp);
+		mOutput.writeDouble(latitude);
+		mOutput.writeDouble(longitude);
+		mOutput.writeDouble(altitude);
+		mOutput.writeDouble(speed);
+		mOutput.writeDouble(course);
+		mOutput.writeDouble(posErr);
+		mOutput.writeDouble(velErr);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		mOutput.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		mOutput.close();
+	}
+}
@@ -0,0 +1,95 @@
+package ru.chernakov.mykalmangps.core.replay;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Чтение записи показаний в текстовом формате. Одна строка — одна запись, поля разделены запятыми:
+ * <pre>
+ * A,время_мс,восток,север,вверх
+ * G,время_мс,широта,долгота,высота,скорость,направление,погрешность_координат,погрешность_скорости
+ * </pre>
+ * Пустые строки и строки, начинающиеся с {@code #}, пропускаются.
+ */
+public final class CsvTraceReader extends AbstractTraceReader {
+	private static final int IMU_FIELDS = 5;
+
+	private static final int GNSS_FIELDS = 9;
+
+	private final BufferedReader mReader;
+
+	private final String[] mFields = new String[GNSS_FIELDS];
+
+	private int mLineNumber;
+
+	public CsvTraceReader(Reader reader) {
+		mReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+	}
+
+	@Override
+	public int next() throws IOException {
+		String line;
+		while ((line = mReader.readLine()) != null) {
+			mLineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.charAt(0) == '#') {
+				continue;
+			}
+
+			int count = split(line);
+			try {
+				if ("A".equals(mFields[0]) && count == IMU_FIELDS) {
+					mTimestamp = Long.parseLong(mFields[1]);
+					mEastAcc = Double.parseDouble(mFields[2]);
+					mNorthAcc = Double.parseDouble(mFields[3]);
+					mUpAcc = Double.parseDouble(mFields[4]);
+					return TYPE_IMU;
+				} else if ("G".equals(mFields[0]) && count == GNSS_FIELDS) {
+					mTimestamp = Long.parseLong(mFields[1]);
+					mLatitude = Double.parseDouble(mFields[2]);
+					mLongitude = Double.parseDouble(mFields[3]);
+					mAltitude = Double.parseDouble(mFields[4]);
+					mSpeed = Double.parseDouble(mFields[5]);
+					mCourse = Double.parseDouble(mFields[6]);
+					mPosErr = Double.parseDouble(mFields[7]);
+					mVelErr = Double.parseDouble(mFields[8]);
+					return TYPE_GNSS;
+				}
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid number at line " + mLineNumber + ": " + line, e);
+			}
+
+			throw new IOException("Invalid record at line " + mLineNumber + ": " + line);
+		}
+
+		return TYPE_NONE;
+	}
+
+	@Override
+	public void close() throws IOException {
+		mReader.close();
+	}
+
+	/**
+	 * Разбивает строку на поля в {@link #mFields}.
+	 *
+	 * @return количество полей (может превышать размер массива)
+	 */
+	private int split(String line) {
+		int count = 0;
+		int start = 0;
+		while (true) {
+			int end = line.indexOf(',', start);
+			String field = (end < 0 ? line.substring(start) : line.substring(start, end)).trim();
+			if (count < mFields.length) {
+				mFields[count] = field;
+			}
+			count++;
+			if (end < 0) {
+				return count;
+			}
+			start = end + 1;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package ru.chernakov.mykalmangps.core.replay;
+
+import java.io.IOException;
+
+import ru.chernakov.mykalmangps.core.filter.GpsAccFilterFactory;
+import ru.chernakov.mykalmangps.core.fusion.FusionEngine;
+import ru.chernakov.mykalmangps.core.fusion.FusionListener;
+
+/**
+ * Воспроизведение записи показаний через {@link FusionEngine} с максимальной скоростью, без Android SDK.
+ * <p>
+ * Порядок вызовов повторяет {@code KalmanLocationProcessor}: показания акселерометра добавляются в буфер
+ * (обработка запускается при его заполнении наполовину), каждое определение GNSS запускает обработку
+ * накопленных показаний. Время берётся из записи, поэтому результат не зависит от скорости воспроизведения.
+ * Записи должны следовать в порядке доставки обработке: показания, записанные после определения GNSS, но с
+ * более ранним временем, отбрасываются, как и в сервисе.
+ */
+public final class ReplayEngine {
+	private final GpsAccFilterFactory mFilterFactory;
+
+	private final int mImuCapacity;
+
+	private final int mGnssCapacity;
+
+	private long mPredictIntervalMs = FusionEngine.REALTIME_PREDICT_INTERVAL_MS;
+
+	public ReplayEngine(GpsAccFilterFactory filterFactory) {
+		this(filterFactory, FusionEngine.DEFAULT_IMU_CAPACITY, FusionEngine.DEFAULT_GNSS_CAPACITY);
+	}
+
+	public ReplayEngine(GpsAccFilterFactory filterFactory, int imuCapacity, int gnssCapacity) {
+		mFilterFactory = filterFactory;
+		mImuCapacity = imuCapacity;
+		mGnssCapacity = gnssCapacity;
+	}
+
+	/**
+	 * Задаёт интервал шагов предсказания ({@link FusionEngine#setPredictIntervalMs}). По умолчанию
+	 * {@link FusionEngine#REALTIME_PREDICT_INTERVAL_MS}, как в сервисе; 0 — шаг на каждое показание акселерометра.
+	 *
+	 * @param intervalMs интервал, мс
+	 */
+	public void setPredictIntervalMs(long intervalMs) {
+		if (intervalMs < 0) {
+			throw new IllegalArgumentException("Predict interval must not be negative: " + intervalMs);
+		}
+		mPredictIntervalMs = intervalMs;
+	}
+
+	/**
+	 * Воспроизводит запись до конца, сохраняя уточнённые местоположения в {@link ReplayReport#getTrack()}.
+	 * Читатель не закрывается.
+	 *
+	 * @param reader запись показаний
+	 * @return результат воспроизведения
+	 * @throws IOException ошибка чтения записи
+	 */
+	public ReplayReport run(TraceReader reader) throws IOException {
+		final ReplayReport report = new ReplayReport();
+		return run(reader, report, new FusionListener() {
+			@Override
+			public void onFusedLocation(long timestamp, double latitude, double longitude, double altitude,
+			                            float speed, float bearing, float accuracy) {
+				report.getTrack().append(timestamp, latitude, longitude, accuracy, speed, bearing);
+			}
+		});
+	}
+
+	/**
+	 * Воспроизводит запись до конца, передавая уточнённые местоположения получателю по мере их появления.
+	 * Трек в отчёте остаётся пустым, поэтому память не зависит от длины записи. Читатель не закрывается.
+	 *
+	 * @param reader запись показаний
+	 * @param output получатель уточнённых местоположений
+	 * @return результат воспроизведения
+	 * @throws IOException ошибка чтения записи
+	 */
+	public ReplayReport run(TraceReader reader, FusionListener output) throws IOException {
+		return run(reader, new ReplayReport(), output);
+	}
+
+	private ReplayReport run(TraceReader reader, final ReplayReport report, final FusionListener output)
+			throws IOException {
+		final long[] gnssOfferNanos = new long[1];
+		FusionEngine engine = new FusionEngine(mFilterFactory, mImuCapacity, mGnssCapacity, new FusionListener() {
+			@Override
+			public void onFusedLocation(long timestamp, double latitude, double longitude, double altitude,
+			                            float speed, float bearing, float accuracy) {
+				report.mOutputPoints++;
+				output.onFusedLocation(timestamp, latitude, longitude, altitude, speed, bearing, accuracy);
+				report.getEndToEndStats().add(System.nanoTime() - gnssOfferNanos[0]);
+			}
+		});
+		engine.setPredictIntervalMs(mPredictIntervalMs);
+
+		long start = System.nanoTime();
+		while (true) {
+			long readStart = System.nanoTime();
+			int type = reader.next();
+			if (type == TraceReader.TYPE_NONE) {
+				break;
+			}
+
+			boolean fuse;
+			if (type == TraceReader.TYPE_IMU) {
+				report.mImuSamples++;
+				fuse = engine.offerImu(reader.getTimestamp(),
+						reader.getEastAcc(), reader.getNorthAcc(), reader.getUpAcc());
+			} else {
+				report.mGnssSamples++;
+				gnssOfferNanos[0] = System.nanoTime();
+				engine.offerGnss(reader.getTimestamp(), reader.getLatitude(), reader.getLongitude(),
+						reader.getAltitude(), reader.getSpeed(), reader.getCourse(), reader.getPosErr(),
+						reader.getVelErr());
+				fuse = true;
+			}
+			long fuseStart = System.nanoTime();
+			report.getIngestStats().add(fuseStart - readStart);
+
+			if (fuse) {
+				engine.fuse();
+				report.getFuseStats().add(System.nanoTime() - fuseStart);
+			}
+		}
+		engine.drain();
+
+		report.mElapsedNanos = System.nanoTime() - start;
+		report.mDroppedSamples = engine.getDroppedCount();
+		report.mPredictSteps = engine.getPredictCount();
+
+		return report;
+	}
+}
@@ -0,0 +1,106 @@
+package ru.chernakov.mykalmangps.core.replay;
+
+import java.util.Locale;
+
+import ru.chernakov.mykalmangps.core.fusion.FusionListener;
+import ru.chernakov.mykalmangps.core.track.ColumnarTrack;
+
+/**
+ * Результат воспроизведения записи показаний: счётчики, производительность и полученный трек.
+ */
+public final class ReplayReport {
+	private final ColumnarTrack mTrack = new ColumnarTrack();
+
+	/**
+	 * Чтение записи и передача показания обработке
+	 */
+	private final StageStats mIngest = new StageStats("ingest");
+
+	/**
+	 * Один вызов {@code FusionEngine#fuse()}
+	 */
+	private final StageStats mFuse = new StageStats("fuse");
+
+	/**
+	 * От передачи определения GNSS до выдачи уточнённого местоположения
+	 */
+	private final StageStats mEndToEnd = new StageStats("gnss-to-output");
+
+	long mImuSamples;
+	long mGnssSamples;
+	long mOutputPoints;
+	long mDroppedSamples;
+	long mPredictSteps;
+	long mElapsedNanos;
+
+	ReplayReport() {
+	}
+
+	/**
+	 * @return уточнённые местоположения; время точек — время записи показаний. Пуст, если местоположения
+	 * передавались получателю ({@link ReplayEngine#run(TraceReader, FusionListener)})
+	 */
+	public ColumnarTrack getTrack() {
+		return mTrack;
+	}
+
+	public long getImuSamples() {
+		return mImuSamples;
+	}
+
+	public long getGnssSamples() {
+		return mGnssSamples;
+	}
+
+	/**
+	 * @return количество уточнённых местоположений
+	 */
+	public long getOutputPoints() {
+		return mOutputPoints;
+	}
+
+	/**
+	 * @return количество показаний, отброшенных из-за переполнения буферов
+	 */
+	public long getDroppedSamples() {
+		return mDroppedSamples;
+	}
+
+	/**
+	 * @return количество шагов предсказания фильтра
+	 */
+	public long getPredictSteps() {
+		return mPredictSteps;
+	}
+
+	public long getElapsedNanos() {
+		return mElapsedNanos;
+	}
+
+	/**
+	 * @return количество обработанных показаний (акселерометр и GNSS) в секунду
+	 */
+	public double getSamplesPerSecond() {
+		return mElapsedNanos == 0 ? 0.0 : (mImuSamples + mGnssSamples) * 1e9 / mElapsedNanos;
+	}
+
+	public StageStats getIngestStats() {
+		return mIngest;
+	}
+
+	public StageStats getFuseStats() {
+		return mFuse;
+	}
+
+	public StageStats getEndToEndStats() {
+		return mEndToEnd;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "imu=%d, gnss=%d, dropped=%d, predict=%d, output=%d, elapsed=%.1f ms, "
+						+ "%.0f samples/s%n  %s%n  %s%n  %s",
+				mImuSamples, mGnssSamples, mDroppedSamples, mPredictSteps, mOutputPoints, mElapsedNanos / 1e6,
+				getSamplesPerSecond(), mIngest, mFuse, mEndToEnd);
+	}
+}
@@ -0,0 +1,51 @@
+package ru.chernakov.mykalmangps.core.replay;
+
+import java.util.Locale;
+
+/**
+ * Статистика длительности одного этапа обработки.
+ */
+public final class StageStats {
+	private final String mName;
+	private long mCount;
+	private long mTotalNanos;
+	private long mMaxNanos;
+
+	StageStats(String name) {
+		mName = name;
+	}
+
+	void add(long nanos) {
+		mCount++;
+		mTotalNanos += nanos;
+		if (nanos > mMaxNanos) {
+			mMaxNanos = nanos;
+		}
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	public long getCount() {
+		return mCount;
+	}
+
+	public long getTotalNanos() {
+		return mTotalNanos;
+	}
+
+	public long getMaxNanos() {
+		return mMaxNanos;
+	}
+
+	public double getMeanNanos() {
+		return mCount == 0 ? 0.0 : (double) mTotalNanos / mCount;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "%s: count=%d, mean=%.0f ns, max=%d ns, total=%.1f ms",
+				mName, mCount, getMeanNanos(), mMaxNanos, mTotalNanos / 1e6);
+	}
+}
@@ -0,0 +1,61 @@
+package ru.chernakov.mykalmangps.core.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Последовательное чтение записи показаний датчиков. Поля текущей записи доступны до следующего вызова
+ * {@link #next()}; объекты на запись не создаются.
+ * <p>
+ * Показания акселерометра записываются в абсолютной системе координат (восток, север, вверх), то есть после
+ * поворота по вектору вращения, как они поступают в {@code FusionEngine#offerImu}.
+ */
+public interface TraceReader extends Closeable {
+	/**
+	 * Записи больше нет
+	 */
+	int TYPE_NONE = 0;
+
+	/**
+	 * Показание акселерометра
+	 */
+	int TYPE_IMU = 1;
+
+	/**
+	 * Определение местоположения GNSS
+	 */
+	int TYPE_GNSS = 2;
+
+	/**
+	 * Переходит к следующей записи.
+	 *
+	 * @return тип записи или {@link #TYPE_NONE}
+	 * @throws IOException ошибка чтения или формата записи
+	 */
+	int next() throws IOException;
+
+	/**
+	 * @return время показания, мс
+	 */
+	long getTimestamp();
+
+	double getEastAcc();
+
+	double getNorthAcc();
+
+	double getUpAcc();
+
+	double getLatitude();
+
+	double getLongitude();
+
+	double getAltitude();
+
+	double getSpeed();
+
+	double getCourse();
+
+	double getPosErr();
+
+	double getVelErr();
+}
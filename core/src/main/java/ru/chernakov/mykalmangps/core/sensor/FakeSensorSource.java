@@ -0,0 +1,83 @@
+package ru.chernakov.mykalmangps.core.sensor;
+
+/**
+ * Источник показаний датчиков для работы вне устройства (тесты, воспроизведение записей).
+ * <p>
+ * Показания передаются получателю методом {@link #emit}; запросы {@link #flush()} подсчитываются и
+ * завершаются вызовом {@link #completeFlush()}.
+ */
+public final class FakeSensorSource implements SensorSource {
+	private SensorSampleListener mListener;
+
+	private int mSamplingPeriodUs;
+
+	private int mMaxReportLatencyUs;
+
+	private int mFlushRequests;
+
+	private boolean mStarted;
+
+	@Override
+	public boolean start(int samplingPeriodUs, int maxReportLatencyUs, SensorSampleListener listener) {
+		mSamplingPeriodUs = samplingPeriodUs;
+		mMaxReportLatencyUs = maxReportLatencyUs;
+		mListener = listener;
+		mStarted = true;
+
+		return true;
+	}
+
+	@Override
+	public boolean flush() {
+		if (!mStarted) {
+			return false;
+		}
+		mFlushRequests++;
+
+		return true;
+	}
+
+	@Override
+	public void stop() {
+		mStarted = false;
+		mListener = null;
+	}
+
+	/**
+	 * Передаёт показание получателю, если источник запущен.
+	 *
+	 * @param sensorType     тип датчика
+	 * @param timestampNanos время показания, нс
+	 * @param values         значения показания
+	 */
+	public void emit(int sensorType, long timestampNanos, float... values) {
+		if (mStarted) {
+			mListener.onSensorSample(sensorType, timestampNanos, values);
+		}
+	}
+
+	/**
+	 * Завершает запрошенную доставку накопленных показаний.
+	 */
+	public void completeFlush() {
+		if (mStarted) {
+			mListener.onFlushCompleted();
+		}
+	}
+
+	public boolean isStarted() {
+		return mStarted;
+	}
+
+	public int getSamplingPeriodUs() {
+		return mSamplingPeriodUs;
+	}
+
+	public int getMaxReportLatencyUs() {
+		return mMaxReportLatencyUs;
+	}
+
+	public int getFlushRequests() {
+		return mFlushRequests;
+	}
+}
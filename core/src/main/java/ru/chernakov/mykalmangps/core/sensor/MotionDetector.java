@@ -0,0 +1,211 @@
+package ru.chernakov.mykalmangps.core.sensor;
+
+/**
+ * Определение неподвижности устройства по показаниям линейного ускорения ({@code TYPE_LINEAR_ACCELERATION}).
+ * <p>
+ * Для модуля ускорения ведётся дисперсия по скользящему окну из {@code windowSize} показаний: при замене
+ * вытесняемого показания новым среднее и сумма квадратов отклонений пересчитываются за O(1) (вариант алгоритма
+ * Уэлфорда для скользящего окна), без повторного обхода окна.
+ * <p>
+ * Устройство считается неподвижным, если дисперсия не превышает {@code varianceThreshold} в течение
+ * {@code stationaryHoldMs}. Движение определяется сразу: по одному показанию с модулем больше
+ * {@code motionAcceleration} или по дисперсии больше удвоенного порога.
+ * <p>
+ * Методы синхронизированы: показания передаются потоком датчиков, состояние читается из других потоков.
+ */
+public final class MotionDetector {
+	/**
+	 * Устройство движется
+	 */
+	public static final int STATE_MOVING = 0;
+
+	/**
+	 * Устройство неподвижно
+	 */
+	public static final int STATE_STATIONARY = 1;
+
+	public static final int DEFAULT_WINDOW_SIZE = 32;
+
+	/**
+	 * Порог дисперсии модуля ускорения по умолчанию, (м/с²)²: шум датчика неподвижного устройства
+	 * составляет несколько сотых м/с²
+	 */
+	public static final double DEFAULT_VARIANCE_THRESHOLD = 0.0025;
+
+	/**
+	 * Модуль ускорения, по одному показанию которого определяется движение, по умолчанию, м/с²
+	 */
+	public static final double DEFAULT_MOTION_ACCELERATION = 0.5;
+
+	/**
+	 * Время, в течение которого дисперсия должна оставаться ниже порога, по умолчанию, мс
+	 */
+	public static final long DEFAULT_STATIONARY_HOLD_MS = 5000;
+
+	private static final int HYSTERESIS_FACTOR = 2;
+
+	private final double[] mWindow;
+
+	private final double mVarianceThreshold;
+
+	private final double mMotionAcceleration;
+
+	private final long mStationaryHoldMs;
+
+	private int mCount;
+	private int mNext;
+	private double mMean;
+	private double mSquaredDeviations;
+
+	private int mState = STATE_MOVING;
+
+	/**
+	 * Время начала текущего состояния, мс
+	 */
+	private long mStateSince = -1;
+
+	/**
+	 * Время, с которого дисперсия не превышает порог, или -1
+	 */
+	private long mQuietSince = -1;
+
+	private long mLastTimestamp;
+
+	private final long[] mTimeInState = new long[2];
+
+	public MotionDetector() {
+		this(DEFAULT_WINDOW_SIZE, DEFAULT_VARIANCE_THRESHOLD, DEFAULT_MOTION_ACCELERATION, DEFAULT_STATIONARY_HOLD_MS);
+	}
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param windowSize         размер окна, показаний
+	 * @param varianceThreshold  порог дисперсии модуля ускорения, (м/с²)²
+	 * @param motionAcceleration модуль ускорения, по одному показанию которого определяется движение, м/с²
+	 * @param stationaryHoldMs   время, в течение которого дисперсия должна оставаться ниже порога, мс
+	 */
+	public MotionDetector(int windowSize, double varianceThreshold, double motionAcceleration,
+	                      long stationaryHoldMs) {
+		if (windowSize < 2) {
+			throw new IllegalArgumentException("windowSize must be at least 2: " + windowSize);
+		}
+
+		mWindow = new double[windowSize];
+		mVarianceThreshold = varianceThreshold;
+		mMotionAcceleration = motionAcceleration;
+		mStationaryHoldMs = stationaryHoldMs;
+	}
+
+	/**
+	 * Учитывает показание линейного ускорения.
+	 *
+	 * @param timestamp время показания, мс
+	 * @param x         ускорение по оси x устройства, м/с²
+	 * @param y         ускорение по оси y устройства, м/с²
+	 * @param z         ускорение по оси z устройства, м/с²
+	 * @return true, если состояние изменилось
+	 */
+	public synchronized boolean offer(long timestamp, float x, float y, float z) {
+		double magnitude = Math.sqrt((double) x * x + (double) y * y + (double) z * z);
+		add(magnitude);
+
+		if (mStateSince < 0) {
+			mStateSince = timestamp;
+			mLastTimestamp = timestamp;
+		}
+		mTimeInState[mState] += timestamp - mLastTimestamp;
+		mLastTimestamp = timestamp;
+
+		double variance = getVarianceLocked();
+		if (mState == STATE_STATIONARY) {
+			if (magnitude > mMotionAcceleration || variance > HYSTERESIS_FACTOR * mVarianceThreshold) {
+				mQuietSince = -1;
+				return setState(STATE_MOVING, timestamp);
+			}
+			return false;
+		}
+
+		if (magnitude > mMotionAcceleration || mCount < mWindow.length || variance > mVarianceThreshold) {
+			mQuietSince = -1;
+			return false;
+		}
+		if (mQuietSince < 0) {
+			mQuietSince = timestamp;
+		}
+
+		return timestamp - mQuietSince >= mStationaryHoldMs && setState(STATE_STATIONARY, timestamp);
+	}
+
+	public synchronized int getState() {
+		return mState;
+	}
+
+	public synchronized boolean isStationary() {
+		return mState == STATE_STATIONARY;
+	}
+
+	/**
+	 * @return время начала текущего состояния, мс (время показаний), или -1 до первого показания
+	 */
+	public synchronized long getStateSince() {
+		return mStateSince;
+	}
+
+	/**
+	 * @param state состояние ({@link #STATE_MOVING}, {@link #STATE_STATIONARY})
+	 * @return суммарное время в состоянии по времени показаний, мс
+	 */
+	public synchronized long getTimeInState(int state) {
+		return mTimeInState[state];
+	}
+
+	/**
+	 * @return дисперсия модуля ускорения по окну, (м/с²)²
+	 */
+	public synchronized double getVariance() {
+		return getVarianceLocked();
+	}
+
+	/**
+	 * Сбрасывает окно и состояние (время в состояниях сохраняется).
+	 */
+	public synchronized void reset() {
+		mCount = 0;
+		mNext = 0;
+		mMean = 0.0;
+		mSquaredDeviations = 0.0;
+		mState = STATE_MOVING;
+		mStateSince = -1;
+		mQuietSince = -1;
+	}
+
+	private void add(double value) {
+		if (mCount < mWindow.length) {
+			mCount++;
+			double delta = value - mMean;
+			mMean += delta / mCount;
+			mSquaredDeviations += delta * (value - mMean);
+		} else {
+			double old = mWindow[mNext];
+			double oldMean = mMean;
+			mMean += (value - old) / mCount;
+			mSquaredDeviations += (value - old) * (value - mMean + old - oldMean);
+			if (mSquaredDeviations < 0.0) {
+				mSquaredDeviations = 0.0;
+			}
+		}
+		mWindow[mNext] = value;
+		mNext = (mNext + 1) % mWindow.length;
+	}
+
+	private double getVarianceLocked() {
+		return mCount < 2 ? 0.0 : mSquaredDeviations / (mCount - 1);
+	}
+
+	private boolean setState(int state, long timestamp) {
+		mState = state;
+		mStateSince = timestamp;
+		return true;
+	}
+}
@@ -0,0 +1,97 @@
+package ru.chernakov.mykalmangps.core.sensor;
+
+/**
+ * Управляет получением показаний датчиков: подписывается на источник с частотой из настроек сервиса и
+ * пакетной доставкой, запрашивает доставку накопленных показаний при каждом определении местоположения
+ * и отписывается при остановке.
+ */
+public final class SensorAcquisition {
+	private static final int MICROS_IN_SECOND = 1000000;
+
+	private static final int MICROS_IN_MILLI = 1000;
+
+	private final SensorSource mSource;
+
+	private final SensorSampleListener mListener;
+
+	private boolean mStarted;
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param source   источник показаний датчиков
+	 * @param listener получатель показаний
+	 */
+	public SensorAcquisition(SensorSource source, SensorSampleListener listener) {
+		mSource = source;
+		mListener = listener;
+	}
+
+	/**
+	 * Подписывается на показания датчиков. Повторный вызов без {@link #stop()} игнорируется.
+	 *
+	 * @param sensorFrequencyHz  частота опроса датчиков, Гц
+	 * @param maxReportLatencyMs максимальная задержка доставки пакета показаний, мс
+	 * @return true, если подписка активна
+	 */
+	public synchronized boolean start(int sensorFrequencyHz, int maxReportLatencyMs) {
+		if (!mStarted) {
+			mStarted = mSource.start(samplingPeriodUs(sensorFrequencyHz),
+					maxReportLatencyMs * MICROS_IN_MILLI, mListener);
+		}
+
+		return mStarted;
+	}
+
+	/**
+	 * Переподписывается на показания с новыми частотой и задержкой доставки. Если подписка не активна,
+	 * ничего не делает.
+	 *
+	 * @param sensorFrequencyHz  частота опроса датчиков, Гц
+	 * @param maxReportLatencyMs максимальная задержка доставки пакета показаний, мс
+	 * @return true, если подписка активна
+	 */
+	public synchronized boolean restart(int sensorFrequencyHz, int maxReportLatencyMs) {
+		if (!mStarted) {
+			return false;
+		}
+
+		stop();
+		return start(sensorFrequencyHz, maxReportLatencyMs);
+	}
+
+	/**
+	 * Запрашивает доставку накопленных показаний.
+	 *
+	 * @return true, если следует ожидать {@link SensorSampleListener#onFlushCompleted()}
+	 */
+	public synchronized boolean flush() {
+		return mStarted && mSource.flush();
+	}
+
+	/**
+	 * Отписывается от показаний датчиков.
+	 */
+	public synchronized void stop() {
+		if (mStarted) {
+			mSource.stop();
+			mStarted = false;
+		}
+	}
+
+	public synchronized boolean isStarted() {
+		return mStarted;
+	}
+
+	/**
+	 * @param sensorFrequencyHz частота опроса, Гц
+	 * @return период опроса, мкс
+	 */
+	public static int samplingPeriodUs(int sensorFrequencyHz) {
+		if (sensorFrequencyHz <= 0) {
+			throw new IllegalArgumentException("sensorFrequencyHz must be positive: " + sensorFrequencyHz);
+		}
+
+		return MICROS_IN_SECOND / sensorFrequencyHz;
+	}
+}
@@ -0,0 +1,21 @@
+package ru.chernakov.mykalmangps.core.sensor;
+
+/**
+ * Получатель показаний датчиков.
+ */
+public interface SensorSampleListener {
+	/**
+	 * Вызывается для каждого показания датчика.
+	 *
+	 * @param sensorType     тип датчика (константы {@code android.hardware.Sensor.TYPE_*})
+	 * @param timestampNanos время показания в шкале {@code SystemClock.elapsedRealtimeNanos()}, нс
+	 * @param values         значения показания; массив может переиспользоваться источником после возврата
+	 */
+	void onSensorSample(int sensorType, long timestampNanos, float[] values);
+
+	/**
+	 * Вызывается, когда все показания, накопленные датчиками до вызова {@link SensorSource#flush()},
+	 * переданы в {@link #onSensorSample}.
+	 */
+	void onFlushCompleted();
+}
@@ -0,0 +1,30 @@
+package ru.chernakov.mykalmangps.core.sensor;
+
+/**
+ * Источник показаний датчиков с поддержкой пакетной доставки.
+ */
+public interface SensorSource {
+	/**
+	 * Подписывается на показания датчиков.
+	 *
+	 * @param samplingPeriodUs   период опроса датчиков, мкс
+	 * @param maxReportLatencyUs максимальная задержка доставки показаний, мкс; позволяет датчику накапливать
+	 *                           показания в аппаратном буфере и доставлять их пакетом
+	 * @param listener           получатель показаний
+	 * @return true, если удалось подписаться хотя бы на один датчик
+	 */
+	boolean start(int samplingPeriodUs, int maxReportLatencyUs, SensorSampleListener listener);
+
+	/**
+	 * Запрашивает немедленную доставку накопленных показаний. По завершении вызывается
+	 * {@link SensorSampleListener#onFlushCompleted()}.
+	 *
+	 * @return true, если запрос принят; false, если доставка завершения не ожидается
+	 */
+	boolean flush();
+
+	/**
+	 * Отписывается от показаний датчиков.
+	 */
+	void stop();
+}
@@ -0,0 +1,256 @@
+package ru.chernakov.mykalmangps.core.track;
+
+import java.util.Locale;
+
+/**
+ * Трек в памяти, хранимый по столбцам в массивах примитивов.
+ * <p>
+ * Координаты хранятся целыми числами в единицах 1e-7 градуса (точность около 1 см), погрешность, скорость и
+ * направление — в float, время — в long. Одна точка занимает {@link #BYTES_PER_POINT} байт против нескольких
+ * сотен байт у копии {@code android.location.Location}. Память выделяется блоками по {@link #CHUNK_SIZE} точек,
+ * уже записанные блоки при росте не копируются.
+ * <p>
+ * Запись выполняется одним потоком (или под общей блокировкой, см. {@link #append}), чтение возможно из любого
+ * потока: точки с индексом меньше {@link #size()} уже полностью записаны.
+ */
+public final class ColumnarTrack {
+	/**
+	 * Количество точек в блоке
+	 */
+	public static final int CHUNK_SIZE = 1024;
+
+	/**
+	 * Объём памяти под одну точку, байт
+	 */
+	public static final int BYTES_PER_POINT = 4 + 4 + 4 + 4 + 4 + 8;
+
+	private static final int CHUNK_SHIFT = 10;
+
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private static final double E7 = 1e7;
+
+	/**
+	 * Блоки точек. Массив заменяется целиком при добавлении блока
+	 */
+	private volatile Chunk[] mChunks = new Chunk[0];
+
+	/**
+	 * Количество записанных точек. Запись поля публикует данные точек читающим потокам
+	 */
+	private volatile int mSize;
+
+	/**
+	 * Добавляет точку в конец трека.
+	 *
+	 * @param time      время, мс
+	 * @param latitude  широта
+	 * @param longitude долгота
+	 * @param accuracy  погрешность, м
+	 * @param speed     скорость, м/с
+	 * @param bearing   направление, градусы
+	 * @return индекс добавленной точки
+	 */
+	public synchronized int append(long time, double latitude, double longitude, float accuracy, float speed,
+	                               float bearing) {
+		int index = mSize;
+		int chunkIndex = index >>> CHUNK_SHIFT;
+		Chunk[] chunks = mChunks;
+		if (chunkIndex == chunks.length) {
+			Chunk[] grown = new Chunk[chunks.length + 1];
+			System.arraycopy(chunks, 0, grown, 0, chunks.length);
+			grown[chunkIndex] = new Chunk();
+			mChunks = grown;
+			chunks = grown;
+		}
+
+		Chunk chunk = chunks[chunkIndex];
+		int i = index & CHUNK_MASK;
+		chunk.mLatitudeE7[i] = toE7(latitude);
+		chunk.mLongitudeE7[i] = toE7(longitude);
+		chunk.mAccuracy[i] = accuracy;
+		chunk.mSpeed[i] = speed;
+		chunk.mBearing[i] = bearing;
+		chunk.mTime[i] = time;
+		mSize = index + 1;
+
+		return index;
+	}
+
+	/**
+	 * Удаляет все точки и освобождает память.
+	 */
+	public synchronized void clear() {
+		mSize = 0;
+		mChunks = new Chunk[0];
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	public int getLatitudeE7(int index) {
+		return chunk(index).mLatitudeE7[index & CHUNK_MASK];
+	}
+
+	public int getLongitudeE7(int index) {
+		return chunk(index).mLongitudeE7[index & CHUNK_MASK];
+	}
+
+	public double getLatitude(int index) {
+		return getLatitudeE7(index) / E7;
+	}
+
+	public double getLongitude(int index) {
+		return getLongitudeE7(index) / E7;
+	}
+
+	public float getAccuracy(int index) {
+		return chunk(index).mAccuracy[index & CHUNK_MASK];
+	}
+
+	public float getSpeed(int index) {
+		return chunk(index).mSpeed[index & CHUNK_MASK];
+	}
+
+	public float getBearing(int index) {
+		return chunk(index).mBearing[index & CHUNK_MASK];
+	}
+
+	public long getTime(int index) {
+		return chunk(index).mTime[index & CHUNK_MASK];
+	}
+
+	/**
+	 * Возвращает курсор по точкам трека с индексами от {@code from} до текущего размера трека. Точки, добавленные
+	 * после создания курсора, в обход не попадают.
+	 *
+	 * @param from индекс первой точки
+	 * @return курсор, установленный перед первой точкой
+	 */
+	public Cursor cursor(int from) {
+		// Размер читается до блоков: массив блоков, прочитанный позже, содержит все учтённые точки
+		int end = mSize;
+		return new Cursor(mChunks, from, end);
+	}
+
+	public Cursor cursor() {
+		return cursor(0);
+	}
+
+	/**
+	 * @return объём памяти, занятый точками трека, байт
+	 */
+	public long getMemoryUsage() {
+		return (long) mChunks.length * CHUNK_SIZE * BYTES_PER_POINT;
+	}
+
+	/**
+	 * @return строка с количеством точек и занятой памятью для журнала и отладки
+	 */
+	public String getMemoryReport() {
+		int size = mSize;
+		long bytes = getMemoryUsage();
+		return String.format(Locale.US, "%d points, %d chunks, %.1f KiB, %.1f bytes/point",
+				size, mChunks.length, bytes / 1024.0, size == 0 ? 0.0 : (double) bytes / size);
+	}
+
+	private Chunk chunk(int index) {
+		int size = mSize;
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+		}
+
+		return mChunks[index >>> CHUNK_SHIFT];
+	}
+
+	private static int toE7(double degrees) {
+		return (int) Math.round(degrees * E7);
+	}
+
+	private static final class Chunk {
+		final int[] mLatitudeE7 = new int[CHUNK_SIZE];
+		final int[] mLongitudeE7 = new int[CHUNK_SIZE];
+		final float[] mAccuracy = new float[CHUNK_SIZE];
+		final float[] mSpeed = new float[CHUNK_SIZE];
+		final float[] mBearing = new float[CHUNK_SIZE];
+		final long[] mTime = new long[CHUNK_SIZE];
+	}
+
+	/**
+	 * Курсор по точкам трека. Не создаёт объектов при переходе между точками:
+	 * <pre>
+	 * ColumnarTrack.Cursor cursor = track.cursor();
+	 * while (cursor.moveToNext()) {
+	 *     draw(cursor.getLatitude(), cursor.getLongitude());
+	 * }
+	 * </pre>
+	 */
+	public static final class Cursor {
+		private final Chunk[] mChunks;
+		private final int mEnd;
+		private int mIndex;
+		private Chunk mChunk;
+		private int mOffset;
+
+		private Cursor(Chunk[] chunks, int from, int end) {
+			mChunks = chunks;
+			mIndex = from - 1;
+			mEnd = end;
+		}
+
+		public boolean moveToNext() {
+			if (mIndex + 1 >= mEnd) {
+				return false;
+			}
+
+			mIndex++;
+			mOffset = mIndex & CHUNK_MASK;
+			if (mOffset == 0 || mChunk == null) {
+				mChunk = mChunks[mIndex >>> CHUNK_SHIFT];
+			}
+
+			return true;
+		}
+
+		public int getIndex() {
+			return mIndex;
+		}
+
+		public int getLatitudeE7() {
+			return mChunk.mLatitudeE7[mOffset];
+		}
+
+		public int getLongitudeE7() {
+			return mChunk.mLongitudeE7[mOffset];
+		}
+
+		public double getLatitude() {
+			return mChunk.mLatitudeE7[mOffset] / E7;
+		}
+
+		public double getLongitude() {
+			return mChunk.mLongitudeE7[mOffset] / E7;
+		}
+
+		public float getAccuracy() {
+			return mChunk.mAccuracy[mOffset];
+		}
+
+		public float getSpeed() {
+			return mChunk.mSpeed[mOffset];
+		}
+
+		public float getBearing() {
+			return mChunk.mBearing[mOffset];
+		}
+
+		public long getTime() {
+			return mChunk.mTime[mOffset];
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package ru.chernakov.mykalmangps.core.track;
+
+import ru.chernakov.mykalmangps.core.geo.GeoHash;
+
+/**
+ * Потоковое объединение точек трека, не покидающих одну ячейку geohash (стоянки).
+ * <p>
+ * Пока в текущей ячейке меньше {@code minPointCount} точек подряд, точки пропускаются без изменений. Начиная с
+ * {@code minPointCount}-й точки они накапливаются, а при выходе из ячейки (или вызове {@link #flush()}) выдаётся
+ * одна точка — среднее накопленных координат, взвешенное по обратному квадрату погрешности. Время объединённой
+ * точки равно времени последней накопленной, поэтому порядок времени в треке сохраняется.
+ * <p>
+ * Использование:
+ * <pre>
+ * int result = clusterer.offer(time, latitude, longitude, accuracy);
+ * if ((result &amp; GeoHashClusterer.RESULT_CLUSTER) != 0) {
+ *     publish(clusterer.getClusterLatitude(), ...);
+ * }
+ * if ((result &amp; GeoHashClusterer.RESULT_PASS) != 0) {
+ *     publish(latitude, longitude, ...);
+ * }
+ * </pre>
+ * Используется в одном потоке.
+ */
+public final class GeoHashClusterer {
+	/**
+	 * Точку нужно выдать без изменений
+	 */
+	public static final int RESULT_PASS = 1;
+
+	/**
+	 * Завершено объединение точек предыдущей ячейки, его нужно выдать до текущей точки
+	 */
+	public static final int RESULT_CLUSTER = 2;
+
+	private static final float MIN_ACCURACY = 1.0f;
+
+	private final int mPrecision;
+
+	private final int mMinPointCount;
+
+	private long mCell;
+
+	/**
+	 * Количество точек подряд в текущей ячейке
+	 */
+	private int mRunCount;
+
+	// Накопленные точки текущей ячейки
+	private int mAccumulatedCount;
+	private double mWeightSum;
+	private double mLatitudeSum;
+	private double mLongitudeSum;
+	private double mAccuracySum;
+	private long mLastTime;
+
+	// Последнее завершённое объединение
+	private int mClusterSize;
+	private double mClusterLatitude;
+	private double mClusterLongitude;
+	private float mClusterAccuracy;
+	private long mClusterTime;
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param precision     точность geohash, символов
+	 * @param minPointCount количество точек подряд в ячейке, начиная с которого точки объединяются
+	 */
+	public GeoHashClusterer(int precision, int minPointCount) {
+		if (precision < 1 || precision > GeoHash.MAX_PRECISION) {
+			throw new IllegalArgumentException("precision must be in [1, " + GeoHash.MAX_PRECISION + "]: "
+					+ precision);
+		}
+		if (minPointCount < 1) {
+			throw new IllegalArgumentException("minPointCount must be positive: " + minPointCount);
+		}
+
+		mPrecision = precision;
+		mMinPointCount = minPointCount;
+	}
+
+	/**
+	 * Передаёт очередную точку трека.
+	 *
+	 * @param time      время, мс
+	 * @param latitude  широта
+	 * @param longitude долгота
+	 * @param accuracy  погрешность, м
+	 * @return сочетание флагов {@link #RESULT_CLUSTER} и {@link #RESULT_PASS}; 0, если точка объединена с
+	 * предыдущими
+	 */
+	public int offer(long time, double latitude, double longitude, float accuracy) {
+		long cell = GeoHash.encode(latitude, longitude, mPrecision);
+		int result = 0;
+		if (mRunCount == 0 || cell != mCell) {
+			if (completeCluster()) {
+				result |= RESULT_CLUSTER;
+			}
+			mCell = cell;
+			mRunCount = 0;
+		}
+
+		mRunCount++;
+		if (mRunCount < mMinPointCount) {
+			return result | RESULT_PASS;
+		}
+
+		double weight = 1.0 / ((double) Math.max(accuracy, MIN_ACCURACY) * Math.max(accuracy, MIN_ACCURACY));
+		mAccumulatedCount++;
+		mWeightSum += weight;
+		mLatitudeSum += latitude * weight;
+		mLongitudeSum += longitude * weight;
+		mAccuracySum += accuracy;
+		mLastTime = time;
+
+		return result;
+	}
+
+	/**
+	 * Завершает объединение точек текущей ячейки, например при остановке записи трека.
+	 *
+	 * @return true, если объединение завершено и его нужно выдать
+	 */
+	public boolean flush() {
+		mRunCount = 0;
+		return completeCluster();
+	}
+
+	public void reset() {
+		mRunCount = 0;
+		mAccumulatedCount = 0;
+		mWeightSum = 0.0;
+		mLatitudeSum = 0.0;
+		mLongitudeSum = 0.0;
+		mAccuracySum = 0.0;
+	}
+
+	public int getPrecision() {
+		return mPrecision;
+	}
+
+	public int getMinPointCount() {
+		return mMinPointCount;
+	}
+
+	/**
+	 * @return количество точек в последнем завершённом объединении
+	 */
+	public int getClusterSize() {
+		return mClusterSize;
+	}
+
+	public double getClusterLatitude() {
+		return mClusterLatitude;
+	}
+
+	public double getClusterLongitude() {
+		return mClusterLongitude;
+	}
+
+	/**
+	 * @return средняя погрешность объединённых точек, м
+	 */
+	public float getClusterAccuracy() {
+		return mClusterAccuracy;
+	}
+
+	public long getClusterTime() {
+		return mClusterTime;
+	}
+
+	private boolean completeCluster() {
+		if (mAccumulatedCount == 0) {
+			return false;
+		}
+
+		mClusterSize = mAccumulatedCount;
+		mClusterLatitude = mLatitudeSum / mWeightSum;
+		mClusterLongitude = mLongitudeSum / mWeightSum;
+		mClusterAccuracy = (float) (mAccuracySum / mAccumulatedCount);
+		mClusterTime = mLastTime;
+
+		mAccumulatedCount = 0;
+		mWeightSum = 0.0;
+		mLatitudeSum = 0.0;
+		mLongitudeSum = 0.0;
+		mAccuracySum = 0.0;
+
+		return true;
+	}
+}
@@ -0,0 +1,139 @@
+package ru.chernakov.mykalmangps.core.track;
+
+import java.util.Arrays;
+
+/**
+ * Ограничивающие прямоугольники блоков из {@link #BLOCK_SIZE} последовательных точек трека.
+ * <p>
+ * Позволяет при отрисовке пропускать блоки, не попадающие в видимую область карты, так что затраты на кадр
+ * определяются количеством видимых точек, а не длиной трека. Индекс дополняется по мере роста трека: при
+ * добавлении точки пересчитывается только прямоугольник последнего блока.
+ * <p>
+ * Соседние блоки имеют общую точку (последняя точка блока является первой точкой следующего), поэтому отрезок
+ * между блоками всегда принадлежит одному из них. Используется в одном потоке.
+ */
+public final class TrackBlockIndex {
+	/**
+	 * Количество отрезков в блоке
+	 */
+	public static final int BLOCK_SIZE = 128;
+
+	private static final int INITIAL_BLOCKS = 16;
+
+	private int[] mMinLatitudeE7 = new int[INITIAL_BLOCKS];
+	private int[] mMaxLatitudeE7 = new int[INITIAL_BLOCKS];
+	private int[] mMinLongitudeE7 = new int[INITIAL_BLOCKS];
+	private int[] mMaxLongitudeE7 = new int[INITIAL_BLOCKS];
+
+	/**
+	 * Количество точек, учтённых в индексе
+	 */
+	private int mIndexedCount;
+
+	/**
+	 * Учитывает в индексе точки, добавленные в трек после предыдущего вызова.
+	 *
+	 * @param track трек
+	 * @return количество новых точек
+	 */
+	public int update(ColumnarTrack track) {
+		int size = track.size();
+		if (size < mIndexedCount) {
+			// Трек очищен
+			clear();
+		}
+
+		int from = mIndexedCount;
+		ColumnarTrack.Cursor cursor = track.cursor(from);
+		while (cursor.moveToNext()) {
+			int index = cursor.getIndex();
+			int latitude = cursor.getLatitudeE7();
+			int longitude = cursor.getLongitudeE7();
+
+			int block = blockOf(index);
+			if (index == block * BLOCK_SIZE) {
+				ensureCapacity(block + 1);
+				mMinLatitudeE7[block] = latitude;
+				mMaxLatitudeE7[block] = latitude;
+				mMinLongitudeE7[block] = longitude;
+				mMaxLongitudeE7[block] = longitude;
+			} else {
+				extend(block, latitude, longitude);
+			}
+			// Последняя точка блока является первой точкой следующего
+			if (index > 0 && index % BLOCK_SIZE == 0) {
+				extend(block - 1, latitude, longitude);
+			}
+			mIndexedCount = index + 1;
+		}
+
+		return mIndexedCount - from;
+	}
+
+	public void clear() {
+		mIndexedCount = 0;
+	}
+
+	/**
+	 * @return количество блоков
+	 */
+	public int getBlockCount() {
+		return mIndexedCount == 0 ? 0 : blockOf(mIndexedCount - 1) + 1;
+	}
+
+	public int getIndexedCount() {
+		return mIndexedCount;
+	}
+
+	/**
+	 * @return индекс первой точки блока
+	 */
+	public int getBlockStart(int block) {
+		return block * BLOCK_SIZE;
+	}
+
+	/**
+	 * @return индекс последней точки блока (включительно)
+	 */
+	public int getBlockEnd(int block) {
+		return Math.min((block + 1) * BLOCK_SIZE, mIndexedCount - 1);
+	}
+
+	/**
+	 * Проверяет пересечение прямоугольника блока с областью.
+	 *
+	 * @return true, если часть блока может быть видна в области
+	 */
+	public boolean intersects(int block, int minLatitudeE7, int maxLatitudeE7, int minLongitudeE7,
+	                          int maxLongitudeE7) {
+		return mMinLatitudeE7[block] <= maxLatitudeE7 && mMaxLatitudeE7[block] >= minLatitudeE7
+				&& mMinLongitudeE7[block] <= maxLongitudeE7 && mMaxLongitudeE7[block] >= minLongitudeE7;
+	}
+
+	private void extend(int block, int latitude, int longitude) {
+		if (latitude < mMinLatitudeE7[block]) {
+			mMinLatitudeE7[block] = latitude;
+		} else if (latitude > mMaxLatitudeE7[block]) {
+			mMaxLatitudeE7[block] = latitude;
+		}
+		if (longitude < mMinLongitudeE7[block]) {
+			mMinLongitudeE7[block] = longitude;
+		} else if (longitude > mMaxLongitudeE7[block]) {
+			mMaxLongitudeE7[block] = longitude;
+		}
+	}
+
+	private void ensureCapacity(int blocks) {
+		if (blocks > mMinLatitudeE7.length) {
+			int capacity = Math.max(blocks, mMinLatitudeE7.length * 2);
+			mMinLatitudeE7 = Arrays.copyOf(mMinLatitudeE7, capacity);
+			mMaxLatitudeE7 = Arrays.copyOf(mMaxLatitudeE7, capacity);
+			mMinLongitudeE7 = Arrays.copyOf(mMinLongitudeE7, capacity);
+			mMaxLongitudeE7 = Arrays.copyOf(mMaxLongitudeE7, capacity);
+		}
+	}
+
+	private static int blockOf(int index) {
+		return index / BLOCK_SIZE;
+	}
+}
@@ -0,0 +1,366 @@
+package ru.chernakov.mykalmangps.core.track;
+
+import java.util.Arrays;
+
+/**
+ * Пирамида упрощённых представлений трека для масштабов карты от {@code minZoom} до {@code maxZoom}.
+ * <p>
+ * Каждый уровень хранит индексы точек трека, оставшихся после упрощения с допуском {@code tolerancePx} пикселей
+ * на соответствующем масштабе (в проекции Web Mercator, 256 пикселей на тайл). Упрощение потоковое (алгоритм
+ * «секторов» Чжао–Заальфельда): точка отбрасывается, пока все точки после последней сохранённой помещаются в
+ * коридор шириной допуска. Самый подробный уровень получает точки трека, каждый следующий — точки,
+ * сохранённые предыдущим. Поэтому добавление точки стоит O(1) на уровень, а не повторное упрощение всего трека.
+ * Допуск уменьшается вдвое на каждом следующем масштабе, так что накопленное отклонение уровня не превышает
+ * {@code 2 * tolerancePx}.
+ * <p>
+ * Используется в одном потоке.
+ */
+public final class TrackLodPyramid {
+	/**
+	 * Допуск упрощения по умолчанию, пикселей
+	 */
+	public static final double DEFAULT_TOLERANCE_PX = 0.5;
+
+	private static final int TILE_SIZE = 256;
+
+	private final int mMinZoom;
+
+	private final int mMaxZoom;
+
+	/**
+	 * Уровни по возрастанию масштаба: {@code mLevels[zoom - mMinZoom]}
+	 */
+	private final Level[] mLevels;
+
+	/**
+	 * Количество точек трека, учтённых в пирамиде
+	 */
+	private int mIndexedCount;
+
+	/**
+	 * Конструктор.
+	 *
+	 * @param minZoom     наименьший масштаб карты
+	 * @param maxZoom     наибольший масштаб карты
+	 * @param tolerancePx допуск упрощения, пикселей
+	 */
+	public TrackLodPyramid(int minZoom, int maxZoom, double tolerancePx) {
+		if (minZoom > maxZoom) {
+			throw new IllegalArgumentException("minZoom > maxZoom: " + minZoom + " > " + maxZoom);
+		}
+
+		mMinZoom = minZoom;
+		mMaxZoom = maxZoom;
+		mLevels = new Level[maxZoom - minZoom + 1];
+		for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+			// Координаты в долях мира, пиксель масштаба zoom равен 1 / (256 * 2^zoom)
+			mLevels[zoom - minZoom] = new Level(tolerancePx / (TILE_SIZE * Math.pow(2.0, zoom)));
+		}
+	}
+
+	/**
+	 * Учитывает в пирамиде точки, добавленные в трек после предыдущего вызова.
+	 *
+	 * @param track трек
+	 * @return количество новых точек
+	 */
+	public int update(ColumnarTrack track) {
+		if (track.size() < mIndexedCount) {
+			// Трек очищен
+			clear();
+		}
+
+		int from = mIndexedCount;
+		ColumnarTrack.Cursor cursor = track.cursor(from);
+		while (cursor.moveToNext()) {
+			offer(mLevels.length - 1, cursor.getIndex(),
+					projectX(cursor.getLongitude()), projectY(cursor.getLatitude()));
+			mIndexedCount = cursor.getIndex() + 1;
+		}
+
+		return mIndexedCount - from;
+	}
+
+	public void clear() {
+		for (Level level : mLevels) {
+			level.clear();
+		}
+		mIndexedCount = 0;
+	}
+
+	public int getMinZoom() {
+		return mMinZoom;
+	}
+
+	public int getMaxZoom() {
+		return mMaxZoom;
+	}
+
+	public int getIndexedCount() {
+		return mIndexedCount;
+	}
+
+	/**
+	 * @return количество точек, сохранённых на уровне масштаба (без хвоста, см. {@link #collect})
+	 */
+	public int getLevelSize(int zoom) {
+		return mLevels[clampZoom(zoom) - mMinZoom].mSize;
+	}
+
+	/**
+	 * Собирает индексы точек трека для отрисовки на масштабе {@code zoom}.
+	 * <p>
+	 * К точкам уровня добавляется хвост: точки более подробных уровней, ещё не дошедшие до этого уровня,
+	 * и последняя точка трека, чтобы линия заканчивалась в текущем местоположении.
+	 *
+	 * @param zoom масштаб карты, приводится к диапазону пирамиды
+	 * @param out  список для индексов, очищается перед заполнением
+	 */
+	public void collect(int zoom, Indices out) {
+		out.clear();
+		int levelIndex = clampZoom(zoom) - mMinZoom;
+		Level level = mLevels[levelIndex];
+		out.addAll(level.mIndices, 0, level.mSize);
+
+		for (int i = levelIndex + 1; i < mLevels.length; i++) {
+			Level finer = mLevels[i];
+			int last = out.mSize == 0 ? -1 : out.mIndices[out.mSize - 1];
+			int from = upperBound(finer.mIndices, finer.mSize, last);
+			out.addAll(finer.mIndices, from, finer.mSize);
+		}
+
+		int last = mIndexedCount - 1;
+		if (last >= 0 && (out.mSize == 0 || out.mIndices[out.mSize - 1] < last)) {
+			out.add(last);
+		}
+	}
+
+	private int clampZoom(int zoom) {
+		return Math.max(mMinZoom, Math.min(mMaxZoom, zoom));
+	}
+
+	/**
+	 * Передаёт точку уровню {@code levelIndex}; сохранённые им точки передаются следующему, менее подробному.
+	 */
+	private void offer(int levelIndex, int index, double x, double y) {
+		Level level = mLevels[levelIndex];
+		while (true) {
+			int emitted = level.offer(index, x, y);
+			if (emitted == Level.NONE) {
+				return;
+			}
+
+			// Уровень сохранил точку: передаём её дальше
+			if (levelIndex > 0) {
+				offer(levelIndex - 1, level.mAnchorIndex, level.mAnchorX, level.mAnchorY);
+			}
+			if (emitted == Level.EMITTED) {
+				return;
+			}
+			// EMITTED_RETRY: сохранена предыдущая точка, текущую нужно обработать от нового начала
+		}
+	}
+
+	/**
+	 * @return индекс первого элемента массива, большего {@code value}
+	 */
+	private static int upperBound(int[] values, int size, int value) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] <= value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * @return долгота в проекции Web Mercator, доля ширины мира [0, 1]
+	 */
+	static double projectX(double longitude) {
+		return longitude / 360.0 + 0.5;
+	}
+
+	/**
+	 * @return широта в проекции Web Mercator, доля высоты мира [0, 1] (север сверху)
+	 */
+	static double projectY(double latitude) {
+		double sin = Math.sin(Math.toRadians(latitude));
+		return 0.5 - Math.log((1.0 + sin) / (1.0 - sin)) / (4.0 * Math.PI);
+	}
+
+	/**
+	 * Уровень пирамиды с потоковым упрощением.
+	 */
+	private static final class Level {
+		static final int NONE = 0;
+		static final int EMITTED = 1;
+		static final int EMITTED_RETRY = 2;
+
+		private final double mTolerance;
+
+		private int[] mIndices = new int[64];
+		private int mSize;
+
+		/**
+		 * Последняя сохранённая точка — вершина сектора
+		 */
+		private int mAnchorIndex = -1;
+		private double mAnchorX;
+		private double mAnchorY;
+
+		/**
+		 * Последняя полученная, но ещё не сохранённая точка
+		 */
+		private int mPendingIndex = -1;
+		private double mPendingX;
+		private double mPendingY;
+
+		/**
+		 * Допустимый сектор направлений от вершины относительно {@link #mSectorBase}, радианы
+		 */
+		private boolean mSectorOpen;
+		private double mSectorBase;
+		private double mSectorLow;
+		private double mSectorHigh;
+
+		/**
+		 * Наибольшее расстояние от вершины до отброшенных точек
+		 */
+		private double mMaxDistance;
+
+		Level(double tolerance) {
+			mTolerance = tolerance;
+		}
+
+		void clear() {
+			mSize = 0;
+			mAnchorIndex = -1;
+			mPendingIndex = -1;
+			mSectorOpen = false;
+		}
+
+		/**
+		 * @return {@link #NONE}, если точка отложена; {@link #EMITTED}, если точка сохранена;
+		 * {@link #EMITTED_RETRY}, если сохранена предыдущая отложенная точка, а текущую нужно передать снова
+		 */
+		int offer(int index, double x, double y) {
+			if (mAnchorIndex < 0) {
+				anchor(index, x, y);
+				return EMITTED;
+			}
+
+			double dx = x - mAnchorX;
+			double dy = y - mAnchorY;
+			double distance = Math.sqrt(dx * dx + dy * dy);
+			if (distance <= mTolerance) {
+				if (!mSectorOpen) {
+					pending(index, x, y);
+					return NONE;
+				}
+				// Линия вернулась к вершине: сохраняем отложенную точку, иначе отрезок туда и обратно пропадёт
+				anchor(mPendingIndex, mPendingX, mPendingY);
+				return EMITTED_RETRY;
+			}
+
+			double direction = Math.atan2(dy, dx);
+			double halfWidth = Math.asin(mTolerance / distance);
+			if (!mSectorOpen) {
+				mSectorOpen = true;
+				mSectorBase = direction;
+				mSectorLow = -halfWidth;
+				mSectorHigh = halfWidth;
+				mMaxDistance = distance;
+				pending(index, x, y);
+				return NONE;
+			}
+
+			double relative = normalize(direction - mSectorBase);
+			if (relative < mSectorLow || relative > mSectorHigh || distance < mMaxDistance - mTolerance) {
+				// Точка выходит из коридора (или линия развернулась назад): сохраняем отложенную точку
+				anchor(mPendingIndex, mPendingX, mPendingY);
+				return EMITTED_RETRY;
+			}
+
+			mSectorLow = Math.max(mSectorLow, relative - halfWidth);
+			mSectorHigh = Math.min(mSectorHigh, relative + halfWidth);
+			mMaxDistance = Math.max(mMaxDistance, distance);
+			pending(index, x, y);
+			return NONE;
+		}
+
+		private void anchor(int index, double x, double y) {
+			if (mSize == mIndices.length) {
+				mIndices = Arrays.copyOf(mIndices, mSize * 2);
+			}
+			mIndices[mSize++] = index;
+
+			mAnchorIndex = index;
+			mAnchorX = x;
+			mAnchorY = y;
+			mPendingIndex = -1;
+			mSectorOpen = false;
+		}
+
+		private void pending(int index, double x, double y) {
+			mPendingIndex = index;
+			mPendingX = x;
+			mPendingY = y;
+		}
+
+		private static double normalize(double angle) {
+			if (angle > Math.PI) {
+				return angle - 2.0 * Math.PI;
+			} else if (angle <= -Math.PI) {
+				return angle + 2.0 * Math.PI;
+			}
+
+			return angle;
+		}
+	}
+
+	/**
+	 * Список индексов точек трека, используемый повторно между кадрами.
+	 */
+	public static final class Indices {
+		private int[] mIndices = new int[64];
+		private int mSize;
+
+		public int size() {
+			return mSize;
+		}
+
+		public int get(int i) {
+			return mIndices[i];
+		}
+
+		void clear() {
+			mSize = 0;
+		}
+
+		void add(int index) {
+			ensureCapacity(mSize + 1);
+			mIndices[mSize++] = index;
+		}
+
+		void addAll(int[] indices, int from, int to) {
+			if (to <= from) {
+				return;
+			}
+			ensureCapacity(mSize + to - from);
+			System.arraycopy(indices, from, mIndices, mSize, to - from);
+			mSize += to - from;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > mIndices.length) {
+				mIndices = Arrays.copyOf(mIndices, Math.max(capacity, mIndices.length * 2));
+			}
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package ru.chernakov.mykalmangps.core.track;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+import static ru.chernakov.mykalmangps.core.track.TrackLogFormat.HEADER_SIZE;
+import static ru.chernakov.mykalmangps.core.track.TrackLogFormat.RECORD_SIZE;
+
+/**
+ * Журнал трека, записываемый только в конец, через отображённые в память сегменты
+ * (формат описан в {@link TrackLogFormat}).
+ * <p>
+ * Поля записи помещаются напрямую в отображённый буфер без промежуточных объектов и массивов. Данные попадают
+ * в страничный кэш ядра сразу после записи, поэтому переживают завершение процесса; {@link #sync()}
+ * дополнительно сбрасывает их на носитель.
+ * <p>
+ * При открытии последний сегмент проверяется: записи до первой повреждённой сохраняются, повреждённая
+ * (недописанная) запись затирается, запись продолжается с её места.
+ * <p>
+ * Заполненные сегменты удаляются {@link #deleteCommitted(long)}, когда все их записи сохранены в основном
+ * хранилище.
+ */
+public final class TrackLog implements Closeable {
+	/**
+	 * Количество записей в сегменте по умолчанию
+	 */
+	public static final int DEFAULT_SEGMENT_RECORDS = 16384;
+
+	private final File mDirectory;
+
+	private final int mSegmentRecords;
+
+	private long mSequence;
+
+	private MappedByteBuffer mSegment;
+
+	/**
+	 * Ёмкость текущего сегмента, записей
+	 */
+	private int mCapacity;
+
+	/**
+	 * Количество записей в текущем сегменте
+	 */
+	private int mRecordCount;
+
+	/**
+	 * Наибольшее время записи в текущем сегменте, мс
+	 */
+	private long mMaxTimestamp = Long.MIN_VALUE;
+
+	/**
+	 * Заполненные сегменты в порядке номеров
+	 */
+	private final ArrayDeque<Segment> mClosedSegments = new ArrayDeque<>();
+
+	/**
+	 * Количество записей, восстановленных при открытии
+	 */
+	private long mRecoveredCount;
+
+	private TrackLog(File directory, int segmentRecords) {
+		mDirectory = directory;
+		mSegmentRecords = segmentRecords;
+	}
+
+	/**
+	 * Открывает журнал, восстанавливая его после аварийного завершения.
+	 *
+	 * @param directory      каталог журнала
+	 * @param segmentRecords количество записей в новых сегментах
+	 * @return журнал, готовый к записи
+	 * @throws IOException ошибка доступа к файлам журнала
+	 */
+	public static TrackLog open(File directory, int segmentRecords) throws IOException {
+		if (segmentRecords <= 0) {
+			throw new IllegalArgumentException("segmentRecords must be positive: " + segmentRecords);
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create track log directory " + directory);
+		}
+
+		TrackLog log = new TrackLog(directory, segmentRecords);
+		log.recover();
+
+		return log;
+	}
+
+	private void recover() throws IOException {
+		long[] segments = TrackLogFormat.listSegments(mDirectory);
+		for (int i = 0; i < segments.length - 1; i++) {
+			File file = new File(mDirectory, TrackLogFormat.segmentName(segments[i]));
+			MappedByteBuffer buffer = map(file, file.length());
+			int count = countValidRecords(buffer, readCapacity(buffer));
+			mRecoveredCount += count;
+			mClosedSegments.add(new Segment(segments[i], maxTimestamp(buffer, count)));
+		}
+
+		if (segments.length == 0) {
+			createSegment(0);
+			return;
+		}
+
+		long last = segments[segments.length - 1];
+		File file = new File(mDirectory, TrackLogFormat.segmentName(last));
+		MappedByteBuffer buffer = map(file, file.length());
+		int capacity = readCapacity(buffer);
+		if (capacity < 0) {
+			// Заголовок не записан до конца: сегмент не содержит данных
+			createSegment(last);
+			return;
+		}
+
+		int count = countValidRecords(buffer, capacity);
+		if (count < capacity) {
+			// Затираем недописанную запись, чтобы она не была принята за целую после следующей записи
+			int offset = HEADER_SIZE + count * RECORD_SIZE;
+			for (int i = 0; i < RECORD_SIZE; i++) {
+				buffer.put(offset + i, (byte) 0);
+			}
+		}
+
+		mSequence = last;
+		mSegment = buffer;
+		mCapacity = capacity;
+		mRecordCount = count;
+		mMaxTimestamp = maxTimestamp(buffer, count);
+		mRecoveredCount += count;
+	}
+
+	/**
+	 * Добавляет запись в конец журнала.
+	 *
+	 * @param timestamp время, мс
+	 * @param latitude  широта
+	 * @param longitude долгота
+	 * @param accuracy  погрешность, м
+	 * @param speed     скорость, м/с
+	 * @param bearing   направление, градусы
+	 * @param source    источник ({@code TrackLogFormat.SOURCE_*})
+	 * @param flags     флаги ({@code TrackLogFormat.FLAG_*})
+	 * @throws IOException ошибка создания нового сегмента
+	 */
+	public synchronized void append(long timestamp, double latitude, double longitude, float accuracy, float speed,
+	                                float bearing, byte source, byte flags) throws IOException {
+		if (mSegment == null) {
+			throw new IOException("Track log is closed");
+		}
+		if (mRecordCount == mCapacity) {
+			createSegment(mSequence + 1);
+		}
+
+		MappedByteBuffer segment = mSegment;
+		int offset = HEADER_SIZE + mRecordCount * RECORD_SIZE;
+		segment.putLong(offset + TrackLogFormat.OFFSET_TIMESTAMP, timestamp);
+		segment.putDouble(offset + TrackLogFormat.OFFSET_LATITUDE, latitude);
+		segment.putDouble(offset + TrackLogFormat.OFFSET_LONGITUDE, longitude);
+		segment.putFloat(offset + TrackLogFormat.OFFSET_ACCURACY, accuracy);
+		segment.putFloat(offset + TrackLogFormat.OFFSET_SPEED, speed);
+		segment.putFloat(offset + TrackLogFormat.OFFSET_BEARING, bearing);
+		segment.put(offset + TrackLogFormat.OFFSET_SOURCE, source);
+		segment.put(offset + TrackLogFormat.OFFSET_FLAGS, flags);
+		segment.putShort(offset + TrackLogFormat.OFFSET_RESERVED, (short) 0);
+		segment.putInt(offset + TrackLogFormat.OFFSET_CRC,
+				TrackLogFormat.crc32(segment, offset, TrackLogFormat.PAYLOAD_SIZE));
+		mRecordCount++;
+		mMaxTimestamp = Math.max(mMaxTimestamp, timestamp);
+	}
+
+	/**
+	 * Удаляет заполненные сегменты, все записи которых не новее {@code committedTimestamp}. Текущий сегмент
+	 * не удаляется.
+	 *
+	 * @param committedTimestamp время последней записи, сохранённой в основном хранилище, мс
+	 * @return количество удалённых сегментов
+	 */
+	public synchronized int deleteCommitted(long committedTimestamp) {
+		int deleted = 0;
+		while (!mClosedSegments.isEmpty() && mClosedSegments.peekFirst().mMaxTimestamp <= committedTimestamp) {
+			Segment segment = mClosedSegments.pollFirst();
+			File file = new File(mDirectory, TrackLogFormat.segmentName(segment.mSequence));
+			if (!file.delete() && file.exists()) {
+				// Повторим при следующем вызове
+				mClosedSegments.addFirst(segment);
+				break;
+			}
+			deleted++;
+		}
+
+		return deleted;
+	}
+
+	/**
+	 * Сбрасывает записанные данные текущего сегмента на носитель.
+	 */
+	public synchronized void sync() {
+		if (mSegment != null) {
+			mSegment.force();
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		sync();
+		mSegment = null;
+	}
+
+	public File getDirectory() {
+		return mDirectory;
+	}
+
+	/**
+	 * @return количество целых записей, найденных при открытии журнала
+	 */
+	public long getRecoveredCount() {
+		return mRecoveredCount;
+	}
+
+	private void createSegment(long sequence) throws IOException {
+		if (mSegment != null) {
+			mSegment.force();
+			mClosedSegments.add(new Segment(mSequence, mMaxTimestamp));
+		}
+
+		File file = new File(mDirectory, TrackLogFormat.segmentName(sequence));
+		MappedByteBuffer buffer = map(file, HEADER_SIZE + (long) mSegmentRecords * RECORD_SIZE);
+		buffer.putShort(TrackLogFormat.HEADER_OFFSET_VERSION, TrackLogFormat.VERSION);
+		buffer.putShort(TrackLogFormat.HEADER_OFFSET_RECORD_SIZE, (short) RECORD_SIZE);
+		buffer.putLong(TrackLogFormat.HEADER_OFFSET_SEQUENCE, sequence);
+		buffer.putInt(TrackLogFormat.HEADER_OFFSET_CAPACITY, mSegmentRecords);
+		// Сигнатура записывается последней: сегмент без неё считается пустым
+		buffer.putInt(TrackLogFormat.HEADER_OFFSET_MAGIC, TrackLogFormat.MAGIC);
+
+		mSequence = sequence;
+		mSegment = buffer;
+		mCapacity = mSegmentRecords;
+		mRecordCount = 0;
+		mMaxTimestamp = Long.MIN_VALUE;
+	}
+
+	private static int countValidRecords(MappedByteBuffer buffer, int capacity) {
+		int count = 0;
+		while (count < capacity && TrackLogFormat.isValidRecord(buffer, HEADER_SIZE + count * RECORD_SIZE)) {
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return наибольшее время первых {@code count} записей сегмента или {@link Long#MIN_VALUE}, если записей нет
+	 */
+	private static long maxTimestamp(MappedByteBuffer buffer, int count) {
+		long max = Long.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			max = Math.max(max, buffer.getLong(HEADER_SIZE + i * RECORD_SIZE + TrackLogFormat.OFFSET_TIMESTAMP));
+		}
+
+		return max;
+	}
+
+	/**
+	 * @return ёмкость сегмента по заголовку или -1, если заголовок повреждён
+	 */
+	static int readCapacity(MappedByteBuffer buffer) {
+		if (buffer.capacity() < HEADER_SIZE
+				|| buffer.getInt(TrackLogFormat.HEADER_OFFSET_MAGIC) != TrackLogFormat.MAGIC
+				|| buffer.getShort(TrackLogFormat.HEADER_OFFSET_RECORD_SIZE) != RECORD_SIZE) {
+			return -1;
+		}
+
+		int capacity = buffer.getInt(TrackLogFormat.HEADER_OFFSET_CAPACITY);
+		return Math.min(capacity, (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE);
+	}
+
+	static MappedByteBuffer map(File file, long size) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (raf.length() < size) {
+				raf.setLength(size);
+			}
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(TrackLogFormat.BYTE_ORDER);
+
+			return buffer;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Заполненный сегмент журнала.
+	 */
+	private static final class Segment {
+		final long mSequence;
+
+		/**
+		 * Наибольшее время записи в сегменте, мс
+		 */
+		final long mMaxTimestamp;
+
+		Segment(long sequence, long maxTimestamp) {
+			mSequence = sequence;
+			mMaxTimestamp = maxTimestamp;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package ru.chernakov.mykalmangps.core.track;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Формат файлов журнала трека.
+ * <p>
+ * Журнал состоит из сегментов {@code track-<номер>.log} фиксированного размера. Сегмент начинается с заголовка
+ * {@link #HEADER_SIZE} байт, за которым следуют записи фиксированной длины {@link #RECORD_SIZE} байт:
+ * <pre>
+ *  0  long   время, мс
+ *  8  double широта
+ * 16  double долгота
+ * 24  float  погрешность, м
+ * 28  float  скорость, м/с
+ * 32  float  направление, градусы
+ * 36  byte   источник ({@link #SOURCE_GPS}, {@link #SOURCE_NETWORK}, ...)
+ * 37  byte   флаги ({@link #FLAG_FILTERED})
+ * 38  short  резерв
+ * 40  int    CRC32 байтов 0..39
+ * </pre>
+ * Все поля записываются в порядке байтов little-endian. Запись с неверной контрольной суммой (в том числе
+ * не записанная, заполненная нулями) считается концом сегмента.
+ */
+public final class TrackLogFormat {
+	public static final int MAGIC = 0x54524b4c; // "TRKL"
+
+	public static final short VERSION = 1;
+
+	/**
+	 * Размер заголовка сегмента, байт
+	 */
+	public static final int HEADER_SIZE = 32;
+
+	/**
+	 * Размер записи, байт
+	 */
+	public static final int RECORD_SIZE = 44;
+
+	/**
+	 * Размер данных записи, покрываемых контрольной суммой, байт
+	 */
+	static final int PAYLOAD_SIZE = 40;
+
+	static final int OFFSET_TIMESTAMP = 0;
+	static final int OFFSET_LATITUDE = 8;
+	static final int OFFSET_LONGITUDE = 16;
+	static final int OFFSET_ACCURACY = 24;
+	static final int OFFSET_SPEED = 28;
+	static final int OFFSET_BEARING = 32;
+	static final int OFFSET_SOURCE = 36;
+	static final int OFFSET_FLAGS = 37;
+	static final int OFFSET_RESERVED = 38;
+	static final int OFFSET_CRC = 40;
+
+	// Поля заголовка
+	static final int HEADER_OFFSET_MAGIC = 0;
+	static final int HEADER_OFFSET_VERSION = 4;
+	static final int HEADER_OFFSET_RECORD_SIZE = 6;
+	static final int HEADER_OFFSET_SEQUENCE = 8;
+	static final int HEADER_OFFSET_CAPACITY = 16;
+
+	/**
+	 * Источник неизвестен
+	 */
+	public static final byte SOURCE_UNKNOWN = 0;
+
+	/**
+	 * Определение местоположения GNSS
+	 */
+	public static final byte SOURCE_GPS = 1;
+
+	/**
+	 * Определение местоположения по сети
+	 */
+	public static final byte SOURCE_NETWORK = 2;
+
+	/**
+	 * Точка получена фильтром Калмана
+	 */
+	public static final byte FLAG_FILTERED = 1;
+
+	static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	static final String SEGMENT_PREFIX = "track-";
+
+	static final String SEGMENT_SUFFIX = ".log";
+
+	private static final int[] CRC_TABLE = new int[256];
+
+	static {
+		for (int n = 0; n < 256; n++) {
+			int c = n;
+			for (int k = 0; k < 8; k++) {
+				c = (c & 1) != 0 ? 0xedb88320 ^ (c >>> 1) : c >>> 1;
+			}
+			CRC_TABLE[n] = c;
+		}
+	}
+
+	private TrackLogFormat() {
+	}
+
+	/**
+	 * Вычисляет CRC32 участка буфера, не изменяя его позицию.
+	 * ({@code java.util.zip.CRC32#update(ByteBuffer)} недоступен до API 26.)
+	 *
+	 * @param buffer буфер
+	 * @param offset начало участка
+	 * @param length длина участка
+	 * @return контрольная сумма
+	 */
+	static int crc32(ByteBuffer buffer, int offset, int length) {
+		int crc = 0xffffffff;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			crc = CRC_TABLE[(crc ^ buffer.get(i)) & 0xff] ^ (crc >>> 8);
+		}
+
+		return ~crc;
+	}
+
+	/**
+	 * Проверяет контрольную сумму записи.
+	 *
+	 * @param buffer буфер сегмента
+	 * @param offset смещение записи
+	 * @return true, если запись целая
+	 */
+	static boolean isValidRecord(ByteBuffer buffer, int offset) {
+		return buffer.getInt(offset + OFFSET_CRC) == crc32(buffer, offset, PAYLOAD_SIZE);
+	}
+
+	static String segmentName(long sequence) {
+		return String.format(Locale.US, "%s%010d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * @return номер сегмента по имени файла или -1, если файл не является сегментом журнала
+	 */
+	static long parseSegmentSequence(String name) {
+		if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+			return -1;
+		}
+
+		try {
+			return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @param directory каталог журнала
+	 * @return номера сегментов журнала в порядке возрастания
+	 */
+	static long[] listSegments(File directory) {
+		String[] names = directory.list();
+		if (names == null) {
+			return new long[0];
+		}
+
+		long[] sequences = new long[names.length];
+		int count = 0;
+		for (String name : names) {
+			long sequence = parseSegmentSequence(name);
+			if (sequence >= 0) {
+				sequences[count++] = sequence;
+			}
+		}
+		sequences = Arrays.copyOf(sequences, count);
+		Arrays.sort(sequences);
+
+		return sequences;
+	}
+}
@@ -0,0 +1,141 @@
+package ru.chernakov.mykalmangps.core.track;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static ru.chernakov.mykalmangps.core.track.TrackLogFormat.HEADER_SIZE;
+import static ru.chernakov.mykalmangps.core.track.TrackLogFormat.RECORD_SIZE;
+
+/**
+ * Последовательное чтение журнала трека.
+ * <p>
+ * Сегменты отображаются в память только для чтения, поля текущей записи читаются из буфера напрямую,
+ * объекты на запись не создаются:
+ * <pre>
+ * TrackLogReader reader = TrackLogReader.open(directory);
+ * while (reader.next()) {
+ *     draw(reader.getLatitude(), reader.getLongitude());
+ * }
+ * reader.close();
+ * </pre>
+ * Чтение сегмента завершается на первой повреждённой записи.
+ */
+public final class TrackLogReader implements Closeable {
+	private final File mDirectory;
+
+	private final long[] mSegments;
+
+	/**
+	 * Индекс текущего сегмента в {@link #mSegments}
+	 */
+	private int mSegmentIndex = -1;
+
+	private MappedByteBuffer mSegment;
+
+	private int mCapacity;
+
+	/**
+	 * Индекс текущей записи в сегменте
+	 */
+	private int mRecord;
+
+	private int mOffset;
+
+	private TrackLogReader(File directory, long[] segments) {
+		mDirectory = directory;
+		mSegments = segments;
+	}
+
+	/**
+	 * @param directory каталог журнала
+	 * @return читатель, установленный перед первой записью
+	 */
+	public static TrackLogReader open(File directory) {
+		return new TrackLogReader(directory, TrackLogFormat.listSegments(directory));
+	}
+
+	/**
+	 * Переходит к следующей записи.
+	 *
+	 * @return false, если записей больше нет
+	 * @throws IOException ошибка чтения сегмента
+	 */
+	public boolean next() throws IOException {
+		while (true) {
+			if (mSegment != null) {
+				int record = mRecord + 1;
+				int offset = HEADER_SIZE + record * RECORD_SIZE;
+				if (record < mCapacity && TrackLogFormat.isValidRecord(mSegment, offset)) {
+					mRecord = record;
+					mOffset = offset;
+					return true;
+				}
+				mSegment = null;
+			}
+
+			if (++mSegmentIndex >= mSegments.length) {
+				mSegmentIndex = mSegments.length;
+				return false;
+			}
+			openSegment(mSegments[mSegmentIndex]);
+		}
+	}
+
+	public long getTimestamp() {
+		return mSegment.getLong(mOffset + TrackLogFormat.OFFSET_TIMESTAMP);
+	}
+
+	public double getLatitude() {
+		return mSegment.getDouble(mOffset + TrackLogFormat.OFFSET_LATITUDE);
+	}
+
+	public double getLongitude() {
+		return mSegment.getDouble(mOffset + TrackLogFormat.OFFSET_LONGITUDE);
+	}
+
+	public float getAccuracy() {
+		return mSegment.getFloat(mOffset + TrackLogFormat.OFFSET_ACCURACY);
+	}
+
+	public float getSpeed() {
+		return mSegment.getFloat(mOffset + TrackLogFormat.OFFSET_SPEED);
+	}
+
+	public float getBearing() {
+		return mSegment.getFloat(mOffset + TrackLogFormat.OFFSET_BEARING);
+	}
+
+	public byte getSource() {
+		return mSegment.get(mOffset + TrackLogFormat.OFFSET_SOURCE);
+	}
+
+	public byte getFlags() {
+		return mSegment.get(mOffset + TrackLogFormat.OFFSET_FLAGS);
+	}
+
+	@Override
+	public void close() {
+		mSegment = null;
+		mSegmentIndex = mSegments.length;
+	}
+
+	private void openSegment(long sequence) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(new File(mDirectory, TrackLogFormat.segmentName(sequence)), "r");
+		try {
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			buffer.order(TrackLogFormat.BYTE_ORDER);
+			int capacity = TrackLog.readCapacity(buffer);
+			if (capacity > 0) {
+				mSegment = buffer;
+				mCapacity = capacity;
+				mRecord = -1;
+			}
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package ru.chernakov.mykalmangps.core.buffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SensorStreamMergerTest {
+	@Test
+	public void capacityIsRoundedUpToPowerOfTwo() {
+		assertEquals(8, new ImuRingBuffer(5).getCapacity());
+		assertEquals(16, new GnssRingBuffer(16).getCapacity());
+	}
+
+	@Test
+	public void overflowDropsNewestSample() {
+		ImuRingBuffer imu = new ImuRingBuffer(2);
+		assertTrue(imu.offer(1, 0.1, 0.0, 0.0));
+		assertTrue(imu.offer(2, 0.2, 0.0, 0.0));
+		assertFalse(imu.offer(3, 0.3, 0.0, 0.0));
+
+		assertEquals(1, imu.getDroppedCount());
+		assertEquals(2, imu.size());
+		assertEquals(1, imu.getTimestamp(imu.peek()));
+
+		imu.release();
+		assertTrue(imu.offer(4, 0.4, 0.0, 0.0));
+		assertEquals(2, imu.getTimestamp(imu.peek()));
+	}
+
+	@Test
+	public void mergesStreamsByTimestamp() {
+		ImuRingBuffer imu = new ImuRingBuffer(8);
+		GnssRingBuffer gnss = new GnssRingBuffer(4);
+		SensorStreamMerger merger = new SensorStreamMerger(imu, gnss);
+
+		imu.offer(10, 0.0, 0.0, 0.0);
+		imu.offer(20, 0.0, 0.0, 0.0);
+		imu.offer(30, 0.0, 0.0, 0.0);
+		gnss.offer(20, 55.0, 37.0, 100.0, 1.0, 0.0, 5.0, 0.5);
+		gnss.offer(25, 55.0, 37.0, 100.0, 1.0, 0.0, 5.0, 0.5);
+
+		long[] expectedTimes = {10, 20, 20, 25, 30};
+		int[] expectedSources = {
+				SensorStreamMerger.SOURCE_IMU,
+				SensorStreamMerger.SOURCE_IMU,
+				SensorStreamMerger.SOURCE_GNSS,
+				SensorStreamMerger.SOURCE_GNSS,
+				SensorStreamMerger.SOURCE_IMU,
+		};
+
+		for (int i = 0; i < expectedTimes.length; i++) {
+			int source = merger.next();
+			assertEquals(expectedSources[i], source);
+			SpscRingBuffer buffer = source == SensorStreamMerger.SOURCE_IMU ? imu : gnss;
+			assertEquals(expectedTimes[i], buffer.getTimestamp(buffer.peek()));
+			buffer.release();
+		}
+		assertEquals(SensorStreamMerger.SOURCE_NONE, merger.next());
+	}
+
+	@Test
+	public void handsOffSamplesBetweenThreads() throws InterruptedException {
+		final ImuRingBuffer imu = new ImuRingBuffer(64);
+		final int count = 200_000;
+
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 1; i <= count; ) {
+					if (imu.offer(i, i, -i, 0.0)) {
+						i++;
+					}
+				}
+			}
+		});
+		producer.start();
+
+		long expected = 1;
+		while (expected <= count) {
+			int slot = imu.peek();
+			if (slot == SpscRingBuffer.NO_SLOT) {
+				continue;
+			}
+			assertEquals(expected, imu.getTimestamp(slot));
+			assertEquals(expected, imu.getAbsEastAcc(slot), 0.0);
+			assertEquals(-expected, imu.getAbsNorthAcc(slot), 0.0);
+			imu.release();
+			expected++;
+		}
+		producer.join();
+	}
+}
@@ -0,0 +1,108 @@
+package ru.chernakov.mykalmangps.core.event;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventChannelTest {
+	@Test
+	public void deliversDirectlyInPostingThread() {
+		EventChannel<String> channel = new EventChannel<>("test");
+		RecordingListener listener = new RecordingListener();
+		channel.subscribe(listener, EventChannel.DIRECT);
+
+		channel.post("a");
+		channel.post("b");
+
+		assertEquals(2, listener.mEvents.size());
+		assertEquals("b", listener.mEvents.get(1));
+	}
+
+	@Test
+	public void conflatesPendingEventsForExecutor() {
+		EventChannel<String> channel = new EventChannel<>("test");
+		QueueExecutor executor = new QueueExecutor();
+		RecordingListener listener = new RecordingListener();
+		channel.subscribe(listener, executor);
+
+		channel.post("a");
+		channel.post("b");
+		channel.post("c");
+		assertEquals(1, executor.mTasks.size());
+
+		executor.runAll();
+		assertEquals(1, listener.mEvents.size());
+		assertEquals("c", listener.mEvents.get(0));
+
+		channel.post("d");
+		executor.runAll();
+		assertEquals("d", listener.mEvents.get(1));
+	}
+
+	@Test
+	public void dropsPendingEventAfterUnsubscribe() {
+		EventChannel<String> channel = new EventChannel<>("test");
+		QueueExecutor executor = new QueueExecutor();
+		RecordingListener listener = new RecordingListener();
+		channel.subscribe(listener, executor);
+
+		channel.post("a");
+		assertTrue(channel.unsubscribe(listener));
+		assertFalse(channel.unsubscribe(listener));
+		executor.runAll();
+
+		assertEquals(0, listener.mEvents.size());
+		assertEquals(0, channel.getSubscriberCount());
+	}
+
+	@Test
+	public void allowsUnsubscribeDuringPost() {
+		final EventChannel<String> channel = new EventChannel<>("test");
+		final RecordingListener second = new RecordingListener();
+		channel.subscribe(new EventListener<String>() {
+			@Override
+			public void onEvent(String event) {
+				channel.unsubscribe(this);
+			}
+		}, EventChannel.DIRECT);
+		channel.subscribe(second, EventChannel.DIRECT);
+
+		channel.post("a");
+		channel.post("b");
+
+		assertEquals(1, channel.getSubscriberCount());
+		assertEquals(2, second.mEvents.size());
+	}
+
+	private static final class RecordingListener implements EventListener<String> {
+		final List<String> mEvents = new ArrayList<>();
+
+		@Override
+		public void onEvent(String event) {
+			mEvents.add(event);
+		}
+	}
+
+	private static final class QueueExecutor implements Executor {
+		final List<Runnable> mTasks = new ArrayList<>();
+
+		@Override
+		public void execute(Runnable command) {
+			mTasks.add(command);
+		}
+
+		void runAll() {
+			List<Runnable> tasks = new ArrayList<>(mTasks);
+			mTasks.clear();
+			for (Runnable task : tasks) {
+				task.run();
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package ru.chernakov.mykalmangps.core.filter;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import ru.chernakov.mykalmangps.core.geo.MetricCoordinates;
+import ru.chernakov.mykalmangps.core.track.ColumnarTrack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RtsSmootherTest {
+	private static final double LAT = 55.75;
+	private static final double LON = 37.62;
+	private static final double METERS_PER_DEGREE = Math.toRadians(MetricCoordinates.EARTH_RADIUS);
+
+	@Test
+	public void findsSegmentsAtGaps() {
+		long[] time = {0, 1000, 2000, 60000, 61000, 200000};
+
+		assertArrayEquals(new int[]{0, 3, 5, 6}, RtsSmoother.findSegments(time, time.length, 30000));
+		assertArrayEquals(new int[]{0, 6}, RtsSmoother.findSegments(time, time.length, 1000000));
+		assertArrayEquals(new int[]{0}, RtsSmoother.findSegments(time, 0, 30000));
+	}
+
+	@Test
+	public void reducesNoiseOnStraightRun() {
+		ColumnarTrack truth = new ColumnarTrack();
+		ColumnarTrack noisy = new ColumnarTrack();
+		Random random = new Random(1);
+		for (int i = 0; i < 600; i++) {
+			// 10 м/с на восток, затем, после разрыва, на север
+			long time = i < 300 ? i * 1000L : 400000L + i * 1000L;
+			double east = i < 300 ? i * 10.0 : 3000.0;
+			double north = i < 300 ? 0.0 : (i - 300) * 10.0;
+			double lat = LAT + north / METERS_PER_DEGREE;
+			double lon = LON + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(LAT)));
+			truth.append(time, lat, lon, 0.0f, 10.0f, 0.0f);
+			noisy.append(time,
+					lat + random.nextGaussian() * 5.0 / METERS_PER_DEGREE,
+					lon + random.nextGaussian() * 5.0 / (METERS_PER_DEGREE * Math.cos(Math.toRadians(LAT))),
+					5.0f, 0.0f, 0.0f);
+		}
+
+		ColumnarTrack smoothed = new RtsSmoother(0.1, RtsSmoother.DEFAULT_MAX_GAP_MS, new ForkJoinPool(2))
+				.smooth(noisy);
+
+		assertEquals(noisy.size(), smoothed.size());
+		double rawError = rms(noisy, truth);
+		double smoothedError = rms(smoothed, truth);
+		assertTrue(rawError + " -> " + smoothedError, smoothedError < rawError / 3.0);
+		assertEquals(10.0f, smoothed.getSpeed(150), 0.5f);
+		assertEquals(90.0f, smoothed.getBearing(150), 3.0f);
+		assertEquals(0.0f, smoothed.getBearing(450) > 180.0f ? smoothed.getBearing(450) - 360.0f
+				: smoothed.getBearing(450), 3.0f);
+		assertTrue(smoothed.getAccuracy(150) < 5.0f);
+	}
+
+	@Test
+	public void parallelMatchesSequential() {
+		ColumnarTrack track = new ColumnarTrack();
+		Random random = new Random(2);
+		for (int i = 0; i < 5000; i++) {
+			long time = i * 1000L + (i / 500) * 60000L;
+			track.append(time, LAT + random.nextGaussian() * 1e-4, LON + random.nextGaussian() * 1e-4,
+					3.0f + random.nextFloat(), 0.0f, 0.0f);
+		}
+
+		ColumnarTrack sequential = new RtsSmoother(RtsSmoother.DEFAULT_ACC_SIGMA, RtsSmoother.DEFAULT_MAX_GAP_MS,
+				new ForkJoinPool(1)).smooth(track);
+		ColumnarTrack parallel = new RtsSmoother(RtsSmoother.DEFAULT_ACC_SIGMA, RtsSmoother.DEFAULT_MAX_GAP_MS,
+				new ForkJoinPool(4)).smooth(track);
+
+		for (int i = 0; i < track.size(); i++) {
+			assertEquals(sequential.getLatitudeE7(i), parallel.getLatitudeE7(i));
+			assertEquals(sequential.getLongitudeE7(i), parallel.getLongitudeE7(i));
+			assertEquals(track.getTime(i), parallel.getTime(i));
+		}
+	}
+
+	private static double rms(ColumnarTrack track, ColumnarTrack truth) {
+		double sum = 0.0;
+		for (int i = 0; i < truth.size(); i++) {
+			double d = MetricCoordinates.distanceBetween(track.getLongitude(i), track.getLatitude(i),
+					truth.getLongitude(i), truth.getLatitude(i));
+			sum += d * d;
+		}
+
+		return Math.sqrt(sum / truth.size());
+	}
+}
@@ -0,0 +1,19 @@
+package ru.chernakov.mykalmangps.core.filter;
+
+/**
+ * Фильтры, общие для тестов.
+ */
+public final class TestFilters {
+	/**
+	 * Фабрика {@link PrimitiveGpsAccFilter} с параметрами шума, используемыми в тестах
+	 */
+	public static final GpsAccFilterFactory PRIMITIVE_FACTORY = new GpsAccFilterFactory() {
+		@Override
+		public GpsAccFilter create(double x, double y, double xVel, double yVel, double posDev, long timeStampMs) {
+			return new PrimitiveGpsAccFilter(false, x, y, xVel, yVel, 0.1, posDev, timeStampMs, 1.0, 1.0);
+		}
+	};
+
+	private TestFilters() {
+	}
+}
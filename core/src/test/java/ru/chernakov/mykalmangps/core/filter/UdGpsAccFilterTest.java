@@ -0,0 +1,117 @@
+package ru.chernakov.mykalmangps.core.filter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import ru.chernakov.mykalmangps.core.geo.MetricCoordinates;
+import ru.chernakov.mykalmangps.core.replay.BinaryTraceReader;
+import ru.chernakov.mykalmangps.core.replay.BinaryTraceWriter;
+import ru.chernakov.mykalmangps.core.replay.ReplayEngine;
+import ru.chernakov.mykalmangps.core.track.ColumnarTrack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UdGpsAccFilterTest {
+	/**
+	 * Час записи: определение GNSS раз в секунду, акселерометр 50 Гц
+	 */
+	private static final int FIXES = 3600;
+	private static final int IMU_PER_FIX = 50;
+	private static final long FIX_INTERVAL_MS = 1000;
+
+	@Test
+	public void replayedTrackMatchesDoubleFilter() throws IOException {
+		byte[] trace = writeTrace();
+		ColumnarTrack expected = replay(trace, TestFilters.PRIMITIVE_FACTORY);
+		ColumnarTrack actual = replay(trace, new GpsAccFilterFactory() {
+			@Override
+			public GpsAccFilter create(double x, double y, double xVel, double yVel, double posDev, long timeStampMs) {
+				return new UdGpsAccFilter(false, x, y, xVel, yVel, 0.1, posDev, timeStampMs, 1.0, 1.0);
+			}
+		});
+
+		assertEquals(FIXES, actual.size());
+		double maxDistance = 0.0;
+		for (int i = 0; i < FIXES; i++) {
+			maxDistance = Math.max(maxDistance, MetricCoordinates.distanceBetween(
+					expected.getLongitude(i), expected.getLatitude(i), actual.getLongitude(i), actual.getLatitude(i)));
+		}
+		// Погрешность float не накапливается: коррекции возвращают состояние к определениям
+		assertTrue(String.valueOf(maxDistance), maxDistance < 0.05);
+	}
+
+	@Test
+	public void covarianceStaysPositiveAndMatchesDoubleFilter() {
+		Random random = new Random(11);
+		PrimitiveGpsAccFilter expected = new PrimitiveGpsAccFilter(true, 0.0, 0.0, 0.0, 0.0, 0.1, 5.0, 0.0, 1.0, 1.0);
+		UdGpsAccFilter actual = new UdGpsAccFilter(true, 0.0, 0.0, 0.0, 0.0, 0.1, 5.0, 0.0, 1.0, 1.0);
+		long time = 0;
+		for (int fix = 1; fix <= FIXES; fix++) {
+			for (int i = 0; i < IMU_PER_FIX; i++) {
+				time += FIX_INTERVAL_MS / IMU_PER_FIX;
+				double east = random.nextGaussian() * 0.2;
+				double north = random.nextGaussian() * 0.2;
+				expected.predict(time, east, north);
+				actual.predict(time, east, north);
+			}
+			// Очень точные определения: наибольшая потеря точности при вычитании в P(k|k)
+			double posDev = fix % 100 == 0 ? 1e-3 : 3.0 + random.nextDouble() * 5.0;
+			double x = fix * 1.4 + random.nextGaussian() * 3.0;
+			double y = fix * 0.7 + random.nextGaussian() * 3.0;
+			expected.update(time, x, y, 1.4, 0.7, posDev, 0.3);
+			actual.update(time, x, y, 1.4, 0.7, posDev, 0.3);
+			if (fix % 600 == 0) {
+				expected.holdPosition(time);
+				actual.holdPosition(time);
+			}
+
+			assertTrue(actual.getPositionCovariance() > 0.0);
+			assertTrue(actual.getVelocityCovariance() > 0.0);
+			assertEquals(expected.getPositionCovariance(), actual.getPositionCovariance(),
+					1e-4 * expected.getPositionCovariance() + 1e-6);
+			assertEquals(expected.getCurrentX(), actual.getCurrentX(), 0.01);
+			assertEquals(expected.getCurrentY(), actual.getCurrentY(), 0.01);
+			assertEquals(expected.getCurrentXVel(), actual.getCurrentXVel(), 0.001);
+		}
+	}
+
+	private static ColumnarTrack replay(byte[] trace, GpsAccFilterFactory factory) throws IOException {
+		return new ReplayEngine(factory).run(new BinaryTraceReader(new ByteArrayInputStream(trace))).getTrack();
+	}
+
+	/**
+	 * Движение с переменной скоростью, до 8 км от начала, погрешность GNSS 3-8 м.
+	 */
+	private static byte[] writeTrace() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		BinaryTraceWriter writer = new BinaryTraceWriter(output);
+		Random random = new Random(5);
+		double east = 0.0;
+		double north = 0.0;
+		for (int fix = 1; fix <= FIXES; fix++) {
+			double eastVel = 2.0 + Math.sin(fix / 300.0);
+			double northVel = 1.5 * Math.cos(fix / 200.0);
+			for (int i = 0; i < IMU_PER_FIX; i++) {
+				long time = (fix - 1) * FIX_INTERVAL_MS + (i + 1) * FIX_INTERVAL_MS / (IMU_PER_FIX + 1);
+				writer.writeImu(time, Math.cos(fix / 300.0) / 300.0 + random.nextGaussian() * 0.05,
+						-1.5 * Math.sin(fix / 200.0) / 200.0 + random.nextGaussian() * 0.05, 0.0);
+			}
+			east += eastVel;
+			north += northVel;
+
+			double latitude = 55.75 + (north + random.nextGaussian() * 3.0) / 111_000.0;
+			double longitude = 37.62 + (east + random.nextGaussian() * 3.0) / 62_600.0;
+			double course = Math.toDegrees(Math.atan2(eastVel, northVel));
+			writer.writeGnss(fix * FIX_INTERVAL_MS, latitude, longitude, 150.0,
+					Math.hypot(eastVel, northVel), course, 3.0 + random.nextDouble() * 5.0, 0.5);
+		}
+		writer.close();
+
+		return output.toByteArray();
+	}
+}
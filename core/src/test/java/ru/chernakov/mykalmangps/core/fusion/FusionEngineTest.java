@@ -0,0 +1,196 @@
+package ru.chernakov.mykalmangps.core.fusion;
+
+import org.junit.Test;
+
+import ru.chernakov.mykalmangps.core.filter.GpsAccFilter;
+import ru.chernakov.mykalmangps.core.filter.TestFilters;
+import ru.chernakov.mykalmangps.core.metrics.TrackingMetrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FusionEngineTest {
+	@Test
+	public void stationaryEngineSkipsPredictAndHoldsVelocity() {
+		final int[] outputs = new int[1];
+		FusionEngine engine = newEngine(64, new FusionListener() {
+			@Override
+			public void onFusedLocation(long timestamp, double latitude, double longitude, double altitude,
+			                            float speed, float bearing, float accuracy) {
+				outputs[0]++;
+			}
+		});
+
+		engine.offerGnss(1000, 55.75, 37.62, 150.0, 0.0, 0.0, 5.0, 0.5);
+		engine.fuse();
+		for (long t = 1100; t <= 2000; t += 100) {
+			engine.offerImu(t, 1.0, 0.0, 0.0);
+		}
+		engine.setStationary(true, 2050);
+		assertFalse(engine.offerImu(2100, 1.0, 0.0, 0.0));
+		engine.fuse();
+
+		GpsAccFilter filter = engine.getFilter();
+		assertEquals(0.0, filter.getCurrentXVel(), 0.0);
+		double x = filter.getCurrentX();
+
+		// Выход из неподвижности: отсчёт времени предсказания начинается заново
+		engine.setStationary(false, 600000);
+		engine.offerImu(600100, 0.0, 0.0, 0.0);
+		engine.fuse();
+		assertEquals(x, filter.getCurrentX(), 1e-9);
+		assertEquals(1, outputs[0]);
+	}
+
+	@Test
+	public void countsOutOfOrderSamples() {
+		FusionEngine engine = newEngine(64);
+		TrackingMetrics metrics = new TrackingMetrics();
+		engine.setMetrics(metrics);
+
+		engine.offerGnss(1000, 55.75, 37.62, 150.0, 0.0, 0.0, 5.0, 0.5);
+		engine.offerImu(1100, 0.1, 0.0, 0.0);
+		engine.fuse();
+		// Показания старше уже обработанных
+		engine.offerImu(1050, 0.1, 0.0, 0.0);
+		engine.offerGnss(900, 55.75, 37.62, 150.0, 0.0, 0.0, 5.0, 0.5);
+		engine.fuse();
+
+		TrackingMetrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(2, snapshot.getOutOfOrderSamples());
+		assertEquals(1, snapshot.getPredictNanos().getCount());
+		assertEquals(1, snapshot.getUpdateNanos().getCount());
+		assertEquals(2, snapshot.getQueueDepth().getCount());
+	}
+
+	@Test
+	public void reorderWindowProcessesLateFixInTimeOrder() {
+		final long[] published = new long[2];
+		FusionEngine engine = newEngine(64, new FusionListener() {
+			@Override
+			public void onFusedLocation(long timestamp, double latitude, double longitude, double altitude,
+			                            float speed, float bearing, float accuracy) {
+				published[0]++;
+				published[1] = timestamp;
+			}
+		});
+		engine.setReorderWindowMs(200);
+
+		engine.offerGnss(1000, 55.75, 37.62, 150.0, 0.0, 0.0, 5.0, 0.5);
+		assertEquals(0, engine.fuse());
+		assertEquals(1, engine.fuse(1200));
+		for (long t = 1300; t <= 1700; t += 100) {
+			engine.offerImu(t, 1.0, 0.0, 0.0);
+		}
+		// Определение пришло после показаний акселерометра, но в пределах окна
+		engine.offerGnss(1450, 55.75, 37.62, 150.0, 0.0, 0.0, 5.0, 0.5);
+		assertTrue(engine.hasPendingGnss());
+		assertEquals(1, engine.fuse());
+		assertEquals(1450, published[1]);
+		assertFalse(engine.hasPendingGnss());
+		// Ускорение до момента определения учтено шагом предсказания
+		assertTrue(engine.getFilter().getCurrentXVel() > 0.0);
+
+		// Опоздание больше окна
+		engine.offerGnss(1350, 55.75, 37.62, 150.0, 0.0, 0.0, 5.0, 0.5);
+		assertEquals(0, engine.drain());
+		assertEquals(2, published[0]);
+		assertEquals(1, engine.getReorderedCount());
+		assertEquals(1, engine.getDiscardedCount());
+	}
+
+	@Test
+	public void fuseBeforeHoldsFixUntilFlushedSamplesArrive() {
+		final long[] published = new long[1];
+		FusionEngine engine = newEngine(64, new FusionListener() {
+			@Override
+			public void onFusedLocation(long timestamp, double latitude, double longitude, double altitude,
+			                            float speed, float bearing, float accuracy) {
+				published[0]++;
+			}
+		});
+		engine.setReorderWindowMs(200);
+		engine.offerGnss(1000, 55.75, 37.62, 150.0, 0.0, 0.0, 5.0, 0.5);
+		assertEquals(1, engine.fuse(1200));
+
+		// Определение ждёт показаний из буфера датчиков: обрабатываются только показания до него
+		engine.offerImu(1300, 1.0, 0.0, 0.0);
+		engine.offerGnss(1500, 55.75, 37.62, 150.0, 0.0, 0.0, 5.0, 0.5);
+		assertEquals(0, engine.fuseBefore(2000, 1500));
+		assertTrue(engine.hasPendingGnss());
+
+		// Показания из буфера датчиков, доставленные позже определения, не отбрасываются
+		engine.offerImu(1400, 1.0, 0.0, 0.0);
+		engine.offerImu(1450, 1.0, 0.0, 0.0);
+		assertEquals(1, engine.fuse(2000));
+		assertEquals(2, published[0]);
+		assertEquals(0, engine.getDiscardedCount());
+	}
+
+	@Test
+	public void predictIntervalIntegratesAccelerationSamples() {
+		FusionEngine perSample = newEngine(256);
+		FusionEngine integrated = newEngine(256);
+		integrated.setPredictIntervalMs(100);
+		for (FusionEngine engine : new FusionEngine[]{perSample, integrated}) {
+			engine.offerGnss(1000, 55.75, 37.62, 150.0, 0.0, 0.0, 5.0, 0.5);
+			for (long t = 1010; t <= 2000; t += 10) {
+				engine.offerImu(t, 0.5, -0.25, 0.0);
+			}
+			engine.fuse();
+		}
+
+		assertEquals(100, perSample.getPredictCount());
+		assertEquals(10, integrated.getPredictCount());
+		GpsAccFilter expected = perSample.getFilter();
+		GpsAccFilter actual = integrated.getFilter();
+		assertEquals(expected.getCurrentXVel(), actual.getCurrentXVel(), 1e-9);
+		assertEquals(expected.getCurrentYVel(), actual.getCurrentYVel(), 1e-9);
+		assertEquals(expected.getCurrentX(), actual.getCurrentX(), 1e-9);
+		assertEquals(expected.getCurrentY(), actual.getCurrentY(), 1e-9);
+	}
+
+	@Test
+	public void predictIntervalWeighsVaryingAccelerationByTime() {
+		FusionEngine perSample = newEngine(256);
+		FusionEngine integrated = newEngine(256);
+		integrated.setPredictIntervalMs(100);
+		// Неравномерные интервалы между показаниями: ошибка «последнее показание» или «среднее без весов»
+		// изменила бы скорость
+		long[] steps = {5, 15, 7, 23, 11, 3, 36};
+		for (FusionEngine engine : new FusionEngine[]{perSample, integrated}) {
+			engine.offerGnss(1000, 55.75, 37.62, 150.0, 0.0, 0.0, 5.0, 0.5);
+			long t = 1000;
+			for (int i = 0; t < 2000; i++) {
+				t += steps[i % steps.length];
+				engine.offerImu(t, Math.sin(t / 150.0), 0.5 * Math.cos(t / 90.0), 0.0);
+			}
+			engine.fuse();
+		}
+
+		assertTrue(integrated.getPredictCount() < perSample.getPredictCount() / 4);
+		GpsAccFilter expected = perSample.getFilter();
+		GpsAccFilter actual = integrated.getFilter();
+		// Изменение скорости за интервал совпадает с шагами на каждое показание
+		assertEquals(expected.getCurrentXVel(), actual.getCurrentXVel(), 1e-9);
+		assertEquals(expected.getCurrentYVel(), actual.getCurrentYVel(), 1e-9);
+		// Положение отличается только распределением ускорения внутри интервала: не больше
+		// (max|a| * T²) на интервал T = 0.1 с, за 10 интервалов при |a| <= 1 м/с² — 0.1 м
+		assertEquals(expected.getCurrentX(), actual.getCurrentX(), 0.1);
+		assertEquals(expected.getCurrentY(), actual.getCurrentY(), 0.1);
+	}
+
+	private static FusionEngine newEngine(int imuCapacity) {
+		return newEngine(imuCapacity, new FusionListener() {
+			@Override
+			public void onFusedLocation(long timestamp, double latitude, double longitude, double altitude,
+			                            float speed, float bearing, float accuracy) {
+			}
+		});
+	}
+
+	private static FusionEngine newEngine(int imuCapacity, FusionListener listener) {
+		return new FusionEngine(TestFilters.PRIMITIVE_FACTORY, imuCapacity, 4, listener);
+	}
+}
@@ -0,0 +1,182 @@
+package ru.chernakov.mykalmangps.core.fusion;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import ru.chernakov.mykalmangps.core.filter.TestFilters;
+import ru.chernakov.mykalmangps.core.geo.MetricCoordinates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GnssIntervalSchedulerTest {
+	private static final long MIN_INTERVAL_MS = 2000;
+
+	private static final double LAT = 55.75;
+	private static final double LON = 37.62;
+	private static final double METERS_PER_DEGREE = Math.toRadians(MetricCoordinates.EARTH_RADIUS);
+
+	/**
+	 * Запись: 5 мин ходьбы на восток, 15 мин стоянки, 5 мин ходьбы на север, с
+	 */
+	private static final int WALK_S = 300;
+	private static final int STOP_S = 900;
+	private static final double WALK_SPEED = 1.4;
+
+	@Test
+	public void relaxesWithHysteresisAndTightensAtOnce() {
+		GnssIntervalScheduler scheduler = new GnssIntervalScheduler(MIN_INTERVAL_MS, 16000, 10.0, 10.0);
+
+		for (int i = 1; i < GnssIntervalScheduler.RELAX_FIXES; i++) {
+			assertFalse(scheduler.onFusedLocation(0.1, 3.0));
+		}
+		assertTrue(scheduler.onFusedLocation(0.1, 3.0));
+		assertEquals(4000, scheduler.getIntervalMs());
+
+		for (int i = 0; i < 3 * GnssIntervalScheduler.RELAX_FIXES; i++) {
+			scheduler.onFusedLocation(0.1, 3.0);
+		}
+		assertEquals(16000, scheduler.getIntervalMs());
+
+		// Между порогами интервал не меняется: 1 м/с * 16 с = 16 м < 2 * 10 м
+		assertFalse(scheduler.onFusedLocation(1.0, 3.0));
+		assertEquals(16000, scheduler.getIntervalMs());
+
+		// Ходьба: 1.4 м/с * 16 с > 20 м, сокращение до 4 с (5.6 м), а не до минимального
+		assertTrue(scheduler.onFusedLocation(WALK_SPEED, 3.0));
+		assertEquals(4000, scheduler.getIntervalMs());
+
+		// Рост ковариации возвращает минимальный интервал
+		assertTrue(scheduler.onFusedLocation(0.0, 50.0));
+		assertEquals(MIN_INTERVAL_MS, scheduler.getIntervalMs());
+	}
+
+	@Test
+	public void unknownCovarianceKeepsInterval() {
+		GnssIntervalScheduler scheduler = new GnssIntervalScheduler(MIN_INTERVAL_MS, 16000, 10.0, 10.0);
+		for (int i = 0; i < 10; i++) {
+			assertFalse(scheduler.onFusedLocation(0.0, Double.NaN));
+		}
+		assertEquals(MIN_INTERVAL_MS, scheduler.getIntervalMs());
+	}
+
+	@Test
+	public void unknownSpeedReturnsToMinimum() {
+		GnssIntervalScheduler scheduler = new GnssIntervalScheduler(MIN_INTERVAL_MS, 16000, 10.0, 10.0);
+		for (int i = 0; i < 2 * GnssIntervalScheduler.RELAX_FIXES; i++) {
+			scheduler.onFusedLocation(0.0, 3.0);
+		}
+		assertEquals(8000, scheduler.getIntervalMs());
+
+		assertTrue(scheduler.onFusedLocation(Double.POSITIVE_INFINITY, 3.0));
+		assertEquals(MIN_INTERVAL_MS, scheduler.getIntervalMs());
+		for (int i = 0; i < 10; i++) {
+			assertFalse(scheduler.onFusedLocation(Double.POSITIVE_INFINITY, 3.0));
+		}
+	}
+
+	@Test
+	public void replayReducesFixesWithoutLosingAccuracy() {
+		ReplayResult fixed = replay(new GnssIntervalScheduler(MIN_INTERVAL_MS, MIN_INTERVAL_MS, 10.0, 10.0));
+		ReplayResult adaptive = replay(new GnssIntervalScheduler(MIN_INTERVAL_MS,
+				GnssIntervalScheduler.DEFAULT_MAX_INTERVAL_MS, GnssIntervalScheduler.DEFAULT_DISTANCE_BUDGET,
+				GnssIntervalScheduler.DEFAULT_COVARIANCE_THRESHOLD));
+
+		String message = "fixed: " + fixed + ", adaptive: " + adaptive;
+		assertTrue(message, adaptive.mFixes < fixed.mFixes / 2);
+		assertTrue(message, adaptive.mRmsError < fixed.mRmsError * 1.25);
+	}
+
+	/**
+	 * Воспроизводит запись с определениями GNSS раз в секунду, принимая их не чаще интервала планировщика,
+	 * как при перерегистрации запроса в сервисе. Показания акселерометра (10 Гц) принимаются все.
+	 */
+	private static ReplayResult replay(final GnssIntervalScheduler scheduler) {
+		final ReplayResult result = new ReplayResult();
+		final FusionEngine[] engine = new FusionEngine[1];
+		engine[0] = new FusionEngine(TestFilters.PRIMITIVE_FACTORY, FusionEngine.DEFAULT_IMU_CAPACITY,
+				FusionEngine.DEFAULT_GNSS_CAPACITY, new FusionListener() {
+			@Override
+			public void onFusedLocation(long timestamp, double latitude, double longitude, double altitude,
+			                            float speed, float bearing, float accuracy) {
+				double[] truth = truePosition(timestamp / 1000.0);
+				double north = (latitude - LAT) * METERS_PER_DEGREE;
+				double east = (longitude - LON) * METERS_PER_DEGREE * Math.cos(Math.toRadians(LAT));
+				double dx = east - truth[0];
+				double dy = north - truth[1];
+				result.mSquaredError += dx * dx + dy * dy;
+				result.mFixes++;
+				scheduler.onFusedLocation(speed, engine[0].getFilter().getPositionCovariance());
+			}
+		});
+
+		Random random = new Random(5);
+		long nextFix = 0;
+		int duration = 2 * WALK_S + STOP_S;
+		for (int second = 1; second <= duration; second++) {
+			for (int i = 0; i < 10; i++) {
+				double t = second - 1 + (i + 1) / 10.0;
+				double[] acc = trueAcceleration(t);
+				if (engine[0].offerImu(Math.round(t * 1000), acc[0] + random.nextGaussian() * 0.05,
+						acc[1] + random.nextGaussian() * 0.05, 0.0)) {
+					engine[0].fuse();
+				}
+			}
+
+			long time = second * 1000L;
+			double[] position = truePosition(second);
+			double latitude = LAT + (position[1] + random.nextGaussian() * 3.0) / METERS_PER_DEGREE;
+			double longitude = LON + (position[0] + random.nextGaussian() * 3.0)
+					/ (METERS_PER_DEGREE * Math.cos(Math.toRadians(LAT)));
+			if (time >= nextFix) {
+				engine[0].offerGnss(time, latitude, longitude, 150.0, 0.0, 0.0, 5.0, 0.5);
+				engine[0].fuse();
+				nextFix = time + scheduler.getIntervalMs();
+			}
+		}
+		result.mRmsError = Math.sqrt(result.mSquaredError / result.mFixes);
+
+		return result;
+	}
+
+	/**
+	 * @return положение {восток, север}, м
+	 */
+	private static double[] truePosition(double t) {
+		if (t <= WALK_S) {
+			return new double[]{WALK_SPEED * t, 0.0};
+		} else if (t <= WALK_S + STOP_S) {
+			return new double[]{WALK_SPEED * WALK_S, 0.0};
+		}
+		return new double[]{WALK_SPEED * WALK_S, WALK_SPEED * (t - WALK_S - STOP_S)};
+	}
+
+	/**
+	 * @return ускорение {восток, север}, м/с²: мгновенные смены скорости распределены на 0.1 с
+	 */
+	private static double[] trueAcceleration(double t) {
+		double step = WALK_SPEED / 0.1;
+		if (t <= 0.1) {
+			return new double[]{step, 0.0};
+		} else if (t > WALK_S && t <= WALK_S + 0.1) {
+			return new double[]{-step, 0.0};
+		} else if (t > WALK_S + STOP_S && t <= WALK_S + STOP_S + 0.1) {
+			return new double[]{0.0, step};
+		}
+		return new double[]{0.0, 0.0};
+	}
+
+	private static final class ReplayResult {
+		int mFixes;
+		double mSquaredError;
+		double mRmsError;
+
+		@Override
+		public String toString() {
+			return mFixes + " fixes, rms " + String.format(Locale.US, "%.2f", mRmsError) + " m";
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package ru.chernakov.mykalmangps.core.geo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeclinationCacheTest {
+	private static final long TIME = 1500000000000L;
+
+	@Test
+	public void errorWithinGradientBound() {
+		DeclinationModel model = new DipoleDeclinationModel();
+		DeclinationCache cache = new DeclinationCache(model);
+		double cell = cache.getCellDegrees();
+		Random random = new Random(1);
+		double maxError = 0.0;
+		for (int i = 0; i < 100000; i++) {
+			double latitude = -60.0 + 130.0 * random.nextDouble();
+			double longitude = -180.0 + 360.0 * random.nextDouble();
+			double error = Math.abs(cache.getDeclination(latitude, longitude, 0.0, TIME)
+					- model.getDeclination(latitude, longitude, 0.0, TIME));
+
+			// Оценка погрешности по градиенту модели в точке (модель диполя не зависит от времени)
+			double step = 1e-4;
+			double gradientLatitude = Math.abs(model.getDeclination(latitude + step, longitude, 0.0, TIME)
+					- model.getDeclination(latitude - step, longitude, 0.0, TIME)) / (2 * step);
+			double gradientLongitude = Math.abs(model.getDeclination(latitude, longitude + step, 0.0, TIME)
+					- model.getDeclination(latitude, longitude - step, 0.0, TIME)) / (2 * step);
+			double bound = (gradientLatitude + gradientLongitude) * cell / 2;
+			assertTrue("error " + error + " > bound " + bound, error <= bound * 1.2 + 1e-9);
+			maxError = Math.max(maxError, error);
+		}
+
+		assertTrue("max error " + maxError, maxError < 0.2);
+	}
+
+	@Test
+	public void computesOncePerCell() {
+		CountingModel model = new CountingModel();
+		DeclinationCache cache = new DeclinationCache(model);
+		// 1 км вдоль трека в пределах ячейки 0.1°
+		for (int i = 0; i < 100; i++) {
+			cache.getDeclination(55.701 + i * 1e-4, 37.601, 150.0, TIME + i * 1000L);
+		}
+
+		assertEquals(1, model.mCalls);
+		assertEquals(99, cache.getHitCount());
+
+		cache.getDeclination(55.801, 37.601, 150.0, TIME);
+		cache.getDeclination(55.701, 37.601, 150.0, TIME + DeclinationCache.DEFAULT_TIME_BUCKET_MS);
+		assertEquals(3, model.mCalls);
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedCell() {
+		CountingModel model = new CountingModel();
+		DeclinationCache cache = new DeclinationCache(model, 1.0, DeclinationCache.DEFAULT_TIME_BUCKET_MS, 3);
+		cache.getDeclination(0.5, 0.5, 0.0, TIME);
+		cache.getDeclination(1.5, 0.5, 0.0, TIME);
+		cache.getDeclination(2.5, 0.5, 0.0, TIME);
+		cache.getDeclination(0.5, 0.5, 0.0, TIME);
+		// Вытесняет ячейку (1, 0)
+		cache.getDeclination(3.5, 0.5, 0.0, TIME);
+		assertEquals(4, model.mCalls);
+		assertEquals(3, cache.size());
+
+		cache.getDeclination(0.5, 0.5, 0.0, TIME);
+		cache.getDeclination(2.5, 0.5, 0.0, TIME);
+		assertEquals(4, model.mCalls);
+		cache.getDeclination(1.5, 0.5, 0.0, TIME);
+		assertEquals(5, model.mCalls);
+
+		// Многократное вытеснение не нарушает таблицу
+		for (int i = 0; i < 1000; i++) {
+			double latitude = (i % 7) + 0.5;
+			assertEquals(latitude, cache.getDeclination(latitude, 0.5, 0.0, TIME), 0.0);
+		}
+	}
+
+	private static final class CountingModel implements DeclinationModel {
+		int mCalls;
+
+		@Override
+		public double getDeclination(double latitude, double longitude, double altitude, long timeMs) {
+			mCalls++;
+			return latitude;
+		}
+	}
+}
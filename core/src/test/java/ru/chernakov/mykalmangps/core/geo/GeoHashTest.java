@@ -0,0 +1,19 @@
+package ru.chernakov.mykalmangps.core.geo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class GeoHashTest {
+	@Test
+	public void encodesReferencePoint() {
+		assertEquals("u4pruydqqvj", GeoHash.toString(GeoHash.encode(57.64911, 10.40744, 11), 11));
+	}
+
+	@Test
+	public void nearbyPointsShareCell() {
+		assertEquals(GeoHash.encode(55.75, 37.62, 7), GeoHash.encode(55.75001, 37.62001, 7));
+		assertNotEquals(GeoHash.encode(55.75, 37.62, 7), GeoHash.encode(55.76, 37.62, 7));
+	}
+}
@@ -0,0 +1,81 @@
+package ru.chernakov.mykalmangps.core.geo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocalProjectionTest {
+	@Test
+	public void scalesMatchWgs84() {
+		LocalProjection projection = new LocalProjection(LocalProjection.DEFAULT_REANCHOR_DISTANCE);
+		double[] local = new double[2];
+
+		// Длина градуса на широте 60°: 55 800 м по параллели, 111 412 м по меридиану
+		projection.anchor(60.0, 30.0);
+		projection.toLocal(60.0, 30.01, local);
+		assertEquals(558.0, local[LocalProjection.EAST], 0.1);
+		projection.toLocal(60.01, 30.0, local);
+		assertEquals(1114.1, local[LocalProjection.NORTH], 0.1);
+	}
+
+	@Test
+	public void eastDistanceFollowsParallel() {
+		LocalProjection projection = new LocalProjection(LocalProjection.DEFAULT_REANCHOR_DISTANCE);
+		projection.anchor(55.75, 37.62);
+		double[] local = new double[2];
+		double[] reference = new double[2];
+
+		// 7 км на восток, 7 км на север: длина параллели по её собственной широте
+		double latitude = 55.75 + 0.063;
+		projection.toLocal(latitude, 37.72, local);
+		LocalProjection atLatitude = new LocalProjection(LocalProjection.DEFAULT_REANCHOR_DISTANCE);
+		atLatitude.anchor(latitude, 37.62);
+		atLatitude.toLocal(latitude, 37.72, reference);
+		assertEquals(reference[LocalProjection.EAST], local[LocalProjection.EAST], 0.05);
+	}
+
+	@Test
+	public void batchRoundTrip() {
+		LocalProjection projection = new LocalProjection(LocalProjection.DEFAULT_REANCHOR_DISTANCE);
+		projection.anchor(-33.9, 179.95);
+		Random random = new Random(2);
+		int size = 1000;
+		double[] latitude = new double[size];
+		double[] longitude = new double[size];
+		for (int i = 0; i < size; i++) {
+			latitude[i] = -33.9 + (random.nextDouble() - 0.5) * 0.2;
+			longitude[i] = 179.95 + (random.nextDouble() - 0.5) * 0.2;
+			if (longitude[i] >= 180.0) {
+				longitude[i] -= 360.0;
+			}
+		}
+
+		double[] east = new double[size];
+		double[] north = new double[size];
+		projection.toLocal(latitude, longitude, 0, size, east, north);
+		double[] geo = new double[2];
+		for (int i = 0; i < size; i++) {
+			projection.toGeo(east[i], north[i], geo);
+			assertEquals(latitude[i], geo[MetricCoordinates.LATITUDE], 1e-9);
+			assertEquals(longitude[i], geo[MetricCoordinates.LONGITUDE], 1e-9);
+			assertTrue(Math.abs(east[i]) < 10000.0);
+		}
+
+		projection.toGeo(east, north, 0, size, east, north);
+		assertEquals(latitude[size - 1], east[size - 1], 1e-9);
+		assertEquals(longitude[size - 1], north[size - 1], 1e-9);
+	}
+
+	@Test
+	public void reportsReanchorDistance() {
+		LocalProjection projection = new LocalProjection(1000.0);
+		assertFalse(projection.isAnchored());
+		projection.anchor(55.75, 37.62);
+		assertFalse(projection.needsReanchor(600.0, 700.0));
+		assertTrue(projection.needsReanchor(800.0, 700.0));
+	}
+}
@@ -0,0 +1,50 @@
+package ru.chernakov.mykalmangps.core.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+	@Test
+	public void bucketsCoverValuesContiguously() {
+		for (long value = 0; value < 100000; value++) {
+			int index = Histogram.bucketIndex(value);
+			assertTrue(value <= Histogram.bucketUpperBound(index));
+			assertTrue(index == 0 || value > Histogram.bucketUpperBound(index - 1));
+		}
+		assertEquals(Histogram.MAX_VALUE,
+				Histogram.bucketUpperBound(Histogram.bucketIndex(Histogram.MAX_VALUE)));
+	}
+
+	@Test
+	public void percentilesWithinRelativePrecision() {
+		Histogram histogram = new Histogram();
+		for (long value = 1; value <= 10000; value++) {
+			histogram.record(value * 1000);
+		}
+
+		Histogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(10000, snapshot.getCount());
+		assertEquals(10000000, snapshot.getMax());
+		assertEquals(5000500.0, snapshot.getMean(), 1e-6);
+		double precision = 1.0 / Histogram.SUB_BUCKETS;
+		assertEquals(5000000, snapshot.getValueAtPercentile(50), 5000000 * precision);
+		assertEquals(9900000, snapshot.getValueAtPercentile(99), 9900000 * precision);
+		assertEquals(10000000, snapshot.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void clampsOutOfRangeValues() {
+		Histogram histogram = new Histogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+
+		Histogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(0, snapshot.getValueAtPercentile(50));
+		assertEquals(Histogram.MAX_VALUE, snapshot.getMax());
+
+		histogram.reset();
+		assertEquals(0, histogram.snapshot().getCount());
+	}
+}
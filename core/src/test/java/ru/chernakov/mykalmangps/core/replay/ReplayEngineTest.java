@@ -0,0 +1,130 @@
+package ru.chernakov.mykalmangps.core.replay;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+
+import ru.chernakov.mykalmangps.core.filter.TestFilters;
+import ru.chernakov.mykalmangps.core.geo.MetricCoordinates;
+import ru.chernakov.mykalmangps.core.track.ColumnarTrack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayEngineTest {
+	private static final int FIXES = 600;
+	private static final int IMU_PER_FIX = 100;
+	private static final long FIX_INTERVAL_MS = 2000;
+
+	@Test
+	public void binaryAndCsvTracesProduceSameTrack() throws IOException {
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		StringBuilder csv = new StringBuilder("# synthetic trace\n");
+		writeTrace(new BinaryTraceWriter(binary), csv);
+
+		ReplayReport binaryReport = new ReplayEngine(TestFilters.PRIMITIVE_FACTORY)
+				.run(new BinaryTraceReader(new ByteArrayInputStream(binary.toByteArray())));
+		ReplayReport csvReport = new ReplayEngine(TestFilters.PRIMITIVE_FACTORY)
+				.run(new CsvTraceReader(new StringReader(csv.toString())));
+
+		assertEquals(FIXES, binaryReport.getGnssSamples());
+		assertEquals(FIXES * IMU_PER_FIX, binaryReport.getImuSamples());
+		assertEquals(0, binaryReport.getDroppedSamples());
+		assertEquals(FIXES, binaryReport.getTrack().size());
+		assertEquals(FIXES, binaryReport.getEndToEndStats().getCount());
+		assertTrue(binaryReport.getSamplesPerSecond() > 0.0);
+
+		ColumnarTrack expected = binaryReport.getTrack();
+		ColumnarTrack actual = csvReport.getTrack();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.getTime(i), actual.getTime(i));
+			assertEquals(expected.getLatitudeE7(i), actual.getLatitudeE7(i));
+			assertEquals(expected.getLongitudeE7(i), actual.getLongitudeE7(i));
+		}
+	}
+
+	@Test
+	public void outputFollowsRecordedPath() throws IOException {
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		writeTrace(new BinaryTraceWriter(binary), null);
+
+		ReplayReport report = new ReplayEngine(TestFilters.PRIMITIVE_FACTORY)
+				.run(new BinaryTraceReader(new ByteArrayInputStream(binary.toByteArray())));
+		ColumnarTrack track = report.getTrack();
+
+		// Время точек — время записи, а не время воспроизведения
+		assertEquals(FIX_INTERVAL_MS, track.getTime(0));
+		assertEquals(FIX_INTERVAL_MS * FIXES, track.getTime(track.size() - 1));
+		for (int i = 0; i < track.size(); i++) {
+			double distance = MetricCoordinates.distanceBetween(track.getLongitude(i), track.getLatitude(i),
+					trueLongitude(i + 1), trueLatitude(i + 1));
+			assertTrue("fix " + i + ": " + distance, distance < 15.0);
+		}
+	}
+
+	@Test
+	public void predictIntervalReducesFilterSteps() throws IOException {
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		writeTrace(new BinaryTraceWriter(binary), null);
+
+		ReplayEngine replay = new ReplayEngine(TestFilters.PRIMITIVE_FACTORY);
+		replay.setPredictIntervalMs(100);
+		ReplayReport report = replay.run(new BinaryTraceReader(new ByteArrayInputStream(binary.toByteArray())));
+		ColumnarTrack track = report.getTrack();
+
+		assertTrue(String.valueOf(report.getPredictSteps()), report.getPredictSteps() < report.getImuSamples() / 4);
+		assertEquals(FIXES, track.size());
+		for (int i = 0; i < track.size(); i++) {
+			double distance = MetricCoordinates.distanceBetween(track.getLongitude(i), track.getLatitude(i),
+					trueLongitude(i + 1), trueLatitude(i + 1));
+			assertTrue("fix " + i + ": " + distance, distance < 15.0);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsMalformedCsv() throws IOException {
+		new CsvTraceReader(new StringReader("G,1000,55.75\n")).next();
+	}
+
+	/**
+	 * Прямолинейное движение на северо-восток со скоростью около 1.4 м/с, погрешность GNSS 5 м.
+	 */
+	private static void writeTrace(BinaryTraceWriter binary, StringBuilder csv) throws IOException {
+		Random random = new Random(3);
+		for (int fix = 1; fix <= FIXES; fix++) {
+			for (int i = 0; i < IMU_PER_FIX; i++) {
+				long time = (fix - 1) * FIX_INTERVAL_MS + (i + 1) * FIX_INTERVAL_MS / (IMU_PER_FIX + 1);
+				double east = random.nextGaussian() * 0.05;
+				double north = random.nextGaussian() * 0.05;
+				binary.writeImu(time, east, north, 0.0);
+				if (csv != null) {
+					csv.append(String.format(Locale.US, "A,%d,%s,%s,0.0%n", time, east, north));
+				}
+			}
+
+			long time = fix * FIX_INTERVAL_MS;
+			double latitude = trueLatitude(fix) + random.nextGaussian() * 2e-5;
+			double longitude = trueLongitude(fix) + random.nextGaussian() * 3e-5;
+			binary.writeGnss(time, latitude, longitude, 150.0, 1.4, 45.0, 5.0, 0.5);
+			if (csv != null) {
+				csv.append(String.format(Locale.US, "G,%d,%s,%s,150.0,1.4,45.0,5.0,0.5%n",
+						time, latitude, longitude));
+			}
+		}
+		binary.close();
+	}
+
+	private static double trueLatitude(int fix) {
+		return 55.75 + fix * 2e-5;
+	}
+
+	private static double trueLongitude(int fix) {
+		return 37.62 + fix * 3e-5;
+	}
+}
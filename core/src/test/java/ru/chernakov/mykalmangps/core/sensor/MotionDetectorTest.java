@@ -0,0 +1,74 @@
+package ru.chernakov.mykalmangps.core.sensor;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MotionDetectorTest {
+	private static final long PERIOD_MS = 100;
+
+	@Test
+	public void detectsStillnessAfterHoldAndMotionAtOnce() {
+		MotionDetector detector = new MotionDetector();
+		Random random = new Random(1);
+		long time = 0;
+
+		// Ходьба: ускорение около 1 м/с²
+		for (int i = 0; i < 100; i++, time += PERIOD_MS) {
+			assertFalse(detector.offer(time, (float) Math.sin(i * 0.8), 0.3f, (float) random.nextGaussian() * 0.3f));
+		}
+		assertEquals(MotionDetector.STATE_MOVING, detector.getState());
+
+		// Неподвижность: шум 0.02 м/с². Окно заполняется за 3.2 с, затем 5 с ожидания
+		long stillStart = time;
+		long changedAt = -1;
+		for (int i = 0; i < 150; i++, time += PERIOD_MS) {
+			if (detector.offer(time, noise(random), noise(random), noise(random))) {
+				changedAt = time;
+			}
+		}
+		assertTrue(detector.isStationary());
+		assertTrue(changedAt - stillStart >= MotionDetector.DEFAULT_STATIONARY_HOLD_MS);
+		assertTrue(changedAt - stillStart < MotionDetector.DEFAULT_STATIONARY_HOLD_MS + 4000);
+		assertEquals(changedAt, detector.getStateSince());
+
+		// Первое же показание движения выводит из неподвижности
+		assertTrue(detector.offer(time, 1.5f, 0.0f, 0.0f));
+		assertEquals(MotionDetector.STATE_MOVING, detector.getState());
+
+		assertEquals(time - changedAt, detector.getTimeInState(MotionDetector.STATE_STATIONARY));
+		assertEquals(changedAt, detector.getTimeInState(MotionDetector.STATE_MOVING));
+	}
+
+	@Test
+	public void slidingVarianceMatchesDirectComputation() {
+		MotionDetector detector = new MotionDetector(8, 0.0025, 10.0, 1000);
+		Random random = new Random(2);
+		double[] magnitudes = new double[1000];
+		for (int i = 0; i < magnitudes.length; i++) {
+			float x = (float) (random.nextGaussian() * (i < 500 ? 1.0 : 0.01));
+			detector.offer(i, x, 0.0f, 0.0f);
+			magnitudes[i] = Math.abs(x);
+
+			if (i >= 7) {
+				double mean = 0.0;
+				for (int k = i - 7; k <= i; k++) {
+					mean += magnitudes[k] / 8;
+				}
+				double variance = 0.0;
+				for (int k = i - 7; k <= i; k++) {
+					variance += (magnitudes[k] - mean) * (magnitudes[k] - mean) / 7;
+				}
+				assertEquals(variance, detector.getVariance(), 1e-9);
+			}
+		}
+	}
+
+	private static float noise(Random random) {
+		return (float) random.nextGaussian() * 0.02f;
+	}
+}
@@ -0,0 +1,83 @@
+package ru.chernakov.mykalmangps.core.sensor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SensorAcquisitionTest {
+	private static final int TYPE_LINEAR_ACCELERATION = 10;
+
+	private FakeSensorSource mSource;
+	private RecordingListener mListener;
+	private SensorAcquisition mAcquisition;
+
+	@Before
+	public void setUp() {
+		mSource = new FakeSensorSource();
+		mListener = new RecordingListener();
+		mAcquisition = new SensorAcquisition(mSource, mListener);
+	}
+
+	@Test
+	public void registersAtConfiguredRateWithBatching() {
+		assertTrue(mAcquisition.start(50, 2000));
+
+		assertEquals(20000, mSource.getSamplingPeriodUs());
+		assertEquals(2000000, mSource.getMaxReportLatencyUs());
+	}
+
+	@Test
+	public void flushIsIgnoredUntilStarted() {
+		assertFalse(mAcquisition.flush());
+		assertEquals(0, mSource.getFlushRequests());
+
+		mAcquisition.start(10, 2000);
+		assertTrue(mAcquisition.flush());
+		assertEquals(1, mSource.getFlushRequests());
+	}
+
+	@Test
+	public void deliversBatchBeforeFlushCompletion() {
+		mAcquisition.start(10, 2000);
+		mAcquisition.flush();
+		mSource.emit(TYPE_LINEAR_ACCELERATION, 100, 0.1f, 0.2f, 0.3f);
+		mSource.emit(TYPE_LINEAR_ACCELERATION, 200, 0.4f, 0.5f, 0.6f);
+		mSource.completeFlush();
+
+		assertEquals(2, mListener.timestamps.size());
+		assertEquals(1, mListener.flushes);
+	}
+
+	@Test
+	public void stopUnregistersSource() {
+		mAcquisition.start(10, 2000);
+		mAcquisition.stop();
+
+		assertFalse(mSource.isStarted());
+		assertFalse(mAcquisition.isStarted());
+		mSource.emit(TYPE_LINEAR_ACCELERATION, 100, 0.1f, 0.2f, 0.3f);
+		assertEquals(0, mListener.timestamps.size());
+		assertFalse(mAcquisition.flush());
+	}
+
+	private static final class RecordingListener implements SensorSampleListener {
+		final List<Long> timestamps = new ArrayList<>();
+		int flushes;
+
+		@Override
+		public void onSensorSample(int sensorType, long timestampNanos, float[] values) {
+			timestamps.add(timestampNanos);
+		}
+
+		@Override
+		public void onFlushCompleted() {
+			flushes++;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package ru.chernakov.mykalmangps.core.track;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnarTrackTest {
+	@Test
+	public void storesPointsAcrossChunks() {
+		ColumnarTrack track = new ColumnarTrack();
+		int count = ColumnarTrack.CHUNK_SIZE * 2 + 10;
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, track.append(1000L + i, 55.75 + i * 1e-6, 37.62 - i * 1e-6, 5.0f, i, 90.0f));
+		}
+
+		assertEquals(count, track.size());
+		for (int i = 0; i < count; i += 97) {
+			assertEquals(1000L + i, track.getTime(i));
+			assertEquals(55.75 + i * 1e-6, track.getLatitude(i), 1e-7);
+			assertEquals(37.62 - i * 1e-6, track.getLongitude(i), 1e-7);
+			assertEquals(i, track.getSpeed(i), 0.0f);
+		}
+		assertEquals(3L * ColumnarTrack.CHUNK_SIZE * ColumnarTrack.BYTES_PER_POINT, track.getMemoryUsage());
+	}
+
+	@Test
+	public void cursorVisitsPointsPresentAtCreation() {
+		ColumnarTrack track = new ColumnarTrack();
+		for (int i = 0; i < ColumnarTrack.CHUNK_SIZE + 5; i++) {
+			track.append(i, 0.0, 0.0, 0.0f, 0.0f, 0.0f);
+		}
+
+		ColumnarTrack.Cursor cursor = track.cursor(3);
+		track.append(-1L, 0.0, 0.0, 0.0f, 0.0f, 0.0f);
+		int expected = 3;
+		while (cursor.moveToNext()) {
+			assertEquals(expected, cursor.getIndex());
+			assertEquals(expected, cursor.getTime());
+			expected++;
+		}
+		assertEquals(ColumnarTrack.CHUNK_SIZE + 5, expected);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void rejectsIndexBeyondSize() {
+		ColumnarTrack track = new ColumnarTrack();
+		track.append(0L, 0.0, 0.0, 0.0f, 0.0f, 0.0f);
+		track.getTime(1);
+	}
+
+	@Test
+	public void clearReleasesChunks() {
+		ColumnarTrack track = new ColumnarTrack();
+		track.append(0L, 0.0, 0.0, 0.0f, 0.0f, 0.0f);
+		track.clear();
+
+		assertTrue(track.isEmpty());
+		assertEquals(0, track.getMemoryUsage());
+		assertFalse(track.cursor().moveToNext());
+	}
+}
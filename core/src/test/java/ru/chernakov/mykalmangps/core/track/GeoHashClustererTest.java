@@ -0,0 +1,49 @@
+package ru.chernakov.mykalmangps.core.track;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeoHashClustererTest {
+	private static final int PRECISION = 8;
+
+	@Test
+	public void collapsesStationaryRun() {
+		GeoHashClusterer clusterer = new GeoHashClusterer(PRECISION, 2);
+
+		assertEquals(GeoHashClusterer.RESULT_PASS, clusterer.offer(0L, 55.750010, 37.620010, 5.0f));
+		for (int i = 1; i <= 10; i++) {
+			double jitter = (i % 2 == 0 ? 1 : -1) * 2e-5;
+			assertEquals(0, clusterer.offer(i * 1000L, 55.750010 + jitter, 37.620010 - jitter, 5.0f));
+		}
+
+		int result = clusterer.offer(11000L, 55.76, 37.63, 5.0f);
+		assertEquals(GeoHashClusterer.RESULT_CLUSTER | GeoHashClusterer.RESULT_PASS, result);
+		assertEquals(10, clusterer.getClusterSize());
+		assertEquals(55.750010, clusterer.getClusterLatitude(), 1e-9);
+		assertEquals(37.620010, clusterer.getClusterLongitude(), 1e-9);
+		assertEquals(10000L, clusterer.getClusterTime());
+	}
+
+	@Test
+	public void weightsPointsByAccuracy() {
+		GeoHashClusterer clusterer = new GeoHashClusterer(PRECISION, 1);
+		clusterer.offer(0L, 55.75001, 37.62001, 1.0f);
+		clusterer.offer(1L, 55.75003, 37.62001, 3.0f);
+
+		assertTrue(clusterer.flush());
+		assertEquals(55.75001 + 0.2 * 1e-5, clusterer.getClusterLatitude(), 1e-9);
+		assertEquals(2.0f, clusterer.getClusterAccuracy(), 1e-6f);
+	}
+
+	@Test
+	public void passesMovingPoints() {
+		GeoHashClusterer clusterer = new GeoHashClusterer(PRECISION, 2);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(GeoHashClusterer.RESULT_PASS, clusterer.offer(i, 55.75 + i * 1e-3, 37.62, 5.0f));
+		}
+		assertFalse(clusterer.flush());
+	}
+}
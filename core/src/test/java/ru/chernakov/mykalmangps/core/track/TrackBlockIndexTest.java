@@ -0,0 +1,45 @@
+package ru.chernakov.mykalmangps.core.track;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrackBlockIndexTest {
+	@Test
+	public void blocksShareBoundaryPoint() {
+		ColumnarTrack track = new ColumnarTrack();
+		for (int i = 0; i <= TrackBlockIndex.BLOCK_SIZE * 2; i++) {
+			track.append(i, 0.0, i * 1e-5, 0.0f, 0.0f, 0.0f);
+		}
+
+		TrackBlockIndex index = new TrackBlockIndex();
+		assertEquals(track.size(), index.update(track));
+		assertEquals(0, index.update(track));
+
+		// Последняя точка начинает третий блок, в котором ещё нет отрезков
+		assertEquals(3, index.getBlockCount());
+		assertEquals(TrackBlockIndex.BLOCK_SIZE, index.getBlockEnd(0));
+		assertEquals(TrackBlockIndex.BLOCK_SIZE, index.getBlockStart(1));
+
+		// Точка на границе блоков попадает в оба
+		int boundary = track.getLongitudeE7(TrackBlockIndex.BLOCK_SIZE);
+		assertTrue(index.intersects(0, -1, 1, boundary, boundary));
+		assertTrue(index.intersects(1, -1, 1, boundary, boundary));
+		assertFalse(index.intersects(1, -1, 1, 0, boundary - 1));
+	}
+
+	@Test
+	public void extendsLastBlockIncrementally() {
+		ColumnarTrack track = new ColumnarTrack();
+		TrackBlockIndex index = new TrackBlockIndex();
+		track.append(0L, 0.0, 0.0, 0.0f, 0.0f, 0.0f);
+		index.update(track);
+		assertFalse(index.intersects(0, 100, 200, -1, 1));
+
+		track.append(1L, 1.5e-5, 0.0, 0.0f, 0.0f, 0.0f);
+		assertEquals(1, index.update(track));
+		assertTrue(index.intersects(0, 100, 200, -1, 1));
+	}
+}
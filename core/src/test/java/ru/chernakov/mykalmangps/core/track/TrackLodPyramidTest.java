@@ -0,0 +1,139 @@
+package ru.chernakov.mykalmangps.core.track;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrackLodPyramidTest {
+	private static final int MIN_ZOOM = 3;
+	private static final int MAX_ZOOM = 18;
+	private static final double TOLERANCE_PX = TrackLodPyramid.DEFAULT_TOLERANCE_PX;
+
+	@Test
+	public void straightLineKeepsEndpoints() {
+		ColumnarTrack track = new ColumnarTrack();
+		for (int i = 0; i < 1000; i++) {
+			track.append(i, 55.75, 37.62 + i * 1e-5, 0.0f, 0.0f, 0.0f);
+		}
+
+		TrackLodPyramid pyramid = new TrackLodPyramid(MIN_ZOOM, MAX_ZOOM, TOLERANCE_PX);
+		pyramid.update(track);
+		TrackLodPyramid.Indices indices = new TrackLodPyramid.Indices();
+		for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom++) {
+			pyramid.collect(zoom, indices);
+			assertEquals(2, indices.size());
+			assertEquals(0, indices.get(0));
+			assertEquals(999, indices.get(1));
+		}
+	}
+
+	@Test
+	public void outAndBackKeepsTurningPoint() {
+		ColumnarTrack track = new ColumnarTrack();
+		// A, B в 626 м к востоку, снова A, затем на север
+		track.append(0, 55.75, 37.62, 0.0f, 0.0f, 0.0f);
+		track.append(1, 55.75, 37.63, 0.0f, 0.0f, 0.0f);
+		track.append(2, 55.75, 37.62, 0.0f, 0.0f, 0.0f);
+		track.append(3, 55.755, 37.62, 0.0f, 0.0f, 0.0f);
+		track.append(4, 55.76, 37.62, 0.0f, 0.0f, 0.0f);
+
+		TrackLodPyramid pyramid = new TrackLodPyramid(MIN_ZOOM, MAX_ZOOM, TOLERANCE_PX);
+		pyramid.update(track);
+		TrackLodPyramid.Indices indices = new TrackLodPyramid.Indices();
+		for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom++) {
+			pyramid.collect(zoom, indices);
+			assertWithinTolerance(track, indices, zoom);
+		}
+
+		pyramid.collect(MAX_ZOOM, indices);
+		assertEquals(1, indices.get(1));
+	}
+
+	@Test
+	public void coarseLevelsKeepFewerPoints() {
+		ColumnarTrack track = randomWalk(20000);
+		TrackLodPyramid pyramid = new TrackLodPyramid(MIN_ZOOM, MAX_ZOOM, TOLERANCE_PX);
+		pyramid.update(track);
+
+		for (int zoom = MIN_ZOOM; zoom < MAX_ZOOM; zoom++) {
+			assertTrue(pyramid.getLevelSize(zoom) <= pyramid.getLevelSize(zoom + 1));
+		}
+		assertTrue(pyramid.getLevelSize(10) < track.size() / 20);
+	}
+
+	@Test
+	public void incrementalUpdateStaysWithinTolerance() {
+		ColumnarTrack track = new ColumnarTrack();
+		ColumnarTrack source = randomWalk(5000);
+		TrackLodPyramid pyramid = new TrackLodPyramid(MIN_ZOOM, MAX_ZOOM, TOLERANCE_PX);
+		TrackLodPyramid.Indices indices = new TrackLodPyramid.Indices();
+
+		for (int i = 0; i < source.size(); i++) {
+			track.append(i, source.getLatitude(i), source.getLongitude(i), 0.0f, 0.0f, 0.0f);
+			pyramid.update(track);
+			if (i % 500 == 499) {
+				for (int zoom = 12; zoom <= MAX_ZOOM; zoom += 3) {
+					pyramid.collect(zoom, indices);
+					assertWithinTolerance(track, indices, zoom);
+				}
+			}
+		}
+	}
+
+	private static void assertWithinTolerance(ColumnarTrack track, TrackLodPyramid.Indices indices, int zoom) {
+		double scale = 256.0 * Math.pow(2.0, zoom);
+		assertEquals(0, indices.get(0));
+		assertEquals(track.size() - 1, indices.get(indices.size() - 1));
+		for (int k = 1; k < indices.size(); k++) {
+			int a = indices.get(k - 1);
+			int b = indices.get(k);
+			assertTrue(a < b);
+			for (int i = a + 1; i < b; i++) {
+				double distance = distanceToSegment(
+						x(track, i) * scale, y(track, i) * scale,
+						x(track, a) * scale, y(track, a) * scale,
+						x(track, b) * scale, y(track, b) * scale);
+				assertTrue("zoom " + zoom + ", point " + i + ": " + distance,
+						distance <= 2.0 * TOLERANCE_PX + 1e-6);
+			}
+		}
+	}
+
+	private static double x(ColumnarTrack track, int i) {
+		return TrackLodPyramid.projectX(track.getLongitude(i));
+	}
+
+	private static double y(ColumnarTrack track, int i) {
+		return TrackLodPyramid.projectY(track.getLatitude(i));
+	}
+
+	private static double distanceToSegment(double px, double py, double ax, double ay, double bx, double by) {
+		double dx = bx - ax;
+		double dy = by - ay;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared == 0.0 ? 0.0 : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+		t = Math.max(0.0, Math.min(1.0, t));
+		double ex = px - (ax + t * dx);
+		double ey = py - (ay + t * dy);
+		return Math.sqrt(ex * ex + ey * ey);
+	}
+
+	private static ColumnarTrack randomWalk(int count) {
+		Random random = new Random(7);
+		ColumnarTrack track = new ColumnarTrack();
+		double latitude = 55.75;
+		double longitude = 37.62;
+		double heading = 0.0;
+		for (int i = 0; i < count; i++) {
+			heading += random.nextGaussian() * 0.3;
+			latitude += Math.cos(heading) * 2e-5;
+			longitude += Math.sin(heading) * 3e-5;
+			track.append(i, latitude, longitude, 0.0f, 0.0f, 0.0f);
+		}
+
+		return track;
+	}
+}
@@ -0,0 +1,124 @@
+package ru.chernakov.mykalmangps.core.track;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrackLogTest {
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	@Test
+	public void readsBackAppendedRecords() throws IOException {
+		File directory = mFolder.getRoot();
+		TrackLog log = TrackLog.open(directory, 8);
+		log.append(1000L, 55.75, 37.62, 5.0f, 1.5f, 90.0f, TrackLogFormat.SOURCE_GPS, TrackLogFormat.FLAG_FILTERED);
+		log.append(2000L, 55.76, 37.63, 7.0f, 2.5f, 180.0f, TrackLogFormat.SOURCE_NETWORK, (byte) 0);
+		log.close();
+
+		TrackLogReader reader = TrackLogReader.open(directory);
+		assertTrue(reader.next());
+		assertEquals(1000L, reader.getTimestamp());
+		assertEquals(55.75, reader.getLatitude(), 0.0);
+		assertEquals(37.62, reader.getLongitude(), 0.0);
+		assertEquals(5.0f, reader.getAccuracy(), 0.0f);
+		assertEquals(1.5f, reader.getSpeed(), 0.0f);
+		assertEquals(90.0f, reader.getBearing(), 0.0f);
+		assertEquals(TrackLogFormat.SOURCE_GPS, reader.getSource());
+		assertEquals(TrackLogFormat.FLAG_FILTERED, reader.getFlags());
+		assertTrue(reader.next());
+		assertEquals(2000L, reader.getTimestamp());
+		assertEquals(TrackLogFormat.SOURCE_NETWORK, reader.getSource());
+		assertFalse(reader.next());
+		reader.close();
+	}
+
+	@Test
+	public void rollsOverToNewSegment() throws IOException {
+		File directory = mFolder.getRoot();
+		TrackLog log = TrackLog.open(directory, 4);
+		for (int i = 0; i < 10; i++) {
+			log.append(i, 0.0, 0.0, 0.0f, 0.0f, 0.0f, TrackLogFormat.SOURCE_GPS, (byte) 0);
+		}
+		log.close();
+
+		assertEquals(3, TrackLogFormat.listSegments(directory).length);
+		assertEquals(10, countRecords(directory));
+	}
+
+	@Test
+	public void recoversFromTornTail() throws IOException {
+		File directory = mFolder.getRoot();
+		TrackLog log = TrackLog.open(directory, 8);
+		for (int i = 0; i < 3; i++) {
+			log.append(i, 0.0, 0.0, 0.0f, 0.0f, 0.0f, TrackLogFormat.SOURCE_GPS, (byte) 0);
+		}
+		log.close();
+
+		// Третья запись записана не полностью: контрольная сумма не совпадает с данными
+		RandomAccessFile raf = new RandomAccessFile(new File(directory, TrackLogFormat.segmentName(0)), "rw");
+		raf.seek(TrackLogFormat.HEADER_SIZE + 2 * TrackLogFormat.RECORD_SIZE + TrackLogFormat.OFFSET_LATITUDE);
+		raf.writeLong(0x7ff8000000000000L);
+		raf.close();
+
+		log = TrackLog.open(directory, 8);
+		assertEquals(2, log.getRecoveredCount());
+		log.append(10L, 1.0, 1.0, 0.0f, 0.0f, 0.0f, TrackLogFormat.SOURCE_GPS, (byte) 0);
+		log.close();
+
+		TrackLogReader reader = TrackLogReader.open(directory);
+		assertTrue(reader.next());
+		assertEquals(0L, reader.getTimestamp());
+		assertTrue(reader.next());
+		assertEquals(1L, reader.getTimestamp());
+		assertTrue(reader.next());
+		assertEquals(10L, reader.getTimestamp());
+		assertFalse(reader.next());
+	}
+
+	@Test
+	public void deletesCommittedSegments() throws IOException {
+		File directory = mFolder.getRoot();
+		TrackLog log = TrackLog.open(directory, 4);
+		for (int i = 0; i < 10; i++) {
+			log.append(i, 0.0, 0.0, 0.0f, 0.0f, 0.0f, TrackLogFormat.SOURCE_GPS, (byte) 0);
+		}
+
+		// Второй сегмент (записи 4..7) сохранён не полностью
+		assertEquals(1, log.deleteCommitted(6L));
+		assertEquals(2, TrackLogFormat.listSegments(directory).length);
+		log.close();
+
+		// Заполненные сегменты учитываются и после повторного открытия; текущий не удаляется
+		log = TrackLog.open(directory, 4);
+		assertEquals(6, log.getRecoveredCount());
+		assertEquals(1, log.deleteCommitted(100L));
+		assertEquals(1, TrackLogFormat.listSegments(directory).length);
+		log.append(10L, 0.0, 0.0, 0.0f, 0.0f, 0.0f, TrackLogFormat.SOURCE_GPS, (byte) 0);
+		log.close();
+
+		TrackLogReader reader = TrackLogReader.open(directory);
+		assertTrue(reader.next());
+		assertEquals(8L, reader.getTimestamp());
+		reader.close();
+	}
+
+	private static int countRecords(File directory) throws IOException {
+		TrackLogReader reader = TrackLogReader.open(directory);
+		int count = 0;
+		while (reader.next()) {
+			assertEquals(count, reader.getTimestamp());
+			count++;
+		}
+
+		return count;
+	}
+}